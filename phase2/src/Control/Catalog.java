@@ -0,0 +1,380 @@
+package Control;
+
+import Model.*;
+import Model.Container;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@code Catalog} stores the Model in a directory of shards: an index listing every directory, a
+ * shard for the {@code TagManager}, and a shard for each {@code ImageManager}. The history of each
+ * {@code Image} is kept apart in a {@code HistoryStore}. Only the shards that changed need to be
+ * written again.
+ *
+ * <p>A mapped {@code Catalog} keeps the table of the {@code Image(s)} in a {@code TableStore}
+ * instead, and each {@code ImageManager} as a file of the ids of its {@code Image(s)}, so it is
+ * read by mapping the files rather than decoding every {@code Image}. A {@code Catalog} written one
+ * way is read either way, and written again the other way at the next checkpoint.
+ */
+public class Catalog {
+
+  /** Provides access to the logger. */
+  private static final Logger LOGGER = Logger.getLogger(Log.class.getName());
+
+  /** Name of the index file. */
+  private static final String INDEX = "index";
+
+  /** Name of the {@code TagManager} shard. */
+  private static final String TAGS = "tags.shard";
+
+  /** Name of the {@code ScanManifest} file. */
+  private static final String MANIFEST = "manifest";
+
+  /** Directory holding the shards. */
+  private File catalogPath;
+
+  /** Histories of the {@code Image(s)}, kept in the same directory; null until first needed. */
+  private HistoryStore histories;
+
+  /** Whether every shard should be written again, e.g. to move histories into the store. */
+  private boolean rewriteNeeded;
+
+  /** Whether the table of the {@code Image(s)} is kept in mapped files. */
+  private boolean mapped;
+
+  /** Table of the {@code Image(s)}, kept in the same directory when {@code mapped}. */
+  private TableStore tables;
+
+  /** Whether the {@code Catalog} read was mapped, so its files are in use until detached. */
+  private boolean tableRead;
+
+  /**
+   * Creates a new {@code Catalog} stored in the directory at {@code catalogPath}.
+   *
+   * @param catalogPath directory holding the shards.
+   */
+  public Catalog(File catalogPath) {
+    this(catalogPath, false);
+  }
+
+  /**
+   * Creates a new {@code Catalog} stored in the directory at {@code catalogPath}, keeping the table
+   * of the {@code Image(s)} in mapped files if {@code mapped}.
+   *
+   * @param catalogPath directory holding the shards.
+   * @param mapped whether the table is kept in mapped files.
+   */
+  public Catalog(File catalogPath, boolean mapped) {
+    this.catalogPath = catalogPath;
+    this.mapped = mapped;
+    tables = new TableStore(catalogPath);
+  }
+
+  /**
+   * Checks whether a {@code Catalog} has been written before.
+   *
+   * @return true if the index exists, false otherwise.
+   */
+  protected boolean exists() {
+    return new File(catalogPath, INDEX).exists();
+  }
+
+  /**
+   * Reads the whole Model from its shards. For a mapped {@code Catalog}, the table is mapped and
+   * the {@code Image(s)} of each directory are only found once they are asked for.
+   *
+   * @return the {@code Container} read.
+   * @throws IOException if a shard cannot be read.
+   */
+  protected Container read() throws IOException {
+    Container container = new Container();
+    histories = new HistoryStore(catalogPath, container.getTagManager());
+    Map<Integer, Tag> tags;
+    try (DataInputStream input = open(TAGS)) {
+      tags = CatalogCodec.readTags(input, container.getTagManager());
+    }
+    List<String> directories;
+    try (DataInputStream input = open(INDEX)) {
+      directories = CatalogCodec.readIndex(input, container);
+    }
+    tableRead = tables.exists();
+    if (tableRead) {
+      tables.open(container, histories);
+    }
+    boolean shardsRead = false;
+    Set<String> read = new HashSet<>();
+    for (String directory : directories) {
+      if (tableRead && tables.hasImageManager(directory)) {
+        String ids = idsName(directory);
+        if (read.add(ids)) {
+          container.addImageManager(tables.openImageManager(directory, ids));
+        }
+        continue;
+      }
+      String shard = shardName(directory);
+      if (read.add(shard)) {
+        try (DataInputStream input = open(shard)) {
+          container.addImageManager(
+              CatalogCodec.readImageManager(input, tags, histories, container));
+        }
+        shardsRead = true;
+      }
+    }
+    if (tableRead) {
+      tables.finishOpen(container);
+    }
+    histories.deleteUnusedFiles();
+    // A mapped Catalog lists every directory in its table, so one read from a shard is written anew
+    rewriteNeeded = histories.needsRewrite() || tableRead != mapped || (mapped && shardsRead);
+    return container;
+  }
+
+  /**
+   * Checks whether every shard of the {@code Catalog} read should be written again at the next
+   * checkpoint, e.g. because its histories are spread over too many files.
+   *
+   * @return true if every shard should be written again.
+   */
+  protected boolean needsRewrite() {
+    return rewriteNeeded;
+  }
+
+  /**
+   * Reads the {@code ScanManifest} of the last scans. If it is missing or cannot be read, an empty
+   * one is returned so the next scan reads everything.
+   *
+   * @return the {@code ScanManifest} read.
+   */
+  protected ScanManifest readManifest() {
+    if (!new File(catalogPath, MANIFEST).exists()) {
+      return new ScanManifest();
+    }
+    try (DataInputStream input = open(MANIFEST)) {
+      return ScanManifest.read(input);
+    } catch (IOException ex) {
+      LOGGER.log(Level.WARNING, "Could not read the scan manifest: " + ex.getMessage());
+      return new ScanManifest();
+    }
+  }
+
+  /**
+   * Encodes the shards that changed into memory, so they can be written while the Model keeps
+   * changing.
+   *
+   * @param container Model to encode.
+   * @param managers {@code ImageManager(s)} whose shards changed.
+   * @param tags whether the {@code TagManager} shard changed.
+   * @param index whether the list of directories changed.
+   * @param manifest {@code ScanManifest} to write, or null if it did not change.
+   * @return contents of each shard, by file name; history files come first and the index last.
+   * @throws IOException if a shard cannot be encoded.
+   */
+  protected Map<String, byte[]> encode(
+      Container container,
+      Collection<ImageManager> managers,
+      boolean tags,
+      boolean index,
+      ScanManifest manifest)
+      throws IOException {
+    if (histories == null) {
+      histories = new HistoryStore(catalogPath, container.getTagManager());
+    }
+    if (tableRead && !mapped) {
+      // Read before the files of the table are deleted
+      tables.detach(container);
+      tableRead = false;
+    }
+    Map<String, byte[]> managerShards = new LinkedHashMap<>();
+    histories.start();
+    for (ImageManager manager : managers) {
+      String directory = manager.getDirectory().toString();
+      if (mapped) {
+        managerShards.put(idsName(directory), tables.encodeImageManager(manager, histories));
+        continue;
+      }
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      CatalogCodec.writeImageManager(new DataOutputStream(bytes), manager, histories);
+      managerShards.put(shardName(directory), bytes.toByteArray());
+    }
+    Map<String, byte[]> shards = new LinkedHashMap<>();
+    histories.finish(shards);
+    if (mapped) {
+      tables.encode(container, shards);
+    }
+    shards.putAll(managerShards);
+    rewriteNeeded = false;
+    if (tags) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      CatalogCodec.writeTags(new DataOutputStream(bytes), container.getTagManager());
+      shards.put(TAGS, bytes.toByteArray());
+    }
+    if (manifest != null) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      manifest.write(new DataOutputStream(bytes));
+      shards.put(MANIFEST, bytes.toByteArray());
+    }
+    if (index) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      CatalogCodec.writeIndex(new DataOutputStream(bytes), container);
+      shards.put(INDEX, bytes.toByteArray());
+    }
+    return shards;
+  }
+
+  /**
+   * Writes encoded shards to disk. Each file is replaced in a single step so it is never left half
+   * written. History files are written first, so no shard refers to a history not yet on disk. The
+   * table of a mapped {@code Catalog} and then the index are written last, so neither names a file
+   * not yet on disk. Once a new index is written, the shards of directories it no longer lists are
+   * deleted.
+   *
+   * @param shards contents of each shard, by file name.
+   * @throws IOException if a shard cannot be written.
+   */
+  protected void write(Map<String, byte[]> shards) throws IOException {
+    try {
+      Files.createDirectories(catalogPath.toPath());
+      for (Map.Entry<String, byte[]> shard : shards.entrySet()) {
+        if (HistoryStore.isHistoryFile(shard.getKey())) {
+          write(shard.getKey(), shard.getValue());
+          histories.written(shard.getKey());
+        }
+      }
+      for (Map.Entry<String, byte[]> shard : shards.entrySet()) {
+        String name = shard.getKey();
+        if (!HistoryStore.isHistoryFile(name) && !TableStore.isTable(name) && !name.equals(INDEX)) {
+          write(name, shard.getValue());
+          tables.written(name, shard.getValue());
+        }
+      }
+      for (Map.Entry<String, byte[]> shard : shards.entrySet()) {
+        if (TableStore.isTable(shard.getKey())) {
+          write(shard.getKey(), shard.getValue());
+          tables.written(shard.getKey(), shard.getValue());
+        }
+      }
+      byte[] index = shards.get(INDEX);
+      if (index != null) {
+        write(INDEX, index);
+        deleteUnlistedShards(index);
+      }
+    } catch (IOException ex) {
+      tables.failed();
+      throw ex;
+    }
+  }
+
+  /**
+   * Deletes the shards of {@code ImageManager(s)} not listed in an index, e.g. of directories
+   * merged, moved away or dropped, or written the other way than the {@code Catalog} is now kept.
+   * The files of the table are deleted too once it is no longer mapped. A shard that cannot be
+   * deleted is left for the next index.
+   *
+   * @param index contents of the index written.
+   * @throws IOException if the index cannot be read back.
+   */
+  private void deleteUnlistedShards(byte[] index) throws IOException {
+    Set<String> listed = new HashSet<>();
+    listed.add(TAGS);
+    try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(index))) {
+      for (String directory : CatalogCodec.readIndex(input, new Container())) {
+        listed.add(mapped ? idsName(directory) : shardName(directory));
+      }
+    }
+    File[] files =
+        catalogPath.listFiles(
+            (dir, name) ->
+                name.endsWith(".shard")
+                    || name.endsWith(".ids")
+                    || !mapped && TableStore.isStoreFile(name));
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      if (!listed.contains(file.getName())) {
+        try {
+          Files.deleteIfExists(file.toPath());
+        } catch (IOException ex) {
+          LOGGER.log(Level.WARNING, "Could not delete " + file + ": " + ex.getMessage());
+        }
+      }
+    }
+  }
+
+  /** Closes the history files opened for reading. */
+  protected void close() {
+    if (histories != null) {
+      histories.close();
+    }
+  }
+
+  /**
+   * Writes one shard to disk, replacing it in a single step.
+   *
+   * @param name file name of the shard.
+   * @param contents contents of the shard.
+   * @throws IOException if the shard cannot be written.
+   */
+  private void write(String name, byte[] contents) throws IOException {
+    File shardPath = new File(catalogPath, name);
+    File tempPath = new File(catalogPath, name + ".tmp");
+    try {
+      Files.write(tempPath.toPath(), contents);
+      Files.move(
+          tempPath.toPath(),
+          shardPath.toPath(),
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException ex) {
+      LOGGER.log(Level.WARNING, ex.getMessage());
+      // pass on the exception for Controller to handle
+      throw (ex);
+    }
+  }
+
+
+  /**
+   * Opens a shard for reading.
+   *
+   * @param name file name of the shard.
+   * @return stream over the shard.
+   * @throws IOException if the shard cannot be opened.
+   */
+  private DataInputStream open(String name) throws IOException {
+    return new DataInputStream(
+        new BufferedInputStream(new FileInputStream(new File(catalogPath, name))));
+  }
+
+  /**
+   * Gives the file name of the shard of the {@code ImageManager} for a directory.
+   *
+   * @param directory path of the directory.
+   * @return file name of the shard.
+   */
+  private static String shardName(String directory) {
+    return UUID.nameUUIDFromBytes(directory.getBytes(StandardCharsets.UTF_8)) + ".shard";
+  }
+
+  /**
+   * Gives the file name of the ids of the {@code Image(s)} of a directory in a mapped {@code
+   * Catalog}.
+   *
+   * @param directory path of the directory.
+   * @return file name of the ids.
+   */
+  private static String idsName(String directory) {
+    return UUID.nameUUIDFromBytes(directory.getBytes(StandardCharsets.UTF_8)) + ".ids";
+  }
+}
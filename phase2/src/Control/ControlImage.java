@@ -8,9 +8,12 @@ import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.nio.file.FileSystems;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -49,63 +52,117 @@ public class ControlImage implements Serializable {
    * @return number of {@code Tag} {@code Image} has had.
    */
   public int getLifeTimeTagsLength(Image image) {
-    return image.getLifeTimeTags().size();
+    return image.getHistorySize();
   }
 
   /**
    * Moves an {@code Image} to a new directory. Will move an {@code Image} between {@code
-   * ImageManagers} and then adjust its file path to reflect this change.
+   * ImageManagers} and then adjust its file path to reflect this change. The file is moved on the
+   * next save, after any rename still waiting, as {@code moveAll} does; if it cannot be moved, it is
+   * reported by {@code Controller.takeRenameFailures} and the {@code Image} is moved back.
    *
    * @param image to move.
    * @param newDirectoryPath {@code Path} to the new directory.
+   * @throws InvalidDirectoryException when the directory does not exist, or has an {@code Image}
+   *     with the same name.
+   */
+  public void move(Image image, Path newDirectoryPath) throws InvalidDirectoryException {
+    ImageManager oldManager = image.getManager();
+    if (moveAll(Collections.singletonList(image), newDirectoryPath) == 0
+        && image.getManager() == oldManager
+        && !image.getDirectory().equals(newDirectoryPath)) {
+      throw new InvalidDirectoryException("This directory already has an image of the same name!");
+    }
+  }
+
+  /**
+   * Moves an {@code Image} between {@code ImageManagers} in the Model only, without touching its
+   * file.
+   *
+   * @param image to move.
+   * @param newDirectoryPath {@code Path} to the new directory.
+   * @return the {@code ImageManager} the {@code Image} now belongs to.
+   */
+  protected ImageManager relocate(Image image, Path newDirectoryPath) {
+    ImageManager newManager = imExists(newDirectoryPath);
+    relocate(image, newDirectoryPath, newManager);
+    return newManager;
+  }
+
+  /**
+   * Moves {@code Image(s)} to a new directory together. The {@code ImageManager} of the directory
+   * is found once, each {@code Image} is moved between {@code ImageManagers} in the Model, and the
+   * files are moved on the next save, several at a time. An {@code Image} already in the directory,
+   * or with the same name and extension as one there, is left where it is. A file that cannot be
+   * moved is reported by {@code Controller.takeRenameFailures}, and its {@code Image} is moved
+   * back.
+   *
+   * @param images {@code Image(s)} to move.
+   * @param newDirectoryPath {@code Path} to the new directory.
+   * @return number of {@code Image(s)} moved.
    * @throws InvalidDirectoryException when the directory does not exist.
-   * @throws IOException if the file cannot be moved.
    */
-  public void move(Image image, Path newDirectoryPath)
-      throws InvalidDirectoryException, IOException {
-    File directoryFile = new File(newDirectoryPath.toString());
-    if (!directoryFile.isDirectory()) {
-      LOGGER.log(Level.WARNING, "Tried to move " + image.getName() + " to invalid directory.");
+  public int moveAll(Collection<Image> images, Path newDirectoryPath)
+      throws InvalidDirectoryException {
+    if (!newDirectoryPath.toFile().isDirectory()) {
+      LOGGER.log(Level.WARNING, "Tried to move images to invalid directory.");
       throw new InvalidDirectoryException("This is not a valid directory!");
     }
+    ImageManager newManager = imExists(newDirectoryPath);
+    int moved = 0;
+    for (Image image : images) {
+      if (image.getManager() == newManager) {
+        continue;
+      }
+      if (newManager.getImage(image.getName(), image.getExtension()) != null) {
+        LOGGER.log(
+            Level.WARNING,
+            "Did not move " + image + ", " + newDirectoryPath + " has an image of the same name.");
+        continue;
+      }
+      Path oldDirectory = image.getDirectory();
+      Path source = image.getImageFile().toPath();
+      relocate(image, newDirectoryPath, newManager);
+      control.fileMoved(image, source);
+      control.getJournal().imageMoved(image, oldDirectory);
+      moved++;
+    }
+    LOGGER.log(Level.CONFIG, "Moved " + moved + " images to " + newDirectoryPath);
+    return moved;
+  }
 
-    Path oldPath = image.getDirectory().resolve(image.toString());
+  /**
+   * Moves an {@code Image} to the {@code ImageManager} of a new directory in the Model only.
+   *
+   * @param image to move.
+   * @param newDirectoryPath {@code Path} to the new directory.
+   * @param newManager {@code ImageManager} of the new directory.
+   */
+  private void relocate(Image image, Path newDirectoryPath, ImageManager newManager) {
     image.setDirectory(newDirectoryPath.toString());
-
     ImageManager oldManager = image.getManager();
-    ImageManager newManager = imExists(newDirectoryPath);
     newManager.addImage(image);
     image.setManager(newManager);
     oldManager.removeImage(image);
-    File fileToMoveTo =
-        new File(newDirectoryPath + FileSystems.getDefault().getSeparator() + image.toString());
-    image.setImageFile(fileToMoveTo);
-    Files.move(oldPath, newDirectoryPath.resolve(oldPath.getFileName()));
-    updateImage(image);
-    LOGGER.log(
-        Level.CONFIG,
-        "Moved "
-            + image.getName()
-            + " from "
-            + oldManager.toString()
-            + " to "
-            + newManager.toString());
+    refreshImageFile(image);
+    control.managerChanged(oldManager);
+    control.managerChanged(newManager);
   }
 
   /**
    * Determines whether the new directory path has an {@code ImageManager} associated with it. If it
-   * does not, creates and returns a new {@code ImageManager}.
+   * does not, creates a new {@code ImageManager} and adds it to the {@code Container}.
    *
    * @param path {@code Path} to validate.
    * @return New or existing {@code ImageManager}.
    */
   private ImageManager imExists(Path path) {
-    for (ImageManager manager : control.getContainer().getImageManagers()) {
-      if (path.equals(manager.getDirectory())) {
-        return manager;
-      }
+    ImageManager manager = control.getContainer().getImageManager(path);
+    if (manager == null) {
+      manager = control.getContainer().addImageManager(new ImageManager(path.toFile()));
+      control.directoriesChanged();
     }
-    return new ImageManager(path.toFile());
+    return manager;
   }
 
   /**
@@ -132,12 +189,11 @@ public class ControlImage implements Serializable {
   }
 
   /**
-   * Changes the file name of {@code Image} according to its {@code Tag(s)}.
+   * Points the File of {@code Image} at the name given by its current {@code Tag(s)}.
    *
-   * @param image whose file name is changed.
+   * @param image whose File is updated.
    */
-  protected void changeFileName(Image image) {
-    image.renameFile();
+  protected void refreshImageFile(Image image) {
     File fileToMoveTo =
         new File(
             image.getDirectory().toString()
@@ -155,9 +211,82 @@ public class ControlImage implements Serializable {
    */
   public void changeToOldVersion(Image image, int index) {
     image.resetTags(index);
+    control.getJournal().tagsSet(image);
     updateImage(image);
   }
 
+  /**
+   * Finds the {@code Tag(s)} every {@code Image} of a directory and its subdirectories had at a
+   * time. Only the histories of the {@code Image(s)} changed since are read back.
+   *
+   * @param directory {@code Path} to the directory, or null for every directory.
+   * @param time time in epoch milliseconds.
+   * @return {@code Tag(s)} of each {@code Image} at the time, leaving out those read in later.
+   */
+  public LinkedHashMap<Image, ArrayList<Tag>> getTagsAt(Path directory, long time) {
+    LinkedHashMap<Image, ArrayList<Tag>> found = new LinkedHashMap<>();
+    for (ImageManager manager : control.getImageManagers()) {
+      if (directory == null || manager.getDirectory().startsWith(directory)) {
+        for (Image image : manager.getImages()) {
+          ArrayList<Tag> tags = image.getTagsAt(time);
+          if (tags != null) {
+            found.put(image, tags);
+          }
+        }
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Resets every {@code Image} of a directory and its subdirectories to the {@code Tag(s)} it had
+   * at a time. Only the {@code Image(s)} changed since are looked at, and each one whose {@code
+   * Tag(s)} differ is changed once, so the next save renames them together. {@code Tag(s)} deleted
+   * since are created again; {@code Image(s)} read in after the time are left as they are.
+   *
+   * @param directory {@code Path} to the directory, or null for every directory.
+   * @param time time in epoch milliseconds.
+   * @return number of {@code Image(s)} whose {@code Tag(s)} changed.
+   */
+  public int revertTo(Path directory, long time) {
+    int reverted = 0;
+    for (Image image : control.getContainer().getImagesChangedAfter(directory, time)) {
+      ArrayList<Tag> oldTags = image.getTagsAt(time);
+      if (oldTags != null && image.setTags(resolveTags(oldTags))) {
+        control.getJournal().tagsSet(image);
+        updateImage(image);
+        reverted++;
+      }
+    }
+    LOGGER.log(Level.CONFIG, "Reverted " + reverted + " images to their tags at " + time);
+    return reverted;
+  }
+
+  /**
+   * Finds the {@code Tag(s)} of the {@code TagManager} with the names of {@code Tag(s)} from a
+   * history, creating those deleted since.
+   *
+   * @param tags {@code Tag(s)} from a history.
+   * @return {@code Tag(s)} of the {@code TagManager}, in order.
+   */
+  private ArrayList<Tag> resolveTags(List<Tag> tags) {
+    TagManager tagManager = control.getContainer().getTagManager();
+    ArrayList<Tag> resolved = new ArrayList<>();
+    for (Tag tag : tags) {
+      Tag current = tagManager.getTag(tag.getName());
+      if (current == null) {
+        try {
+          current = control.getTagControl().addTag(tag.getName());
+        } catch (TagNamingException ex) {
+          LOGGER.log(Level.WARNING, ex.getMessage());
+          continue;
+        }
+      }
+      resolved.add(current);
+    }
+    return resolved;
+  }
+
   /**
    * Opens the folder an {@code Image} is stored in, in a system specific file finder.
    *
@@ -178,7 +307,7 @@ public class ControlImage implements Serializable {
    */
   public void openImage(Image img) throws IOException {
     if (Desktop.isDesktopSupported()) {
-      DesktopApi.open(img.getImageFile());
+      DesktopApi.open(control.findImageFile(img));
       LOGGER.log(Level.CONFIG, "Opening " + img.getName() + " to view.");
     }
   }
@@ -190,7 +319,7 @@ public class ControlImage implements Serializable {
    * @return {@code Image} as {@code File}.
    */
   public File getImageFile(Image image) {
-    return image.getImageFile();
+    return control.getImageFile(image);
   }
 
   /**
@@ -199,10 +328,8 @@ public class ControlImage implements Serializable {
    * @param image whose changes need to be saved.
    */
   protected void updateImage(Image image) {
-    ArrayList<Image> changedImages = control.getChangedImages();
-    if (!changedImages.contains(image)) {
-      changedImages.add(image);
-    }
+    control.imageChanged(image);
+    control.managerChanged(image.getManager());
   }
 
   /**
@@ -211,7 +338,11 @@ public class ControlImage implements Serializable {
    * @param image whose {@code Tag(s)} are removed.
    */
   public void removeAllTags(Image image) {
+    if (image.getCurrentTags().isEmpty()) {
+      return;
+    }
     image.removeAllTags();
+    control.getJournal().tagsCleared(image);
     updateImage(image);
   }
 }
@@ -4,24 +4,37 @@ import Model.*;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 /** {@code ControlTag} serves as a {@code Controller} for {@code Tag}. */
 public class ControlTag implements Serializable {
 
+  /** Main {@code Controller} to be linked to. */
+  private Controller control;
+
   /** Application's {@code ControlImage}. */
   private ControlImage imageControl;
 
   /** Application's {@code TagManager}. */
   private TagManager tagManager;
 
+  /** Records changes made to {@code Tag(s)}. */
+  private Journal journal;
+
   /**
    * Creates new {@code ControlTag} and associates to a {@code Controller}.
    *
    * @param control {@code Controller} to be associated to.
    */
   public ControlTag(Controller control) {
+    this.control = control;
     tagManager = control.getContainer().getTagManager();
     imageControl = control.getImageControl();
+    journal = control.getJournal();
   }
 
   /**
@@ -34,21 +47,19 @@ public class ControlTag implements Serializable {
    * @throws TagNamingException if the input {@code Tag} name does not follow standards.
    */
   public Tag addTag(String tagName, Image image) throws TagNamingException {
-    Tag sameTag = null;
-    for (Tag t : tagManager.getTags()) {
-      if (tagName.equals(t.getName())) {
-        sameTag = t;
-      }
-    }
+    Tag sameTag = tagManager.getTag(tagName);
     if (sameTag == null) {
-      Tag newTag = new Tag(tagName);
-      tagManager.addTag(newTag);
-      imageControl.updateImage(image);
-      return image.addTag(newTag);
-    } else {
-      imageControl.updateImage(image);
-      return image.addTag(sameTag);
+      sameTag = new Tag(tagName);
+      tagManager.addTag(sameTag);
+      journal.tagCreated(sameTag);
+      control.tagsChanged();
     }
+    imageControl.updateImage(image);
+    Tag added = image.addTag(sameTag);
+    if (added != null) {
+      journal.tagAdded(image, added);
+    }
+    return added;
   }
 
   /**
@@ -60,21 +71,74 @@ public class ControlTag implements Serializable {
    * @throws TagNamingException when {@code Tag} isn't named properly (i.e. contains @).
    */
   public Tag addTag(String tagName) throws TagNamingException {
-    Tag sameTag = null;
-    for (Tag t : tagManager.getTags()) {
-      if (tagName.equals(t.getName())) {
-        sameTag = t;
-      }
-    }
-    if (sameTag == null) {
+    if (tagManager.getTag(tagName) == null) {
       Tag newTag = new Tag(tagName);
       tagManager.addTag(newTag);
+      journal.tagCreated(newTag);
+      control.tagsChanged();
       return newTag;
     } else {
       return null;
     }
   }
 
+  /**
+   * Adds and removes {@code Tag(s)} on many {@code Image(s)} together. Each {@code Tag} is found
+   * once, and those added that do not exist yet are created; no {@code Tag} is created unless every
+   * name is valid. Each {@code Image} whose {@code Tag(s)} change gets one entry in its log and is
+   * renamed once on the next save. A {@code Tag} that is both added and removed is added.
+   *
+   * @param images {@code Image(s)} to change.
+   * @param added names of {@code Tag(s)} to add, in order.
+   * @param removed names of {@code Tag(s)} to remove; those that do not exist are ignored.
+   * @return number of {@code Image(s)} whose {@code Tag(s)} changed.
+   * @throws TagNamingException if a name of a {@code Tag} to add is not valid.
+   */
+  public int changeTags(
+      Collection<Image> images, Collection<String> added, Collection<String> removed)
+      throws TagNamingException {
+    Map<String, Tag> addedTags = new LinkedHashMap<>();
+    List<Tag> created = new ArrayList<>();
+    for (String tagName : added) {
+      if (!addedTags.containsKey(tagName)) {
+        Tag tag = tagManager.getTag(tagName);
+        if (tag == null) {
+          tag = new Tag(tagName);
+          created.add(tag);
+        }
+        addedTags.put(tagName, tag);
+      }
+    }
+    for (Tag tag : created) {
+      tagManager.addTag(tag);
+      journal.tagCreated(tag);
+      control.tagsChanged();
+    }
+    List<Tag> removedTags = new ArrayList<>();
+    for (String tagName : removed) {
+      Tag tag = tagManager.getTag(tagName);
+      if (tag != null && !addedTags.containsKey(tagName)) {
+        removedTags.add(tag);
+      }
+    }
+    int changed = 0;
+    for (Image image : images) {
+      List<Tag> tags = new ArrayList<>(image.getCurrentTags());
+      tags.removeAll(removedTags);
+      for (Tag tag : addedTags.values()) {
+        if (!tags.contains(tag)) {
+          tags.add(tag);
+        }
+      }
+      if (image.setTags(tags)) {
+        journal.tagsSet(image);
+        imageControl.updateImage(image);
+        changed++;
+      }
+    }
+    return changed;
+  }
+
   /**
    * Removes {@code Tag} from selected {@code Image}. {@code Tag} will still be available as a
    * {@code Tag} in {@code TagManager}.
@@ -84,6 +148,7 @@ public class ControlTag implements Serializable {
    */
   public void untag(Tag tag, Image image) {
     image.removeTag(tag);
+    journal.tagRemoved(image, tag);
     imageControl.updateImage(image);
   }
 
@@ -95,11 +160,9 @@ public class ControlTag implements Serializable {
    * @param image rom which to remove {@code Tag} from.
    */
   public void untag(String tag, Image image) {
-    for (Tag existing : tagManager.getTags()) {
-      if (existing.getName().equals(tag)) {
-        untag(existing, image);
-        return;
-      }
+    Tag existing = tagManager.getTag(tag);
+    if (existing != null) {
+      untag(existing, image);
     }
   }
 
@@ -109,10 +172,15 @@ public class ControlTag implements Serializable {
    * @param tag to be removed {@code Image(s)}.
    */
   public void untagAll(Tag tag) {
-    for (Image image : tag.getTaggedImages()) {
+    List<Image> untagged = new ArrayList<>(tag.getTaggedImages());
+    for (Image image : untagged) {
       imageControl.updateImage(image);
     }
     tag.untagAllImages();
+    for (Image image : untagged) {
+      journal.tagRemoved(image, tag);
+    }
+    journal.untaggedAll(tag);
   }
 
   /**
@@ -121,10 +189,16 @@ public class ControlTag implements Serializable {
    * @param tag to be removed from the program.
    */
   public void deleteTag(Tag tag) {
-    for (Image image : tag.getTaggedImages()) {
+    List<Image> untagged = new ArrayList<>(tag.getTaggedImages());
+    for (Image image : untagged) {
       imageControl.updateImage(image);
     }
     tagManager.deleteTag(tag);
+    for (Image image : untagged) {
+      journal.tagRemoved(image, tag);
+    }
+    journal.tagDeleted(tag);
+    control.tagsChanged();
   }
 
   /**
@@ -137,6 +211,19 @@ public class ControlTag implements Serializable {
     return tag.getTaggedImages();
   }
 
+  /**
+   * Finds the {@code Image(s)} that match a query such as {@code @cat & (@2019 | @2020) & !@blurry
+   * & dir:/photos/trips}. The {@code Image(s)} are found as the stream is read, so the first can be
+   * shown before the rest are found.
+   *
+   * @param query text of the query.
+   * @return stream of the {@code Image(s)} that match.
+   * @throws QuerySyntaxException if the query is not written properly.
+   */
+  public Stream<Image> findImages(String query) throws QuerySyntaxException {
+    return TagQuery.parse(query).stream(control.getContainer());
+  }
+
   /**
    * Retrieves all {@code Tag} currently available.
    *
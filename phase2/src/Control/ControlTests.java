@@ -0,0 +1,620 @@
+package Control;
+
+import Model.*;
+import Model.Container;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ControlTests {
+
+    @Test
+    void testCatalogDeletesUnlistedShards() throws IOException {
+        File directory = Files.createTempDirectory("catalog").toFile();
+        Catalog catalog = new Catalog(directory);
+        Container before = new Container();
+        ImageManager kept = before.addImageManager(new ImageManager(new File("/kept")));
+        ImageManager dropped = before.addImageManager(new ImageManager(new File("/dropped")));
+        catalog.write(catalog.encode(before, Arrays.asList(kept, dropped), true, true, null));
+        assertEquals(3, directory.listFiles((dir, name) -> name.endsWith(".shard")).length);
+
+        Container after = new Container();
+        after.addImageManager(new ImageManager(new File("/kept")));
+        catalog.write(catalog.encode(after, Collections.emptyList(), false, true, null));
+        assertEquals(2, directory.listFiles((dir, name) -> name.endsWith(".shard")).length);
+        Container read = new Catalog(directory).read();
+        assertEquals(1, read.getImageManagers().size());
+        assertTrue(read.getImageManager(new File("/kept").toPath()) != null);
+        assertFalse(read.getImageManager(new File("/dropped").toPath()) != null);
+        catalog.close();
+    }
+
+    @Test
+    void testMappedCatalogKeepsImagesAndTags() throws Exception {
+        Path home = Files.createTempDirectory("home");
+        Path root = Files.createDirectory(home.resolve("images"));
+        Path catalog = home.resolve("catalog");
+        Files.createFile(root.resolve("a @x.jpg"));
+        Files.createFile(root.resolve("b.jpg"));
+        open(home, root).close();
+        System.setProperty("tagger.mappedCatalog", "true");
+        try {
+            Controller converted = new Controller(home.toFile());
+            converted.sync();
+            converted.close();
+            assertTrue(Files.exists(catalog.resolve("table")));
+            assertEquals(Collections.singletonList("tags.shard"), names(catalog, ".shard"));
+            assertEquals(1, names(catalog, ".ids").size());
+
+            Controller mapped = new Controller(home.toFile());
+            Image a = mapped.getImage(root.resolve("a @x.jpg"));
+            Image b = mapped.getImage(root.resolve("b.jpg"));
+            assertEquals(Collections.singletonList("x"), tagNames(a));
+            Tag x = mapped.getContainer().getTagManager().getTag("x");
+            assertEquals(Collections.singletonList(a), x.getTaggedImages());
+            int history = b.getHistorySize();
+            mapped.getTagControl().addTag("y", b);
+            mapped.setDirectory(root.toFile());
+            mapped.close();
+
+            Controller reopened = new Controller(home.toFile());
+            Image tagged = reopened.getImage(root.resolve("b @y.jpg"));
+            assertEquals(Collections.singletonList("y"), tagNames(tagged));
+            assertEquals(history + 1, tagged.getHistorySize());
+            assertEquals(Collections.singletonList(tagged),
+                    reopened.getContainer().getTagManager().getTag("y").getTaggedImages());
+            reopened.close();
+        } finally {
+            System.clearProperty("tagger.mappedCatalog");
+        }
+
+        Controller shards = new Controller(home.toFile());
+        shards.sync();
+        shards.close();
+        assertFalse(Files.exists(catalog.resolve("table")));
+        assertTrue(names(catalog, ".ids").isEmpty());
+        assertTrue(names(catalog, ".rows").isEmpty());
+        Controller restored = new Controller(home.toFile());
+        assertEquals(Collections.singletonList("x"),
+                tagNames(restored.getImage(root.resolve("a @x.jpg"))));
+        assertEquals(Collections.singletonList("y"),
+                tagNames(restored.getImage(root.resolve("b @y.jpg"))));
+        restored.close();
+    }
+
+    /** Gives the names of the files in a directory with an ending, in order. */
+    private static List<String> names(Path directory, String ending) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.endsWith(ending)).sorted().collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    void testRescanFollowsChangesMadeOutside() throws IOException {
+        Path root = Files.createTempDirectory("rescan");
+        Path child = Files.createDirectory(root.resolve("child"));
+        Files.createFile(root.resolve("kept.jpg"));
+        Files.createFile(root.resolve("deleted.jpg"));
+        Files.createFile(root.resolve("renamed @a.jpg"));
+        Files.createFile(child.resolve("gone.jpg"));
+        Container container = new Container();
+        ScanManifest manifest = new ScanManifest();
+        Read.rescan(root, container, manifest, image -> false);
+        ImageManager im = container.getImageManager(root);
+        Image renamed = im.getImage("renamed", "jpg");
+        assertEquals(3, im.getImages().size());
+        assertEquals(2, container.getImageManagers().size());
+
+        Files.delete(root.resolve("deleted.jpg"));
+        Files.move(root.resolve("renamed @a.jpg"), root.resolve("renamed @b.jpg"));
+        Files.delete(child.resolve("gone.jpg"));
+        Files.delete(child);
+        assertTrue(Read.rescan(root, container, manifest, image -> false).contains(im));
+        assertEquals(2, im.getImages().size());
+        assertTrue(im.getImage("deleted", "jpg") == null);
+        assertTrue(im.getImage("renamed", "jpg") == renamed);
+        assertEquals(root.resolve("renamed @b.jpg").toFile(), renamed.getImageFile());
+        assertEquals("b", renamed.getCurrentTags().get(0).getName());
+        assertEquals(1, container.getImageManagers().size());
+        assertTrue(container.getImageManager(child) == null);
+    }
+
+    @Test
+    void testRescanLeavesPendingRenamesAlone() throws IOException {
+        Path root = Files.createTempDirectory("rescan");
+        Files.createFile(root.resolve("moving.jpg"));
+        Container container = new Container();
+        ScanManifest manifest = new ScanManifest();
+        Read.rescan(root, container, manifest, image -> false);
+        ImageManager im = container.getImageManager(root);
+        Image moving = im.getImage("moving", "jpg");
+
+        Files.move(root.resolve("moving.jpg"), root.resolve("moving @a.jpg"));
+        Read.rescan(root, container, manifest, image -> image == moving);
+        assertEquals(root.resolve("moving.jpg").toFile(), moving.getImageFile());
+        assertTrue(moving.getCurrentTags().isEmpty());
+    }
+
+    @Test
+    void testRescanOfUnchangedTreeLeavesManifestAlone() throws IOException {
+        Path root = Files.createTempDirectory("rescan");
+        Path child = Files.createDirectory(root.resolve("child"));
+        Files.createFile(root.resolve("kept.jpg"));
+        Files.createFile(child.resolve("nested.jpg"));
+        FileTime old = FileTime.fromMillis(System.currentTimeMillis() - 60_000);
+        Files.setLastModifiedTime(root, old);
+        Files.setLastModifiedTime(child, old);
+        Container container = new Container();
+        ScanManifest manifest = new ScanManifest();
+        Read.rescan(root, container, manifest, image -> false);
+        assertTrue(manifest.takeChanged());
+
+        assertTrue(Read.rescan(root, container, manifest, image -> false).isEmpty());
+        assertFalse(manifest.takeChanged());
+        assertEquals(1, container.getImageManager(root).getImages().size());
+        assertEquals(1, container.getImageManager(child).getImages().size());
+
+        // A directory whose modification time did not change is not listed again
+        Files.createFile(root.resolve("unseen.jpg"));
+        Files.setLastModifiedTime(root, old);
+        Files.createFile(child.resolve("seen.jpg"));
+        Read.rescan(root, container, manifest, image -> false);
+        assertEquals(1, container.getImageManager(root).getImages().size());
+        assertEquals(2, container.getImageManager(child).getImages().size());
+    }
+
+    @Test
+    void testWatcherFollowsChangesMadeOutside() throws Exception {
+        Path home = Files.createTempDirectory("home");
+        Path root = Files.createDirectory(home.resolve("images"));
+        Path child = Files.createDirectory(root.resolve("child"));
+        Files.createFile(root.resolve("photo.jpg"));
+        Files.createFile(root.resolve("deleted.jpg"));
+        Files.createFile(child.resolve("gone.jpg"));
+        ExecutorService modelThread = Executors.newSingleThreadExecutor();
+        Controller control = new Controller(home.toFile());
+        try {
+            modelThread.submit(() -> control.importDirectory(root)).get();
+            ImageManager im = control.getImageManager(root);
+            Image photo = im.getImage("photo", "jpg");
+            control.watch(modelThread);
+            Thread.sleep(500);
+
+            Files.move(root.resolve("photo.jpg"), root.resolve("photo @a.jpg"));
+            Files.delete(root.resolve("deleted.jpg"));
+            Files.delete(child.resolve("gone.jpg"));
+            Files.delete(child);
+            await(modelThread, () -> im.getImages().size() == 1
+                    && control.getImageManager(child) == null);
+            assertTrue(im.getImage("photo", "jpg") == photo);
+            assertEquals(root.resolve("photo @a.jpg").toFile(), photo.getImageFile());
+            assertEquals("a", photo.getCurrentTags().get(0).getName());
+        } finally {
+            modelThread.submit(() -> {
+                control.close();
+                return null;
+            }).get();
+            modelThread.shutdown();
+        }
+    }
+
+    /**
+     * Waits until a condition checked on the model thread holds, failing after five seconds.
+     */
+    private static void await(ExecutorService modelThread, BooleanSupplier condition)
+            throws Exception {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (!modelThread.submit(condition::getAsBoolean).get()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            Thread.sleep(50);
+        }
+    }
+
+    /**
+     * Reads a directory of four images: a tagged cat and 2019, b tagged cat and blurry, c tagged
+     * dog and 2020 and d without tags.
+     */
+    private static Container queryContainer() throws IOException {
+        Path root = Files.createTempDirectory("query");
+        for (String name : new String[] {"a @cat @2019.jpg", "b @cat @blurry.jpg",
+                "c @dog @2020.jpg", "d.jpg"}) {
+            Files.createFile(root.resolve(name));
+        }
+        Container container = new Container();
+        Read.rescan(root, container, new ScanManifest(), image -> false);
+        return container;
+    }
+
+    /** Gives the names of the {@code Image(s)} a query finds, in order. */
+    private static List<String> find(Container container, String query)
+            throws QuerySyntaxException {
+        return TagQuery.parse(query).stream(container).map(Image::getName).sorted()
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void testTagQuerySyntaxErrors() {
+        for (String query : new String[] {"", "@", "@cat &", "@cat | | @dog", "(@cat",
+                "@cat)", "@cat @dog", "cat", "!", "dir:", "dir:\"/photos"}) {
+            assertThrows(QuerySyntaxException.class, () -> TagQuery.parse(query), query);
+        }
+    }
+
+    @Test
+    void testTagQueryPrecedence() throws Exception {
+        Container container = queryContainer();
+        assertEquals(Arrays.asList("a", "c"), find(container, "@cat & @2019 | @dog"));
+        assertEquals(Arrays.asList("a", "c"), find(container, "@dog | @2019 & @cat"));
+        assertEquals(Arrays.asList("a"), find(container, "@cat & (@2019 | @dog)"));
+        assertEquals(Arrays.asList("b", "c"), find(container, "!@2019 & @cat | @dog"));
+        assertEquals(Arrays.asList("a"), find(container, "!@dog & @2019"));
+    }
+
+    @Test
+    void testTagQueryNegationOnly() throws Exception {
+        Container container = queryContainer();
+        assertEquals(Arrays.asList("c", "d"), find(container, "!@cat"));
+        assertEquals(Arrays.asList("d"), find(container, "!@cat & !@dog"));
+        assertEquals(Arrays.asList("d"), find(container, "!(@cat | @dog)"));
+        assertEquals(Arrays.asList("a", "b"), find(container, "!!@cat"));
+        assertEquals(Arrays.asList("a", "b", "c", "d"), find(container, "!@nothing"));
+    }
+
+    @Test
+    void testTagQueryEmptyResults() throws Exception {
+        Container container = queryContainer();
+        assertTrue(find(container, "@cat & @dog").isEmpty());
+        assertTrue(find(container, "@nothing").isEmpty());
+        assertTrue(find(container, "@nothing | @nobody").isEmpty());
+        assertTrue(find(container, "!@cat & @cat").isEmpty());
+        assertTrue(find(container, "@cat & dir:/no/such/directory").isEmpty());
+        assertTrue(find(new Container(), "!@cat").isEmpty());
+    }
+
+    /** Creates a {@code Controller} saving in {@code home} and reads in {@code root}. */
+    private static Controller open(Path home, Path root) throws Exception {
+        Controller control = new Controller(home.toFile());
+        control.importDirectory(root);
+        control.sync();
+        return control;
+    }
+
+    @Test
+    void testRenameJournalDropsRevertedFailures() throws Exception {
+        Path home = Files.createTempDirectory("home");
+        Path root = Files.createDirectory(home.resolve("images"));
+        Files.createFile(root.resolve("a.jpg"));
+        Controller control = open(home, root);
+        Image image = control.getImage(root.resolve("a.jpg"));
+        Files.createFile(root.resolve("a @x.jpg"));
+        control.getTagControl().changeTags(
+                Collections.singletonList(image), Collections.singletonList("x"),
+                Collections.emptyList());
+        control.sync();
+        assertEquals(1, control.takeRenameFailures().size());
+        assertEquals(root.resolve("a.jpg").toFile(), image.getImageFile());
+        assertTrue(Files.exists(home.resolve("save.renames")));
+
+        control.sync();
+        assertFalse(Files.exists(home.resolve("save.renames")));
+        control.close();
+    }
+
+    @Test
+    void testRenameJournalResolvesBothWays() throws Exception {
+        Path home = Files.createTempDirectory("home");
+        Path root = Files.createDirectory(home.resolve("images"));
+        Path untagged = root.resolve("a.jpg");
+        Path tagged = root.resolve("a @x.jpg");
+        Files.createFile(untagged);
+        Controller control = open(home, root);
+        control.close();
+
+        // Renamed by a run that stopped before recording why: renamed back
+        Files.move(untagged, tagged);
+        new RenameJournal(home.resolve("save.renames").toFile())
+                .planned(Collections.singletonList(new Path[] {untagged, tagged}));
+        control = new Controller(home.toFile());
+        assertTrue(Files.exists(untagged));
+        assertFalse(Files.exists(tagged));
+        assertFalse(Files.exists(home.resolve("save.renames")));
+
+        // Recorded by a run that stopped before renaming: renamed forward
+        Image image = control.getImage(untagged);
+        control.getTagControl().changeTags(
+                Collections.singletonList(image), Collections.singletonList("x"),
+                Collections.emptyList());
+        control.sync();
+        control.close();
+        Files.move(tagged, untagged);
+        new RenameJournal(home.resolve("save.renames").toFile())
+                .planned(Collections.singletonList(new Path[] {untagged, tagged}));
+        control = new Controller(home.toFile());
+        assertTrue(Files.exists(tagged));
+        assertFalse(Files.exists(untagged));
+        assertEquals(tagged.toFile(), control.getImage(tagged).getImageFile());
+        control.close();
+    }
+
+    @Test
+    void testFailedMoveIsReverted() throws Exception {
+        Path home = Files.createTempDirectory("home");
+        Path root = Files.createDirectory(home.resolve("images"));
+        Path from = Files.createDirectory(root.resolve("from"));
+        Path to = Files.createDirectory(root.resolve("to"));
+        Files.createFile(from.resolve("a.jpg"));
+        Controller control = open(home, root);
+        Image image = control.getImage(from.resolve("a.jpg"));
+        // Not read in, so only the file system stops the move
+        Files.createFile(to.resolve("a.jpg"));
+
+        control.getImageControl().move(image, to);
+        control.sync();
+        assertEquals(1, control.takeRenameFailures().size());
+        assertEquals(from, image.getDirectory());
+        assertEquals(from.resolve("a.jpg").toFile(), image.getImageFile());
+        assertTrue(control.getImageManager(from).getImages().contains(image));
+        assertTrue(control.getImageManager(to).getImages().isEmpty());
+        assertTrue(Files.exists(from.resolve("a.jpg")));
+        control.close();
+    }
+
+    @Test
+    void testMoveMergesWithPendingRename() throws Exception {
+        Path home = Files.createTempDirectory("home");
+        Path root = Files.createDirectory(home.resolve("images"));
+        Path from = Files.createDirectory(root.resolve("from"));
+        Path to = Files.createDirectory(root.resolve("to"));
+        // More than are renamed one at a time, so the renames are done in parallel
+        int count = 20;
+        List<String> moved = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Files.createFile(from.resolve("a" + i + ".jpg"));
+            moved.add("a" + i + " @x.jpg");
+        }
+        Collections.sort(moved);
+        Controller control = open(home, root);
+        List<Image> images = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            images.add(control.getImage(from.resolve("a" + i + ".jpg")));
+        }
+        Image a = images.get(0);
+        control.getTagControl().changeTags(
+                images, Collections.singletonList("x"), Collections.emptyList());
+        control.save();
+        assertTrue(control.isPending(a));
+
+        assertEquals(count, control.getImageControl().moveAll(images, to));
+        assertEquals(to.resolve("a0 @x.jpg").toFile(), control.getImageFile(a));
+        control.sync();
+        assertTrue(control.takeRenameFailures().isEmpty());
+        assertEquals(moved, names(to));
+        assertTrue(names(from).isEmpty());
+        assertEquals(to.resolve("a1 @x.jpg").toFile(), images.get(1).getImageFile());
+        control.close();
+    }
+
+    /** Gives the names of the files in a directory, in order. */
+    private static List<String> names(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString()).sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /** Creates a {@code Saver} writing to a new directory. */
+    private static Saver saver(Path home, int flushChanges, long idleMillis) {
+        return new Saver(new Catalog(home.resolve("catalog").toFile()),
+                new Journal(home.resolve("save.journal").toFile()),
+                new RenameJournal(home.resolve("save.renames").toFile()),
+                new Renamer(1, 1, 1), flushChanges, idleMillis);
+    }
+
+    /** Gives the length of a file, or 0 if there is none. */
+    private static long length(Path file) {
+        return file.toFile().length();
+    }
+
+    @Test
+    void testSaverWritesAfterFlushChanges() throws Exception {
+        Path home = Files.createTempDirectory("home");
+        Path journal = home.resolve("save.journal");
+        Saver saver = saver(home, 3, TimeUnit.HOURS.toMillis(1));
+        saver.submit(new byte[] {1}, 1, null);
+        saver.submit(new byte[] {2}, 1, null);
+        Thread.sleep(200);
+        assertEquals(0, length(journal));
+        saver.submit(new byte[] {3}, 1, null);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (length(journal) < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(3, length(journal));
+        saver.close();
+    }
+
+    @Test
+    void testSaverWritesWhenIdle() throws Exception {
+        Path home = Files.createTempDirectory("home");
+        Path journal = home.resolve("save.journal");
+        Saver saver = saver(home, 1000, 300);
+        long submitted = System.currentTimeMillis();
+        saver.submit(new byte[] {1}, 1, null);
+        long deadline = submitted + 5000;
+        while (length(journal) == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, length(journal));
+        assertTrue(System.currentTimeMillis() - submitted >= 300);
+        saver.close();
+    }
+
+    @Test
+    void testSaverSyncWritesAtOnce() throws Exception {
+        Path home = Files.createTempDirectory("home");
+        Path journal = home.resolve("save.journal");
+        Saver saver = saver(home, 1000, TimeUnit.HOURS.toMillis(1));
+        saver.submit(new byte[] {1, 2}, 2, null);
+        Thread.sleep(100);
+        assertEquals(0, length(journal));
+        long start = System.currentTimeMillis();
+        saver.sync();
+        assertEquals(2, length(journal));
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        saver.submit(new byte[] {3}, 1, null);
+        saver.close();
+        assertEquals(3, length(journal));
+    }
+
+    @Test
+    void testRenameFailureIsReportedAndReverted() throws Exception {
+        Path home = Files.createTempDirectory("home");
+        Path root = Files.createDirectory(home.resolve("images"));
+        Files.createFile(root.resolve("a.jpg"));
+        Controller control = open(home, root);
+        Image image = control.getImage(root.resolve("a.jpg"));
+        Path blocker = Files.createFile(root.resolve("a @x.jpg"));
+        control.getTagControl().changeTags(
+                Collections.singletonList(image), Collections.singletonList("x"),
+                Collections.emptyList());
+        control.sync();
+        List<RenameFailure> failures = control.takeRenameFailures();
+        assertEquals(1, failures.size());
+        assertTrue(failures.get(0).getImage() == image);
+        assertEquals(root.resolve("a.jpg"), failures.get(0).getSource());
+        assertEquals(blocker, failures.get(0).getTarget());
+        assertEquals(root.resolve("a.jpg").toFile(), image.getImageFile());
+        assertEquals("x", image.getCurrentTags().get(0).getName());
+        assertTrue(control.takeRenameFailures().isEmpty());
+
+        // Renamed again the next time it changes
+        Files.delete(blocker);
+        control.getTagControl().changeTags(
+                Collections.singletonList(image), Collections.singletonList("y"),
+                Collections.emptyList());
+        control.sync();
+        assertTrue(control.takeRenameFailures().isEmpty());
+        assertEquals(Collections.singletonList("a @x @y.jpg"), names(root));
+        control.close();
+    }
+
+    @Test
+    void testJournalReplayAfterCrash() throws Exception {
+        Path home = Files.createTempDirectory("home");
+        Path root = Files.createDirectory(home.resolve("images"));
+        Files.createFile(root.resolve("a.jpg"));
+        Files.createFile(root.resolve("b @old.jpg"));
+        Controller control = open(home, root);
+        Image a = control.getImage(root.resolve("a.jpg"));
+        Image b = control.getImage(root.resolve("b @old.jpg"));
+        control.getTagControl().changeTags(
+                Arrays.asList(a, b), Collections.singletonList("new"),
+                Collections.singletonList("old"));
+        control.sync();
+        assertTrue(length(home.resolve("save.journal")) > 0);
+        // Stopped without closing, part way through writing a record
+        File journalFile = home.resolve("save.journal").toFile();
+        try (FileOutputStream journal = new FileOutputStream(journalFile, true)) {
+            journal.write(new byte[] {1});
+        }
+
+        Controller restarted = new Controller(home.toFile());
+        Image replayedA = restarted.getImage(root.resolve("a @new.jpg"));
+        Image replayedB = restarted.getImage(root.resolve("b @new.jpg"));
+        assertTrue(replayedA != null && replayedB != null);
+        assertEquals(Collections.singletonList("new"), tagNames(replayedA));
+        assertEquals(Collections.singletonList("new"), tagNames(replayedB));
+        assertEquals(2, replayedB.getHistorySize());
+        assertEquals(root.resolve("a @new.jpg").toFile(), replayedA.getImageFile());
+        restarted.close();
+        control.close();
+    }
+
+    @Test
+    void testJournalReplayKeepsHistoryTimes() throws Exception {
+        Path home = Files.createTempDirectory("home");
+        Path root = Files.createDirectory(home.resolve("images"));
+        Files.createFile(root.resolve("a.jpg"));
+        Files.createFile(root.resolve("b.jpg"));
+        Controller control = open(home, root);
+        Image a = control.getImage(root.resolve("a.jpg"));
+        Image b = control.getImage(root.resolve("b.jpg"));
+        control.getTagControl().addTag("x", a);
+        control.getTagControl().untagAll(control.getContainer().getTagManager().getTag("x"));
+        control.getImageControl().removeAllTags(b);
+        control.sync();
+        long aChanged = a.getLastChanged();
+        int aHistory = a.getHistorySize();
+        int bHistory = b.getHistorySize();
+        Thread.sleep(50);
+
+        Controller restarted = new Controller(home.toFile());
+        Image replayedA = restarted.getImage(root.resolve("a.jpg"));
+        Image replayedB = restarted.getImage(root.resolve("b.jpg"));
+        assertTrue(tagNames(replayedA).isEmpty());
+        assertEquals(aChanged, replayedA.getLastChanged());
+        assertEquals(aHistory, replayedA.getHistorySize());
+        assertEquals(bHistory, replayedB.getHistorySize());
+        restarted.close();
+        control.close();
+    }
+
+    /** Gives the names of the current {@code Tag(s)} of an {@code Image}. */
+    private static List<String> tagNames(Image image) {
+        return image.getCurrentTags().stream().map(Tag::getName).collect(Collectors.toList());
+    }
+
+    @Test
+    void testChangeTagsWritesOneHistoryEntryPerImage() throws Exception {
+        Path home = Files.createTempDirectory("home");
+        Path root = Files.createDirectory(home.resolve("images"));
+        Files.createFile(root.resolve("a @old.jpg"));
+        Files.createFile(root.resolve("b.jpg"));
+        Files.createFile(root.resolve("c @x @y.jpg"));
+        Controller control = open(home, root);
+        Image a = control.getImage(root.resolve("a @old.jpg"));
+        Image b = control.getImage(root.resolve("b.jpg"));
+        Image c = control.getImage(root.resolve("c @x @y.jpg"));
+        int historyA = a.getHistorySize();
+        int historyB = b.getHistorySize();
+        int historyC = c.getHistorySize();
+
+        assertEquals(2, control.getTagControl().changeTags(Arrays.asList(a, b, c),
+                Arrays.asList("x", "y"), Collections.singletonList("old")));
+        assertEquals(historyA + 1, a.getHistorySize());
+        assertEquals(historyB + 1, b.getHistorySize());
+        assertEquals(historyC, c.getHistorySize());
+        assertEquals(Arrays.asList("x", "y"), tagNames(a));
+        assertEquals(Arrays.asList("x", "y"), tagNames(b));
+        control.sync();
+        assertEquals(Arrays.asList("a @x @y.jpg", "b @x @y.jpg", "c @x @y.jpg"), names(root));
+
+        assertThrows(TagNamingException.class, () -> control.getTagControl().changeTags(
+                Arrays.asList(a, b), Arrays.asList("z", ""), Collections.emptyList()));
+        assertEquals(historyA + 1, a.getHistorySize());
+        assertFalse(control.getContainer().getTagManager().getTags().stream()
+                .anyMatch(tag -> tag.getName().equals("z")));
+        control.close();
+    }
+}
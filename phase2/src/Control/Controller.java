@@ -6,9 +6,17 @@ import Model.Image;
 import javafx.scene.control.ListView;
 
 import java.io.*;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -18,12 +26,78 @@ public class Controller implements Serializable {
   /** Provides access to the logger. */
   private static final Logger LOGGER = Logger.getLogger(Log.class.getName());
 
-  /** Path to the save.ser file. */
+  /** Number of journal records after which the changed shards are written. */
+  private static final int CHECKPOINT_INTERVAL = 1000;
+
+  /** Number of waiting changes after which {@code saver} writes them. */
+  private static final int FLUSH_CHANGES = 64;
+
+  /** Milliseconds without a save after which {@code saver} writes waiting changes. */
+  private static final long FLUSH_IDLE_MILLIS = 500;
+
+  /** Number of threads renaming files. */
+  private static final int RENAME_THREADS = 8;
+
+  /** Number of threads renaming the files of one directory, at most. */
+  private static final int RENAMES_PER_DIRECTORY = 4;
+
+  /** Number of renames at once on one device, at most. */
+  private static final int RENAMES_PER_DEVICE = 8;
+
+  /**
+   * System property which, when "true", keeps the table of the {@code Image(s)} of the {@code
+   * Catalog} in memory-mapped files, so it is mapped on open rather than read in full.
+   */
+  private static final String MAPPED_CATALOG = "tagger.mappedCatalog";
+
+  /** Path to the save.ser file, only read to move old saves into the {@code Catalog}. */
   private File savePath;
 
+  /** Shards the Model is stored in. */
+  private Catalog catalog;
+
+  /** Changes made since the {@code Catalog} was last written. */
+  private Journal journal;
+
+  /** Renames being done, so those cut short by a crash can be resolved. */
+  private RenameJournal renameJournal;
+
+  /** {@code ImageManager(s)} whose shards changed since the {@code Catalog} was last written. */
+  private Set<ImageManager> changedManagers = new HashSet<>();
+
+  /** Whether the {@code TagManager} shard changed since the {@code Catalog} was last written. */
+  private boolean tagsChanged;
+
+  /** Whether the list of directories changed since the {@code Catalog} was last written. */
+  private boolean directoriesChanged;
+
+  /** What the last scans of the file system found. */
+  private ScanManifest manifest;
+
+  /** Whether the {@code ScanManifest} changed since the {@code Catalog} was last written. */
+  private boolean manifestChanged;
+
+  /** Whether the next save should write the changed shards, e.g. after a directory was read in. */
+  private boolean snapshotRequested;
+
+  /** Writes saved changes to disk in the background. */
+  private Saver saver;
+
+  /** Renames and moves the files of {@code Image(s)} for {@code saver}. */
+  private Renamer renamer;
+
+  /** Keeps the Model up to date with the file system, if watching is turned on. */
+  private Watcher watcher;
+
+  /** Renames that failed and have not been taken by the View yet. */
+  private List<RenameFailure> renameFailures = new ArrayList<>();
+
   /** All {@code Image} that have been changed but not saved. */
   private ArrayList<Image> changedImages = new ArrayList<>();
 
+  /** The same {@code Image(s)} as {@code changedImages}, so each is only added once. */
+  private Set<Image> changedImageSet = Collections.newSetFromMap(new IdentityHashMap<>());
+
   /** {@code Container} stores all other information, acts as model. */
   private Container container;
 
@@ -34,21 +108,60 @@ public class Controller implements Serializable {
   private ControlTag tagControl;
 
   /**
-   * On construction; if a previously saved {@code Controller} exists, load it.
+   * On construction; if a previously saved {@code Catalog} exists, load it and replay any changes
+   * recorded in the journal since. A save.ser from an older version is read and moved into the
+   * {@code Catalog}.
    *
    * @throws ClassNotFoundException if a class in the serialized version is not present in the
    *     current version.
    * @throws IOException if there is a problem reading or writing the save.
    */
   public Controller() throws ClassNotFoundException, IOException {
-    savePath = new File("./save.ser").getAbsoluteFile();
-    if (savePath.exists()) {
+    this(new File("."));
+  }
+
+  /**
+   * Creates a {@code Controller} whose save is kept in a given directory.
+   *
+   * @param home directory holding the save.
+   * @throws ClassNotFoundException if a class in the serialized version is not present in the
+   *     current version.
+   * @throws IOException if there is a problem reading or writing the save.
+   */
+  protected Controller(File home) throws ClassNotFoundException, IOException {
+    savePath = new File(home, "save.ser").getAbsoluteFile();
+    catalog =
+        new Catalog(
+            new File(home, "catalog").getAbsoluteFile(), Boolean.getBoolean(MAPPED_CATALOG));
+    journal = new Journal(new File(home, "save.journal").getAbsoluteFile());
+    renameJournal = new RenameJournal(new File(home, "save.renames").getAbsoluteFile());
+    if (catalog.exists()) {
+      container = catalog.read();
+      manifest = catalog.readManifest();
+      if (catalog.needsRewrite()) {
+        allChanged();
+      }
+    } else if (savePath.exists()) {
       read();
+      manifest = new ScanManifest();
+      allChanged();
     } else {
       this.container = new Container();
+      manifest = new ScanManifest();
+      // The first save writes every shard, so the catalog is complete
+      allChanged();
     }
     imageControl = new ControlImage(this);
     tagControl = new ControlTag(this);
+    if (journal.replay(this) > 0) {
+      LOGGER.log(Level.CONFIG, "Replayed " + journal.size() + " changes from the journal.");
+    }
+    if (renameJournal.resolve(this) > 0) {
+      LOGGER.log(Level.CONFIG, "Resolved renames cut short by the last run.");
+    }
+    renamer = new Renamer(RENAME_THREADS, RENAMES_PER_DIRECTORY, RENAMES_PER_DEVICE);
+    saver =
+        new Saver(catalog, journal, renameJournal, renamer, FLUSH_CHANGES, FLUSH_IDLE_MILLIS);
   }
 
   /**
@@ -62,28 +175,323 @@ public class Controller implements Serializable {
   }
 
   /**
-   * Changes all FileNames of any {@code changedImages} and writes to serialized file.
+   * Hands the changes since the last save to {@code saver}: the renames of any {@code
+   * changedImages} and their journal records. Every {@code CHECKPOINT_INTERVAL} changes, or after a
+   * directory is read in, the shards that changed are handed over too. Returns without waiting for
+   * the disk; call {@code sync} to wait. Files that could not be renamed by an earlier save are
+   * noted first, see {@code takeRenameFailures}.
    *
-   * @throws IOException if there is a problem writing to the file.
+   * @throws IOException if writing an earlier save failed.
    */
   public void save() throws IOException {
+    renamesFailed();
     for (Image changedImage : changedImages) {
-      imageControl.changeFileName(changedImage);
+      Path source = changedImage.getImageFile().toPath();
+      imageControl.refreshImageFile(changedImage);
+      saver.rename(changedImage, source, changedImage.getImageFile().toPath());
+    }
+    changedImages.clear();
+    changedImageSet.clear();
+    Map<String, byte[]> shards = null;
+    if (snapshotRequested || journal.size() >= CHECKPOINT_INTERVAL) {
+      shards = checkpoint();
+    }
+    int records = journal.buffered();
+    IOException unrecorded = journal.takeFailure();
+    if (unrecorded != null) {
+      saver.failed(unrecorded);
+    }
+    long save = saver.submit(journal.drain(), records, shards);
+    if (shards != null) {
+      renameJournal.checkpointSubmitted(save);
+    }
+    IOException failure = saver.takeFailure();
+    if (failure != null) {
+      // The journal set aside is kept; write every shard so the failed ones are covered
+      allChanged();
+      throw failure;
+    }
+  }
+
+  /**
+   * Saves and waits until every save so far is on disk.
+   *
+   * @throws IOException if a save could not be written.
+   */
+  public void sync() throws IOException {
+    save();
+    saver.sync();
+    renamesFailed();
+  }
+
+  /**
+   * Returns the files that could not be renamed since this was last called, and forgets them. The
+   * {@code Image} of each still points at its file under the old name, which is renamed again the
+   * next time the {@code Image} changes.
+   *
+   * @return the renames that failed, in the order they were done.
+   */
+  public List<RenameFailure> takeRenameFailures() {
+    renamesFailed();
+    List<RenameFailure> failed = renameFailures;
+    renameFailures = new ArrayList<>();
+    return failed;
+  }
+
+  /**
+   * Sets what to do each time saved changes have been written to disk, e.g. refreshing a display of
+   * the files. Runs on the saving thread.
+   *
+   * @param onWrite called after each write.
+   */
+  public void setOnWrite(Runnable onWrite) {
+    saver.setOnWrite(onWrite);
+  }
+
+  /**
+   * Sets what to tell about files copied to another device while they are moved, e.g. for showing
+   * the progress of a large move. Runs on the threads moving the files.
+   *
+   * @param onMoveProgress told the bytes copied so far and the bytes to copy in all.
+   */
+  public void setOnMoveProgress(BiConsumer<Long, Long> onMoveProgress) {
+    renamer.setOnProgress(onMoveProgress);
+  }
+
+  /**
+   * Traverses a directory, adding its {@code Image(s)} and {@code Tag(s)} to the Model. Only the
+   * directories and files that changed since the last scan are read again. The next save writes
+   * the shards of the new or changed {@code ImageManager(s)}. The directory is registered as a root,
+   * to be watched when watching is turned on.
+   *
+   * @param path of the directory to traverse.
+   */
+  public void importDirectory(Path path) {
+    if (!container.getRoots().contains(path.toString())) {
+      container.addRoot(path);
+      directoriesChanged = true;
+      if (watcher != null) {
+        watcher.register(path);
+      }
+    }
+    rescan(path);
+  }
+
+  /**
+   * Traverses a directory already read in, bringing the Model up to date with what changed since
+   * the last scan. Files waiting to be renamed by {@code saver} are left alone, and {@code
+   * Image(s)} dropped because their files are gone are no longer renamed on the next save.
+   *
+   * @param path of the directory to traverse.
+   */
+  protected void rescan(Path path) {
+    List<ImageManager> knownManagers = new ArrayList<>(container.getImageManagers());
+    int knownTags = container.getTagManager().getTags().size();
+    Set<ImageManager> changed = Read.rescan(path, container, manifest, saver::isPending);
+    changedManagers.addAll(changed);
+    changedManagers.removeIf(im -> container.getImageManager(im.getDirectory()) != im);
+    forgetDroppedImages();
+    tagsChanged |= container.getTagManager().getTags().size() != knownTags;
+    directoriesChanged |= !container.getImageManagers().equals(knownManagers);
+    manifestChanged |= manifest.takeChanged();
+    snapshotRequested |= !changed.isEmpty() || manifestChanged;
+  }
+
+  /**
+   * Starts watching the directories read in, so files created, deleted or renamed outside the
+   * application update the Model without a rescan. Does nothing if already watching.
+   *
+   * @param modelThread runs updates on the thread that owns the Model, e.g. the JavaFX
+   *     application thread.
+   * @throws IOException if the file system cannot be watched.
+   */
+  public void watch(Executor modelThread) throws IOException {
+    if (watcher == null) {
+      watcher = new Watcher(this, modelThread);
+    }
+  }
+
+  /** Stops watching the directories read in. */
+  public void stopWatching() {
+    if (watcher != null) {
+      watcher.close();
+      watcher = null;
+    }
+  }
+
+  /**
+   * Checks whether the directories read in are being watched.
+   *
+   * @return true if watching, false otherwise.
+   */
+  public boolean isWatching() {
+    return watcher != null;
+  }
+
+  /**
+   * Saves and waits until everything is on disk, then stops saving. Should be called before the
+   * application exits.
+   *
+   * @throws IOException if the last changes could not be written.
+   */
+  public void close() throws IOException {
+    stopWatching();
+    try {
+      sync();
+    } finally {
+      saver.close();
+      catalog.close();
+    }
+  }
+
+  /**
+   * Encodes the shards that changed, so {@code saver} can write them. The journal is set aside
+   * until the shards are on disk, so a crash while writing them loses nothing.
+   *
+   * @return contents of each changed shard, by file name.
+   * @throws IOException if a shard cannot be encoded.
+   */
+  private Map<String, byte[]> checkpoint() throws IOException {
+    Map<String, byte[]> shards =
+        catalog.encode(
+            container,
+            changedManagers,
+            tagsChanged,
+            directoriesChanged,
+            manifestChanged ? manifest : null);
+    journal.checkpointed();
+    manifestChanged = false;
+    changedManagers.clear();
+    tagsChanged = false;
+    directoriesChanged = false;
+    snapshotRequested = false;
+    return shards;
+  }
+
+  /**
+   * Marks the shard of an {@code ImageManager} as changed.
+   *
+   * @param manager {@code ImageManager} that changed.
+   */
+  protected void managerChanged(ImageManager manager) {
+    if (manager != null) {
+      changedManagers.add(manager);
+    }
+  }
+
+  /**
+   * Marks the shard of an {@code ImageManager} whose {@code Image(s)} were added or removed without
+   * a journal record, so the next save writes it.
+   *
+   * @param manager {@code ImageManager} that changed.
+   */
+  protected void filesChanged(ImageManager manager) {
+    changedManagers.add(manager);
+    snapshotRequested = true;
+  }
+
+  /** Marks the {@code TagManager} shard as changed. */
+  protected void tagsChanged() {
+    tagsChanged = true;
+  }
+
+  /** Marks the list of directories as changed. */
+  protected void directoriesChanged() {
+    directoriesChanged = true;
+  }
+
+  /**
+   * Moves the file of an {@code Image} to the path given by its directory and {@code Tag(s)} on the
+   * next save.
+   *
+   * @param image {@code Image} whose file is moved.
+   * @param source current path of the file.
+   */
+  protected void fileMoved(Image image, Path source) {
+    saver.rename(image, source, image.getImageFile().toPath());
+  }
+
+  /**
+   * Points the {@code Image} of each file that {@code saver} could not rename back at the file,
+   * unless another rename of it is waiting, and marks its shard to be written again. An {@code
+   * Image} whose file could not be moved to another directory is moved back.
+   */
+  private void renamesFailed() {
+    for (RenameFailure failure : saver.takeRenameFailures()) {
+      Image image = failure.getImage();
+      if (!saver.isPending(image) && image.getImageFile().toPath().equals(failure.getTarget())) {
+        Path directory = failure.getSource().getParent();
+        if (!directory.equals(image.getDirectory())) {
+          Path movedTo = image.getDirectory();
+          imageControl.relocate(image, directory);
+          journal.imageMoved(image, movedTo);
+        }
+        image.setImageFile(failure.getSource().toFile());
+        if (image.getManager() != null) {
+          filesChanged(image.getManager());
+        }
+        renameJournal.reverted(failure);
+      }
+      renameFailures.add(failure);
+    }
+  }
+
+  /** Marks every shard as changed, so the next checkpoint writes the whole {@code Catalog}. */
+  private void allChanged() {
+    changedManagers.addAll(container.getImageManagers());
+    tagsChanged = true;
+    directoriesChanged = true;
+    manifestChanged = true;
+    snapshotRequested = true;
+  }
+
+  /**
+   * Returns the journal recording changes since the {@code Catalog} was last written.
+   *
+   * @return the {@code Journal}.
+   */
+  protected Journal getJournal() {
+    return journal;
+  }
+
+  /**
+   * Checks whether the file of an {@code Image} is waiting to be renamed by {@code saver}.
+   *
+   * @param image {@code Image} to check.
+   * @return true if the file has not been renamed yet, false otherwise.
+   */
+  protected boolean isPending(Image image) {
+    return saver.isPending(image);
+  }
+
+  /**
+   * Removes from {@code changedImages} the {@code Image(s)} no longer stored in their {@code
+   * ImageManager}, as their files are gone.
+   */
+  private void forgetDroppedImages() {
+    for (Image image : new ArrayList<>(changedImages)) {
+      ImageManager im = container.getImageManager(image.getDirectory());
+      if (im == null || im.getImageByFileName(image.getImageFile().getName()) != image) {
+        changedImages.remove(image);
+        changedImageSet.remove(image);
+      }
     }
-    write();
   }
 
   /**
-   * Retrieves any {@code Image} that may have changed.
+   * Adds an {@code Image} to {@code changedImages}, unless it is there already, so its file is
+   * renamed on the next save.
    *
-   * @return a list of {@code Image} that has been modified.
+   * @param image {@code Image} that has been modified.
    */
-  protected ArrayList<Image> getChangedImages() {
-    return changedImages;
+  protected void imageChanged(Image image) {
+    if (changedImageSet.add(image)) {
+      changedImages.add(image);
+    }
   }
 
   /**
-   * Reads from a serialized file found at {@code savePath}.
+   * Reads from a serialized file found at {@code savePath}, written by older versions.
    *
    * @throws ClassNotFoundException if a class is missing that is in serialized.
    * @throws IOException if the file cannot be found or read.
@@ -101,20 +509,13 @@ public class Controller implements Serializable {
   }
 
   /**
-   * Writes all classes that implement {@code Serialized} to the file at {@code savePath}.
+   * Finds the {@code ImageManager} of a directory.
    *
-   * @throws IOException if the file cannot be found or written.
+   * @param directory path of the directory.
+   * @return the {@code ImageManager}, or null if the directory has not been read in.
    */
-  private void write() throws IOException {
-    try (OutputStream file = new FileOutputStream(savePath);
-        OutputStream buffer = new BufferedOutputStream(file);
-        ObjectOutput output = new ObjectOutputStream(buffer)) {
-      output.writeObject(container);
-    } catch (IOException ex) {
-      LOGGER.log(Level.WARNING, ex.getMessage());
-      // pass on the exception for Interface or Terminal ot handle
-      throw (ex);
-    }
+  protected ImageManager getImageManager(Path directory) {
+    return container.getImageManager(directory);
   }
 
   /**
@@ -125,16 +526,18 @@ public class Controller implements Serializable {
    * @param imgName Name of {@code Image}.
    */
   public Image getImage(Path imgPath, String imgName) {
-    for (ImageManager im : container.getImageManagers()) {
-      if (im.getDirectory().equals(imgPath)) {
-        for (Image image : im.getImages()) {
-          if (image.getName().equals(imgName)) {
-            return image;
-          }
-        }
-      }
-    }
-    return null;
+    ImageManager im = container.getImageManager(imgPath);
+    return im == null ? null : im.getImage(imgName);
+  }
+
+  /**
+   * Returns the {@code Image} stored in a file.
+   *
+   * @param imageFile Absolute path of the file, named with or without its current {@code Tag(s)}.
+   * @return the {@code Image}, or null if it has not been read in.
+   */
+  public Image getImage(Path imageFile) {
+    return container.getImage(imageFile);
   }
 
   /**
@@ -144,6 +547,8 @@ public class Controller implements Serializable {
    */
   public void setDirectory(File folder) {
     container.setDirectory(folder);
+    directoriesChanged = true;
+    snapshotRequested = true;
   }
 
   /**
@@ -184,13 +589,32 @@ public class Controller implements Serializable {
   }
 
   /**
-   * Gets the {@code File} of {@code Image}.
+   * Gets the {@code File} of {@code Image}. If its file is waiting to be renamed, the path it is
+   * being renamed to is given, without waiting for the rename.
    *
    * @param image whose {@code File} we want.
    * @return {@code File}.
    */
   public File getImageFile(Image image) {
-    return image.getImageFile();
+    Path target = saver.pendingTarget(image);
+    return target == null ? image.getImageFile() : target.toFile();
+  }
+
+  /**
+   * Finds the file of {@code Image} as it is on disk now, e.g. to read it. If its file is waiting to
+   * be renamed, the first of its current and new paths that exists is given, without waiting for
+   * the rename.
+   *
+   * @param image whose file we want.
+   * @return the file on disk, or the one given by {@code getImageFile} if none of them exists.
+   */
+  public File findImageFile(Image image) {
+    for (Path path : saver.pendingPaths(image)) {
+      if (Files.exists(path)) {
+        return path.toFile();
+      }
+    }
+    return getImageFile(image);
   }
 
   /**
@@ -0,0 +1,164 @@
+package Control;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * {@code DirectoryScan} lists a single directory and forks a {@code DirectoryScan} for each of its
+ * subdirectories, so a {@code ForkJoinPool} can scan a tree on all cores. A directory whose
+ * modification time matches the {@code ScanManifest} is not listed again; only its subdirectories
+ * are scanned. In a directory that is listed, only the image files whose size or modification time
+ * differ from the {@code ScanManifest} are passed on to be read. Only the file system is touched
+ * here; {@code Read} turns the finished scan into the Model in the order the entries were listed.
+ */
+class DirectoryScan extends RecursiveAction {
+
+  /** Version of the serialized form. */
+  private static final long serialVersionUID = -4712096630861297573L;
+
+  /**
+   * Milliseconds within which a modification time is too recent to be kept, as a change made in
+   * the same tick of the file system's clock would not change it again.
+   */
+  private static final long RECENT = 2000;
+
+  /** Directory listed by this scan. */
+  private File directory;
+
+  /** What earlier scans found. Only read while scanning. */
+  private ScanManifest manifest;
+
+  /** What this scan found in the directory. */
+  private ScanManifest.DirectoryRecord record;
+
+  /** New or changed image files and subdirectory scans, in the order they were listed. */
+  private List<Object> entries = new ArrayList<>();
+
+  /** Whether the directory could be listed. */
+  private boolean listed;
+
+  /**
+   * Creates a new {@code DirectoryScan} of a directory.
+   *
+   * @param directory directory to list.
+   * @param manifest what earlier scans found.
+   */
+  DirectoryScan(File directory, ScanManifest manifest) {
+    this.directory = directory;
+    this.manifest = manifest;
+  }
+
+  /** Lists the directory if it changed, then scans its subdirectories in parallel. */
+  @Override
+  protected void compute() {
+    ScanManifest.DirectoryRecord previous = manifest.get(getPath());
+    // Read before listing, so a change made while listing is picked up by the next scan
+    long modified = directory.lastModified();
+    List<DirectoryScan> subdirectories = new ArrayList<>();
+    if (previous != null && modified != 0 && previous.getModified() == modified) {
+      record = previous;
+      listed = true;
+      for (String name : previous.getSubdirectories()) {
+        DirectoryScan subdirectory = new DirectoryScan(new File(directory, name), manifest);
+        subdirectories.add(subdirectory);
+        entries.add(subdirectory);
+      }
+    } else {
+      boolean recent = modified > System.currentTimeMillis() - RECENT;
+      record = new ScanManifest.DirectoryRecord(recent ? 0 : modified);
+      File[] allFiles = directory.listFiles();
+      listed = allFiles != null;
+      if (allFiles != null) {
+        for (File file : allFiles) {
+          list(file, previous, subdirectories);
+        }
+      }
+    }
+    invokeAll(subdirectories);
+  }
+
+  /**
+   * Adds a single listed file to this scan, using one stat for both its type and its size and
+   * modification time.
+   *
+   * @param file listed file.
+   * @param previous what the last scan found in the directory, or null.
+   * @param subdirectories scans of subdirectories to fork.
+   */
+  private void list(
+      File file, ScanManifest.DirectoryRecord previous, List<DirectoryScan> subdirectories) {
+    BasicFileAttributes attributes = null;
+    try {
+      attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+    } catch (IOException ex) {
+      // Treated as a file that is never unchanged, as File.isDirectory would
+    }
+    if (attributes != null && attributes.isDirectory()) {
+      DirectoryScan subdirectory = new DirectoryScan(file, manifest);
+      subdirectories.add(subdirectory);
+      entries.add(subdirectory);
+      record.addSubdirectory(file.getName());
+    } else if (Read.isImage(file.toPath())) {
+      long size = attributes == null ? -1 : attributes.size();
+      long fileModified = attributes == null ? -1 : attributes.lastModifiedTime().toMillis();
+      if (attributes == null
+          || previous == null
+          || !previous.isUnchanged(file.getName(), size, fileModified)) {
+        entries.add(file);
+      }
+      record.addFile(file.getName(), size, fileModified);
+    }
+  }
+
+  /**
+   * Returns the directory listed by this scan.
+   *
+   * @return the directory.
+   */
+  File getDirectory() {
+    return directory;
+  }
+
+  /**
+   * Returns the path the directory is known by in the Model and the {@code ScanManifest}.
+   *
+   * @return path of the directory.
+   */
+  String getPath() {
+    return directory.toPath().toString();
+  }
+
+  /**
+   * Checks whether the files the directory holds are known, because it was listed or is unchanged
+   * since it was last listed.
+   *
+   * @return true if they are known, false if it is missing or could not be read.
+   */
+  boolean isListed() {
+    return listed;
+  }
+
+  /**
+   * Returns what this scan found in the directory, to be kept in the {@code ScanManifest}.
+   *
+   * @return the record of the directory.
+   */
+  ScanManifest.DirectoryRecord getRecord() {
+    return record;
+  }
+
+  /**
+   * Returns what was found in the directory: each entry is either a new or changed image File or
+   * the {@code DirectoryScan} of a subdirectory, in the order they were listed.
+   *
+   * @return the entries.
+   */
+  List<Object> getEntries() {
+    return entries;
+  }
+}
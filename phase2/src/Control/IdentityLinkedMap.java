@@ -0,0 +1,98 @@
+package Control;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@code IdentityLinkedMap} is a map whose keys are the same when they are the same object, kept in
+ * the order they were first put. It is used for maps keyed by {@code Image}, since the hash code of
+ * an {@code Image} changes when it is moved.
+ *
+ * @param <K> type of the keys.
+ * @param <V> type of the values.
+ */
+final class IdentityLinkedMap<K, V> extends AbstractMap<K, V> {
+
+  /** Entry of each key. */
+  private final Map<K, Map.Entry<K, V>> entries = new IdentityHashMap<>();
+
+  /** Entries in the order their keys were first put. */
+  private final List<Map.Entry<K, V>> order = new ArrayList<>();
+
+  @Override
+  public V get(Object key) {
+    Map.Entry<K, V> entry = entries.get(key);
+    return entry == null ? null : entry.getValue();
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return entries.containsKey(key);
+  }
+
+  @Override
+  public V put(K key, V value) {
+    Map.Entry<K, V> entry = entries.get(key);
+    if (entry != null) {
+      return entry.setValue(value);
+    }
+    entry = new AbstractMap.SimpleEntry<>(key, value);
+    entries.put(key, entry);
+    order.add(entry);
+    return null;
+  }
+
+  @Override
+  public V remove(Object key) {
+    Map.Entry<K, V> entry = entries.remove(key);
+    if (entry == null) {
+      return null;
+    }
+    for (int i = 0; i < order.size(); i++) {
+      if (order.get(i) == entry) {
+        order.remove(i);
+        break;
+      }
+    }
+    return entry.getValue();
+  }
+
+  @Override
+  public int size() {
+    return entries.size();
+  }
+
+  @Override
+  public void clear() {
+    entries.clear();
+    order.clear();
+  }
+
+  /**
+   * Gives the entries in the order their keys were first put. Values may be set through them, but
+   * they cannot be removed.
+   *
+   * @return the entries.
+   */
+  @Override
+  public Set<Map.Entry<K, V>> entrySet() {
+    return new AbstractSet<Map.Entry<K, V>>() {
+      @Override
+      public Iterator<Map.Entry<K, V>> iterator() {
+        return Collections.unmodifiableList(order).iterator();
+      }
+
+      @Override
+      public int size() {
+        return order.size();
+      }
+    };
+  }
+}
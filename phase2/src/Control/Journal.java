@@ -0,0 +1,515 @@
+package Control;
+
+import Model.*;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@code Journal} is an append-only log of the changes made to the Model since the last snapshot.
+ * Each change is kept as a compact record naming the affected {@code Image} and {@code Tag}, so
+ * saving costs as much as the change rather than the whole library. Records are buffered in memory
+ * until {@code Saver} appends them and replayed on top of the snapshot at start up. A record that
+ * changes the {@code Tag(s)} of an {@code Image} holds the time the change was made, so the log of
+ * the {@code Image} reads the same after a replay.
+ */
+public class Journal {
+
+  /** Provides access to the logger. */
+  private static final Logger LOGGER = Logger.getLogger(Log.class.getName());
+
+  /** Record of a new {@code Tag} being created: tag name. */
+  private static final byte TAG_CREATED = 1;
+
+  /** Record of a {@code Tag} being added to an {@code Image}: time, directory, name, tag name. */
+  private static final byte TAG_ADDED = 2;
+
+  /**
+   * Record of a {@code Tag} being removed from an {@code Image}: time, directory, name, tag name.
+   */
+  private static final byte TAG_REMOVED = 3;
+
+  /** Record of all {@code Tag(s)} being removed from an {@code Image}: time, directory, name. */
+  private static final byte TAGS_CLEARED = 4;
+
+  /** Record of an {@code Image} being moved: old directory, name, new directory. */
+  private static final byte IMAGE_MOVED = 6;
+
+  /**
+   * Record of a {@code Tag} being removed from all of its {@code Image(s)}: tag name. Follows a
+   * {@code TAG_REMOVED} record for each of them.
+   */
+  private static final byte TAG_UNTAGGED_ALL = 7;
+
+  /**
+   * Record of a {@code Tag} being deleted: tag name. Follows a {@code TAG_REMOVED} record for each
+   * of its {@code Image(s)}.
+   */
+  private static final byte TAG_DELETED = 8;
+
+  /**
+   * Record of the {@code Tag(s)} of an {@code Image} being replaced: time, directory, name, number
+   * of {@code Tag(s)}, then each tag name.
+   */
+  private static final byte TAGS_SET = 9;
+
+  /** Journal file that records are appended to. */
+  private File journalPath;
+
+  /** Journal file set aside while a snapshot is being written. */
+  private File rotatedPath;
+
+  /** Records that have not yet been appended to the journal file. */
+  private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+  /** Writes records into {@code pending}. */
+  private DataOutputStream records = new DataOutputStream(pending);
+
+  /** Number of records written since the last snapshot. */
+  private int size;
+
+  /** Number of records in {@code pending}. */
+  private int buffered;
+
+  /** Failure to buffer a record, if it has not been taken yet. */
+  private IOException failure;
+
+  /**
+   * Creates a new {@code Journal} appending to the file at {@code journalPath}.
+   *
+   * @param journalPath journal file.
+   */
+  public Journal(File journalPath) {
+    this.journalPath = journalPath;
+    this.rotatedPath = new File(journalPath.getPath() + ".old");
+  }
+
+  /**
+   * Records that a new {@code Tag} has been created.
+   *
+   * @param tag the new {@code Tag}.
+   */
+  protected void tagCreated(Tag tag) {
+    write(TAG_CREATED, tag.getName());
+  }
+
+  /**
+   * Records that a {@code Tag} has been added to an {@code Image}.
+   *
+   * @param image tagged {@code Image}.
+   * @param tag added {@code Tag}.
+   */
+  protected void tagAdded(Image image, Tag tag) {
+    write(
+        TAG_ADDED,
+        image.getLastChanged(),
+        image.getDirectory().toString(),
+        image.getName(),
+        tag.getName());
+  }
+
+  /**
+   * Records that a {@code Tag} has been removed from an {@code Image}.
+   *
+   * @param image untagged {@code Image}.
+   * @param tag removed {@code Tag}.
+   */
+  protected void tagRemoved(Image image, Tag tag) {
+    write(
+        TAG_REMOVED,
+        image.getLastChanged(),
+        image.getDirectory().toString(),
+        image.getName(),
+        tag.getName());
+  }
+
+  /**
+   * Records that all {@code Tag(s)} have been removed from an {@code Image}.
+   *
+   * @param image untagged {@code Image}.
+   */
+  protected void tagsCleared(Image image) {
+    write(
+        TAGS_CLEARED, image.getLastChanged(), image.getDirectory().toString(), image.getName());
+  }
+
+  /**
+   * Records that the {@code Tag(s)} of an {@code Image} have been replaced by its current ones, e.g.
+   * when it is reset to an old version of itself. The {@code Tag(s)} themselves are recorded, so
+   * replaying the record over shards that already hold the change leaves them as they are.
+   *
+   * @param image changed {@code Image}.
+   */
+  protected void tagsSet(Image image) {
+    List<Tag> tags = image.getCurrentTags();
+    String[] fields = new String[tags.size() + 3];
+    fields[0] = image.getDirectory().toString();
+    fields[1] = image.getName();
+    fields[2] = String.valueOf(tags.size());
+    for (int i = 0; i < tags.size(); i++) {
+      fields[i + 3] = tags.get(i).getName();
+    }
+    write(TAGS_SET, image.getLastChanged(), fields);
+  }
+
+  /**
+   * Records that an {@code Image} has been moved to its current directory.
+   *
+   * @param image moved {@code Image}.
+   * @param oldDirectory directory the {@code Image} was moved from.
+   */
+  protected void imageMoved(Image image, Path oldDirectory) {
+    write(IMAGE_MOVED, oldDirectory.toString(), image.getName(), image.getDirectory().toString());
+  }
+
+  /**
+   * Records that a {@code Tag} has been removed from all of its {@code Image(s)}.
+   *
+   * @param tag removed {@code Tag}.
+   */
+  protected void untaggedAll(Tag tag) {
+    write(TAG_UNTAGGED_ALL, tag.getName());
+  }
+
+  /**
+   * Records that a {@code Tag} has been deleted.
+   *
+   * @param tag deleted {@code Tag}.
+   */
+  protected void tagDeleted(Tag tag) {
+    write(TAG_DELETED, tag.getName());
+  }
+
+  /**
+   * Buffers a single record.
+   *
+   * @param type kind of record.
+   * @param fields fields of the record.
+   */
+  private void write(byte type, String... fields) {
+    write(type, -1, fields);
+  }
+
+  /**
+   * Buffers a single record holding the time of the change.
+   *
+   * @param type kind of record.
+   * @param time time of the change, in epoch milliseconds, or -1 if the record holds none.
+   * @param fields fields of the record.
+   */
+  private void write(byte type, long time, String... fields) {
+    try {
+      records.writeByte(type);
+      if (time != -1) {
+        records.writeLong(time);
+      }
+      for (String field : fields) {
+        records.writeUTF(field);
+      }
+      size++;
+      buffered++;
+    } catch (IOException ex) {
+      LOGGER.log(Level.WARNING, "Could not record a change: " + ex.getMessage());
+      failure = ex;
+    }
+  }
+
+  /**
+   * Returns the failure to buffer a record since this was last called, if any, and forgets it.
+   * The change it recorded is then only saved by the next checkpoint.
+   *
+   * @return the failure, or null.
+   */
+  protected IOException takeFailure() {
+    IOException last = failure;
+    failure = null;
+    return last;
+  }
+
+  /**
+   * Takes all buffered records out of memory, so they can be appended by {@code Saver}.
+   *
+   * @return the buffered records.
+   */
+  protected byte[] drain() {
+    byte[] drained = pending.toByteArray();
+    pending.reset();
+    buffered = 0;
+    return drained;
+  }
+
+  /**
+   * Appends records to the journal file.
+   *
+   * @param drained records taken by {@code drain}.
+   * @throws IOException if the journal file cannot be written.
+   */
+  protected void append(byte[] drained) throws IOException {
+    if (drained.length > 0) {
+      try (OutputStream file = new FileOutputStream(journalPath, true)) {
+        file.write(drained);
+      }
+    }
+  }
+
+  /**
+   * Returns the number of records written since the last snapshot.
+   *
+   * @return number of records.
+   */
+  protected int size() {
+    return size;
+  }
+
+  /**
+   * Returns the number of records buffered in memory.
+   *
+   * @return number of records not yet taken by {@code drain}.
+   */
+  protected int buffered() {
+    return buffered;
+  }
+
+  /** Starts counting records again once a snapshot has been taken. */
+  protected void checkpointed() {
+    size = 0;
+  }
+
+  /**
+   * Sets the journal file aside so a snapshot can be written while new records go to a fresh file.
+   * If a previous snapshot failed, its records are kept by appending the journal to the ones
+   * already set aside.
+   *
+   * @throws IOException if the journal cannot be moved.
+   */
+  protected void rotate() throws IOException {
+    if (journalPath.exists()) {
+      if (rotatedPath.exists()) {
+        try (OutputStream file = new FileOutputStream(rotatedPath, true)) {
+          Files.copy(journalPath.toPath(), file);
+        }
+        Files.delete(journalPath.toPath());
+      } else {
+        Files.move(journalPath.toPath(), rotatedPath.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      }
+    }
+  }
+
+  /**
+   * Deletes the journal set aside by {@code rotate}, once its records are part of a snapshot.
+   *
+   * @throws IOException if the file cannot be deleted.
+   */
+  protected void discardRotated() throws IOException {
+    Files.deleteIfExists(rotatedPath.toPath());
+  }
+
+  /**
+   * Replays any records left on disk onto the Model of {@code control}. A record that was only
+   * partially written is ignored.
+   *
+   * @param control {@code Controller} whose Model the records are applied to.
+   * @return number of records replayed.
+   * @throws IOException if a journal file cannot be read.
+   */
+  protected int replay(Controller control) throws IOException {
+    int replayed = replay(rotatedPath, control) + replay(journalPath, control);
+    size = replayed;
+    return replayed;
+  }
+
+  /**
+   * Replays the records in a single journal file.
+   *
+   * @param path journal file.
+   * @param control {@code Controller} whose Model the records are applied to.
+   * @return number of records replayed.
+   * @throws IOException if the file cannot be read.
+   */
+  private int replay(File path, Controller control) throws IOException {
+    if (!path.exists()) {
+      return 0;
+    }
+    int count = 0;
+    try (InputStream file = new FileInputStream(path);
+        DataInputStream input = new DataInputStream(new BufferedInputStream(file))) {
+      while (true) {
+        int type = input.read();
+        if (type == -1) {
+          break;
+        }
+        apply((byte) type, input, control);
+        count++;
+      }
+    } catch (EOFException ex) {
+      LOGGER.log(Level.WARNING, "Ignored incomplete record at the end of " + path);
+    }
+    return count;
+  }
+
+  /**
+   * Reads the fields of a single record and applies it to the Model.
+   *
+   * @param type kind of record.
+   * @param input stream positioned after the record's type.
+   * @param control {@code Controller} whose Model the record is applied to.
+   * @throws IOException if the record cannot be read.
+   */
+  private void apply(byte type, DataInput input, Controller control) throws IOException {
+    TagManager tagManager = control.getContainer().getTagManager();
+    ControlImage imageControl = control.getImageControl();
+    Image image;
+    Tag tag;
+    long time;
+    List<Tag> tags;
+    switch (type) {
+      case TAG_CREATED:
+        findTag(control, input.readUTF(), true);
+        break;
+      case TAG_ADDED:
+        time = input.readLong();
+        image = findImage(control, input.readUTF(), input.readUTF());
+        tag = findTag(control, input.readUTF(), true);
+        if (image != null && tag != null) {
+          tags = new ArrayList<>(image.getCurrentTags());
+          tags.add(tag);
+          replayTags(control, image, tags, time);
+        }
+        break;
+      case TAG_REMOVED:
+        time = input.readLong();
+        image = findImage(control, input.readUTF(), input.readUTF());
+        tag = findTag(control, input.readUTF(), false);
+        if (image != null && tag != null) {
+          tags = new ArrayList<>(image.getCurrentTags());
+          tags.remove(tag);
+          replayTags(control, image, tags, time);
+        }
+        break;
+      case TAGS_CLEARED:
+        time = input.readLong();
+        image = findImage(control, input.readUTF(), input.readUTF());
+        if (image != null) {
+          replayTags(control, image, new ArrayList<>(), time);
+        }
+        break;
+      case TAGS_SET:
+        time = input.readLong();
+        image = findImage(control, input.readUTF(), input.readUTF());
+        int count = Integer.parseInt(input.readUTF());
+        tags = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+          tag = findTag(control, input.readUTF(), true);
+          if (tag != null) {
+            tags.add(tag);
+          }
+        }
+        if (image != null) {
+          replayTags(control, image, tags, time);
+        }
+        break;
+      case IMAGE_MOVED:
+        image = findImage(control, input.readUTF(), input.readUTF());
+        Path newDirectory = Paths.get(input.readUTF());
+        if (image != null) {
+          imageControl.relocate(image, newDirectory);
+        }
+        break;
+      case TAG_UNTAGGED_ALL:
+        tag = findTag(control, input.readUTF(), false);
+        if (tag != null) {
+          ArrayList<Image> untagged = new ArrayList<>(tag.getTaggedImages());
+          tag.untagAllImages();
+          for (Image each : untagged) {
+            replayed(control, each);
+          }
+        }
+        break;
+      case TAG_DELETED:
+        tag = findTag(control, input.readUTF(), false);
+        if (tag != null) {
+          ArrayList<Image> untagged = new ArrayList<>(tag.getTaggedImages());
+          tagManager.deleteTag(tag);
+          control.tagsChanged();
+          for (Image each : untagged) {
+            replayed(control, each);
+          }
+        }
+        break;
+      default:
+        throw new IOException("Unknown journal record " + type);
+    }
+  }
+
+  /**
+   * Finds the {@code Image} named by a record.
+   *
+   * @param control {@code Controller} to search.
+   * @param directory directory of the {@code Image}.
+   * @param name name of the {@code Image}.
+   * @return the {@code Image}, or null if it is not in the Model.
+   */
+  private Image findImage(Controller control, String directory, String name) {
+    return control.getImage(Paths.get(directory), name);
+  }
+
+  /**
+   * Gives an {@code Image} the {@code Tag(s)} a record left it with, logged at the time of the
+   * record. Nothing is changed, and no entry is logged, if it already has them.
+   *
+   * @param control {@code Controller} the record is applied to.
+   * @param image {@code Image} changed by the record.
+   * @param tags {@code Tag(s)} the record left it with, in order.
+   * @param time time of the record, in epoch milliseconds.
+   */
+  private void replayTags(Controller control, Image image, List<Tag> tags, long time) {
+    if (image.replayTags(tags, time)) {
+      replayed(control, image);
+    }
+  }
+
+  /**
+   * Brings the File of a replayed {@code Image} up to date and marks its shard as changed.
+   *
+   * @param control {@code Controller} the record was applied to.
+   * @param image {@code Image} changed by the record.
+   */
+  private void replayed(Controller control, Image image) {
+    control.getImageControl().refreshImageFile(image);
+    control.managerChanged(image.getManager());
+  }
+
+  /**
+   * Finds the {@code Tag} named by a record, creating it if asked to.
+   *
+   * @param control {@code Controller} whose {@code TagManager} is searched.
+   * @param name name of the {@code Tag}.
+   * @param create whether a missing {@code Tag} should be created.
+   * @return the {@code Tag}, or null if it does not exist and could not be created.
+   */
+  private Tag findTag(Controller control, String name, boolean create) {
+    TagManager tagManager = control.getContainer().getTagManager();
+    Tag found = tagManager.getTag(name);
+    if (found != null) {
+      return found;
+    }
+    if (create) {
+      try {
+        Tag tag = new Tag(name);
+        tagManager.addTag(tag);
+        control.tagsChanged();
+        return tag;
+      } catch (TagNamingException ex) {
+        LOGGER.log(Level.WARNING, ex.getMessage());
+      }
+    }
+    return null;
+  }
+}
@@ -6,13 +6,21 @@ import java.io.File;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
 
 /** Traverses a {@code File} structure and extracts relevant files to create Objects with. */
 public class Read {
 
   /**
    * Traverses a directory to determine whether a file is an image. If the file is an image it will
-   * be stored in {@code ImageManager} where an {@code Image} will be created.
+   * be stored in {@code ImageManager} where an {@code Image} will be created. Subdirectories are
+   * listed in parallel; the {@code ImageManager(s)} and {@code Tag(s)} are then added in the same
+   * order as a walk on a single thread would add them.
    *
    * @param path of the directory to traverse.
    * @param container in which to store new {@code ImageManagers}.
@@ -21,22 +29,141 @@ public class Read {
   public static boolean traverse(Path path, Container container) {
     File dir = path.toFile();
     if (dir.isDirectory()) {
-      ImageManager im = new ImageManager(dir);
-      container.addImageManager(im);
-      File[] allFiles = dir.listFiles();
-      if (allFiles != null) {
-        for (File file : allFiles) {
-          if (traverse(file.toPath(), container)) {
-            im.addImage(file, updateTagManager(file, container.getTagManager()));
-          }
-        }
-      }
+      rescan(path, container, new ScanManifest(), image -> false);
       return false;
     } else {
       return isImage(path);
     }
   }
 
+  /**
+   * Traverses a directory, bringing the Model up to date with it. Every directory is listed, but
+   * image files whose size and modification time are the same as in {@code manifest} are not read
+   * again. {@code ImageManager(s)} already in the {@code Container} are reused; an {@code Image}
+   * whose file is gone is dropped, and the {@code ImageManager} of a directory that is gone is
+   * dropped with its {@code Image(s)}. {@code manifest} is updated with what was found.
+   *
+   * @param path of the directory to traverse.
+   * @param container in which to store new {@code ImageManagers}.
+   * @param manifest what earlier scans found.
+   * @param pending whether the file of an {@code Image} is waiting to be renamed by the
+   *     application, so it is neither dropped nor pointed at another file.
+   * @return {@code ImageManager(s)} that were created or changed, not counting those dropped.
+   */
+  public static Set<ImageManager> rescan(
+      Path path, Container container, ScanManifest manifest, Predicate<Image> pending) {
+    DirectoryScan scan = new DirectoryScan(path.toFile(), manifest);
+    ForkJoinPool pool = new ForkJoinPool();
+    try {
+      pool.invoke(scan);
+    } finally {
+      pool.shutdown();
+    }
+    Set<ImageManager> changed = new LinkedHashSet<>();
+    Map<String, ScanManifest.DirectoryRecord> scanned = new HashMap<>();
+    if (scan.isListed()) {
+      addScan(scan, container, changed, scanned, pending);
+    }
+    String root = path.toString();
+    String prefix = root.endsWith(File.separator) ? root : root + File.separator;
+    for (ImageManager im : new ArrayList<>(container.getImageManagers())) {
+      String directory = im.getDirectory().toString();
+      if ((directory.equals(root) || directory.startsWith(prefix))
+          && !scanned.containsKey(directory)
+          && !im.getDirectory().toFile().isDirectory()) {
+        container.dropImageManager(im);
+        changed.remove(im);
+      }
+    }
+    manifest.update(scan.getPath(), scanned);
+    return changed;
+  }
+
+  /**
+   * Adds what was found in a scanned directory to its {@code ImageManager}, creating it if needed,
+   * followed by what was found in its subdirectories. {@code Image(s)} whose files were not found
+   * are then dropped.
+   *
+   * @param scan finished scan of a directory.
+   * @param container in which to store new {@code ImageManagers}.
+   * @param changed collects the {@code ImageManager(s)} that were created or changed.
+   * @param scanned collects what was found, by directory.
+   * @param pending whether the file of an {@code Image} is waiting to be renamed.
+   */
+  private static void addScan(
+      DirectoryScan scan,
+      Container container,
+      Set<ImageManager> changed,
+      Map<String, ScanManifest.DirectoryRecord> scanned,
+      Predicate<Image> pending) {
+    scanned.put(scan.getPath(), scan.getRecord());
+    ImageManager im = container.getImageManager(scan.getDirectory().toPath());
+    if (im == null) {
+      im = container.addImageManager(new ImageManager(scan.getDirectory()));
+      changed.add(im);
+    }
+    for (Object entry : scan.getEntries()) {
+      if (entry instanceof DirectoryScan) {
+        DirectoryScan subdirectory = (DirectoryScan) entry;
+        if (subdirectory.isListed()) {
+          addScan(subdirectory, container, changed, scanned, pending);
+        }
+      } else {
+        if (readImage((File) entry, im, container.getTagManager(), pending)) {
+          changed.add(im);
+        }
+      }
+    }
+    Set<String> found = scan.getRecord().getFileNames();
+    for (Image image : new ArrayList<>(im.getImages())) {
+      File file = image.getImageFile();
+      if (!found.contains(file.getName()) && !pending.test(image) && !file.exists()) {
+        im.dropImage(image);
+        changed.add(im);
+      }
+    }
+  }
+
+  /**
+   * Brings an {@code ImageManager} up to date with an image file found in its directory. A new
+   * file is added as an {@code Image}, with the {@code Tag(s)} in its name. A file of an {@code
+   * Image} whose own file is gone, e.g. because it was renamed outside the application, becomes the
+   * file of that {@code Image}, which takes the {@code Tag(s)} in the new name.
+   *
+   * @param file image file.
+   * @param im {@code ImageManager} of the file's directory.
+   * @param tagManager to be updated with the {@code Tag(s)} in the name.
+   * @param pending whether the file of an {@code Image} is waiting to be renamed.
+   * @return true if an {@code Image} was added or changed, false otherwise.
+   */
+  static boolean readImage(
+      File file, ImageManager im, TagManager tagManager, Predicate<Image> pending) {
+    ArrayList<Tag> tags = updateTagManager(file, tagManager);
+    if (im.addImage(file, tags)) {
+      return true;
+    }
+    Image image = im.getImageByFileName(file.getName());
+    if (image == null
+        || image.getImageFile().getName().equals(file.getName())
+        || pending.test(image)
+        || image.getImageFile().exists()) {
+      return false;
+    }
+    image.setTags(tags);
+    image.setImageFile(file);
+    return true;
+  }
+
+  /**
+   * Gives the name of the {@code Image} stored in a file, without {@code Tag(s)} or extension.
+   *
+   * @param fileName name of the file.
+   * @return name of the {@code Image}.
+   */
+  static String imageName(String fileName) {
+    return fileName.split("\\.")[0].split("\\s@")[0];
+  }
+
   /**
    * Checks whether {@code Path} ends with a particular extension that would signify it's an image.
    *
@@ -44,7 +171,7 @@ public class Read {
    * @return true iff this {@code Path} ends in one of the determined image extensions, false
    *     otherwise.
    */
-  private static boolean isImage(Path name) {
+  static boolean isImage(Path name) {
     return name.toString().matches("^.*(\\.gif|\\.jpg|\\.tiff|\\.jpeg|\\.png)+$");
   }
 
@@ -62,14 +189,7 @@ public class Read {
     if (nameAndTag.length > 1) {
       for (String tagName : Arrays.copyOfRange(nameAndTag, 1, nameAndTag.length)) {
         try {
-          Tag newTag = new Tag(tagName);
-          ArrayList<Tag> managerTags = tagManager.getTags();
-          if (managerTags.contains(newTag)) {
-            newTag = managerTags.get(managerTags.indexOf(newTag));
-          } else {
-            tagManager.addTag(newTag);
-          }
-          tagsFound.add(newTag);
+          tagsFound.add(tagManager.resolveTag(tagName));
         } catch (TagNamingException exception) {
           // Do not take in illegal tags
         }
@@ -0,0 +1,83 @@
+package Control;
+
+import Model.Image;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/** {@code RenameFailure} records a file of an {@code Image} that could not be renamed. */
+public class RenameFailure {
+
+  /** {@code Image} whose file could not be renamed. */
+  private Image image;
+
+  /** Path of the file, which it still has. */
+  private Path source;
+
+  /** Path the file was to be renamed to. */
+  private Path target;
+
+  /** Why the file could not be renamed. */
+  private IOException cause;
+
+  /**
+   * Creates a new {@code RenameFailure}.
+   *
+   * @param image {@code Image} whose file could not be renamed.
+   * @param source path of the file.
+   * @param target path the file was to be renamed to.
+   * @param cause why the file could not be renamed.
+   */
+  public RenameFailure(Image image, Path source, Path target, IOException cause) {
+    this.image = image;
+    this.source = source;
+    this.target = target;
+    this.cause = cause;
+  }
+
+  /**
+   * Retrieves the {@code Image} whose file could not be renamed.
+   *
+   * @return the {@code Image}.
+   */
+  public Image getImage() {
+    return image;
+  }
+
+  /**
+   * Retrieves the path of the file, which it still has.
+   *
+   * @return path of the file.
+   */
+  public Path getSource() {
+    return source;
+  }
+
+  /**
+   * Retrieves the path the file was to be renamed to.
+   *
+   * @return the new path.
+   */
+  public Path getTarget() {
+    return target;
+  }
+
+  /**
+   * Retrieves why the file could not be renamed.
+   *
+   * @return the failure.
+   */
+  public IOException getCause() {
+    return cause;
+  }
+
+  /**
+   * Describes the failure, e.g. for showing to the user.
+   *
+   * @return the file and why it could not be renamed.
+   */
+  @Override
+  public String toString() {
+    return "Could not rename " + source + ": " + cause.getMessage();
+  }
+}
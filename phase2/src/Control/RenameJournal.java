@@ -0,0 +1,259 @@
+package Control;
+
+import Model.Image;
+import Model.Log;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@code RenameJournal} records the renames about to be done, before any file is renamed, so that a
+ * crash part way through leaves a record of which files may have been renamed. Once the changes
+ * naming the files are in the {@code Journal} or {@code Catalog}, the records are settled and
+ * dropped. At start up, the records left behind are resolved: each file is renamed forward or back
+ * to the name the Model gives it, or the Model is pointed at the file if it cannot be.
+ *
+ * <p>Renames that failed are kept, as the {@code Journal} may still name the file after its new
+ * {@code Tag(s)}. Once the {@code Image} is pointed back at its file and a checkpoint saying so is
+ * written, the record is dropped; records of renames that are not reverted are kept until the next
+ * start up.
+ */
+public class RenameJournal {
+
+  /** Provides access to the logger. */
+  private static final Logger LOGGER = Logger.getLogger(Log.class.getName());
+
+  /** File the planned renames are recorded in: current path and new path of each file. */
+  private File journalPath;
+
+  /** Renames kept when the others are settled: those that failed or could not be resolved. */
+  private List<Kept> kept = new ArrayList<>();
+
+  /**
+   * Creates a new {@code RenameJournal} recording to the file at {@code journalPath}.
+   *
+   * @param journalPath file the planned renames are recorded in.
+   */
+  public RenameJournal(File journalPath) {
+    this.journalPath = journalPath;
+  }
+
+  /**
+   * Records renames about to be done and waits until the records are on disk. A file whose path
+   * does not change is left out.
+   *
+   * @param renames current and new path of each file.
+   * @throws IOException if the records cannot be written.
+   */
+  protected synchronized void planned(Collection<Path[]> renames) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream records = new DataOutputStream(bytes);
+    for (Path[] rename : renames) {
+      if (!rename[0].equals(rename[1])) {
+        records.writeUTF(rename[0].toString());
+        records.writeUTF(rename[1].toString());
+      }
+    }
+    if (bytes.size() > 0) {
+      try (FileOutputStream file = new FileOutputStream(journalPath, true)) {
+        file.write(bytes.toByteArray());
+        file.getFD().sync();
+      }
+    }
+  }
+
+  /**
+   * Keeps the records of renames that failed when the others are settled.
+   *
+   * @param failures renames that failed.
+   */
+  protected synchronized void failed(List<RenameFailure> failures) {
+    for (RenameFailure failure : failures) {
+      kept.add(new Kept(failure.getSource(), failure.getTarget()));
+    }
+  }
+
+  /**
+   * Notes that the {@code Image} of a rename that failed was pointed back at its file, so the record
+   * can be dropped once a checkpoint saying so is written.
+   *
+   * @param failure the rename that failed.
+   */
+  protected synchronized void reverted(RenameFailure failure) {
+    for (Kept record : kept) {
+      if (!record.reverted
+          && record.source.equals(failure.getSource())
+          && record.target.equals(failure.getTarget())) {
+        record.reverted = true;
+        return;
+      }
+    }
+  }
+
+  /**
+   * Notes that a save with a checkpoint was handed over, which covers every rename reverted so far
+   * that is not covered by an earlier one.
+   *
+   * @param save number of the save.
+   */
+  protected synchronized void checkpointSubmitted(long save) {
+    for (Kept record : kept) {
+      if (record.reverted && record.checkpoint == 0) {
+        record.checkpoint = save;
+      }
+    }
+  }
+
+  /**
+   * Drops the records of reverted renames covered by a checkpoint that is now written. The file is
+   * written again when the other records are settled.
+   *
+   * @param save number of the last save whose checkpoint is written.
+   */
+  protected synchronized void checkpointWritten(long save) {
+    kept.removeIf(record -> record.checkpoint != 0 && record.checkpoint <= save);
+  }
+
+  /**
+   * Drops the records of renames whose changes are now in the {@code Journal} or {@code Catalog},
+   * keeping those that failed.
+   *
+   * @throws IOException if the file cannot be written.
+   */
+  protected synchronized void settled() throws IOException {
+    if (kept.isEmpty()) {
+      Files.deleteIfExists(journalPath.toPath());
+      return;
+    }
+    File written = new File(journalPath.getPath() + ".new");
+    try (FileOutputStream file = new FileOutputStream(written);
+        DataOutputStream records = new DataOutputStream(new BufferedOutputStream(file))) {
+      for (Kept record : kept) {
+        records.writeUTF(record.source.toString());
+        records.writeUTF(record.target.toString());
+      }
+      records.flush();
+      file.getFD().sync();
+    }
+    Files.move(written.toPath(), journalPath.toPath(), StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Makes the files named in records left behind agree with the Model of {@code control}, once the
+   * {@code Catalog} is read and the {@code Journal} replayed. Each {@code Image} whose file is
+   * missing gets back the one it has under another name from its records. If that file cannot be
+   * renamed, the {@code Image} is pointed at it instead, and a record is kept until the {@code
+   * Catalog} says so too. A record that was only partially written is ignored.
+   *
+   * @param control {@code Controller} whose Model the files should agree with.
+   * @return number of files renamed or {@code Image(s)} pointed at another file.
+   * @throws IOException if the file cannot be read or written.
+   */
+  protected synchronized int resolve(Controller control) throws IOException {
+    if (!journalPath.exists()) {
+      return 0;
+    }
+    Map<Image, Set<Path>> paths = new LinkedHashMap<>();
+    try (InputStream file = new FileInputStream(journalPath);
+        DataInputStream input = new DataInputStream(new BufferedInputStream(file))) {
+      while (input.available() > 0) {
+        Path source = Paths.get(input.readUTF());
+        Path target = Paths.get(input.readUTF());
+        Image image = control.getImage(source);
+        if (image == null) {
+          // Moved to another directory
+          image = control.getImage(target);
+        }
+        if (image != null) {
+          Set<Path> named = paths.computeIfAbsent(image, i -> new LinkedHashSet<>());
+          named.add(source);
+          named.add(target);
+        }
+      }
+    } catch (EOFException ex) {
+      LOGGER.log(Level.WARNING, "Ignored incomplete record at the end of " + journalPath);
+    }
+    int resolved = 0;
+    for (Map.Entry<Image, Set<Path>> entry : paths.entrySet()) {
+      if (resolve(control, entry.getKey(), entry.getValue())) {
+        resolved++;
+      }
+    }
+    settled();
+    return resolved;
+  }
+
+  /**
+   * Makes the file of one {@code Image} agree with the Model.
+   *
+   * @param control {@code Controller} whose Model the file should agree with.
+   * @param image the {@code Image}.
+   * @param named every path its file had in the records, in order.
+   * @return true if the file was renamed or the {@code Image} pointed at another file.
+   */
+  private boolean resolve(Controller control, Image image, Set<Path> named) {
+    Path expected = image.getImageFile().toPath();
+    if (Files.exists(expected)) {
+      return false;
+    }
+    List<Path> candidates = new ArrayList<>(named);
+    for (int i = candidates.size() - 1; i >= 0; i--) {
+      Path found = candidates.get(i);
+      if (!found.equals(expected) && Files.exists(found)) {
+        try {
+          Files.move(found, expected);
+          LOGGER.log(Level.CONFIG, "Renamed " + found + " to match the catalog: " + expected);
+        } catch (IOException ex) {
+          LOGGER.log(Level.WARNING, "Could not rename " + found + ": " + ex.getMessage());
+          image.setImageFile(found.toFile());
+          control.filesChanged(image.getManager());
+          Kept record = new Kept(found, expected);
+          record.reverted = true;
+          kept.add(record);
+        }
+        return true;
+      }
+    }
+    LOGGER.log(Level.WARNING, "Could not find the file of " + image.getName());
+    return false;
+  }
+
+  /** Record of a rename kept when the others are settled. */
+  private static class Kept {
+
+    /** Path the file had before the rename. */
+    private final Path source;
+
+    /** Path the file was to be renamed to. */
+    private final Path target;
+
+    /** Whether the {@code Image} was pointed back at {@code source}. */
+    private boolean reverted;
+
+    /** Number of the save whose checkpoint covers the revert, or 0 if none does yet. */
+    private long checkpoint;
+
+    /**
+     * Creates a new {@code Kept} record.
+     *
+     * @param source path the file had before the rename.
+     * @param target path the file was to be renamed to.
+     */
+    private Kept(Path source, Path target) {
+      this.source = source;
+      this.target = target;
+    }
+  }
+}
@@ -0,0 +1,370 @@
+package Control;
+
+import Model.Image;
+import Model.Log;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@code Renamer} renames the files of {@code Image(s)} on several threads, within their directory
+ * or into another one. No two {@code Image(s)} of a directory share a name, so the renames of a
+ * batch do not depend on each other; a file moved into a directory before another with the same
+ * name was moved out fails like any other rename. The renames from each directory are done by at
+ * most {@code perDirectory} threads, and those on each device by at most {@code perDevice}, so a
+ * slow disk or network mount is not flooded. A rename that fails is reported rather than dropped.
+ *
+ * <p>A file moved to another device is copied with {@code FileChannel.transferTo}, so the operating
+ * system can copy it without passing it through the heap. The source is only deleted once the copy
+ * is on disk and has the same size; a copy that fails is deleted. The bytes copied are reported as
+ * they go, so large moves can show their progress.
+ */
+public class Renamer {
+
+  /** Provides access to the logger. */
+  private static final Logger LOGGER = Logger.getLogger(Log.class.getName());
+
+  /** Number of renames below which a batch is renamed on the calling thread. */
+  private static final int INLINE_RENAMES = 16;
+
+  /** Number of renames of a directory given to each thread, at least. */
+  private static final int RENAMES_PER_THREAD = 32;
+
+  /** Number of bytes copied between devices at a time, between reports of progress. */
+  private static final long TRANSFER_BYTES = 8 << 20;
+
+  /** Threads doing the renames. */
+  private ExecutorService threads;
+
+  /** Number of threads renaming the files of one directory, at most. */
+  private int perDirectory;
+
+  /** Number of renames at once on one device, at most. */
+  private int perDevice;
+
+  /** Renames allowed at once on each device, by file store or, if unknown, directory. */
+  private Map<Object, Semaphore> devices = new ConcurrentHashMap<>();
+
+  /** Told the bytes copied between devices so far and in all, as they are copied; or null. */
+  private volatile BiConsumer<Long, Long> onProgress;
+
+  /**
+   * Creates a new {@code Renamer}.
+   *
+   * @param threadCount number of threads doing the renames.
+   * @param perDirectory number of threads renaming the files of one directory, at most.
+   * @param perDevice number of renames at once on one device, at most.
+   */
+  public Renamer(int threadCount, int perDirectory, int perDevice) {
+    this.perDirectory = perDirectory;
+    this.perDevice = perDevice;
+    AtomicInteger count = new AtomicInteger();
+    threads =
+        Executors.newFixedThreadPool(
+            threadCount,
+            task -> {
+              Thread thread = new Thread(task, "renamer-" + count.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  /**
+   * Renames files and waits until every rename is done. A file whose path does not change is left
+   * alone.
+   *
+   * @param renames current and new path of the file of each {@code Image}.
+   * @return the renames that failed, in the order given.
+   */
+  public List<RenameFailure> renameAll(Map<Image, Path[]> renames) {
+    Map<Path, List<Map.Entry<Image, Path[]>>> directories = new LinkedHashMap<>();
+    Batch batch = new Batch();
+    int count = 0;
+    for (Map.Entry<Image, Path[]> rename : renames.entrySet()) {
+      Path[] paths = rename.getValue();
+      if (!paths[0].equals(paths[1])) {
+        directories.computeIfAbsent(paths[0].getParent(), d -> new ArrayList<>()).add(rename);
+        batch.count(paths[0], paths[1]);
+        count++;
+      }
+    }
+    if (count < INLINE_RENAMES) {
+      List<RenameFailure> failures = new ArrayList<>();
+      for (List<Map.Entry<Image, Path[]>> directory : directories.values()) {
+        RenameFailure[] failed = new RenameFailure[directory.size()];
+        renameEach(directory, new AtomicInteger(), failed, null, batch);
+        collect(failed, failures);
+      }
+      return failures;
+    }
+    return renameInParallel(directories, batch);
+  }
+
+  /**
+   * Sets what to tell about files copied between devices as they are copied, e.g. for showing the
+   * progress of a large move. Called on the renaming threads.
+   *
+   * @param onProgress told the bytes copied so far and the bytes to copy in all, or null.
+   */
+  public void setOnProgress(BiConsumer<Long, Long> onProgress) {
+    this.onProgress = onProgress;
+  }
+
+  /** Stops the threads once the renames handed over are done. */
+  public void close() {
+    threads.shutdown();
+  }
+
+  /**
+   * Renames the files of each directory on {@code threads} and waits until every rename is done.
+   *
+   * @param directories renames, by directory.
+   * @param batch state shared by the renames.
+   * @return the renames that failed, by directory and in the order given.
+   */
+  private List<RenameFailure> renameInParallel(
+      Map<Path, List<Map.Entry<Image, Path[]>>> directories, Batch batch) {
+    List<RenameFailure[]> failedByDirectory = new ArrayList<>();
+    List<Callable<Void>> tasks = new ArrayList<>();
+    for (Map.Entry<Path, List<Map.Entry<Image, Path[]>>> directory : directories.entrySet()) {
+      List<Map.Entry<Image, Path[]>> directoryRenames = directory.getValue();
+      RenameFailure[] failed = new RenameFailure[directoryRenames.size()];
+      failedByDirectory.add(failed);
+      Semaphore device = devices.computeIfAbsent(
+          batch.store(directory.getKey()), s -> new Semaphore(perDevice));
+      AtomicInteger next = new AtomicInteger();
+      int workers =
+          Math.min(
+              perDirectory,
+              (directoryRenames.size() + RENAMES_PER_THREAD - 1) / RENAMES_PER_THREAD);
+      for (int i = 0; i < workers; i++) {
+        tasks.add(
+            () -> {
+              renameEach(directoryRenames, next, failed, device, batch);
+              return null;
+            });
+      }
+    }
+    try {
+      for (Future<Void> task : threads.invokeAll(tasks)) {
+        task.get();
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException ex) {
+      LOGGER.log(Level.WARNING, "Renaming stopped: " + ex.getCause());
+    }
+    List<RenameFailure> failures = new ArrayList<>();
+    for (RenameFailure[] failed : failedByDirectory) {
+      collect(failed, failures);
+    }
+    return failures;
+  }
+
+  /**
+   * Renames the files of a directory not yet taken by another thread.
+   *
+   * @param renames renames of the directory.
+   * @param next position in {@code renames} of the next rename to take.
+   * @param failed where to record each rename that fails, by position in {@code renames}.
+   * @param device renames allowed at once on the device, or null for no limit.
+   * @param batch state shared by the renames.
+   */
+  private void renameEach(
+      List<Map.Entry<Image, Path[]>> renames,
+      AtomicInteger next,
+      RenameFailure[] failed,
+      Semaphore device,
+      Batch batch) {
+    for (int i = next.getAndIncrement(); i < renames.size(); i = next.getAndIncrement()) {
+      Path[] paths = renames.get(i).getValue();
+      if (device != null) {
+        device.acquireUninterruptibly();
+      }
+      try {
+        move(paths[0], paths[1], batch);
+      } catch (IOException ex) {
+        LOGGER.log(Level.WARNING, "Could not rename " + paths[0] + ": " + ex.getMessage());
+        failed[i] = new RenameFailure(renames.get(i).getKey(), paths[0], paths[1], ex);
+      } finally {
+        if (device != null) {
+          device.release();
+        }
+      }
+    }
+  }
+
+  /**
+   * Moves a file, copying it if the new path is on another device.
+   *
+   * @param source current path of the file.
+   * @param target new path of the file.
+   * @param batch state shared by the renames of its batch.
+   * @throws IOException if the file cannot be moved; it is then left where it was.
+   */
+  private void move(Path source, Path target, Batch batch) throws IOException {
+    if (batch.crossesDevices(source, target)) {
+      transfer(source, target, batch);
+    } else {
+      Files.move(source, target);
+    }
+  }
+
+  /**
+   * Copies a file to another device, then deletes it. The copy is forced to disk and its size
+   * checked before the file is deleted. If anything fails, the copy is deleted and the file left
+   * where it was.
+   *
+   * @param source current path of the file.
+   * @param target new path of the file, on another device.
+   * @param batch state shared by the renames of its batch.
+   * @throws IOException if the file cannot be copied or deleted.
+   */
+  private void transfer(Path source, Path target, Batch batch) throws IOException {
+    long size;
+    try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+      size = in.size();
+      try (FileChannel out =
+          FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+        long position = 0;
+        while (position < size) {
+          long sent = in.transferTo(position, Math.min(TRANSFER_BYTES, size - position), out);
+          if (sent <= 0) {
+            break;
+          }
+          position += sent;
+          batch.copied(sent);
+        }
+        out.force(true);
+      } catch (FileAlreadyExistsException ex) {
+        throw ex;
+      } catch (IOException ex) {
+        Files.deleteIfExists(target);
+        throw ex;
+      }
+    }
+    try {
+      if (Files.size(target) != size) {
+        throw new IOException("Copy of " + source + " is incomplete");
+      }
+      Files.setLastModifiedTime(target, Files.getLastModifiedTime(source));
+      Files.delete(source);
+    } catch (IOException ex) {
+      Files.deleteIfExists(target);
+      throw ex;
+    }
+  }
+
+  /**
+   * Finds the file store holding a directory.
+   *
+   * @param directory the directory.
+   * @return the file store, or the directory itself if its file store cannot be found.
+   */
+  private static Object fileStore(Path directory) {
+    try {
+      return Files.getFileStore(directory);
+    } catch (IOException ex) {
+      return directory;
+    }
+  }
+
+  /** State shared by the renames of a batch. */
+  private final class Batch {
+
+    /** File store of each directory found so far, or the directory if it is unknown. */
+    private final Map<Path, Object> stores = new ConcurrentHashMap<>();
+
+    /** Number of bytes to copy between devices. */
+    private long total;
+
+    /** Number of bytes copied between devices so far. */
+    private final AtomicLong copied = new AtomicLong();
+
+    /**
+     * Adds the size of a file to {@code total} if it is copied between devices.
+     *
+     * @param source current path of the file.
+     * @param target new path of the file.
+     */
+    void count(Path source, Path target) {
+      if (crossesDevices(source, target)) {
+        try {
+          total += Files.size(source);
+        } catch (IOException ex) {
+          // Reported when the file is moved
+        }
+      }
+    }
+
+    /**
+     * Checks whether a file is moved to another device.
+     *
+     * @param source current path of the file.
+     * @param target new path of the file.
+     * @return true if the directories are on different file stores.
+     */
+    boolean crossesDevices(Path source, Path target) {
+      Path from = source.getParent();
+      Path to = target.getParent();
+      return !from.equals(to) && !store(from).equals(store(to));
+    }
+
+    /**
+     * Finds the file store holding a directory, once for each directory in the batch.
+     *
+     * @param directory the directory.
+     * @return the file store, or the directory itself if its file store cannot be found.
+     */
+    Object store(Path directory) {
+      return stores.computeIfAbsent(directory, Renamer::fileStore);
+    }
+
+    /**
+     * Adds to the bytes copied between devices and reports the progress.
+     *
+     * @param bytes number of bytes just copied.
+     */
+    void copied(long bytes) {
+      long now = copied.addAndGet(bytes);
+      BiConsumer<Long, Long> listener = onProgress;
+      if (listener != null) {
+        listener.accept(now, total);
+      }
+    }
+  }
+
+  /**
+   * Adds the failures recorded to a list, in order.
+   *
+   * @param failed failure of each rename, or null where it succeeded.
+   * @param failures list to add to.
+   */
+  private static void collect(RenameFailure[] failed, List<RenameFailure> failures) {
+    for (RenameFailure failure : failed) {
+      if (failure != null) {
+        failures.add(failure);
+      }
+    }
+  }
+}
@@ -0,0 +1,451 @@
+package Control;
+
+import Model.Image;
+import Model.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@code Saver} writes saved changes to disk on a background thread, so the application never
+ * waits for the disk. Saves are grouped together and written when enough changes are waiting,
+ * when no change has been saved for a while, or when {@code sync} is called. Renames of the same
+ * file are merged, so a file is renamed once per write however many times its {@code Tag(s)}
+ * changed. Renames are done together by a {@code Renamer}; those that fail are kept for the
+ * {@code Controller} to take, and a rename of the same file waiting behind one that failed starts
+ * from where the file still is. Renames are recorded in a {@code RenameJournal} before they are
+ * done, and settled once the journal records naming the files are written.
+ */
+public class Saver implements Runnable {
+
+  /** Provides access to the logger. */
+  private static final Logger LOGGER = Logger.getLogger(Log.class.getName());
+
+  /** Shards the Model is stored in. */
+  private Catalog catalog;
+
+  /** Journal the saved changes are appended to. */
+  private Journal journal;
+
+  /** Records renames before they are done. */
+  private RenameJournal renameJournal;
+
+  /** Renames the files. */
+  private Renamer renamer;
+
+  /** Number of waiting changes that causes a write. */
+  private int flushChanges;
+
+  /** Milliseconds without a save after which waiting changes are written. */
+  private long idleMillis;
+
+  /**
+   * Files waiting to be renamed, by {@code Image}: the current and the new path. Kept by identity,
+   * since the hash code of an {@code Image} changes when it is moved.
+   */
+  private Map<Image, Path[]> renames = new IdentityLinkedMap<>();
+
+  /** Files being renamed by the write in progress, by identity of the {@code Image}. */
+  private Map<Image, Path[]> renaming = new IdentityLinkedMap<>();
+
+  /** Journal records waiting to be appended. */
+  private ByteArrayOutputStream records = new ByteArrayOutputStream();
+
+  /** Shards waiting to be written, by file name; null if no checkpoint is waiting. */
+  private Map<String, byte[]> shards;
+
+  /** Number of changes waiting. */
+  private int changes;
+
+  /** Time of the last save, in milliseconds. */
+  private long lastSave;
+
+  /** Number of saves handed to this {@code Saver}. */
+  private long submitted;
+
+  /** Number of saves written to disk. */
+  private long written;
+
+  /** Whether a caller is waiting for all saves to be written. */
+  private boolean syncRequested;
+
+  /** Whether no more saves will be handed over. */
+  private boolean closed;
+
+  /** Renames that failed, if they have not been taken yet. */
+  private List<RenameFailure> renameFailures = new ArrayList<>();
+
+  /**
+   * Whether a write failed since the last checkpoint, so journal records naming renamed files may
+   * be missing.
+   */
+  private boolean unrecorded;
+
+  /** Failure of the last write, if it has not been reported yet. */
+  private IOException failure;
+
+  /** Called on the saving thread after each write. */
+  private Runnable onWrite;
+
+  /** Thread doing the writing. */
+  private Thread thread;
+
+  /** Closes this {@code Saver} if the JVM exits first. */
+  private Thread shutdownHook = new Thread(this::close);
+
+  /**
+   * Creates a new {@code Saver} and starts its thread.
+   *
+   * @param catalog shards the Model is stored in.
+   * @param journal journal the saved changes are appended to.
+   * @param renameJournal records renames before they are done.
+   * @param renamer renames the files.
+   * @param flushChanges number of waiting changes that causes a write.
+   * @param idleMillis milliseconds without a save after which waiting changes are written.
+   */
+  public Saver(
+      Catalog catalog,
+      Journal journal,
+      RenameJournal renameJournal,
+      Renamer renamer,
+      int flushChanges,
+      long idleMillis) {
+    this.catalog = catalog;
+    this.journal = journal;
+    this.renameJournal = renameJournal;
+    this.renamer = renamer;
+    this.flushChanges = flushChanges;
+    this.idleMillis = idleMillis;
+    thread = new Thread(this, "saver");
+    thread.setDaemon(true);
+    thread.start();
+    Runtime.getRuntime().addShutdownHook(shutdownHook);
+  }
+
+  /**
+   * Queues the rename of an {@code Image('s)} file. If a rename of the same file is already
+   * waiting, the two are merged.
+   *
+   * @param image {@code Image} whose file is renamed.
+   * @param source current path of the file.
+   * @param target new path of the file.
+   */
+  protected synchronized void rename(Image image, Path source, Path target) {
+    Path[] waiting = renames.get(image);
+    if (waiting != null) {
+      waiting[1] = target;
+    } else {
+      renames.put(image, new Path[] {source, target});
+    }
+    changes++;
+  }
+
+  /**
+   * Hands over a save: the journal records of its changes and, if a checkpoint is due, the shards
+   * to write.
+   *
+   * @param journalRecords journal records to append.
+   * @param recordCount number of records in {@code journalRecords}.
+   * @param checkpoint shards to write by file name, or null.
+   * @return number of the save, counting from 1.
+   */
+  protected synchronized long submit(
+      byte[] journalRecords, int recordCount, Map<String, byte[]> checkpoint) {
+    records.write(journalRecords, 0, journalRecords.length);
+    changes += recordCount;
+    if (checkpoint != null) {
+      if (shards == null) {
+        shards = new LinkedHashMap<>();
+      }
+      shards.putAll(checkpoint);
+    }
+    submitted++;
+    lastSave = System.currentTimeMillis();
+    notifyAll();
+    return submitted;
+  }
+
+  /**
+   * Reports a failure found before a save was handed over, e.g. a journal record that could not be
+   * buffered, so it is reported like a failed write.
+   *
+   * @param cause the failure.
+   */
+  protected synchronized void failed(IOException cause) {
+    failure = cause;
+  }
+
+  /**
+   * Checks whether the file of an {@code Image} is waiting to be renamed.
+   *
+   * @param image {@code Image} to check.
+   * @return true if the file has not been renamed yet, false otherwise.
+   */
+  protected synchronized boolean isPending(Image image) {
+    return renames.containsKey(image) || renaming.containsKey(image);
+  }
+
+  /**
+   * Gives the path the file of an {@code Image} is waiting to be renamed to.
+   *
+   * @param image {@code Image} to check.
+   * @return the new path, or null if the file is not waiting to be renamed.
+   */
+  protected synchronized Path pendingTarget(Image image) {
+    Path[] paths = renames.get(image);
+    if (paths == null) {
+      paths = renaming.get(image);
+    }
+    return paths == null ? null : paths[1];
+  }
+
+  /**
+   * Gives every path the file of an {@code Image} may have while its renames are done, in the order
+   * it has them.
+   *
+   * @param image {@code Image} to check.
+   * @return the paths, or none if the file is not waiting to be renamed.
+   */
+  protected synchronized List<Path> pendingPaths(Image image) {
+    List<Path> paths = new ArrayList<>();
+    for (Map<Image, Path[]> queue : Arrays.asList(renaming, renames)) {
+      Path[] rename = queue.get(image);
+      if (rename != null) {
+        paths.add(rename[0]);
+        paths.add(rename[1]);
+      }
+    }
+    return paths;
+  }
+
+  /**
+   * Writes all saves handed over so far and waits until they are on disk.
+   *
+   * @throws IOException if the write failed.
+   */
+  public synchronized void sync() throws IOException {
+    long target = submitted;
+    syncRequested = true;
+    notifyAll();
+    while (written < target && thread.isAlive()) {
+      try {
+        wait();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+    syncRequested = false;
+    throwFailure();
+  }
+
+  /** Writes all saves handed over so far and stops the thread. Safe to call more than once. */
+  public void close() {
+    synchronized (this) {
+      closed = true;
+      notifyAll();
+    }
+    try {
+      thread.join();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    renamer.close();
+    try {
+      Runtime.getRuntime().removeShutdownHook(shutdownHook);
+    } catch (IllegalStateException ex) {
+      // The JVM is exiting, so the hook is running or about to
+    }
+  }
+
+  /**
+   * Returns the failure of the last write, if it has not been reported yet, and forgets it.
+   *
+   * @return the failure, or null.
+   */
+  protected synchronized IOException takeFailure() {
+    IOException last = failure;
+    failure = null;
+    return last;
+  }
+
+  /**
+   * Returns the renames that failed since this was last called, and forgets them.
+   *
+   * @return the renames that failed, in the order they were done.
+   */
+  protected synchronized List<RenameFailure> takeRenameFailures() {
+    List<RenameFailure> failed = renameFailures;
+    renameFailures = new ArrayList<>();
+    return failed;
+  }
+
+  /**
+   * Sets what to do after each write, e.g. refreshing a display of the files.
+   *
+   * @param onWrite called on the saving thread after each write.
+   */
+  protected synchronized void setOnWrite(Runnable onWrite) {
+    this.onWrite = onWrite;
+  }
+
+  /** Waits for saves and writes them, until closed. */
+  @Override
+  public void run() {
+    while (true) {
+      byte[] journalRecords;
+      Map<String, byte[]> checkpoint;
+      long target;
+      Runnable afterWrite;
+      synchronized (this) {
+        try {
+          while (!ready()) {
+            if (closed && written == submitted) {
+              return;
+            }
+            wait(waitTime());
+          }
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        renaming = renames;
+        renames = new IdentityLinkedMap<>();
+        journalRecords = records.toByteArray();
+        records.reset();
+        checkpoint = shards;
+        shards = null;
+        changes = 0;
+        target = submitted;
+        afterWrite = onWrite;
+      }
+      List<RenameFailure> failedRenames = rename();
+      IOException writeFailure = write(journalRecords, checkpoint, target);
+      synchronized (this) {
+        for (RenameFailure failed : failedRenames) {
+          Path[] waiting = renames.get(failed.getImage());
+          if (waiting != null) {
+            waiting[0] = failed.getSource();
+          }
+        }
+        renameFailures.addAll(failedRenames);
+        if (writeFailure != null) {
+          failure = writeFailure;
+        }
+        renaming = new IdentityLinkedMap<>();
+        written = target;
+        notifyAll();
+      }
+      if (afterWrite != null) {
+        afterWrite.run();
+      }
+    }
+  }
+
+  /**
+   * Checks whether waiting saves should be written now.
+   *
+   * @return true if there are saves to write and one of the conditions for writing holds.
+   */
+  private boolean ready() {
+    if (written == submitted) {
+      return false;
+    }
+    return closed
+        || syncRequested
+        || changes >= flushChanges
+        || System.currentTimeMillis() - lastSave >= idleMillis;
+  }
+
+  /**
+   * Gives how long to wait before checking whether waiting saves should be written.
+   *
+   * @return milliseconds to wait; 0 waits until notified.
+   */
+  private long waitTime() {
+    if (written == submitted) {
+      return 0;
+    }
+    return Math.max(1, idleMillis - (System.currentTimeMillis() - lastSave));
+  }
+
+  /**
+   * Records the renames in progress and does them. Nothing is renamed if the renames cannot be
+   * recorded first.
+   *
+   * @return the renames that failed.
+   */
+  private List<RenameFailure> rename() {
+    List<RenameFailure> failed;
+    try {
+      renameJournal.planned(renaming.values());
+      failed = renamer.renameAll(renaming);
+    } catch (IOException ex) {
+      LOGGER.log(Level.WARNING, "Could not record renames: " + ex.getMessage());
+      failed = new ArrayList<>();
+      for (Map.Entry<Image, Path[]> rename : renaming.entrySet()) {
+        Path[] paths = rename.getValue();
+        if (!paths[0].equals(paths[1])) {
+          failed.add(new RenameFailure(rename.getKey(), paths[0], paths[1], ex));
+        }
+      }
+    }
+    renameJournal.failed(failed);
+    return failed;
+  }
+
+  /**
+   * Appends the journal records and writes the checkpoint, once the files are renamed. The
+   * recorded renames are then settled, unless an earlier write failed and no checkpoint has been
+   * written since.
+   *
+   * @param journalRecords journal records to append.
+   * @param checkpoint shards to write, or null.
+   * @param save number of the last save written.
+   * @return the failure that stopped the write, or null.
+   */
+  private IOException write(byte[] journalRecords, Map<String, byte[]> checkpoint, long save) {
+    try {
+      journal.append(journalRecords);
+      if (checkpoint != null) {
+        journal.rotate();
+        catalog.write(checkpoint);
+        journal.discardRotated();
+        renameJournal.checkpointWritten(save);
+        unrecorded = false;
+      }
+    } catch (IOException ex) {
+      LOGGER.log(Level.WARNING, ex.getMessage());
+      unrecorded = true;
+      return ex;
+    }
+    if (!unrecorded) {
+      try {
+        renameJournal.settled();
+      } catch (IOException ex) {
+        LOGGER.log(Level.WARNING, "Could not settle renames: " + ex.getMessage());
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Throws the failure of the last write, if it has not been reported yet.
+   *
+   * @throws IOException the failure.
+   */
+  private void throwFailure() throws IOException {
+    IOException last = takeFailure();
+    if (last != null) {
+      throw last;
+    }
+  }
+}
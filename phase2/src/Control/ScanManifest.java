@@ -0,0 +1,257 @@
+package Control;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * {@code ScanManifest} remembers what the last scan of each directory found: the directory's
+ * modification time, its subdirectories, and the size and modification time of its image files. A
+ * rescan only lists the directories whose modification time changed and only reads the files that
+ * are new or changed.
+ */
+public class ScanManifest {
+
+  /** Version of the encoded form. */
+  private static final int VERSION = 1;
+
+  /** What the last scan found, by directory path. */
+  private Map<String, DirectoryRecord> directories = new HashMap<>();
+
+  /** Whether a record changed since {@code takeChanged} was last called. */
+  private boolean changed;
+
+  /** Creates a new, empty {@code ScanManifest}, as if nothing had been scanned. */
+  public ScanManifest() {}
+
+  /**
+   * Returns what the last scan of a directory found.
+   *
+   * @param directory path of the directory.
+   * @return the record of the directory, or null if it was not scanned.
+   */
+  protected DirectoryRecord get(String directory) {
+    return directories.get(directory);
+  }
+
+  /**
+   * Replaces the records of a scanned tree with those of a new scan. Directories under {@code root}
+   * that the new scan did not find are forgotten.
+   *
+   * @param root path of the scanned tree.
+   * @param scanned records of the new scan, by directory path.
+   */
+  protected void update(String root, Map<String, DirectoryRecord> scanned) {
+    String prefix = root.endsWith(File.separator) ? root : root + File.separator;
+    Iterator<Map.Entry<String, DirectoryRecord>> records = directories.entrySet().iterator();
+    while (records.hasNext()) {
+      String directory = records.next().getKey();
+      if ((directory.equals(root) || directory.startsWith(prefix))
+          && !scanned.containsKey(directory)) {
+        records.remove();
+        changed = true;
+      }
+    }
+    for (Map.Entry<String, DirectoryRecord> record : scanned.entrySet()) {
+      if (!record.getValue().equals(directories.put(record.getKey(), record.getValue()))) {
+        changed = true;
+      }
+    }
+  }
+
+  /**
+   * Checks whether a record changed since this method was last called, so the {@code
+   * ScanManifest} needs to be written again.
+   *
+   * @return true if a record changed, false otherwise.
+   */
+  protected boolean takeChanged() {
+    boolean wasChanged = changed;
+    changed = false;
+    return wasChanged;
+  }
+
+  /**
+   * Writes this {@code ScanManifest} to {@code output}.
+   *
+   * @param output stream to write to.
+   * @throws IOException if the stream cannot be written.
+   */
+  protected void write(DataOutput output) throws IOException {
+    output.writeInt(VERSION);
+    output.writeInt(directories.size());
+    for (Map.Entry<String, DirectoryRecord> entry : directories.entrySet()) {
+      DirectoryRecord record = entry.getValue();
+      output.writeUTF(entry.getKey());
+      output.writeLong(record.modified);
+      output.writeInt(record.subdirectories.size());
+      for (String subdirectory : record.subdirectories) {
+        output.writeUTF(subdirectory);
+      }
+      output.writeInt(record.files.size());
+      for (Map.Entry<String, long[]> file : record.files.entrySet()) {
+        output.writeUTF(file.getKey());
+        output.writeLong(file.getValue()[0]);
+        output.writeLong(file.getValue()[1]);
+      }
+    }
+  }
+
+  /**
+   * Reads a {@code ScanManifest} written by {@code write}.
+   *
+   * @param input stream to read from.
+   * @return the {@code ScanManifest} read.
+   * @throws IOException if the stream cannot be read or was written by a newer version.
+   */
+  protected static ScanManifest read(DataInput input) throws IOException {
+    int version = input.readInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported scan manifest version " + version);
+    }
+    ScanManifest manifest = new ScanManifest();
+    int directoryCount = input.readInt();
+    for (int i = 0; i < directoryCount; i++) {
+      String directory = input.readUTF();
+      DirectoryRecord record = new DirectoryRecord(input.readLong());
+      int subdirectoryCount = input.readInt();
+      for (int j = 0; j < subdirectoryCount; j++) {
+        record.subdirectories.add(input.readUTF());
+      }
+      int fileCount = input.readInt();
+      for (int j = 0; j < fileCount; j++) {
+        record.files.put(input.readUTF(), new long[] {input.readLong(), input.readLong()});
+      }
+      manifest.directories.put(directory, record);
+    }
+    return manifest;
+  }
+
+  /** What a scan found in a single directory. */
+  protected static class DirectoryRecord {
+
+    /** Modification time of the directory when it was listed. */
+    private long modified;
+
+    /** Names of the subdirectories. */
+    private List<String> subdirectories = new ArrayList<>();
+
+    /** Size and modification time of each image file, by file name. */
+    private Map<String, long[]> files = new LinkedHashMap<>();
+
+    /**
+     * Creates a new, empty {@code DirectoryRecord}.
+     *
+     * @param modified modification time of the directory when it was listed.
+     */
+    protected DirectoryRecord(long modified) {
+      this.modified = modified;
+    }
+
+    /**
+     * Returns the modification time of the directory when it was listed.
+     *
+     * @return modification time, in milliseconds.
+     */
+    protected long getModified() {
+      return modified;
+    }
+
+    /**
+     * Returns the names of the subdirectories.
+     *
+     * @return names of the subdirectories.
+     */
+    protected List<String> getSubdirectories() {
+      return subdirectories;
+    }
+
+    /**
+     * Returns the names of the image files.
+     *
+     * @return names of the image files.
+     */
+    protected Set<String> getFileNames() {
+      return files.keySet();
+    }
+
+    /**
+     * Checks whether an image file is unchanged since it was recorded.
+     *
+     * @param name file name.
+     * @param size current size of the file.
+     * @param modified current modification time of the file.
+     * @return true if the file was recorded with the same size and modification time.
+     */
+    protected boolean isUnchanged(String name, long size, long modified) {
+      long[] recorded = files.get(name);
+      return recorded != null && recorded[0] == size && recorded[1] == modified;
+    }
+
+    /**
+     * Records a subdirectory.
+     *
+     * @param name name of the subdirectory.
+     */
+    protected void addSubdirectory(String name) {
+      subdirectories.add(name);
+    }
+
+    /**
+     * Records an image file.
+     *
+     * @param name file name.
+     * @param size size of the file.
+     * @param modified modification time of the file.
+     */
+    protected void addFile(String name, long size, long modified) {
+      files.put(name, new long[] {size, modified});
+    }
+
+    /**
+     * Checks whether another record found the same: the same modification time, subdirectories and
+     * image files, with the same sizes and modification times.
+     *
+     * @param object Object to be compared.
+     * @return true if the records found the same, false otherwise.
+     */
+    @Override
+    public boolean equals(Object object) {
+      if (!(object instanceof DirectoryRecord)) {
+        return false;
+      }
+      DirectoryRecord other = (DirectoryRecord) object;
+      if (modified != other.modified
+          || !subdirectories.equals(other.subdirectories)
+          || files.size() != other.files.size()) {
+        return false;
+      }
+      for (Map.Entry<String, long[]> file : files.entrySet()) {
+        if (!Arrays.equals(file.getValue(), other.files.get(file.getKey()))) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Returns a hash code consistent with {@code equals}.
+     *
+     * @return hash code of the modification time and the names found.
+     */
+    @Override
+    public int hashCode() {
+      return Objects.hash(modified, subdirectories, files.keySet());
+    }
+  }
+}
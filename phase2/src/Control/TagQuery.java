@@ -0,0 +1,579 @@
+package Control;
+
+import Model.*;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * {@code TagQuery} is a query for {@code Image(s)} by their {@code Tag(s)} and directories, such as
+ * {@code @cat & (@2019 | @2020) & !@blurry & dir:/photos/trips}. {@code &} binds tighter than
+ * {@code |}, {@code !} leaves out the {@code Image(s)} that match, and {@code dir:} matches the
+ * {@code Image(s)} in a directory and its subdirectories; a path with spaces is put in quotes.
+ *
+ * <p>A query is run on the id bitmaps of the {@code Tag(s)} and directories. Intersections start
+ * from the smallest set and stop as soon as nothing is left, and the {@code Image(s)} found are
+ * only looked up as they are streamed.
+ */
+public class TagQuery {
+
+  /** Characters that end a {@code Tag} name or path. */
+  private static final String DELIMITERS = "&|()";
+
+  /** Top of the parsed query. */
+  private Node root;
+
+  /**
+   * Creates a new {@code TagQuery}.
+   *
+   * @param root top of the parsed query.
+   */
+  private TagQuery(Node root) {
+    this.root = root;
+  }
+
+  /**
+   * Reads a query.
+   *
+   * @param query text of the query.
+   * @return the {@code TagQuery} read.
+   * @throws QuerySyntaxException if the query is not written properly.
+   */
+  public static TagQuery parse(String query) throws QuerySyntaxException {
+    Parser parser = new Parser(query);
+    Node root = parser.or();
+    parser.skipSpaces();
+    if (parser.position < query.length()) {
+      throw new QuerySyntaxException(
+          "Unexpected '" + query.charAt(parser.position) + "' at " + (parser.position + 1));
+    }
+    return new TagQuery(root);
+  }
+
+  /**
+   * Finds the ids of the {@code Image(s)} that match this query.
+   *
+   * @param container {@code Container} to look in.
+   * @return a new {@code ImageBitmap} with the ids found.
+   */
+  public ImageBitmap run(Container container) {
+    Plan plan = new Plan(container);
+    ImageBitmap found = root.evaluate(plan);
+    // Bitmaps of Tags and directories belong to the Model and change with it
+    return plan.shared.containsKey(found) ? found.copy() : found;
+  }
+
+  /**
+   * Streams the {@code Image(s)} that match this query, in the order of their ids.
+   *
+   * @param container {@code Container} to look in.
+   * @return stream of the {@code Image(s)} found.
+   */
+  public Stream<Image> stream(Container container) {
+    return container.streamImages(run(container));
+  }
+
+  /**
+   * Writes this query out, with brackets around each combination.
+   *
+   * @return text of the query.
+   */
+  @Override
+  public String toString() {
+    return root.toString();
+  }
+
+  /** State shared by the parts of a query while it runs. */
+  private static class Plan {
+
+    /** {@code Container} being looked in. */
+    private Container container;
+
+    /** Ids of all {@code Image(s)}, made when first needed. */
+    private ImageBitmap all;
+
+    /** {@code ImageManager(s)} of each directory and its subdirectories, found when needed. */
+    private Map<Path, List<ImageManager>> directories = new HashMap<>();
+
+    /** Bitmaps that belong to the Model rather than to this query. */
+    private Map<ImageBitmap, Boolean> shared = new IdentityHashMap<>();
+
+    /**
+     * Creates a new {@code Plan}.
+     *
+     * @param container {@code Container} to look in.
+     */
+    private Plan(Container container) {
+      this.container = container;
+    }
+
+    /**
+     * Finds a {@code Tag} by name.
+     *
+     * @param name name of the {@code Tag}.
+     * @return the {@code Tag}, or null if there is none.
+     */
+    private Tag tag(String name) {
+      return container.getTagManager().getTag(name);
+    }
+
+    /**
+     * Returns the ids of all {@code Image(s)}.
+     *
+     * @return ids of all {@code Image(s)}.
+     */
+    private ImageBitmap all() {
+      if (all == null) {
+        all = container.getImageIds();
+      }
+      return all;
+    }
+
+    /**
+     * Finds the {@code ImageManager(s)} of a directory and its subdirectories.
+     *
+     * @param directory the directory.
+     * @return the {@code ImageManager(s)}.
+     */
+    private List<ImageManager> managers(Path directory) {
+      return directories.computeIfAbsent(
+          directory,
+          path -> {
+            List<ImageManager> managers = new ArrayList<>();
+            for (ImageManager im : container.getImageManagers()) {
+              if (im.getDirectory().startsWith(path)) {
+                managers.add(im);
+              }
+            }
+            return managers;
+          });
+    }
+
+    /**
+     * Marks a bitmap of the Model as used by this query.
+     *
+     * @param bitmap bitmap of a {@code Tag} or {@code ImageManager}.
+     * @return the bitmap.
+     */
+    private ImageBitmap share(ImageBitmap bitmap) {
+      shared.put(bitmap, Boolean.TRUE);
+      return bitmap;
+    }
+  }
+
+  /** A part of a query. */
+  private abstract static class Node {
+
+    /**
+     * Estimates how many {@code Image(s)} match, without combining any bitmaps.
+     *
+     * @param plan state of the running query.
+     * @return estimated number of matches.
+     */
+    abstract long estimate(Plan plan);
+
+    /**
+     * Finds the ids of the {@code Image(s)} that match. The result must not be modified.
+     *
+     * @param plan state of the running query.
+     * @return ids of the matches.
+     */
+    abstract ImageBitmap evaluate(Plan plan);
+  }
+
+  /** Matches the {@code Image(s)} with a {@code Tag}. */
+  private static class TagNode extends Node {
+
+    /** Name of the {@code Tag}. */
+    private String name;
+
+    /**
+     * Creates a new {@code TagNode}.
+     *
+     * @param name name of the {@code Tag}.
+     */
+    private TagNode(String name) {
+      this.name = name;
+    }
+
+    @Override
+    long estimate(Plan plan) {
+      Tag tag = plan.tag(name);
+      return tag == null ? 0 : tag.getImageIds().cardinality();
+    }
+
+    @Override
+    ImageBitmap evaluate(Plan plan) {
+      Tag tag = plan.tag(name);
+      return tag == null ? new ImageBitmap() : plan.share(tag.getImageIds());
+    }
+
+    @Override
+    public String toString() {
+      return "@" + name;
+    }
+  }
+
+  /** Matches the {@code Image(s)} in a directory and its subdirectories. */
+  private static class DirectoryNode extends Node {
+
+    /** The directory. */
+    private Path directory;
+
+    /**
+     * Creates a new {@code DirectoryNode}.
+     *
+     * @param directory the directory.
+     */
+    private DirectoryNode(Path directory) {
+      this.directory = directory;
+    }
+
+    @Override
+    long estimate(Plan plan) {
+      long count = 0;
+      for (ImageManager im : plan.managers(directory)) {
+        count += im.getImageIds().cardinality();
+      }
+      return count;
+    }
+
+    @Override
+    ImageBitmap evaluate(Plan plan) {
+      List<ImageManager> found = plan.managers(directory);
+      if (found.size() == 1) {
+        return plan.share(found.get(0).getImageIds());
+      }
+      ImageBitmap ids = new ImageBitmap();
+      for (ImageManager im : found) {
+        ids = ids.or(im.getImageIds());
+      }
+      return ids;
+    }
+
+    @Override
+    public String toString() {
+      return "dir:\"" + directory + "\"";
+    }
+  }
+
+  /** Matches the {@code Image(s)} that do not match another part. */
+  private static class NotNode extends Node {
+
+    /** Part whose matches are left out. */
+    private Node negated;
+
+    /**
+     * Creates a new {@code NotNode}.
+     *
+     * @param negated part whose matches are left out.
+     */
+    private NotNode(Node negated) {
+      this.negated = negated;
+    }
+
+    @Override
+    long estimate(Plan plan) {
+      return Math.max(0, plan.all().cardinality() - negated.estimate(plan));
+    }
+
+    @Override
+    ImageBitmap evaluate(Plan plan) {
+      return plan.all().andNot(negated.evaluate(plan));
+    }
+
+    @Override
+    public String toString() {
+      return "!" + negated;
+    }
+  }
+
+  /** Matches the {@code Image(s)} that match every part. */
+  private static class AndNode extends Node {
+
+    /** Parts to match. */
+    private List<Node> parts;
+
+    /**
+     * Creates a new {@code AndNode}.
+     *
+     * @param parts parts to match.
+     */
+    private AndNode(List<Node> parts) {
+      this.parts = parts;
+    }
+
+    @Override
+    long estimate(Plan plan) {
+      long smallest = Long.MAX_VALUE;
+      for (Node part : parts) {
+        if (!(part instanceof NotNode)) {
+          smallest = Math.min(smallest, part.estimate(plan));
+        }
+      }
+      return smallest == Long.MAX_VALUE ? plan.all().cardinality() : smallest;
+    }
+
+    /**
+     * Intersects the parts from the smallest to the largest, then leaves out the matches of the
+     * negated parts from the largest to the smallest, stopping once nothing is left.
+     *
+     * @param plan state of the running query.
+     * @return ids of the matches.
+     */
+    @Override
+    ImageBitmap evaluate(Plan plan) {
+      List<Node> included = new ArrayList<>();
+      List<Node> excluded = new ArrayList<>();
+      for (Node part : parts) {
+        if (part instanceof NotNode) {
+          excluded.add(((NotNode) part).negated);
+        } else {
+          included.add(part);
+        }
+      }
+      Map<Node, Long> estimates = new IdentityHashMap<>();
+      for (Node part : parts) {
+        Node estimated = part instanceof NotNode ? ((NotNode) part).negated : part;
+        estimates.put(estimated, estimated.estimate(plan));
+      }
+      included.sort(Comparator.comparing(estimates::get));
+      excluded.sort(Collections.reverseOrder(Comparator.comparing(estimates::get)));
+      ImageBitmap found = null;
+      for (Node part : included) {
+        if (estimates.get(part) == 0) {
+          return new ImageBitmap();
+        }
+        found = found == null ? part.evaluate(plan) : found.and(part.evaluate(plan));
+        if (found.isEmpty()) {
+          return found;
+        }
+      }
+      if (found == null) {
+        found = plan.all();
+      }
+      for (Node part : excluded) {
+        if (found.isEmpty()) {
+          break;
+        }
+        if (estimates.get(part) > 0) {
+          found = found.andNot(part.evaluate(plan));
+        }
+      }
+      return found;
+    }
+
+    @Override
+    public String toString() {
+      return join(parts, " & ");
+    }
+  }
+
+  /** Matches the {@code Image(s)} that match any part. */
+  private static class OrNode extends Node {
+
+    /** Parts to match. */
+    private List<Node> parts;
+
+    /**
+     * Creates a new {@code OrNode}.
+     *
+     * @param parts parts to match.
+     */
+    private OrNode(List<Node> parts) {
+      this.parts = parts;
+    }
+
+    @Override
+    long estimate(Plan plan) {
+      long count = 0;
+      for (Node part : parts) {
+        count += part.estimate(plan);
+      }
+      return count;
+    }
+
+    @Override
+    ImageBitmap evaluate(Plan plan) {
+      ImageBitmap found = null;
+      for (Node part : parts) {
+        if (part.estimate(plan) > 0) {
+          ImageBitmap matches = part.evaluate(plan);
+          found = found == null ? matches : found.or(matches);
+        }
+      }
+      return found == null ? new ImageBitmap() : found;
+    }
+
+    @Override
+    public String toString() {
+      return join(parts, " | ");
+    }
+  }
+
+  /**
+   * Writes out parts of a query in brackets.
+   *
+   * @param parts parts of the query.
+   * @param operator text between the parts.
+   * @return the text.
+   */
+  private static String join(List<Node> parts, String operator) {
+    StringBuilder text = new StringBuilder("(");
+    for (Node part : parts) {
+      if (text.length() > 1) {
+        text.append(operator);
+      }
+      text.append(part);
+    }
+    return text.append(")").toString();
+  }
+
+  /** Reads a query by recursive descent. */
+  private static class Parser {
+
+    /** Text of the query. */
+    private String query;
+
+    /** Position of the next character to read. */
+    private int position;
+
+    /**
+     * Creates a new {@code Parser}.
+     *
+     * @param query text of the query.
+     */
+    private Parser(String query) {
+      this.query = query;
+    }
+
+    /**
+     * Reads parts joined by {@code |}.
+     *
+     * @return the part read.
+     * @throws QuerySyntaxException if the query is not written properly.
+     */
+    private Node or() throws QuerySyntaxException {
+      List<Node> parts = new ArrayList<>();
+      parts.add(and());
+      while (accept('|')) {
+        parts.add(and());
+      }
+      return parts.size() == 1 ? parts.get(0) : new OrNode(parts);
+    }
+
+    /**
+     * Reads parts joined by {@code &}. Nested intersections are flattened so they are planned
+     * together.
+     *
+     * @return the part read.
+     * @throws QuerySyntaxException if the query is not written properly.
+     */
+    private Node and() throws QuerySyntaxException {
+      List<Node> parts = new ArrayList<>();
+      do {
+        Node part = unary();
+        if (part instanceof AndNode) {
+          parts.addAll(((AndNode) part).parts);
+        } else {
+          parts.add(part);
+        }
+      } while (accept('&'));
+      return parts.size() == 1 ? parts.get(0) : new AndNode(parts);
+    }
+
+    /**
+     * Reads a single {@code Tag}, directory, negated part or part in brackets.
+     *
+     * @return the part read.
+     * @throws QuerySyntaxException if the query is not written properly.
+     */
+    private Node unary() throws QuerySyntaxException {
+      if (accept('!')) {
+        Node negated = unary();
+        return negated instanceof NotNode ? ((NotNode) negated).negated : new NotNode(negated);
+      }
+      if (accept('(')) {
+        Node inner = or();
+        if (!accept(')')) {
+          throw new QuerySyntaxException("Missing ')' at " + (position + 1));
+        }
+        return inner;
+      }
+      if (accept('@')) {
+        String name = word();
+        if (name.isEmpty()) {
+          throw new QuerySyntaxException("Missing tag name at " + (position + 1));
+        }
+        return new TagNode(name);
+      }
+      if (query.startsWith("dir:", position)) {
+        position += 4;
+        String path;
+        if (position < query.length() && query.charAt(position) == '"') {
+          int end = query.indexOf('"', position + 1);
+          if (end < 0) {
+            throw new QuerySyntaxException("Missing '\"' after " + (position + 1));
+          }
+          path = query.substring(position + 1, end);
+          position = end + 1;
+        } else {
+          path = word();
+        }
+        if (path.isEmpty()) {
+          throw new QuerySyntaxException("Missing directory at " + (position + 1));
+        }
+        return new DirectoryNode(Paths.get(path).toAbsolutePath().normalize());
+      }
+      throw new QuerySyntaxException(
+          position < query.length()
+              ? "Expected a tag or dir: at " + (position + 1)
+              : "Unexpected end of query");
+    }
+
+    /**
+     * Reads up to the next space or operator.
+     *
+     * @return the text read, possibly empty.
+     */
+    private String word() {
+      int start = position;
+      while (position < query.length()
+          && !Character.isWhitespace(query.charAt(position))
+          && DELIMITERS.indexOf(query.charAt(position)) < 0) {
+        position++;
+      }
+      return query.substring(start, position);
+    }
+
+    /**
+     * Reads a character if it is next, after any spaces.
+     *
+     * @param expected the character.
+     * @return true if it was read, false otherwise.
+     */
+    private boolean accept(char expected) {
+      skipSpaces();
+      if (position < query.length() && query.charAt(position) == expected) {
+        position++;
+        return true;
+      }
+      return false;
+    }
+
+    /** Skips any spaces. */
+    private void skipSpaces() {
+      while (position < query.length() && Character.isWhitespace(query.charAt(position))) {
+        position++;
+      }
+    }
+  }
+}
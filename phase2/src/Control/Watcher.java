@@ -0,0 +1,343 @@
+package Control;
+
+import Model.*;
+import Model.Image;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@code Watcher} watches the directories under the roots read in and keeps the Model up to date as
+ * files are created, deleted or renamed outside the application. Events are gathered until the
+ * directory has been quiet for {@code DEBOUNCE_MILLIS}, then applied on the thread that owns the
+ * Model. A directory whose events were lost is rescanned instead, as is a watched directory that
+ * was deleted, which drops its {@code ImageManager}.
+ */
+public class Watcher implements Runnable {
+
+  /** Provides access to the logger. */
+  private static final Logger LOGGER = Logger.getLogger(Log.class.getName());
+
+  /** Milliseconds without events after which gathered events are applied. */
+  private static final long DEBOUNCE_MILLIS = 250;
+
+  /** Longest time gathered events wait while events keep arriving, in milliseconds. */
+  private static final long MAX_DELAY_MILLIS = 2000;
+
+  /** {@code Controller} whose Model is kept up to date. */
+  private Controller control;
+
+  /** Runs updates on the thread that owns the Model. */
+  private Executor modelThread;
+
+  /** Roots to watch once the thread starts. */
+  private List<String> roots;
+
+  /** Receives the events of the watched directories. */
+  private WatchService service;
+
+  /** Watched directory of each key. */
+  private Map<WatchKey, Path> keys = new ConcurrentHashMap<>();
+
+  /** Names of files created since events were last applied, by directory. */
+  private Map<Path, Set<String>> created = new LinkedHashMap<>();
+
+  /** Names of files deleted since events were last applied, by directory. */
+  private Map<Path, Set<String>> deleted = new LinkedHashMap<>();
+
+  /** Directories to rescan, because their events were lost or they are new. */
+  private Set<Path> rescans = new LinkedHashSet<>();
+
+  /** Time the first gathered event arrived. */
+  private long firstEvent;
+
+  /** Time the last gathered event arrived. */
+  private long lastEvent;
+
+  /** Whether {@code close} has been called. */
+  private volatile boolean closed;
+
+  /** Thread doing the watching. */
+  private Thread thread;
+
+  /**
+   * Creates a new {@code Watcher} over the roots of the {@code Container} and starts its thread.
+   *
+   * @param control {@code Controller} whose Model is kept up to date.
+   * @param modelThread runs updates on the thread that owns the Model.
+   * @throws IOException if the file system cannot be watched.
+   */
+  public Watcher(Controller control, Executor modelThread) throws IOException {
+    this.control = control;
+    this.modelThread = modelThread;
+    this.roots = new ArrayList<>(control.getContainer().getRoots());
+    service = FileSystems.getDefault().newWatchService();
+    thread = new Thread(this, "watcher");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Starts watching every directory under a root.
+   *
+   * @param root directory to watch.
+   */
+  protected void register(Path root) {
+    try {
+      Files.walkFileTree(
+          root,
+          new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes)
+                throws IOException {
+              keys.put(
+                  dir.register(
+                      service,
+                      StandardWatchEventKinds.ENTRY_CREATE,
+                      StandardWatchEventKinds.ENTRY_DELETE),
+                  dir);
+              return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException ex) {
+              return FileVisitResult.CONTINUE;
+            }
+          });
+    } catch (ClosedWatchServiceException ex) {
+      // Closed while registering
+    } catch (IOException ex) {
+      LOGGER.log(Level.WARNING, "Could not watch " + root + ": " + ex.getMessage());
+    }
+  }
+
+  /** Stops watching. Events gathered but not yet applied are dropped. */
+  public void close() {
+    closed = true;
+    try {
+      service.close();
+      thread.join();
+    } catch (IOException ex) {
+      LOGGER.log(Level.WARNING, ex.getMessage());
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Registers the roots, then gathers events and hands them over once they settle. */
+  @Override
+  public void run() {
+    for (String root : roots) {
+      register(Paths.get(root));
+    }
+    while (!closed) {
+      WatchKey key;
+      try {
+        if (created.isEmpty() && deleted.isEmpty() && rescans.isEmpty()) {
+          key = service.take();
+        } else {
+          key = service.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+      } catch (InterruptedException | ClosedWatchServiceException ex) {
+        return;
+      }
+      long now = System.currentTimeMillis();
+      if (key != null) {
+        gather(key);
+        if (firstEvent == 0) {
+          firstEvent = now;
+        }
+        lastEvent = now;
+      }
+      if (firstEvent != 0
+          && (now - lastEvent >= DEBOUNCE_MILLIS || now - firstEvent >= MAX_DELAY_MILLIS)) {
+        handOver();
+      }
+    }
+  }
+
+  /**
+   * Adds the events of a key to those gathered. A file created and deleted again before the events
+   * are applied cancels out. A watched directory that was deleted, or whose key is no longer valid,
+   * stops being watched and is rescanned, so its {@code ImageManager} is dropped.
+   *
+   * @param key key with events.
+   */
+  private void gather(WatchKey key) {
+    Path directory = keys.get(key);
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (directory == null) {
+        break;
+      }
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+        rescans.add(directory);
+        continue;
+      }
+      String name = event.context().toString();
+      Path child = directory.resolve(name);
+      if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+        if (Files.isDirectory(child)) {
+          register(child);
+          rescans.add(child);
+        } else {
+          changes(deleted, directory).remove(name);
+          changes(created, directory).add(name);
+        }
+      } else if (unwatch(child)) {
+        rescans.add(child);
+      } else if (!changes(created, directory).remove(name)) {
+        changes(deleted, directory).add(name);
+      }
+    }
+    if (directory != null && !key.reset()) {
+      keys.remove(key);
+      unwatch(directory);
+      rescans.add(directory);
+    }
+  }
+
+  /**
+   * Stops watching a directory and the directories under it.
+   *
+   * @param directory the directory.
+   * @return true if the directory was being watched, false otherwise.
+   */
+  private boolean unwatch(Path directory) {
+    boolean watched = false;
+    for (Map.Entry<WatchKey, Path> entry : keys.entrySet()) {
+      if (entry.getValue().startsWith(directory)) {
+        watched |= entry.getValue().equals(directory);
+        entry.getKey().cancel();
+        keys.remove(entry.getKey());
+      }
+    }
+    return watched;
+  }
+
+  /**
+   * Returns the names gathered for a directory, adding an empty set if there are none.
+   *
+   * @param changes gathered names, by directory.
+   * @param directory the directory.
+   * @return names gathered for the directory.
+   */
+  private static Set<String> changes(Map<Path, Set<String>> changes, Path directory) {
+    return changes.computeIfAbsent(directory, dir -> new LinkedHashSet<>());
+  }
+
+  /** Hands the gathered events to the thread that owns the Model and starts gathering anew. */
+  private void handOver() {
+    Map<Path, Set<String>> batchCreated = created;
+    Map<Path, Set<String>> batchDeleted = deleted;
+    Set<Path> batchRescans = rescans;
+    created = new LinkedHashMap<>();
+    deleted = new LinkedHashMap<>();
+    rescans = new LinkedHashSet<>();
+    firstEvent = 0;
+    modelThread.execute(() -> apply(batchCreated, batchDeleted, batchRescans));
+  }
+
+  /**
+   * Applies gathered events to the Model and saves. Runs on the thread that owns the Model.
+   *
+   * @param batchCreated names of created files, by directory.
+   * @param batchDeleted names of deleted files, by directory.
+   * @param batchRescans directories to rescan.
+   */
+  private void apply(
+      Map<Path, Set<String>> batchCreated,
+      Map<Path, Set<String>> batchDeleted,
+      Set<Path> batchRescans) {
+    if (closed) {
+      return;
+    }
+    for (Path directory : batchRescans) {
+      control.rescan(directory);
+    }
+    Set<Path> directories = new LinkedHashSet<>(batchDeleted.keySet());
+    directories.addAll(batchCreated.keySet());
+    directories.removeAll(batchRescans);
+    for (Path directory : directories) {
+      ImageManager manager = control.getImageManager(directory);
+      if (manager == null) {
+        control.rescan(directory);
+      } else {
+        update(
+            manager,
+            batchCreated.getOrDefault(directory, new HashSet<>()),
+            batchDeleted.getOrDefault(directory, new HashSet<>()));
+      }
+    }
+    try {
+      control.save();
+    } catch (IOException ex) {
+      LOGGER.log(Level.WARNING, ex.getMessage());
+    }
+  }
+
+  /**
+   * Applies the events of a single directory to its {@code ImageManager}. A created file of an
+   * {@code Image} whose own file is gone was renamed outside the application, so the {@code Image}
+   * keeps its history and takes the file and the {@code Tag(s)} in its name. Files the application
+   * is still renaming are left alone.
+   *
+   * @param manager {@code ImageManager} of the directory.
+   * @param createdNames names of created files.
+   * @param deletedNames names of deleted files.
+   */
+  private void update(ImageManager manager, Set<String> createdNames, Set<String> deletedNames) {
+    TagManager tagManager = control.getContainer().getTagManager();
+    int knownTags = tagManager.getTags().size();
+    boolean changed = false;
+    for (String name : createdNames) {
+      File file = manager.getDirectory().resolve(name).toFile();
+      if (Read.isImage(file.toPath())
+          && file.exists()
+          && Read.readImage(file, manager, tagManager, control::isPending)) {
+        changed = true;
+        LOGGER.log(Level.CONFIG, "Read new " + name + " into " + manager);
+      }
+    }
+    for (String name : deletedNames) {
+      Image image = manager.getImageByFileName(name);
+      if (image != null
+          && image.getImageFile().getName().equals(name)
+          && !control.isPending(image)
+          && !image.getImageFile().exists()) {
+        manager.dropImage(image);
+        changed = true;
+        LOGGER.log(Level.CONFIG, "Removed deleted " + name + " from " + manager);
+      }
+    }
+    if (tagManager.getTags().size() != knownTags) {
+      control.tagsChanged();
+    }
+    if (changed) {
+      control.filesChanged(manager);
+    }
+  }
+}
@@ -0,0 +1,486 @@
+package Model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@code CatalogCodec} writes the Model as separate shards: an index of directories, one for the
+ * {@code TagManager} and one for each {@code ImageManager}. Each shard starts with a magic number
+ * and a format version. {@code Tag(s)} are written as their ids, times as epoch milliseconds and
+ * counts as variable length integers, and every {@code Image} is written in a single flat pass, so
+ * a shard can be read back without the others and without following the links between {@code
+ * Image(s)} and {@code Tag(s)}.
+ */
+public class CatalogCodec {
+
+  /** Provides access to the logger. */
+  private static final Logger LOGGER = Logger.getLogger(Log.class.getName());
+
+  /** Marks the start of every shard. */
+  private static final int MAGIC = 0x494d4754;
+
+  /** Version of the format, the only one read. A save.ser from before it is imported instead. */
+  private static final byte VERSION = 1;
+
+  /** Set when the {@code Image('s)} directory differs from its {@code ImageManager('s)}. */
+  private static final int OWN_DIRECTORY = 1;
+
+  /** Set when the {@code Image('s)} File differs from the one given by its name. */
+  private static final int OWN_FILE = 2;
+
+  /** Set when the {@code Image('s)} history is kept in a {@code HistoryStore}. */
+  private static final int STORED_HISTORY = 4;
+
+  /** Only static methods are provided. */
+  private CatalogCodec() {}
+
+  /**
+   * Writes all {@code Tag(s)} in {@code TagManager} with their ids, followed by the deleted ones a
+   * history may still name.
+   *
+   * @param output stream to write to.
+   * @param tagManager {@code TagManager} to write.
+   * @throws IOException if the stream cannot be written.
+   */
+  public static void writeTags(DataOutput output, TagManager tagManager) throws IOException {
+    writeHeader(output);
+    List<Tag> tags = tagManager.getTags();
+    writeVarInt(output, tags.size());
+    for (Tag tag : tags) {
+      writeVarInt(output, tag.getId());
+      output.writeUTF(tag.getName());
+    }
+    List<Tag> deleted = tagManager.getDeletedTags();
+    writeVarInt(output, deleted.size());
+    for (Tag tag : deleted) {
+      writeVarInt(output, tag.getId());
+      output.writeUTF(tag.getName());
+    }
+  }
+
+  /**
+   * Reads {@code Tag(s)} written by {@code writeTags} into {@code TagManager}.
+   *
+   * @param input stream to read from.
+   * @param tagManager {@code TagManager} to add the {@code Tag(s)} to.
+   * @return the {@code Tag(s)} read, by id, to be passed to {@code readImageManager}; the deleted
+   *     ones are only kept by {@code TagManager}.
+   * @throws IOException if the stream cannot be read or holds an invalid {@code Tag}.
+   */
+  public static Map<Integer, Tag> readTags(DataInput input, TagManager tagManager)
+      throws IOException {
+    readHeader(input);
+    int count = readVarInt(input);
+    Map<Integer, Tag> tags = new HashMap<>(count * 2);
+    for (int i = 0; i < count; i++) {
+      int id = readVarInt(input);
+      Tag tag = newTag(input.readUTF());
+      tagManager.restoreTag(tag, id);
+      tags.put(id, tag);
+    }
+    int deletedCount = readVarInt(input);
+    for (int i = 0; i < deletedCount; i++) {
+      int id = readVarInt(input);
+      tagManager.restoreDeletedTag(newTag(input.readUTF()), id);
+    }
+    return tags;
+  }
+
+  /**
+   * Writes an {@code ImageManager} and all of its {@code Image(s)}, including their history.
+   *
+   * @param output stream to write to.
+   * @param manager {@code ImageManager} to write.
+   * @throws IOException if the stream cannot be written or a {@code Tag} has no id.
+   */
+  public static void writeImageManager(DataOutput output, ImageManager manager)
+      throws IOException {
+    writeImageManager(output, manager, null);
+  }
+
+  /**
+   * Writes an {@code ImageManager} and all of its {@code Image(s)}. Their history is stored in
+   * {@code histories}, and only where it is kept is written.
+   *
+   * @param output stream to write to.
+   * @param manager {@code ImageManager} to write.
+   * @param histories {@code HistoryStore} to store the histories in, or null to write them here.
+   * @throws IOException if the stream cannot be written or a {@code Tag} has no id.
+   */
+  public static void writeImageManager(
+      DataOutput output, ImageManager manager, HistoryStore histories) throws IOException {
+    writeHeader(output);
+    String directory = manager.getDirectory().toString();
+    output.writeUTF(directory);
+    writeVarInt(output, manager.getImages().size());
+    for (Image image : manager.getImages()) {
+      String imageDirectory = image.getDirectory().toString();
+      int flags = 0;
+      long lastChanged = 0;
+      if (!imageDirectory.equals(directory)) {
+        flags |= OWN_DIRECTORY;
+      }
+      if (image.hasOwnFile()) {
+        flags |= OWN_FILE;
+      }
+      if (histories != null) {
+        // Found first, as a history being stored cannot be read back until its file is finished
+        lastChanged = image.getLastChanged();
+        histories.store(image);
+        flags |= STORED_HISTORY;
+      }
+      output.writeByte(flags);
+      output.writeUTF(image.getName());
+      output.writeUTF(image.getExtension());
+      if ((flags & OWN_DIRECTORY) != 0) {
+        output.writeUTF(imageDirectory);
+      }
+      if ((flags & OWN_FILE) != 0) {
+        output.writeUTF(image.getImageFile().getPath());
+      }
+      writeTagIds(output, image.getCurrentTags());
+      if (histories != null) {
+        writeVarInt(output, image.getHistoryFile());
+        writeVarInt(output, image.getHistoryOffset());
+        writeVarLong(output, lastChanged);
+      } else {
+        writeHistory(output, image.history());
+      }
+    }
+  }
+
+  /**
+   * Reads an {@code ImageManager} written by {@code writeImageManager}. {@code Tag(s)} whose ids
+   * are not in {@code tags} are left out.
+   *
+   * @param input stream to read from.
+   * @param tags {@code Tag(s)} returned by {@code readTags}.
+   * @return the {@code ImageManager} read.
+   * @throws IOException if the stream cannot be read.
+   */
+  public static ImageManager readImageManager(DataInput input, Map<Integer, Tag> tags)
+      throws IOException {
+    return readImageManager(input, tags, null);
+  }
+
+  /**
+   * Reads an {@code ImageManager} written by {@code writeImageManager}. {@code Image(s)} whose
+   * history was stored are pointed at it in {@code histories}, to be read back when needed. {@code
+   * Tag(s)} whose ids are not in {@code tags} are left out.
+   *
+   * @param input stream to read from.
+   * @param tags {@code Tag(s)} returned by {@code readTags}.
+   * @param histories {@code HistoryStore} the histories were stored in, or null if none.
+   * @return the {@code ImageManager} read.
+   * @throws IOException if the stream cannot be read, or has stored histories and no {@code
+   *     HistoryStore} is given.
+   */
+  public static ImageManager readImageManager(
+      DataInput input, Map<Integer, Tag> tags, HistoryStore histories) throws IOException {
+    return readImageManager(input, tags, histories, null);
+  }
+
+  /**
+   * Reads an {@code ImageManager} written by {@code writeImageManager} into the table of a {@code
+   * Container}, so its {@code Image(s)} need not be moved when it is added. {@code Image(s)} whose
+   * history was stored are pointed at it in {@code histories}, to be read back when needed. {@code
+   * Tag(s)} whose ids are not in {@code tags} are left out.
+   *
+   * @param input stream to read from.
+   * @param tags {@code Tag(s)} returned by {@code readTags}.
+   * @param histories {@code HistoryStore} the histories were stored in, or null if none.
+   * @param container {@code Container} the {@code ImageManager} is to be added to, or null if none.
+   * @return the {@code ImageManager} read.
+   * @throws IOException if the stream cannot be read, or has stored histories and no {@code
+   *     HistoryStore} is given.
+   */
+  public static ImageManager readImageManager(
+      DataInput input, Map<Integer, Tag> tags, HistoryStore histories, Container container)
+      throws IOException {
+    readHeader(input);
+    String directory = input.readUTF();
+    ImageManager manager =
+        container == null
+            ? new ImageManager(new File(directory))
+            : new ImageManager(new File(directory), container.getImageTable());
+    int imageCount = readVarInt(input);
+    for (int i = 0; i < imageCount; i++) {
+      int flags = input.readByte();
+      String name = input.readUTF();
+      String extension = input.readUTF();
+      String imageDirectory = (flags & OWN_DIRECTORY) != 0 ? input.readUTF() : directory;
+      String imageFile = (flags & OWN_FILE) != 0 ? input.readUTF() : null;
+      Image image =
+          new Image(manager.getImageTable(), name, extension, imageDirectory, null);
+      image.restoreTags(readTagIds(input, tags::get));
+      for (Tag tag : image.getCurrentTags()) {
+        tag.restoreImage(image);
+      }
+      if ((flags & STORED_HISTORY) != 0) {
+        if (histories == null) {
+          throw new IOException("The history of " + name + " is kept in a history store.");
+        }
+        histories.attach(image, readVarInt(input), readVarInt(input));
+        image.setLastChanged(readVarLong(input));
+      } else {
+        image.history().append(readHistory(input, tags::get));
+      }
+      if (imageFile != null) {
+        image.restoreImageFile(new File(imageFile));
+      }
+      image.setManager(manager);
+      manager.addImage(image);
+    }
+    return manager;
+  }
+
+  /**
+   * Writes the last directory chosen, the roots read in and the directory of every {@code
+   * ImageManager}, in order.
+   *
+   * @param output stream to write to.
+   * @param container {@code Container} to write.
+   * @throws IOException if the stream cannot be written.
+   */
+  public static void writeIndex(DataOutput output, Container container) throws IOException {
+    writeHeader(output);
+    File directory = container.getDirectory();
+    output.writeUTF(directory == null ? "" : directory.getPath());
+    writeVarInt(output, container.getRoots().size());
+    for (String root : container.getRoots()) {
+      output.writeUTF(root);
+    }
+    writeVarInt(output, container.getImageManagers().size());
+    for (ImageManager manager : container.getImageManagers()) {
+      output.writeUTF(manager.getDirectory().toString());
+    }
+  }
+
+  /**
+   * Reads an index written by {@code writeIndex}, restoring the last directory chosen and the
+   * roots.
+   *
+   * @param input stream to read from.
+   * @param container {@code Container} to restore the last directory and roots of.
+   * @return directory of every {@code ImageManager}, in order.
+   * @throws IOException if the stream cannot be read.
+   */
+  public static List<String> readIndex(DataInput input, Container container) throws IOException {
+    readHeader(input);
+    String directory = input.readUTF();
+    if (!directory.isEmpty()) {
+      container.setDirectory(new File(directory));
+    }
+    int roots = readVarInt(input);
+    for (int i = 0; i < roots; i++) {
+      container.addRoot(Paths.get(input.readUTF()));
+    }
+    int count = readVarInt(input);
+    List<String> directories = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      directories.add(input.readUTF());
+    }
+    return directories;
+  }
+
+  /**
+   * Writes the history of an {@code Image}: for each entry its time and the {@code Tag(s)} removed
+   * and added.
+   *
+   * @param output stream to write to.
+   * @param history history to write.
+   * @throws IOException if the stream cannot be written or a {@code Tag} has no id.
+   */
+  static void writeHistory(DataOutput output, TagHistory history) throws IOException {
+    writeVarInt(output, history.size());
+    long previousTime = 0;
+    for (int i = 0; i < history.size(); i++) {
+      long time = history.getTime(i);
+      writeVarLong(output, time - previousTime);
+      previousTime = time;
+      writeTagIds(output, history.getRemoved(i));
+      writeTagIds(output, history.getAdded(i));
+    }
+  }
+
+  /**
+   * Reads a history written by {@code writeHistory}.
+   *
+   * @param input stream to read from.
+   * @param tags finds a {@code Tag} by id, or gives null if there is none.
+   * @return the history read.
+   * @throws IOException if the stream cannot be read.
+   */
+  static TagHistory readHistory(DataInput input, IntFunction<Tag> tags) throws IOException {
+    TagHistory history = new TagHistory();
+    int entryCount = readVarInt(input);
+    long time = 0;
+    for (int i = 0; i < entryCount; i++) {
+      time += readVarLong(input);
+      history.record(time, readTagIds(input, tags), readTagIds(input, tags));
+    }
+    return history;
+  }
+
+  /**
+   * Writes the magic number and format version.
+   *
+   * @param output stream to write to.
+   * @throws IOException if the stream cannot be written.
+   */
+  static void writeHeader(DataOutput output) throws IOException {
+    output.writeInt(MAGIC);
+    output.writeByte(VERSION);
+  }
+
+  /**
+   * Checks the magic number and format version of a shard.
+   *
+   * @param input stream to read from.
+   * @throws IOException if the stream cannot be read or is not a shard of this version.
+   */
+  static void readHeader(DataInput input) throws IOException {
+    if (input.readInt() != MAGIC) {
+      throw new IOException("Not a catalog shard.");
+    }
+    byte version = input.readByte();
+    if (version != VERSION) {
+      throw new IOException("Unsupported catalog version " + version + ".");
+    }
+  }
+
+  /**
+   * Writes the ids of a list of {@code Tag(s)}.
+   *
+   * @param output stream to write to.
+   * @param tags {@code Tag(s)} to write.
+   * @throws IOException if the stream cannot be written or a {@code Tag} has no id.
+   */
+  static void writeTagIds(DataOutput output, List<Tag> tags) throws IOException {
+    writeVarInt(output, tags.size());
+    for (Tag tag : tags) {
+      if (tag.getId() == 0) {
+        throw new IOException(tag + " does not belong to the TagManager.");
+      }
+      writeVarInt(output, tag.getId());
+    }
+  }
+
+  /**
+   * Reads a list of {@code Tag(s)} written by {@code writeTagIds}.
+   *
+   * @param input stream to read from.
+   * @param tags finds a {@code Tag} by id, or gives null if there is none.
+   * @return the {@code Tag(s)} read.
+   * @throws IOException if the stream cannot be read.
+   */
+  static ArrayList<Tag> readTagIds(DataInput input, IntFunction<Tag> tags)
+      throws IOException {
+    int count = readVarInt(input);
+    ArrayList<Tag> tagList = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      int id = readVarInt(input);
+      Tag tag = tags.apply(id);
+      if (tag != null) {
+        tagList.add(tag);
+      } else {
+        LOGGER.log(Level.WARNING, "Left out unknown tag " + id + " while reading the catalog.");
+      }
+    }
+    return tagList;
+  }
+
+  /**
+   * Writes a non-negative int in as few bytes as needed, seven bits at a time.
+   *
+   * @param output stream to write to.
+   * @param value int to write.
+   * @throws IOException if the stream cannot be written.
+   */
+  static void writeVarInt(DataOutput output, int value) throws IOException {
+    while ((value & ~0x7f) != 0) {
+      output.writeByte((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    output.writeByte(value);
+  }
+
+  /**
+   * Reads an int written by {@code writeVarInt}.
+   *
+   * @param input stream to read from.
+   * @return int read.
+   * @throws IOException if the stream cannot be read.
+   */
+  static int readVarInt(DataInput input) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      int b = input.readByte();
+      value |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed number in catalog.");
+  }
+
+  /**
+   * Writes a long, which may be negative, in as few bytes as needed.
+   *
+   * @param output stream to write to.
+   * @param value long to write.
+   * @throws IOException if the stream cannot be written.
+   */
+  private static void writeVarLong(DataOutput output, long value) throws IOException {
+    long zigZag = (value << 1) ^ (value >> 63);
+    while ((zigZag & ~0x7fL) != 0) {
+      output.writeByte((int) ((zigZag & 0x7f) | 0x80));
+      zigZag >>>= 7;
+    }
+    output.writeByte((int) zigZag);
+  }
+
+  /**
+   * Reads a long written by {@code writeVarLong}.
+   *
+   * @param input stream to read from.
+   * @return long read.
+   * @throws IOException if the stream cannot be read.
+   */
+  private static long readVarLong(DataInput input) throws IOException {
+    long zigZag = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = input.readByte();
+      zigZag |= (long) (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        return (zigZag >>> 1) ^ -(zigZag & 1);
+      }
+    }
+    throw new IOException("Malformed number in catalog.");
+  }
+
+  /**
+   * Creates a {@code Tag} read from a shard.
+   *
+   * @param name name of the {@code Tag}.
+   * @return the new {@code Tag}.
+   * @throws IOException if the name is not a valid {@code Tag} name.
+   */
+  private static Tag newTag(String name) throws IOException {
+    try {
+      return new Tag(name);
+    } catch (TagNamingException ex) {
+      throw new IOException("Invalid tag in catalog: " + name, ex);
+    }
+  }
+}
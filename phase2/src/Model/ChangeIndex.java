@@ -0,0 +1,96 @@
+package Model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * {@code ChangeIndex} orders {@code Image(s)} by the time of their last change, so those changed
+ * after a time can be found without reading every history. A change adds an entry and leaves the
+ * earlier entry of the {@code Image} in place, so callers skip an {@code Image} found twice and
+ * build a new index once too many entries are left.
+ */
+final class ChangeIndex {
+
+  /** Time of each entry, in epoch milliseconds, in ascending order. */
+  private long[] times = new long[16];
+
+  /** {@code Image} of each entry. */
+  private Image[] images = new Image[16];
+
+  /** Number of entries. */
+  private int size;
+
+  /**
+   * Retrieves the number of entries, including those no longer the last change of their {@code
+   * Image}.
+   *
+   * @return number of entries.
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Adds an entry for a change. Times are nearly always later than every entry, so the entry is
+   * usually put at the end; if the last entry is for the same {@code Image}, it is replaced.
+   *
+   * @param time time of the change, in epoch milliseconds.
+   * @param image {@code Image} changed.
+   */
+  void add(long time, Image image) {
+    if (size > 0 && images[size - 1] == image && times[size - 1] <= time) {
+      times[size - 1] = time;
+      return;
+    }
+    if (size == times.length) {
+      times = Arrays.copyOf(times, size * 2);
+      images = Arrays.copyOf(images, size * 2);
+    }
+    int position = size;
+    if (size > 0 && times[size - 1] > time) {
+      position = firstAfter(time);
+      System.arraycopy(times, position, times, position + 1, size - position);
+      System.arraycopy(images, position, images, position + 1, size - position);
+    }
+    times[position] = time;
+    images[position] = image;
+    size++;
+  }
+
+  /**
+   * Finds the {@code Image(s)} with an entry later than a time, in the order of their entries. An
+   * {@code Image} may be found more than once.
+   *
+   * @param time time in epoch milliseconds.
+   * @return {@code Image(s)} of the later entries.
+   */
+  List<Image> changedAfter(long time) {
+    int start = firstAfter(time);
+    List<Image> found = new ArrayList<>(size - start);
+    for (int i = start; i < size; i++) {
+      found.add(images[i]);
+    }
+    return found;
+  }
+
+  /**
+   * Finds the first entry later than a time.
+   *
+   * @param time time in epoch milliseconds.
+   * @return index of the entry, or {@code size} if there is none.
+   */
+  private int firstAfter(long time) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (times[middle] <= time) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+}
@@ -1,9 +1,17 @@
 package Model;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * {@code Container} stores data for this project. {@code Container} follows a singleton design
@@ -11,26 +19,155 @@ import java.util.List;
  */
 public class Container implements Serializable {
 
+  /** Version of the serialized form, kept so older save.ser files can still be read. */
+  private static final long serialVersionUID = 5851095571446535079L;
+
+  /** Table keeping what is known about every {@code Image}. Made again after reading a save.ser. */
+  private transient ImageTable table = new ImageTable();
+
   /** Contains all instances of ImageManager, each represents a separate directory. */
   private List<ImageManager> imageManagers = new ArrayList<>();
 
+  /** Each {@code ImageManager} by the path of its directory. Rebuilt after reading a save.ser. */
+  private transient Map<String, ImageManager> registry = new HashMap<>();
+
   /** Universal {@code TagManager}. */
   private TagManager tagManager = new TagManager();
 
   /** Keeps track of the last Folder that the user chose. */
   private File directory;
 
+  /** Directories the user read in, whose trees may be watched for changes. */
+  private List<String> roots = new ArrayList<>();
+
   /** Creates new, empty {@code Container}. */
   public Container() {
   }
 
   /**
-   * Adds a new {@code ImageManager} to the collections of {@code ImageManager}.
+   * Adds a new {@code ImageManager} to the collections of {@code ImageManager}, unless one for the
+   * same directory is already there. Its {@code Image(s)} are moved to the table of this {@code
+   * Container}, with new ids.
    *
    * @param im {@code ImageManager} representing a directory.
+   * @return the {@code ImageManager} stored for the directory.
    */
-  public void addImageManager(ImageManager im) {
+  public ImageManager addImageManager(ImageManager im) {
+    ImageManager existing = registry.putIfAbsent(im.getDirectory().toString(), im);
+    if (existing != null) {
+      return existing;
+    }
+    im.moveTo(table);
     imageManagers.add(im);
+    return im;
+  }
+
+  /**
+   * Removes the {@code ImageManager} of a directory that no longer exists, dropping each of its
+   * {@code Image(s)}.
+   *
+   * @param im {@code ImageManager} to remove.
+   */
+  public void dropImageManager(ImageManager im) {
+    if (registry.remove(im.getDirectory().toString(), im)) {
+      imageManagers.remove(im);
+      for (Image image : new ArrayList<>(im.getImages())) {
+        im.dropImage(image);
+      }
+    }
+  }
+
+  /**
+   * Gets the {@code ImageManager} of a directory.
+   *
+   * @param directory path of the directory.
+   * @return the {@code ImageManager}, or null if the directory has not been read in.
+   */
+  public ImageManager getImageManager(Path directory) {
+    return registry.get(directory.toString());
+  }
+
+  /**
+   * Gets the {@code Image} stored in a file, looking up its directory and then its name, so the
+   * cost does not grow with the number of directories or {@code Image(s)}.
+   *
+   * @param file absolute path of the file.
+   * @return the {@code Image}, or null if it has not been read in.
+   */
+  public Image getImage(Path file) {
+    Path parent = file.getParent();
+    ImageManager im = parent == null ? null : registry.get(parent.toString());
+    return im == null ? null : im.getImageByFileName(file.getFileName().toString());
+  }
+
+  /**
+   * Gets the ids of all {@code Image(s)}, e.g. to leave out those of a {@code Tag}.
+   *
+   * @return a new {@code ImageBitmap} with the ids of all {@code Image(s)}.
+   */
+  public ImageBitmap getImageIds() {
+    List<ImageBitmap> level = new ArrayList<>();
+    for (ImageManager im : imageManagers) {
+      level.add(im.getImageIds());
+    }
+    // Combined in pairs, so each id is copied once per level rather than once per directory
+    while (level.size() > 1) {
+      List<ImageBitmap> next = new ArrayList<>();
+      for (int i = 0; i < level.size(); i += 2) {
+        next.add(i + 1 < level.size() ? level.get(i).or(level.get(i + 1)) : level.get(i));
+      }
+      level = next;
+    }
+    return level.isEmpty() ? new ImageBitmap() : level.get(0).copy();
+  }
+
+  /**
+   * Gets the {@code Image(s)} with the given ids, in the order of their ids.
+   *
+   * @param ids ids of the {@code Image(s)}, e.g. combined from those of several {@code Tag(s)}.
+   * @return list of the {@code Image(s)}.
+   */
+  public ArrayList<Image> getImages(ImageBitmap ids) {
+    return streamImages(ids).collect(Collectors.toCollection(ArrayList::new));
+  }
+
+  /**
+   * Streams the {@code Image(s)} with the given ids, in the order of their ids. Each {@code Image}
+   * is looked up only when it is reached, so the first can be shown before the rest are found.
+   *
+   * @param ids ids of the {@code Image(s)}; must not change while streaming.
+   * @return stream of the {@code Image(s)}.
+   */
+  public Stream<Image> streamImages(ImageBitmap ids) {
+    return ids.stream().mapToObj(table::image).filter(Objects::nonNull);
+  }
+
+  /**
+   * Gets the {@code Image(s)} of a directory and its subdirectories whose {@code Tag(s)} changed
+   * after a time.
+   *
+   * @param directory path of the directory, or null for every directory.
+   * @param time time in epoch milliseconds.
+   * @return {@code Image(s)} changed after the time.
+   */
+  public List<Image> getImagesChangedAfter(Path directory, long time) {
+    List<Image> changed = new ArrayList<>();
+    for (ImageManager im : imageManagers) {
+      if (directory == null || im.getDirectory().startsWith(directory)) {
+        changed.addAll(im.getImagesChangedAfter(time));
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * Gets the table keeping what is known about every {@code Image}, e.g. to read an {@code
+   * ImageManager} straight into it.
+   *
+   * @return the table.
+   */
+  ImageTable getImageTable() {
+    return table;
   }
 
   /**
@@ -42,6 +179,30 @@ public class Container implements Serializable {
     return imageManagers;
   }
 
+  /**
+   * Registers a directory the user read in. A directory already registered is not added twice.
+   *
+   * @param root path of the directory.
+   */
+  public void addRoot(Path root) {
+    if (!getRoots().contains(root.toString())) {
+      roots.add(root.toString());
+    }
+  }
+
+  /**
+   * Gets the directories the user read in.
+   *
+   * @return paths of the directories.
+   */
+  public List<String> getRoots() {
+    // Containers saved before roots were registered have none
+    if (roots == null) {
+      roots = new ArrayList<>();
+    }
+    return roots;
+  }
+
   /**
    * Gets the {@code Container('s)} {@code TagManager}.
    *
@@ -61,6 +222,33 @@ public class Container implements Serializable {
     return directory;
   }
 
+  /**
+   * Reads a {@code Container} from a save.ser file, moving every {@code Image} read to a new table.
+   * Older versions added a second {@code ImageManager} for a directory each time it was read in;
+   * these are merged into the first.
+   *
+   * @param input stream to read from.
+   * @throws IOException if the stream cannot be read.
+   * @throws ClassNotFoundException if a class in the stream is missing.
+   */
+  private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+    input.defaultReadObject();
+    table = new ImageTable();
+    registry = new HashMap<>();
+    List<ImageManager> managers = imageManagers;
+    imageManagers = new ArrayList<>();
+    for (ImageManager im : managers) {
+      ImageManager existing = addImageManager(im);
+      if (existing != im) {
+        im.moveTo(table);
+        existing.merge(im);
+      }
+    }
+    for (Tag tag : tagManager.getTags()) {
+      tag.moveImages(table);
+    }
+  }
+
   /**
    * Sets the last directory that the user chose.
    *
@@ -0,0 +1,339 @@
+package Model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@code HistoryStore} keeps the history of each {@code Image} on disk, next to the shards of the
+ * catalog, so only the current {@code Tag(s)} stay in memory. Each checkpoint writes one new file
+ * holding the histories that changed since the last one; a file is never changed once written.
+ * The history of an {@code Image} is read back when it is asked for, and dropped from memory again
+ * at the next checkpoint.
+ */
+public class HistoryStore {
+
+  /** Provides access to the logger. */
+  private static final Logger LOGGER = Logger.getLogger(Log.class.getName());
+
+  /** Ending of the name of every history file. */
+  private static final String SUFFIX = ".history";
+
+  /** Number of files in use above which they are merged into one. */
+  private static final int MAX_FILES = 16;
+
+  /** Directory holding the history files. */
+  private File directory;
+
+  /** {@code TagManager} whose {@code Tag(s)} the histories refer to by id. */
+  private TagManager tagManager;
+
+  /** Number of the last file started. */
+  private int lastFile;
+
+  /** Contents of the files encoded but not yet written to disk, by number. */
+  private Map<Integer, byte[]> unwritten = new HashMap<>();
+
+  /** Files opened for reading, by number. */
+  private Map<Integer, FileChannel> openFiles = new HashMap<>();
+
+  /** Number of {@code Image(s)} read from the catalog whose history is in each file. */
+  private Map<Integer, Integer> uses = new HashMap<>();
+
+  /** Files whose histories are copied into the next file, so they are no longer used. */
+  private Set<Integer> merging = new HashSet<>();
+
+  /** Histories of the file being encoded, or null if none is being encoded. */
+  private ByteArrayOutputStream next;
+
+  /** {@code Image(s)} whose history was encoded into the next file. */
+  private List<Image> stored = new ArrayList<>();
+
+  /** {@code Image(s)} whose history was read back since the last checkpoint. */
+  private List<Image> loaded = new ArrayList<>();
+
+  /**
+   * Creates a {@code HistoryStore} for the history files in a directory.
+   *
+   * @param directory directory holding the history files.
+   * @param tagManager {@code TagManager} whose {@code Tag(s)} the histories refer to.
+   */
+  public HistoryStore(File directory, TagManager tagManager) {
+    this.directory = directory;
+    this.tagManager = tagManager;
+    for (int number : listFiles()) {
+      lastFile = Math.max(lastFile, number);
+    }
+  }
+
+  /**
+   * Checks whether a shard of the catalog is a history file.
+   *
+   * @param name file name of the shard.
+   * @return true if it is a history file, false otherwise.
+   */
+  public static boolean isHistoryFile(String name) {
+    return name.endsWith(SUFFIX);
+  }
+
+  /**
+   * Deletes the history files that no {@code Image} read from the catalog uses, e.g. those left by
+   * a merge. Should be called once the whole catalog is read, before anything is stored.
+   */
+  public void deleteUnusedFiles() {
+    for (int number : listFiles()) {
+      if (!uses.containsKey(number) && !new File(directory, number + SUFFIX).delete()) {
+        LOGGER.log(Level.WARNING, "Could not delete unused history file " + number + SUFFIX);
+      }
+    }
+  }
+
+  /**
+   * Checks whether every {@code ImageManager} read from the catalog should be stored again at the
+   * next checkpoint, as the histories are spread over too many files. The files are then merged
+   * into the next one.
+   *
+   * @return true if every {@code ImageManager} should be stored again.
+   */
+  public boolean needsRewrite() {
+    if (uses.size() > MAX_FILES) {
+      merging.addAll(uses.keySet());
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Starts encoding a new history file. Every {@code ImageManager} encoded until {@code finish}
+   * stores its histories in it.
+   *
+   * @throws IOException if the file cannot be encoded.
+   */
+  public void start() throws IOException {
+    next = new ByteArrayOutputStream();
+    stored.clear();
+    CatalogCodec.writeHeader(new DataOutputStream(next));
+  }
+
+  /**
+   * Finishes the history file started by {@code start}, putting it in {@code shards} along with any
+   * earlier file that is not on disk yet. The histories that were stored or read back are dropped
+   * from memory, as they can now be read from the files.
+   *
+   * @param shards contents of the shards to write, by file name.
+   */
+  public synchronized void finish(Map<String, byte[]> shards) {
+    if (!stored.isEmpty()) {
+      unwritten.put(++lastFile, next.toByteArray());
+    }
+    for (Map.Entry<Integer, byte[]> file : unwritten.entrySet()) {
+      shards.put(file.getKey() + SUFFIX, file.getValue());
+    }
+    for (Image image : stored) {
+      image.evictHistory();
+    }
+    for (Image image : loaded) {
+      image.evictHistory();
+    }
+    merging.clear();
+    stored.clear();
+    loaded.clear();
+    next = null;
+  }
+
+  /**
+   * Records that a shard was written to disk. A history file written no longer needs to be kept in
+   * memory.
+   *
+   * @param name file name of the shard.
+   */
+  public synchronized void written(String name) {
+    if (isHistoryFile(name)) {
+      unwritten.remove(Integer.parseInt(name.substring(0, name.length() - SUFFIX.length())));
+    }
+  }
+
+  /** Closes the files opened for reading. */
+  public void close() {
+    for (FileChannel file : openFiles.values()) {
+      try {
+        file.close();
+      } catch (IOException ex) {
+        LOGGER.log(Level.WARNING, ex.getMessage());
+      }
+    }
+    openFiles.clear();
+  }
+
+  /**
+   * Points an {@code Image} read from the catalog at its history.
+   *
+   * @param image {@code Image} read.
+   * @param file number of the file holding the history.
+   * @param offset position of the history in the file.
+   */
+  void attach(Image image, int file, int offset) {
+    image.setStoredHistory(this, file, offset);
+    image.evictHistory();
+    uses.merge(file, 1, Integer::sum);
+  }
+
+  /**
+   * Counts the {@code Image(s)} of a table restored from a mapped catalog whose history is in each
+   * file, as they are not attached one by one.
+   *
+   * @param counts number of {@code Image(s)}, by number of the file.
+   */
+  void attachFiles(Map<Integer, Integer> counts) {
+    for (Map.Entry<Integer, Integer> count : counts.entrySet()) {
+      uses.merge(count.getKey(), count.getValue(), Integer::sum);
+    }
+  }
+
+  /**
+   * Checks whether the history of a row is stored here and need not be stored again, without
+   * making the {@code Image} of a row restored from a mapped catalog.
+   *
+   * @param table table holding the row.
+   * @param id id of the row.
+   * @return true if the history is stored, has not changed since and is not being merged.
+   */
+  boolean isStored(ImageTable table, int id) {
+    return table.historyStore(id) == this
+        && !table.historyChanged(id)
+        && !merging.contains(table.historyFile(id));
+  }
+
+  /**
+   * Stores the history of an {@code Image} in the file being encoded, unless it is already stored
+   * and has not changed since.
+   *
+   * @param image {@code Image} whose history is stored.
+   * @throws IOException if the history cannot be read back or encoded.
+   */
+  void store(Image image) throws IOException {
+    if (isStored(image.getTable(), image.getId())) {
+      return;
+    }
+    byte[] record;
+    if (image.getHistoryStore() == this && !image.isHistoryChanged()) {
+      record = read(image.getHistoryFile(), image.getHistoryOffset());
+    } else {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      CatalogCodec.writeHistory(new DataOutputStream(bytes), image.history());
+      record = bytes.toByteArray();
+    }
+    int offset = next.size();
+    DataOutputStream output = new DataOutputStream(next);
+    output.writeInt(record.length);
+    output.write(record);
+    image.setStoredHistory(this, lastFile + 1, offset);
+    stored.add(image);
+  }
+
+  /**
+   * Reads back the history of an {@code Image}.
+   *
+   * @param image {@code Image} whose history is read.
+   * @param file number of the file holding the history.
+   * @param offset position of the history in the file.
+   * @return the history read.
+   * @throws IOException if the history cannot be read.
+   */
+  TagHistory load(Image image, int file, int offset) throws IOException {
+    byte[] record = read(file, offset);
+    TagHistory history =
+        CatalogCodec.readHistory(
+            new DataInputStream(new ByteArrayInputStream(record)), tagManager::getHistoryTag);
+    loaded.add(image);
+    return history;
+  }
+
+  /**
+   * Reads the encoded history at a position of a file.
+   *
+   * @param file number of the file.
+   * @param offset position of the history in the file.
+   * @return the encoded history.
+   * @throws IOException if the file cannot be read.
+   */
+  private byte[] read(int file, int offset) throws IOException {
+    byte[] contents;
+    synchronized (this) {
+      contents = unwritten.get(file);
+    }
+    if (contents != null) {
+      ByteBuffer buffer = ByteBuffer.wrap(contents);
+      byte[] record = new byte[buffer.getInt(offset)];
+      buffer.position(offset + Integer.BYTES);
+      buffer.get(record);
+      return record;
+    }
+    FileChannel channel = openFiles.get(file);
+    if (channel == null) {
+      channel =
+          FileChannel.open(new File(directory, file + SUFFIX).toPath(), StandardOpenOption.READ);
+      openFiles.put(file, channel);
+    }
+    ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+    readFully(channel, length, offset);
+    ByteBuffer record = ByteBuffer.allocate(length.getInt(0));
+    readFully(channel, record, offset + Integer.BYTES);
+    return record.array();
+  }
+
+  /**
+   * Fills a buffer from a position of a file.
+   *
+   * @param channel file to read.
+   * @param buffer buffer to fill.
+   * @param position position to read from.
+   * @throws IOException if the file cannot be read or ends first.
+   */
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position + buffer.position());
+      if (read < 0) {
+        throw new IOException("History file ends early.");
+      }
+    }
+  }
+
+  /**
+   * Lists the numbers of the history files in the directory.
+   *
+   * @return numbers of the history files.
+   */
+  private List<Integer> listFiles() {
+    List<Integer> numbers = new ArrayList<>();
+    String[] names = directory.list();
+    if (names == null) {
+      return numbers;
+    }
+    for (String name : names) {
+      if (isHistoryFile(name)) {
+        try {
+          numbers.add(Integer.parseInt(name.substring(0, name.length() - SUFFIX.length())));
+        } catch (NumberFormatException ex) {
+          LOGGER.log(Level.WARNING, "Ignored unexpected history file " + name);
+        }
+      }
+    }
+    return numbers;
+  }
+}
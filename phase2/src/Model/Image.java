@@ -5,57 +5,64 @@ import javafx.util.Pair;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * {@code Image} represents an image in the directory. It retains the file path to the image,
- * current {@code Tag(s)}, and previous {@code Tag(s)}.
+ * current {@code Tag(s)}, and previous {@code Tag(s)}. An {@code Image} holds only its table and
+ * id; its name, directory, {@code Tag(s)} and history are kept in the {@code ImageTable} of its
+ * {@code Container}.
  */
 public class Image implements Serializable {
 
-  /** Provides access to the logger. */
-  private static final Logger LOGGER = Logger.getLogger(Log.class.getName());
+  /** Version of the serialized form, kept so older save.ser files can still be read. */
+  private static final long serialVersionUID = -2580631613329535284L;
 
-  /** Name of the {@code Image}. Does not include {@code Tag(s)}. */
-  private String name;
+  /** Fields of an {@code Image} in save.ser files, now kept in {@code ImageTable}. */
+  private static final ObjectStreamField[] serialPersistentFields = {
+    new ObjectStreamField("name", String.class),
+    new ObjectStreamField("directory", String.class),
+    new ObjectStreamField("extension", String.class),
+    new ObjectStreamField("currentTags", ArrayList.class),
+    new ObjectStreamField("lifeTimeTags", ArrayList.class),
+    new ObjectStreamField("imageFile", File.class),
+    new ObjectStreamField("manager", ImageManager.class)
+  };
 
-  /** Path to directory in which {@code Image} is stored. */
-  private String directory;
+  /** Provides access to the logger. */
+  private static final Logger LOGGER = Logger.getLogger(Log.class.getName());
 
-  /** The type of extension {@code Image} uses: .gif, .jpg, .tiff, .png, .jpeg. */
-  private String extension;
+  /** Table keeping what is known about this {@code Image}; null until one read is moved there. */
+  private transient ImageTable table;
 
-  /** The {@code Tag(s)} currently assigned to {@code Image}. */
-  private ArrayList<Tag> currentTags = new ArrayList<>();
+  /** Number identifying this {@code Image} in {@code table} and in an {@code ImageBitmap}. */
+  private transient int id;
 
   /**
-   * History of {@code Tag(s)} assigned to {@code Image} over its lifetime. First String in the Pair
-   * is the time of name change, second String is the new name.
+   * Fields read from a save.ser file, in the order of {@code serialPersistentFields}, until this
+   * {@code Image} is moved to a table.
    */
-  private ArrayList<Pair<String, ArrayList<Tag>>> lifeTimeTags = new ArrayList<>();
-
-  /** {@code Image('s)} file; only modified when method renameFile is called. */
-  private File imageFile;
-
-  /** {@code ImageManager} where this {@code Image} will be stored. */
-  private ImageManager manager;
+  private transient Object[] legacy;
 
   /**
    * Creates a new {@code Image} from a File object, breaking the file name into its name and
-   * extension, and storing the Path to the directory in which the image resides.
+   * extension, and storing the Path to the directory in which the image resides. The {@code Image}
+   * has a table of its own until it is added to an {@code ImageManager}.
    *
    * @param image File to be stored as {@code Image}.
    */
   public Image(File image) {
-    breakName(image);
-    Path filePath = image.getAbsoluteFile().toPath();
-    directory = filePath.getParent().toString();
-    updateLifeTimeTags();
-    imageFile = image;
+    this(ImageTable.single(), image, Collections.emptyList());
   }
 
   /**
@@ -67,28 +74,70 @@ public class Image implements Serializable {
    * @param existingTags {@code Tag(s)} to be added to {@code Image}.
    */
   public Image(File image, ArrayList<Tag> existingTags) {
-    breakName(image);
-    Path filePath = image.getAbsoluteFile().toPath();
-    directory = filePath.getParent().toString();
-    for (Tag tag : existingTags) {
-      if (!currentTags.contains(tag)) {
-        currentTags.add(tag);
-        tag.tagImage(this);
-      }
+    this(ImageTable.single(), image, existingTags);
+  }
+
+  /**
+   * Creates a new {@code Image} from a File object in a table, breaking the file name into its name
+   * and extension. Adds on additional {@code Tag(s)} found in existingTags.
+   *
+   * @param table table of the {@code ImageManager} the {@code Image} is added to.
+   * @param image File to be stored as {@code Image}.
+   * @param existingTags {@code Tag(s)} to be added to {@code Image}.
+   */
+  Image(ImageTable table, File image, List<Tag> existingTags) {
+    this.table = table;
+    id = register(image);
+    TagSet tags = TagSet.of(existingTags);
+    table.setTags(id, tags);
+    for (Tag tag : tags) {
+      tag.tagImage(this);
     }
-    updateLifeTimeTags();
-    imageFile = image;
+    updateLifeTimeTags(Collections.emptyList(), tags.asList());
+    setImageFile(image);
   }
 
   /**
-   * Separates the name of File into its name and its extension.
+   * Creates an {@code Image} read back from a saved catalog. {@code Tag(s)} and history are restored
+   * separately by {@code CatalogCodec}.
+   *
+   * @param table table of the {@code ImageManager} read.
+   * @param name Name of the {@code Image}, without {@code Tag(s)}.
+   * @param extension Extension of the {@code Image}.
+   * @param directory Path to the directory in which the {@code Image} is stored.
+   * @param image File of the {@code Image}, or null for the one given by its name.
+   */
+  Image(ImageTable table, String name, String extension, String directory, File image) {
+    this.table = table;
+    id = table.add(this, name, extension, directory);
+    if (image != null) {
+      setImageFile(image);
+    }
+  }
+
+  /**
+   * Creates the {@code Image} of a row restored from a mapped catalog, which already holds
+   * everything known about it.
+   *
+   * @param table table holding the row.
+   * @param id id of the row.
+   */
+  Image(ImageTable table, int id) {
+    this.table = table;
+    this.id = id;
+  }
+
+  /**
+   * Gives this {@code Image} a row in its table, separating the name of File into its name and its
+   * extension.
    *
    * @param image File with name.
+   * @return id of this {@code Image}.
    */
-  private void breakName(File image) {
+  private int register(File image) {
     String[] parts = image.getName().split("\\.");
-    name = parts[0].split("\\s@")[0];
-    extension = parts[1];
+    Path directory = image.getAbsoluteFile().toPath().getParent();
+    return table.add(this, parts[0].split("\\s@")[0], parts[1], directory.toString());
   }
 
   /**
@@ -99,11 +148,14 @@ public class Image implements Serializable {
    * @return {@code Tag} if {@code Tag} was new, null otherwise.
    */
   public Tag addTag(Tag newTag) {
-    if (!currentTags.contains(newTag)) {
-      currentTags.add(newTag);
+    TagSet tags = tags();
+    TagSet added = tags.with(newTag);
+    if (added != tags) {
+      keepImageFile();
+      table.setTags(id, added);
       newTag.tagImage(this);
-      updateLifeTimeTags();
-      LOGGER.log(Level.CONFIG, "Added " + newTag.toString() + " to " + this.name);
+      updateLifeTimeTags(Collections.emptyList(), Collections.singletonList(newTag));
+      LOGGER.log(Level.CONFIG, "Added " + newTag.toString() + " to " + getName());
       return newTag;
     }
     return null;
@@ -117,15 +169,20 @@ public class Image implements Serializable {
    * @param updateLog Whether log of {@code Image} should be updated.
    */
   public void removeTag(Tag rmTag, boolean updateLog, boolean updateTaggedImages) {
-    if (currentTags.contains(rmTag)) {
-      currentTags.remove(rmTag);
+    TagSet tags = tags();
+    TagSet removed = tags.without(rmTag);
+    if (removed != tags) {
+      keepImageFile();
+      table.setTags(id, removed);
       if (updateTaggedImages) {
         rmTag.untagImage(this);
       }
       if (updateLog) {
-        updateLifeTimeTags();
+        updateLifeTimeTags(Collections.singletonList(rmTag), Collections.emptyList());
+      } else {
+        table.addUnloggedRemoval(id, rmTag);
       }
-      LOGGER.log(Level.CONFIG, "Removed " + rmTag.toString() + " from " + this.name);
+      LOGGER.log(Level.CONFIG, "Removed " + rmTag.toString() + " from " + getName());
     }
   }
 
@@ -139,46 +196,156 @@ public class Image implements Serializable {
     removeTag(rmTag, true, true);
   }
 
-  /** Removes all {@code Tag(s)} from this {@code Image}. Updates log only once. */
+  /**
+   * Removes all {@code Tag(s)} from this {@code Image}. Updates log only once, and not at all if it
+   * has none.
+   */
   public void removeAllTags() {
-    for (Tag tag : currentTags) {
+    TagSet tags = tags();
+    if (tags == TagSet.EMPTY) {
+      return;
+    }
+    for (Tag tag : tags) {
       tag.untagImage(this);
     }
-    currentTags.clear();
-    updateLifeTimeTags();
+    keepImageFile();
+    table.setTags(id, TagSet.EMPTY);
+    updateLifeTimeTags(tags.asList(), Collections.emptyList());
+  }
+
+  /**
+   * Replaces the {@code Tag(s)} of {@code Image} with those a change read back from a journal left
+   * it with, updating the log with the time the change was made rather than the current time.
+   * Nothing is changed if the {@code Tag(s)} are already the same, in the same order.
+   *
+   * @param newCurrentTags {@code Tag(s)} to assign, in order.
+   * @param time time the change was made, in epoch milliseconds.
+   * @return true if the {@code Tag(s)} changed, false otherwise.
+   */
+  public boolean replayTags(List<Tag> newCurrentTags, long time) {
+    TagSet newTags = TagSet.of(newCurrentTags);
+    if (newTags == tags()) {
+      return false;
+    }
+    replaceTags(newTags, time);
+    return true;
   }
 
-  /** Renames file according to updated name. */
-  public void renameFile() {
-    Path source = imageFile.toPath();
+  /**
+   * Assigns the {@code Tag(s)} read back from a saved catalog. The {@code Tag(s)} are not told, and
+   * neither the log nor the File is updated.
+   *
+   * @param restored {@code Tag(s)} assigned to {@code Image}, in order.
+   */
+  void restoreTags(List<Tag> restored) {
+    table.setTags(id, TagSet.of(restored));
+  }
+
+  /**
+   * Renames file according to updated name. The File is only updated once the file is renamed.
+   *
+   * @throws IOException if the file cannot be renamed.
+   */
+  public void renameFile() throws IOException {
+    Path source = getImageFile().toPath();
+    Path target = source.resolveSibling(this.toString());
     try {
-      Files.move(source, source.resolveSibling(this.toString()));
-    } catch (Exception ex) {
-      //TODO: log exception?
+      Files.move(source, target);
+    } catch (IOException ex) {
+      LOGGER.log(Level.WARNING, "Could not rename " + source + ": " + ex.getMessage());
+      throw ex;
     }
+    setImageFile(target.toFile());
   }
 
-  /** Updates the log lifeTimeTags with current time, date and {@code Tag(s)}. */
-  private void updateLifeTimeTags() {
-    Pair<String, ArrayList<Tag>> logToAdd =
-        new Pair<>(LocalDateTime.now().toString(), new ArrayList<>(currentTags));
-    lifeTimeTags.add(logToAdd);
+  /**
+   * Updates the log with the current time and the {@code Tag(s)} removed and added, along with any
+   * removed earlier without updating it.
+   *
+   * @param removed {@code Tag(s)} removed.
+   * @param added {@code Tag(s)} added, in order.
+   */
+  private void updateLifeTimeTags(Collection<Tag> removed, Collection<Tag> added) {
+    updateLifeTimeTags(removed, added, System.currentTimeMillis());
+  }
+
+  /**
+   * Updates the log with the {@code Tag(s)} removed and added at a time, along with any removed
+   * earlier without updating it.
+   *
+   * @param removed {@code Tag(s)} removed.
+   * @param added {@code Tag(s)} added, in order.
+   * @param time time of the change, in epoch milliseconds.
+   */
+  private void updateLifeTimeTags(Collection<Tag> removed, Collection<Tag> added, long time) {
+    ArrayList<Tag> unloggedRemovals = table.takeUnloggedRemovals(id);
+    if (unloggedRemovals != null) {
+      unloggedRemovals.addAll(removed);
+      removed = unloggedRemovals;
+    }
+    TagHistory target = table.history(id);
+    if (target == null && table.historyStore(id) != null) {
+      target = table.newHistory(id);
+    } else if (target == null) {
+      target = history();
+    }
+    table.setLastChanged(id, time);
+    target.record(time, removed, added);
+    table.setHistoryChanged(id, true);
+    ImageManager manager = getManager();
+    if (manager != null) {
+      manager.imageChanged(this);
+    }
   }
 
   /**
    * Resets {@code Tag(s)} of {@code Image} to those at given index in the log.
    *
-   * @param log Index of {@code Tag} list to revert to in lifeTimeTags.
+   * @param log Index of the entry in the log to revert to.
    */
   public void resetTags(int log) {
-    ArrayList<Tag> newCurrentTags = new ArrayList<>();
-    for (Object tag : lifeTimeTags.get(log).getValue()) {
-      if (tag instanceof Tag) {
-        newCurrentTags.add((Tag) tag);
+    replaceTags(TagSet.of(history().getTags(log)), System.currentTimeMillis());
+  }
+
+  /**
+   * Replaces the {@code Tag(s)} of {@code Image} with others, updating the log once. Nothing is
+   * changed if the {@code Tag(s)} are already the same, in the same order.
+   *
+   * @param newCurrentTags {@code Tag(s)} to assign, in order.
+   * @return true if the {@code Tag(s)} changed, false otherwise.
+   */
+  public boolean setTags(List<Tag> newCurrentTags) {
+    TagSet newTags = TagSet.of(newCurrentTags);
+    if (newTags == tags()) {
+      return false;
+    }
+    replaceTags(newTags, System.currentTimeMillis());
+    return true;
+  }
+
+  /**
+   * Replaces the {@code Tag(s)} of {@code Image} with others, updating the log with the {@code
+   * Tag(s)} removed and added.
+   *
+   * @param newTags {@code Tag(s)} to assign.
+   * @param time time of the change, in epoch milliseconds.
+   */
+  private void replaceTags(TagSet newTags, long time) {
+    TagSet tags = tags();
+    for (Tag tag : tags) {
+      if (!newTags.contains(tag)) {
+        tag.untagImage(this);
       }
     }
-    currentTags = newCurrentTags;
-    updateLifeTimeTags();
+    for (Tag tag : newTags) {
+      tag.tagImage(this);
+    }
+    List<Tag> removed = new ArrayList<>();
+    List<Tag> added = new ArrayList<>();
+    TagHistory.diff(tags.asList(), newTags.asList(), removed, added);
+    keepImageFile();
+    table.setTags(id, newTags);
+    updateLifeTimeTags(removed, added, time);
   }
 
   /**
@@ -187,16 +354,31 @@ public class Image implements Serializable {
    * @param manager new {@code ImageManager} for this {@code Image}.
    */
   public void setManager(ImageManager manager) {
-    this.manager = manager;
+    table.setManager(id, manager);
   }
 
   /**
-   * Sets {@code Image('s)} file. Used when {@code Image} is moved or renamed.
+   * Sets {@code Image('s)} file. Used when {@code Image} is moved or renamed. Nothing is kept for a
+   * File that is the one given by the name of the {@code Image}.
    *
    * @param imageFile File to be set to.
    */
   public void setImageFile(File imageFile) {
-    this.imageFile = imageFile;
+    if (imageFile == null || imageFile.getPath().equals(defaultFile().getPath())) {
+      table.setOwnFile(id, null);
+    } else {
+      table.setOwnFile(id, imageFile);
+    }
+  }
+
+  /**
+   * Sets the File read back from a saved catalog, which differs from the one given by the name of
+   * the {@code Image}.
+   *
+   * @param imageFile File of the {@code Image}.
+   */
+  void restoreImageFile(File imageFile) {
+    table.setOwnFile(id, imageFile);
   }
 
   /**
@@ -205,7 +387,8 @@ public class Image implements Serializable {
    * @param directory new directory the {@code Image} belongs to.
    */
   public void setDirectory(String directory) {
-    this.directory = directory;
+    keepImageFile();
+    table.setDirectory(id, directory);
   }
 
   /**
@@ -215,8 +398,11 @@ public class Image implements Serializable {
    */
   public ArrayList<String> getNameHistory() {
     ArrayList<String> nameHistory = new ArrayList<>();
-    for (Pair<String, ArrayList<Tag>> entry : lifeTimeTags) {
-      nameHistory.add(entry.getKey() + ":   " + getNameFromTags(entry.getValue()));
+    LinkedHashSet<Tag> entryTags = new LinkedHashSet<>();
+    TagHistory history = history();
+    for (int i = 0; i < history.size(); i++) {
+      history.apply(i, entryTags);
+      nameHistory.add(history.getTimeString(i) + ":   " + getNameFromTags(entryTags));
     }
     return nameHistory;
   }
@@ -227,13 +413,13 @@ public class Image implements Serializable {
    * @param tags List of {@code Tag(s)} to be associated with image's name.
    * @return Name of image with given {@code Tag(s)}.
    */
-  private String getNameFromTags(ArrayList<Tag> tags) {
-    StringBuilder newName = new StringBuilder().append(name);
+  private String getNameFromTags(Collection<Tag> tags) {
+    StringBuilder newName = new StringBuilder().append(getName());
     for (Tag tag : tags) {
       newName.append(" ");
       newName.append(tag.toString());
     }
-    return newName.toString() + "." + extension;
+    return newName.toString() + "." + getExtension();
   }
 
   /**
@@ -243,15 +429,16 @@ public class Image implements Serializable {
    */
   public ArrayList<String> getLog() {
     ArrayList<String> list = new ArrayList<>();
-    int previousIndex = 0;
-    int nextIndex = 1;
-    while (nextIndex < lifeTimeTags.size()) {
-      String oldName = getNameFromTags(lifeTimeTags.get(previousIndex).getValue());
-      String time = lifeTimeTags.get(nextIndex).getKey();
-      String newName = getNameFromTags(lifeTimeTags.get(nextIndex).getValue());
-      list.add(time + ":   " + oldName + " -> " + newName);
-      previousIndex++;
-      nextIndex++;
+    LinkedHashSet<Tag> entryTags = new LinkedHashSet<>();
+    String oldName = null;
+    TagHistory history = history();
+    for (int i = 0; i < history.size(); i++) {
+      history.apply(i, entryTags);
+      String newName = getNameFromTags(entryTags);
+      if (oldName != null) {
+        list.add(history.getTimeString(i) + ":   " + oldName + " -> " + newName);
+      }
+      oldName = newName;
     }
     return list;
   }
@@ -262,7 +449,81 @@ public class Image implements Serializable {
    * @return {@code Image('s)} name.
    */
   public String getName() {
-    return name;
+    return table.name(id);
+  }
+
+  /**
+   * Retrieves {@code Image('s)} extension.
+   *
+   * @return {@code Image('s)} extension, without the dot.
+   */
+  public String getExtension() {
+    return table.extension(id);
+  }
+
+  /**
+   * Retrieves the number identifying this {@code Image} in an {@code ImageBitmap}.
+   *
+   * @return id of {@code Image}, at least 1.
+   */
+  public int getId() {
+    return id;
+  }
+
+  /**
+   * Retrieves the table keeping what is known about this {@code Image}.
+   *
+   * @return the table, or null for an {@code Image} read from a save.ser file until it is moved.
+   */
+  ImageTable getTable() {
+    return table;
+  }
+
+  /**
+   * Moves this {@code Image} to another table, e.g. that of the {@code Container} its {@code
+   * ImageManager} is added to, giving it a new id there. Its {@code Tag(s)} are told of the new id.
+   * An {@code Image} read from a save.ser file is given its first row.
+   *
+   * @param target the table.
+   */
+  void moveTo(ImageTable target) {
+    if (table == target) {
+      return;
+    }
+    if (table == null) {
+      readLegacy(target);
+      return;
+    }
+    List<Tag> currentTags = getCurrentTags();
+    for (Tag tag : currentTags) {
+      tag.untagImage(this);
+    }
+    copyTo(target);
+    for (Tag tag : currentTags) {
+      tag.tagImage(this);
+    }
+  }
+
+  /**
+   * Gives back the id of this {@code Image} once it is no longer in the Model. The {@code Image} is
+   * moved to a table of its own, so it can still be shown. Its {@code Tag(s)} must already be told.
+   */
+  void releaseId() {
+    copyTo(ImageTable.single());
+  }
+
+  /**
+   * Moves the row of this {@code Image} to another table, giving back its id in the table it
+   * leaves.
+   *
+   * @param target the table.
+   */
+  private void copyTo(ImageTable target) {
+    ImageTable source = table;
+    int sourceId = id;
+    id = target.copy(this, source, sourceId);
+    table = target;
+    source.release(sourceId);
   }
 
   /**
@@ -271,34 +532,239 @@ public class Image implements Serializable {
    * @return {@code Image('s)} {@code ImageManager}.
    */
   public ImageManager getManager() {
-    return manager;
+    return table.manager(id);
   }
 
   /**
-   * Gets all {@code Tag(s)} ever assigned to this {@code Image} during its lifetime.
+   * Gets all {@code Tag(s)} ever assigned to this {@code Image} during its lifetime. The list is
+   * rebuilt from the history on every call; use getHistorySize if only the length is needed.
    *
-   * @return list of all {@code Tag(s)} ever assigned.
+   * @return list of the time of each change and the {@code Tag(s)} after it.
    */
   public ArrayList<Pair<String, ArrayList<Tag>>> getLifeTimeTags() {
+    TagHistory history = history();
+    ArrayList<Pair<String, ArrayList<Tag>>> lifeTimeTags = new ArrayList<>(history.size());
+    LinkedHashSet<Tag> entryTags = new LinkedHashSet<>();
+    for (int i = 0; i < history.size(); i++) {
+      history.apply(i, entryTags);
+      lifeTimeTags.add(new Pair<>(history.getTimeString(i), new ArrayList<>(entryTags)));
+    }
     return lifeTimeTags;
   }
 
+  /**
+   * Gets the number of entries in the log, one for each change of {@code Tag(s)}.
+   *
+   * @return number of entries.
+   */
+  public int getHistorySize() {
+    return history().size();
+  }
+
+  /**
+   * Gets the time the {@code Tag(s)} last changed. Known without reading back the history, except
+   * for an {@code Image} read from an older catalog.
+   *
+   * @return time of the last entry in the log, in epoch milliseconds, or 0 if there is none.
+   */
+  public long getLastChanged() {
+    long lastChanged = table.lastChanged(id);
+    if (lastChanged == 0) {
+      TagHistory entries = history();
+      if (entries.size() > 0) {
+        lastChanged = entries.getTime(entries.size() - 1);
+        table.setLastChanged(id, lastChanged);
+      }
+    }
+    return lastChanged;
+  }
+
+  /**
+   * Sets the time the {@code Tag(s)} last changed, as read back from a saved catalog.
+   *
+   * @param lastChanged time of the last entry in the log, in epoch milliseconds.
+   */
+  void setLastChanged(long lastChanged) {
+    table.setLastChanged(id, lastChanged);
+  }
+
+  /**
+   * Gets the {@code Tag(s)} this {@code Image} had at a time. The history is only read back if the
+   * {@code Tag(s)} changed after the time.
+   *
+   * @param time time in epoch milliseconds.
+   * @return {@code Tag(s)} at the time, in order, or null if the {@code Image} was not read in yet.
+   */
+  public ArrayList<Tag> getTagsAt(long time) {
+    if (!table.hasUnloggedRemovals(id) && getLastChanged() <= time) {
+      return table.lastChanged(id) == 0 && history().size() == 0
+          ? null
+          : new ArrayList<>(tags().asList());
+    }
+    TagHistory history = history();
+    int entry = history.lastEntryAt(time);
+    return entry < 0 ? null : history.getTags(entry);
+  }
+
+  /**
+   * Returns the history, reading it back from its {@code HistoryStore} if it is only kept there.
+   * The history of an {@code Image} read from a save.ser file is moved into it first; it is not
+   * moved while reading, since the {@code Tag(s)} may not be fully read yet.
+   *
+   * @return the history of {@code Tag(s)}.
+   * @throws UncheckedIOException if the history cannot be read back.
+   */
+  TagHistory history() {
+    TagHistory history = table.history(id);
+    HistoryStore historyStore = table.historyStore(id);
+    if (history == null && historyStore != null) {
+      try {
+        history =
+            historyStore.load(this, table.historyFile(id), table.historyOffset(id));
+      } catch (IOException ex) {
+        LOGGER.log(
+            Level.WARNING, "Could not read the history of " + getName() + ": " + ex.getMessage());
+        throw new UncheckedIOException(ex);
+      }
+      TagHistory newHistory = table.takeNewHistory(id);
+      if (newHistory != null) {
+        history.append(newHistory);
+      }
+      table.setHistory(id, history);
+    } else if (history == null) {
+      history = new TagHistory();
+      table.setHistoryChanged(id, true);
+      ArrayList<Tag> before = new ArrayList<>();
+      List<Pair<String, ArrayList<Tag>>> entries = table.takeLegacyHistory(id);
+      for (Pair<String, ArrayList<Tag>> entry :
+          entries == null ? Collections.<Pair<String, ArrayList<Tag>>>emptyList() : entries) {
+        ArrayList<Tag> after = new ArrayList<>();
+        for (Object tag : entry.getValue()) {
+          if (tag instanceof Tag && !after.contains(tag)) {
+            after.add((Tag) tag);
+          }
+        }
+        history.recordTags(toEpochMilli(entry.getKey()), before, after);
+        before = after;
+      }
+      table.setHistory(id, history);
+    }
+    return history;
+  }
+
+  /**
+   * Records where the history has been stored. It is no longer changed since it was stored.
+   *
+   * @param store {@code HistoryStore} keeping the history.
+   * @param file number of the file holding the history.
+   * @param offset position of the history in the file.
+   */
+  void setStoredHistory(HistoryStore store, int file, int offset) {
+    table.setStoredHistory(id, store, file, offset);
+    table.setHistoryChanged(id, false);
+  }
+
+  /** Drops the history from memory if it can be read back from its {@code HistoryStore}. */
+  void evictHistory() {
+    if (table.historyStore(id) != null && !table.historyChanged(id)) {
+      table.setHistory(id, null);
+    }
+  }
+
+  /**
+   * Retrieves where the history is kept on disk.
+   *
+   * @return the {@code HistoryStore}, or null if the history has not been stored.
+   */
+  HistoryStore getHistoryStore() {
+    return table.historyStore(id);
+  }
+
+  /**
+   * Retrieves the number of the file in its {@code HistoryStore} holding the history.
+   *
+   * @return number of the file.
+   */
+  int getHistoryFile() {
+    return table.historyFile(id);
+  }
+
+  /**
+   * Retrieves the position of the history in its file.
+   *
+   * @return position in the file.
+   */
+  int getHistoryOffset() {
+    return table.historyOffset(id);
+  }
+
+  /**
+   * Checks whether the history changed since it was last stored.
+   *
+   * @return true if it changed or was never stored, false otherwise.
+   */
+  boolean isHistoryChanged() {
+    return table.historyChanged(id);
+  }
+
+  /**
+   * Converts a time from the history in a save.ser file to epoch milliseconds.
+   *
+   * @param time time as written by {@code LocalDateTime.toString}, in the local time zone.
+   * @return epoch milliseconds, or 0 if the time cannot be read.
+   */
+  private static long toEpochMilli(String time) {
+    try {
+      return LocalDateTime.parse(time).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    } catch (DateTimeParseException ex) {
+      return 0;
+    }
+  }
+
   /**
    * Gets the directory in which this {@code Image} is stored.
    *
-   * @return Path to this {@code Image}.
+   * @return Path to this {@code Image}, shared by every {@code Image} in the directory.
    */
   public Path getDirectory() {
-    return Paths.get(directory);
+    return table.directoryPath(id);
   }
 
   /**
-   * Gets all {@code Tag} currently associated with this {@code Image}.
+   * Gets all {@code Tag} currently associated with this {@code Image}, in the order they were added.
+   * The list is not updated by later changes and cannot be modified.
    *
    * @return list of current {@code Tag(s)}.
    */
-  public ArrayList<Tag> getCurrentTags() {
-    return currentTags;
+  public List<Tag> getCurrentTags() {
+    return tags().asList();
+  }
+
+  /**
+   * Gets the {@code Tag(s)} currently associated with this {@code Image} as a shared {@code
+   * TagSet}, so two {@code Image(s)} have the same {@code Tag(s)} exactly when they have the same
+   * {@code TagSet}.
+   *
+   * @return current {@code TagSet}.
+   */
+  public TagSet getTagSet() {
+    return tags();
+  }
+
+  /**
+   * Returns the {@code TagSet}, building it first for an {@code Image} read from a save.ser file.
+   * It is not built while reading, since the {@code Tag(s)} may not be fully read yet.
+   *
+   * @return the current {@code Tag(s)}.
+   */
+  private TagSet tags() {
+    TagSet tags = table.tags(id);
+    if (tags == null) {
+      ArrayList<Tag> currentTags = table.takeLegacyTags(id);
+      tags = currentTags == null ? TagSet.EMPTY : TagSet.of(currentTags);
+      table.setTags(id, tags);
+    }
+    return tags;
   }
 
   /**
@@ -307,7 +773,36 @@ public class Image implements Serializable {
    * @return {@code Image('s)} File.
    */
   public File getImageFile() {
-    return imageFile;
+    File ownFile = table.ownFile(id);
+    return ownFile != null ? ownFile : defaultFile();
+  }
+
+  /**
+   * Checks whether the File of the {@code Image} differs from the one given by its name.
+   *
+   * @return true if it differs, false otherwise.
+   */
+  boolean hasOwnFile() {
+    return table.ownFile(id) != null;
+  }
+
+  /**
+   * Gives the File this {@code Image} has when its file name matches its {@code Tag(s)}.
+   *
+   * @return the File.
+   */
+  private File defaultFile() {
+    return new File(table.directory(id), toString());
+  }
+
+  /**
+   * Keeps the current File of the {@code Image} before its name or directory changes, as the file
+   * is only renamed or moved later.
+   */
+  private void keepImageFile() {
+    if (!hasOwnFile()) {
+      table.setOwnFile(id, defaultFile());
+    }
   }
 
   /**
@@ -319,26 +814,99 @@ public class Image implements Serializable {
   @Override
   public String toString() {
     StringBuilder builtName = new StringBuilder();
-    builtName.append(name);
-    for (Tag tag : currentTags) {
+    builtName.append(getName());
+    for (Tag tag : tags()) {
       builtName.append(" ");
       builtName.append(tag.toString());
     }
     builtName.append(".");
-    builtName.append(extension);
+    builtName.append(getExtension());
     return builtName.toString();
   }
 
   /**
-   * Returns true if Object that is an {@code Image} and has the same name and directory as this
-   * {@code Image}. Otherwise returns false.
+   * Returns true if Object that is an {@code Image} and has the same name, extension and directory
+   * as this {@code Image}. Otherwise returns false.
    *
    * @param that Object to be compared to.
    */
   @Override
   public boolean equals(Object that) {
-    return (that instanceof Image
-        && ((Image) that).name.equals(this.name)
-        && ((Image) that).directory.equals(this.directory));
+    if (!(that instanceof Image)) {
+      return false;
+    }
+    Image image = (Image) that;
+    int other = image.id;
+    if (image.table != table) {
+      return getExtension().equals(image.getExtension())
+          && table.directory(id).equals(image.table.directory(other))
+          && getName().equals(image.getName());
+    }
+    return other == id
+        || (table.extensionNumber(other) == table.extensionNumber(id)
+            && table.directoryNumber(other) == table.directoryNumber(id)
+            && table.sameName(other, id));
+  }
+
+  /**
+   * Returns a hash code consistent with {@code equals}. It changes when the {@code Image} is moved,
+   * so an {@code Image} should not be moved while it is a key of a hash table.
+   *
+   * @return hash code of the name, extension and directory.
+   */
+  @Override
+  public int hashCode() {
+    return Objects.hash(table.nameHash(id), getExtension(), table.directory(id));
+  }
+
+  /**
+   * Reads an {@code Image} from a save.ser file. The fields are only kept as read, to be moved to
+   * the table of the {@code Container} read once it is made.
+   *
+   * @param input stream to read from.
+   * @throws IOException if the stream cannot be read.
+   * @throws ClassNotFoundException if a class in the stream cannot be found.
+   */
+  private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+    ObjectInputStream.GetField fields = input.readFields();
+    legacy = new Object[serialPersistentFields.length];
+    for (int i = 0; i < legacy.length; i++) {
+      legacy[i] = fields.get(serialPersistentFields[i].getName(), null);
+    }
+  }
+
+  /**
+   * Gives an {@code Image} read from a save.ser file its row in a table. The {@code Tag(s)} and
+   * history are only kept as read, to be moved once they are asked for.
+   *
+   * @param target the table.
+   */
+  @SuppressWarnings("unchecked")
+  private void readLegacy(ImageTable target) {
+    table = target;
+    id = target.add(this, (String) legacy[0], (String) legacy[2], (String) legacy[1]);
+    target.setLegacy(
+        id, (ArrayList<Tag>) legacy[3], (ArrayList<Pair<String, ArrayList<Tag>>>) legacy[4]);
+    target.setOwnFile(id, (File) legacy[5]);
+    target.setManager(id, (ImageManager) legacy[6]);
+    legacy = null;
+  }
+
+  /**
+   * Writes an {@code Image} in the form of save.ser files.
+   *
+   * @param output stream to write to.
+   * @throws IOException if the stream cannot be written.
+   */
+  private void writeObject(ObjectOutputStream output) throws IOException {
+    ObjectOutputStream.PutField fields = output.putFields();
+    fields.put("name", getName());
+    fields.put("directory", table.directory(id));
+    fields.put("extension", getExtension());
+    fields.put("currentTags", new ArrayList<>(getCurrentTags()));
+    fields.put("lifeTimeTags", getLifeTimeTags());
+    fields.put("imageFile", getImageFile());
+    fields.put("manager", getManager());
+    output.writeFields();
   }
 }
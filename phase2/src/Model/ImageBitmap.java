@@ -0,0 +1,603 @@
+package Model;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * {@code ImageBitmap} is a compressed set of {@code Image} ids. Ids are split by their high 16 bits
+ * into chunks of 65536; a chunk holding few ids keeps them as a sorted array and a fuller one as a
+ * bitmap, so sparse and dense sets both stay small, and sets are combined a chunk at a time.
+ */
+public class ImageBitmap {
+
+  /** Largest number of ids a chunk keeps as a sorted array. */
+  private static final int ARRAY_MAX = 4096;
+
+  /** Number of words in the bitmap of a chunk. */
+  private static final int WORDS = 1024;
+
+  /** High 16 bits of the ids in each chunk, in increasing order. */
+  private char[] keys;
+
+  /** Chunks, in the order of their keys. */
+  private Chunk[] chunks;
+
+  /** Number of chunks in use. */
+  private int size;
+
+  /** Creates a new, empty {@code ImageBitmap}. */
+  public ImageBitmap() {
+    this(4);
+  }
+
+  /**
+   * Creates a new, empty {@code ImageBitmap} with room for some chunks.
+   *
+   * @param capacity number of chunks there is room for.
+   */
+  private ImageBitmap(int capacity) {
+    keys = new char[Math.max(capacity, 1)];
+    chunks = new Chunk[Math.max(capacity, 1)];
+  }
+
+  /**
+   * Adds an id to this {@code ImageBitmap}.
+   *
+   * @param id id to add; not negative.
+   * @return true if the id was not there yet, false otherwise.
+   */
+  public boolean add(int id) {
+    char key = (char) (id >>> 16);
+    int index = find(key);
+    if (index < 0) {
+      index = -index - 1;
+      insert(index, key, new Chunk(new char[4], null, 0));
+    }
+    return chunks[index].add((char) id);
+  }
+
+  /**
+   * Removes an id from this {@code ImageBitmap}.
+   *
+   * @param id id to remove.
+   * @return true if the id was there, false otherwise.
+   */
+  public boolean remove(int id) {
+    int index = find((char) (id >>> 16));
+    if (index < 0 || !chunks[index].remove((char) id)) {
+      return false;
+    }
+    if (chunks[index].cardinality == 0) {
+      System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+      System.arraycopy(chunks, index + 1, chunks, index, size - index - 1);
+      chunks[--size] = null;
+    }
+    return true;
+  }
+
+  /**
+   * Checks whether an id is in this {@code ImageBitmap}.
+   *
+   * @param id id to look for.
+   * @return true if the id is there, false otherwise.
+   */
+  public boolean contains(int id) {
+    int index = find((char) (id >>> 16));
+    return index >= 0 && chunks[index].contains((char) id);
+  }
+
+  /**
+   * Returns the number of ids in this {@code ImageBitmap}.
+   *
+   * @return number of ids.
+   */
+  public int cardinality() {
+    int cardinality = 0;
+    for (int i = 0; i < size; i++) {
+      cardinality += chunks[i].cardinality;
+    }
+    return cardinality;
+  }
+
+  /**
+   * Checks whether this {@code ImageBitmap} holds no ids.
+   *
+   * @return true if there are no ids, false otherwise.
+   */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Returns the ids in both this and another {@code ImageBitmap}. Neither is changed.
+   *
+   * @param other the other {@code ImageBitmap}.
+   * @return a new {@code ImageBitmap} with the ids in both.
+   */
+  public ImageBitmap and(ImageBitmap other) {
+    ImageBitmap result = new ImageBitmap(Math.min(size, other.size));
+    int i = 0;
+    int j = 0;
+    while (i < size && j < other.size) {
+      if (keys[i] < other.keys[j]) {
+        i++;
+      } else if (keys[i] > other.keys[j]) {
+        j++;
+      } else {
+        result.append(keys[i], chunks[i].and(other.chunks[j]));
+        i++;
+        j++;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the ids in this or another {@code ImageBitmap}. Neither is changed.
+   *
+   * @param other the other {@code ImageBitmap}.
+   * @return a new {@code ImageBitmap} with the ids in either.
+   */
+  public ImageBitmap or(ImageBitmap other) {
+    ImageBitmap result = new ImageBitmap(size + other.size);
+    int i = 0;
+    int j = 0;
+    while (i < size || j < other.size) {
+      if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+        result.append(keys[i], chunks[i].copy());
+        i++;
+      } else if (i == size || keys[i] > other.keys[j]) {
+        result.append(other.keys[j], other.chunks[j].copy());
+        j++;
+      } else {
+        result.append(keys[i], chunks[i].or(other.chunks[j]));
+        i++;
+        j++;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the ids in this {@code ImageBitmap} that are not in another. Neither is changed.
+   *
+   * @param other the {@code ImageBitmap} of ids to leave out.
+   * @return a new {@code ImageBitmap} with the ids only in this one.
+   */
+  public ImageBitmap andNot(ImageBitmap other) {
+    ImageBitmap result = new ImageBitmap(size);
+    int j = 0;
+    for (int i = 0; i < size; i++) {
+      while (j < other.size && other.keys[j] < keys[i]) {
+        j++;
+      }
+      if (j < other.size && other.keys[j] == keys[i]) {
+        result.append(keys[i], chunks[i].andNot(other.chunks[j]));
+      } else {
+        result.append(keys[i], chunks[i].copy());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns a copy of this {@code ImageBitmap} that can be changed independently.
+   *
+   * @return a new {@code ImageBitmap} with the same ids.
+   */
+  public ImageBitmap copy() {
+    return or(new ImageBitmap(1));
+  }
+
+  /**
+   * Iterates over the ids in increasing order. The {@code ImageBitmap} must not change meanwhile.
+   *
+   * @return iterator over the ids.
+   */
+  public PrimitiveIterator.OfInt iterator() {
+    return new PrimitiveIterator.OfInt() {
+
+      /** Index of the chunk holding the next id. */
+      private int chunk;
+
+      /** Position in the array, or low 16 bits in the bitmap, to look for the next id from. */
+      private int position;
+
+      @Override
+      public boolean hasNext() {
+        while (chunk < size) {
+          Chunk current = chunks[chunk];
+          if (current.bits == null ? position < current.cardinality : current.next(position) >= 0) {
+            return true;
+          }
+          chunk++;
+          position = 0;
+        }
+        return false;
+      }
+
+      @Override
+      public int nextInt() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        Chunk current = chunks[chunk];
+        int low;
+        if (current.bits == null) {
+          low = current.values[position++];
+        } else {
+          low = current.next(position);
+          position = low + 1;
+        }
+        return keys[chunk] << 16 | low;
+      }
+    };
+  }
+
+  /**
+   * Streams the ids in increasing order. The {@code ImageBitmap} must not change meanwhile.
+   *
+   * @return stream of the ids.
+   */
+  public IntStream stream() {
+    return StreamSupport.intStream(
+        Spliterators.spliterator(
+            iterator(),
+            cardinality(),
+            Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.SORTED | Spliterator.NONNULL),
+        false);
+  }
+
+  /**
+   * Finds the chunk with a key.
+   *
+   * @param key high 16 bits of an id.
+   * @return index of the chunk, or (-(insertion point) - 1) if there is none.
+   */
+  private int find(char key) {
+    // Ids are mostly given out in order, so the last chunk is the likeliest
+    if (size > 0 && keys[size - 1] == key) {
+      return size - 1;
+    }
+    return Arrays.binarySearch(keys, 0, size, key);
+  }
+
+  /**
+   * Inserts a chunk at an index.
+   *
+   * @param index index to insert at.
+   * @param key high 16 bits of the ids in the chunk.
+   * @param chunk the chunk.
+   */
+  private void insert(int index, char key, Chunk chunk) {
+    if (size == keys.length) {
+      keys = Arrays.copyOf(keys, size * 2);
+      chunks = Arrays.copyOf(chunks, size * 2);
+    }
+    System.arraycopy(keys, index, keys, index + 1, size - index);
+    System.arraycopy(chunks, index, chunks, index + 1, size - index);
+    keys[index] = key;
+    chunks[index] = chunk;
+    size++;
+  }
+
+  /**
+   * Adds a chunk after the others, unless it is empty.
+   *
+   * @param key high 16 bits of the ids in the chunk, greater than those of the others.
+   * @param chunk the chunk, or null if it is empty.
+   */
+  private void append(char key, Chunk chunk) {
+    if (chunk != null && chunk.cardinality > 0) {
+      insert(size, key, chunk);
+    }
+  }
+
+  /** Ids sharing their high 16 bits, kept by their low 16 bits. */
+  private static class Chunk {
+
+    /** Low 16 bits of the ids in increasing order; null while the chunk is a bitmap. */
+    private char[] values;
+
+    /** One bit for each of the low 16 bits; null while the chunk is an array. */
+    private long[] bits;
+
+    /** Number of ids in the chunk. */
+    private int cardinality;
+
+    /**
+     * Creates a new {@code Chunk}.
+     *
+     * @param values low 16 bits of the ids in increasing order, or null for a bitmap.
+     * @param bits the bitmap, or null for an array.
+     * @param cardinality number of ids.
+     */
+    private Chunk(char[] values, long[] bits, int cardinality) {
+      this.values = values;
+      this.bits = bits;
+      this.cardinality = cardinality;
+    }
+
+    /**
+     * Creates a {@code Chunk} kept as an array.
+     *
+     * @param values low 16 bits of the ids in increasing order.
+     * @param cardinality number of values in use.
+     * @return the chunk, or null if it is empty.
+     */
+    private static Chunk ofValues(char[] values, int cardinality) {
+      return cardinality == 0 ? null : new Chunk(values, null, cardinality);
+    }
+
+    /**
+     * Creates a {@code Chunk} from a bitmap, kept as an array if it holds few ids.
+     *
+     * @param bits the bitmap.
+     * @return the chunk, or null if it is empty.
+     */
+    private static Chunk ofBits(long[] bits) {
+      int cardinality = 0;
+      for (long word : bits) {
+        cardinality += Long.bitCount(word);
+      }
+      if (cardinality == 0) {
+        return null;
+      }
+      Chunk chunk = new Chunk(null, bits, cardinality);
+      if (cardinality <= ARRAY_MAX) {
+        chunk.toArray();
+      }
+      return chunk;
+    }
+
+    /**
+     * Adds the low 16 bits of an id.
+     *
+     * @param low low 16 bits.
+     * @return true if they were not there yet, false otherwise.
+     */
+    private boolean add(char low) {
+      if (bits != null) {
+        long word = bits[low >>> 6];
+        bits[low >>> 6] = word | (1L << low);
+        if (word == bits[low >>> 6]) {
+          return false;
+        }
+        cardinality++;
+        return true;
+      }
+      int index = Arrays.binarySearch(values, 0, cardinality, low);
+      if (index >= 0) {
+        return false;
+      }
+      if (cardinality == ARRAY_MAX) {
+        toBitmap();
+        return add(low);
+      }
+      index = -index - 1;
+      if (cardinality == values.length) {
+        values = Arrays.copyOf(values, Math.min(ARRAY_MAX, cardinality * 2));
+      }
+      System.arraycopy(values, index, values, index + 1, cardinality - index);
+      values[index] = low;
+      cardinality++;
+      return true;
+    }
+
+    /**
+     * Removes the low 16 bits of an id.
+     *
+     * @param low low 16 bits.
+     * @return true if they were there, false otherwise.
+     */
+    private boolean remove(char low) {
+      if (bits != null) {
+        long word = bits[low >>> 6];
+        bits[low >>> 6] = word & ~(1L << low);
+        if (word == bits[low >>> 6]) {
+          return false;
+        }
+        if (--cardinality <= ARRAY_MAX) {
+          toArray();
+        }
+        return true;
+      }
+      int index = Arrays.binarySearch(values, 0, cardinality, low);
+      if (index < 0) {
+        return false;
+      }
+      System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+      cardinality--;
+      return true;
+    }
+
+    /**
+     * Checks whether the low 16 bits of an id are here.
+     *
+     * @param low low 16 bits.
+     * @return true if they are here, false otherwise.
+     */
+    private boolean contains(char low) {
+      if (bits != null) {
+        return (bits[low >>> 6] & (1L << low)) != 0;
+      }
+      return Arrays.binarySearch(values, 0, cardinality, low) >= 0;
+    }
+
+    /**
+     * Finds the first id in the bitmap at or after a position.
+     *
+     * @param from low 16 bits to start from.
+     * @return low 16 bits of the id found, or -1 if there is none.
+     */
+    private int next(int from) {
+      int index = from >>> 6;
+      if (index >= WORDS) {
+        return -1;
+      }
+      long word = bits[index] & (-1L << from);
+      while (word == 0) {
+        if (++index == WORDS) {
+          return -1;
+        }
+        word = bits[index];
+      }
+      return index * 64 + Long.numberOfTrailingZeros(word);
+    }
+
+    /** Turns this chunk from an array into a bitmap. */
+    private void toBitmap() {
+      bits = new long[WORDS];
+      for (int i = 0; i < cardinality; i++) {
+        bits[values[i] >>> 6] |= 1L << values[i];
+      }
+      values = null;
+    }
+
+    /** Turns this chunk from a bitmap into an array. */
+    private void toArray() {
+      values = new char[Math.max(cardinality, 4)];
+      int count = 0;
+      for (int index = 0; index < WORDS; index++) {
+        long word = bits[index];
+        while (word != 0) {
+          values[count++] = (char) (index * 64 + Long.numberOfTrailingZeros(word));
+          word &= word - 1;
+        }
+      }
+      bits = null;
+    }
+
+    /**
+     * Returns a copy of this chunk.
+     *
+     * @return the copy.
+     */
+    private Chunk copy() {
+      return bits != null
+          ? ofBits(bits.clone())
+          : ofValues(Arrays.copyOf(values, Math.max(cardinality, 4)), cardinality);
+    }
+
+    /**
+     * Returns the ids in both this and another chunk.
+     *
+     * @param other the other chunk.
+     * @return a new chunk, or null if it is empty.
+     */
+    private Chunk and(Chunk other) {
+      if (bits != null && other.bits != null) {
+        long[] result = new long[WORDS];
+        for (int i = 0; i < WORDS; i++) {
+          result[i] = bits[i] & other.bits[i];
+        }
+        return ofBits(result);
+      }
+      if (bits != null) {
+        return other.and(this);
+      }
+      char[] result = new char[cardinality];
+      int count = 0;
+      if (other.bits != null) {
+        for (int i = 0; i < cardinality; i++) {
+          if (other.contains(values[i])) {
+            result[count++] = values[i];
+          }
+        }
+        return ofValues(result, count);
+      }
+      int i = 0;
+      int j = 0;
+      while (i < cardinality && j < other.cardinality) {
+        if (values[i] < other.values[j]) {
+          i++;
+        } else if (values[i] > other.values[j]) {
+          j++;
+        } else {
+          result[count++] = values[i];
+          i++;
+          j++;
+        }
+      }
+      return ofValues(result, count);
+    }
+
+    /**
+     * Returns the ids in this or another chunk.
+     *
+     * @param other the other chunk.
+     * @return a new chunk.
+     */
+    private Chunk or(Chunk other) {
+      if (bits == null && other.bits == null && cardinality + other.cardinality <= ARRAY_MAX) {
+        char[] result = new char[cardinality + other.cardinality];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < cardinality || j < other.cardinality) {
+          if (j == other.cardinality || (i < cardinality && values[i] < other.values[j])) {
+            result[count++] = values[i++];
+          } else if (i == cardinality || values[i] > other.values[j]) {
+            result[count++] = other.values[j++];
+          } else {
+            result[count++] = values[i];
+            i++;
+            j++;
+          }
+        }
+        return ofValues(result, count);
+      }
+      long[] result = bits != null ? bits.clone() : new long[WORDS];
+      if (bits == null) {
+        for (int i = 0; i < cardinality; i++) {
+          result[values[i] >>> 6] |= 1L << values[i];
+        }
+      }
+      if (other.bits != null) {
+        for (int i = 0; i < WORDS; i++) {
+          result[i] |= other.bits[i];
+        }
+      } else {
+        for (int i = 0; i < other.cardinality; i++) {
+          result[other.values[i] >>> 6] |= 1L << other.values[i];
+        }
+      }
+      return ofBits(result);
+    }
+
+    /**
+     * Returns the ids in this chunk that are not in another.
+     *
+     * @param other the chunk of ids to leave out.
+     * @return a new chunk, or null if it is empty.
+     */
+    private Chunk andNot(Chunk other) {
+      if (bits == null) {
+        char[] result = new char[cardinality];
+        int count = 0;
+        for (int i = 0; i < cardinality; i++) {
+          if (!other.contains(values[i])) {
+            result[count++] = values[i];
+          }
+        }
+        return ofValues(result, count);
+      }
+      long[] result = bits.clone();
+      if (other.bits != null) {
+        for (int i = 0; i < WORDS; i++) {
+          result[i] &= ~other.bits[i];
+        }
+      } else {
+        for (int i = 0; i < other.cardinality; i++) {
+          result[other.values[i] >>> 6] &= ~(1L << other.values[i]);
+        }
+      }
+      return ofBits(result);
+    }
+  }
+}
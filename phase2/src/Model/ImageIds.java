@@ -0,0 +1,161 @@
+package Model;
+
+import java.util.Arrays;
+
+/**
+ * {@code ImageIds} gives each {@code Image} of an {@code ImageTable} a small number, so sets of
+ * {@code Image(s)} can be kept as an {@code ImageBitmap} and what is known about it can be kept in
+ * the rows of the table. Numbers start at 1. The number of an {@code Image} that was dropped is
+ * never given out again, so one held on to, e.g. by a list of matches, cannot find another {@code
+ * Image}; the dropped {@code Image} is moved to a table of its own first, so it can still be shown.
+ *
+ * <p>Numbers are given out and taken back under a lock, while an {@code Image} is found by its
+ * number without one, as that happens far more often. The {@code Image(s)} are kept in pages like
+ * the rows of the table. For a table restored from mapped files, the {@code Image} of a number
+ * given out before is only made when it is first asked for.
+ */
+final class ImageIds {
+
+  /** Table whose rows an {@code Image} restored is made from. */
+  private final ImageTable table;
+
+  /** Number of bits of a number giving its place in a page. */
+  private final int pageBits;
+
+  /** Pages of {@code Image(s)} by number; index 0 is unused. Read without locking. */
+  private volatile Image[][] pages = new Image[1][];
+
+  /** Number of numbers given out, including 0. */
+  private int size = 1;
+
+  /** Number of numbers given out before the table was restored, whose rows may be mapped. */
+  private int restored;
+
+  /**
+   * Creates an empty set of numbers.
+   *
+   * @param table table whose rows an {@code Image} restored is made from.
+   * @param pageBits number of bits of a number giving its place in a page.
+   */
+  ImageIds(ImageTable table, int pageBits) {
+    this.table = table;
+    this.pageBits = pageBits;
+  }
+
+  /**
+   * Gives out a new number for an {@code Image}.
+   *
+   * @param image the {@code Image}.
+   * @return the number, at least 1.
+   */
+  synchronized int register(Image image) {
+    int id = size++;
+    place(id)[id & mask()] = image;
+    publish();
+    return id;
+  }
+
+  /**
+   * Takes back the number of an {@code Image} that is no longer in use, so it is no longer found by
+   * its number.
+   *
+   * @param id the number.
+   */
+  synchronized void release(int id) {
+    if (id > 0 && id < size) {
+      place(id)[id & mask()] = null;
+      publish();
+    }
+  }
+
+  /**
+   * Finds the {@code Image} with a number, making it from its row if it was restored and not asked
+   * for yet.
+   *
+   * @param id the number.
+   * @return the {@code Image}, or null if the number is not in use.
+   */
+  Image get(int id) {
+    Image[][] current = pages;
+    int number = id >>> pageBits;
+    if (id <= 0 || number >= current.length) {
+      return null;
+    }
+    Image[] page = current[number];
+    Image image = page == null ? null : page[id & mask()];
+    return image != null || id >= restored ? image : restoreImage(id);
+  }
+
+  /**
+   * Gives the number of numbers given out, including 0.
+   *
+   * @return number of numbers.
+   */
+  synchronized int size() {
+    return size;
+  }
+
+  /**
+   * Marks the numbers given out before a table was restored from mapped files, whose {@code
+   * Image(s)} are made when first asked for.
+   *
+   * @param count number of numbers given out, including 0.
+   */
+  synchronized void restore(int count) {
+    size = count;
+    restored = count;
+    place(count - 1);
+    publish();
+  }
+
+  /**
+   * Makes the {@code Image} of a restored number from its row, unless its row is no longer in use.
+   *
+   * @param id the number.
+   * @return the {@code Image}, or null if the number is not in use.
+   */
+  private synchronized Image restoreImage(int id) {
+    Image[] page = place(id);
+    Image image = page[id & mask()];
+    if (image == null && table.inUse(id)) {
+      image = new Image(table, id);
+      page[id & mask()] = image;
+      publish();
+    }
+    return image;
+  }
+
+  /**
+   * Finds the page holding a number, making it first if needed.
+   *
+   * @param id the number.
+   * @return the page.
+   */
+  private Image[] place(int id) {
+    int number = id >>> pageBits;
+    Image[][] grown = pages;
+    if (number >= grown.length) {
+      grown = Arrays.copyOf(grown, Math.max(number + 1, grown.length * 2));
+      pages = grown;
+    }
+    if (grown[number] == null) {
+      grown[number] = new Image[1 << pageBits];
+    }
+    return grown[number];
+  }
+
+  /** Writes {@code pages} again, so other threads see the {@code Image(s)} placed in it. */
+  private void publish() {
+    Image[][] current = pages;
+    pages = current;
+  }
+
+  /**
+   * Gives the mask giving the place in a page of a number.
+   *
+   * @return the mask.
+   */
+  private int mask() {
+    return (1 << pageBits) - 1;
+  }
+}
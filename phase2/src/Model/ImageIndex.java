@@ -0,0 +1,230 @@
+package Model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * {@code ImageIndex} finds the {@code Image(s)} of an {@code ImageManager} by name and extension,
+ * keeping only their ids. The ids are kept in a hash table probed by the name and extension in the
+ * {@code ImageTable} of the {@code ImageManager}, and in a list in the order they were added. A
+ * removed id is left as a gap in the list, which is closed once the gaps outnumber the ids.
+ */
+final class ImageIndex {
+
+  /** Marks a place in {@code slots} whose id was removed. */
+  private static final int REMOVED = -1;
+
+  /** Table keeping the name and extension of each id. */
+  private final ImageTable table;
+
+  /** Ids, at the place given by their name and extension; 0 if the place was never used. */
+  private int[] slots = new int[16];
+
+  /** Position in {@code order} of the id at the same place in {@code slots}. */
+  private int[] positions = new int[16];
+
+  /** Number of places in {@code slots} that were used, including removed ids. */
+  private int used;
+
+  /** Ids in the order they were added; 0 where one was removed. */
+  private int[] order = new int[16];
+
+  /** Number of positions used in {@code order}, including removed ids. */
+  private int orderSize;
+
+  /** Number of ids kept. */
+  private int size;
+
+  /**
+   * Creates an empty index.
+   *
+   * @param table table keeping the name and extension of each id.
+   */
+  ImageIndex(ImageTable table) {
+    this.table = table;
+  }
+
+  /**
+   * Retrieves the number of ids kept.
+   *
+   * @return number of ids.
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Finds the id of the {@code Image} with a name and extension.
+   *
+   * @param name name of the {@code Image}, without {@code Tag(s)}.
+   * @param extension extension of the {@code Image}, without the dot.
+   * @return the id, or 0 if no {@code Image} with the name and extension is kept.
+   */
+  int get(String name, String extension) {
+    int extensionNumber = table.findExtension(extension);
+    if (extensionNumber < 0) {
+      return 0;
+    }
+    byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+    int mask = slots.length - 1;
+    for (int i = spread(ImageTable.nameHash(bytes), extensionNumber) & mask;
+        slots[i] != 0;
+        i = (i + 1) & mask) {
+      int id = slots[i];
+      if (id != REMOVED
+          && table.extensionNumber(id) == extensionNumber
+          && table.hasName(id, bytes)) {
+        return id;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Checks whether an id is kept.
+   *
+   * @param id the id.
+   * @return true if it is kept.
+   */
+  boolean contains(int id) {
+    return find(id) >= 0;
+  }
+
+  /**
+   * Adds the id of an {@code Image}, unless one with the same name and extension is kept.
+   *
+   * @param id the id.
+   * @return true if it was added, false otherwise.
+   */
+  boolean add(int id) {
+    int mask = slots.length - 1;
+    int extensionNumber = table.extensionNumber(id);
+    int free = -1;
+    int i = spread(table.nameHash(id), extensionNumber) & mask;
+    for (; slots[i] != 0; i = (i + 1) & mask) {
+      int kept = slots[i];
+      if (kept == REMOVED) {
+        free = free < 0 ? i : free;
+      } else if (table.extensionNumber(kept) == extensionNumber
+          && table.sameName(kept, id)) {
+        return false;
+      }
+    }
+    if (free < 0) {
+      free = i;
+      used++;
+    }
+    if (orderSize == order.length) {
+      order = Arrays.copyOf(order, orderSize * 2);
+    }
+    slots[free] = id;
+    positions[free] = orderSize;
+    order[orderSize++] = id;
+    size++;
+    if (used * 2 > slots.length) {
+      rebuild(slots.length * 2);
+    }
+    return true;
+  }
+
+  /**
+   * Removes an id.
+   *
+   * @param id the id.
+   * @return true if it was kept, false otherwise.
+   */
+  boolean remove(int id) {
+    int place = find(id);
+    if (place < 0) {
+      return false;
+    }
+    slots[place] = REMOVED;
+    order[positions[place]] = 0;
+    size--;
+    if ((orderSize - size) > size + 16) {
+      rebuild(slots.length);
+    }
+    return true;
+  }
+
+  /**
+   * Gives the {@code Image(s)} kept, in the order they were added.
+   *
+   * @return the {@code Image(s)}.
+   */
+  ArrayList<Image> images() {
+    ArrayList<Image> images = new ArrayList<>(size);
+    for (int i = 0; i < orderSize; i++) {
+      if (order[i] != 0) {
+        images.add(table.image(order[i]));
+      }
+    }
+    return images;
+  }
+
+  /**
+   * Gives the ids kept, in the order they were added.
+   *
+   * @return the ids.
+   */
+  int[] ids() {
+    int[] ids = new int[size];
+    int count = 0;
+    for (int i = 0; i < orderSize; i++) {
+      if (order[i] != 0) {
+        ids[count++] = order[i];
+      }
+    }
+    return ids;
+  }
+
+  /**
+   * Finds the place of an id in {@code slots}.
+   *
+   * @param id the id.
+   * @return the place, or -1 if the id is not kept.
+   */
+  private int find(int id) {
+    int mask = slots.length - 1;
+    int extensionNumber = table.extensionNumber(id);
+    for (int i = spread(table.nameHash(id), extensionNumber) & mask;
+        slots[i] != 0;
+        i = (i + 1) & mask) {
+      if (slots[i] == id) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Puts the ids kept into new arrays, closing the gaps left by removed ids.
+   *
+   * @param capacity number of places in the new {@code slots}, a power of two.
+   */
+  private void rebuild(int capacity) {
+    int[] kept = ids();
+    slots = new int[capacity];
+    positions = new int[capacity];
+    order = new int[Math.max(16, capacity / 2)];
+    used = 0;
+    orderSize = 0;
+    size = 0;
+    for (int id : kept) {
+      add(id);
+    }
+  }
+
+  /**
+   * Gives the place in {@code slots} to start probing from for a name and extension.
+   *
+   * @param nameHash hash code of the name.
+   * @param extension number of the extension.
+   * @return a spread hash code.
+   */
+  private static int spread(int nameHash, int extension) {
+    int hash = nameHash * 31 + extension;
+    return hash ^ (hash >>> 16);
+  }
+}
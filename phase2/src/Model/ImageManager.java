@@ -1,9 +1,18 @@
 package Model;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.IntBuffer;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * {@code ImageManager} keeps a collection of all {@code Image(s)} that have been read into the
@@ -11,60 +20,136 @@ import java.util.ArrayList;
  */
 public class ImageManager implements Serializable {
 
+  /** Version of the serialized form, kept so older save.ser files can still be read. */
+  private static final long serialVersionUID = -2902609718617780050L;
+
+  /** Provides access to the logger. */
+  private static final Logger LOGGER = Logger.getLogger(Log.class.getName());
+
   /** Top level name of this directory; */
   private String name;
 
   /** Path to open the directory of ImageManger. */
   private String directory;
 
-  /** All {@code Image(s)} from a particular directory. */
+  /** {@code directory} as a {@code Path}, made once rather than on every lookup. */
+  private transient Path path;
+
+  /**
+   * All {@code Image(s)} from a particular directory, in the order they were added. Rebuilt from
+   * {@code index} when it is next asked for after a change.
+   */
   private ArrayList<Image> images;
 
+  /**
+   * Table keeping what is known about the {@code Image(s)}, shared with the {@code Container} this
+   * {@code ImageManager} is added to.
+   */
+  private transient ImageTable table;
+
+  /** Ids of all {@code Image(s)} in the order they were added, found by name and extension. */
+  private transient ImageIndex index;
+
+  /** Extensions of the {@code Image(s)} stored, with the number of {@code Image(s)} of each. */
+  private transient Map<String, Integer> extensions = new HashMap<>();
+
+  /** Ids of the {@code Image(s)} stored. */
+  private transient ImageBitmap imageIds = new ImageBitmap();
+
+  /** {@code Image(s)} stored by the time of their last change, or null until one is asked for. */
+  private transient ChangeIndex changes;
+
+  /** Whether {@code images} needs to be rebuilt from {@code index}. */
+  private transient boolean imagesChanged;
+
+  /**
+   * File holding the ids of the {@code Image(s)} of an {@code ImageManager} restored from a mapped
+   * catalog, until {@code index} is built from them; null otherwise.
+   */
+  private transient File storedIds;
+
   /**
    * Creates new {@code ImageManager}. Directory initialized that of specified file's path. Name
-   * initialized to directory's name.
+   * initialized to directory's name. Its {@code Image(s)} are kept in a table of its own until it
+   * is added to a {@code Container}.
    *
    * @param directory File's whose directory the {@code ImageManager} is set to.
    */
   public ImageManager(File directory) {
+    this(directory, new ImageTable());
+  }
+
+  /**
+   * Creates new {@code ImageManager} whose {@code Image(s)} are kept in a given table.
+   *
+   * @param directory File's whose directory the {@code ImageManager} is set to.
+   * @param table table of the {@code Container} the {@code ImageManager} is to be added to.
+   */
+  ImageManager(File directory, ImageTable table) {
     this.directory = directory.toPath().toString();
     this.name = directory.getName();
+    this.table = table;
+    index = new ImageIndex(table);
     images = new ArrayList<>();
   }
 
   /**
-   * Creates a new {@code Image} from File and adds it to the rest of stored {@code Image(s)}. If
-   * {@code Image} already exists in {@code ImageManager}, replace old tags with new.
+   * Creates an {@code ImageManager} restored from a mapped catalog, whose {@code Image(s)} are in
+   * rows of the table already. Their ids are only mapped once one of them is asked for.
+   *
+   * @param directory File's whose directory the {@code ImageManager} is set to.
+   * @param table table of the {@code Container} the {@code ImageManager} is added to.
+   * @param storedIds file holding the ids of the {@code Image(s)}, written by {@code TableStore}.
+   */
+  ImageManager(File directory, ImageTable table, File storedIds) {
+    this.directory = directory.toPath().toString();
+    this.name = directory.getName();
+    this.table = table;
+    this.storedIds = storedIds;
+  }
+
+  /**
+   * Creates a new {@code Image} from File and adds it to the rest of stored {@code Image(s)}, unless
+   * an {@code Image} with the same name and extension is already stored.
    *
    * @param image File to be converted to {@code Image}.
+   * @param existingTags {@code Tag(s)} found in the name of the File.
+   * @return true if a new {@code Image} was added, false otherwise.
    */
-  public void addImage(File image, ArrayList<Tag> existingTags) {
-    Image newImage;
-    if (existingTags.size() == 0) {
-      newImage = new Image(image);
-    } else {
-      newImage = new Image(image, existingTags);
+  public boolean addImage(File image, ArrayList<Tag> existingTags) {
+    // Checked before creating the Image, so a duplicate is never added to its Tags
+    String[] parts = image.getName().split("\\.");
+    if (index().get(parts[0].split("\\s@")[0], parts[1]) != 0) {
+      return false;
     }
+    Image newImage = new Image(table, image, existingTags);
     newImage.setManager(this);
-    boolean foundSame = false;
-    for (Image savedImage : images) {
-      if (savedImage.equals(newImage)) {
-        foundSame = true;
-        newImage = null;
-      }
-    }
-    if (!foundSame) {
-      images.add(newImage);
-    }
+    addImage(newImage);
+    return true;
   }
 
   /**
-   * Adds an {@code Image} to {@code ImageManager}.
+   * Adds an {@code Image} to {@code ImageManager}, unless one with the same name and extension is
+   * already stored. An {@code Image} of another table is moved to the table of this one first.
    *
    * @param image {@code Image} to be added.
    */
   public void addImage(Image image) {
-    images.add(image);
+    ImageIndex stored = index();
+    if (image.getTable() != table) {
+      if (stored.get(image.getName(), image.getExtension()) != 0) {
+        return;
+      }
+      image.moveTo(table);
+    }
+    if (stored.add(image.getId())) {
+      extensions.merge(image.getExtension(), 1, Integer::sum);
+      imageIds.add(image.getId());
+      imagesChanged = true;
+      if (changes != null) {
+        changes.add(image.getLastChanged(), image);
+      }
+    }
   }
 
   /**
@@ -73,7 +158,126 @@ public class ImageManager implements Serializable {
    * @param image {@code Image} to be removed.
    */
   public void removeImage(Image image) {
-    images.remove(image);
+    if (index().remove(image.getId())) {
+      extensions.computeIfPresent(
+          image.getExtension(), (extension, count) -> count == 1 ? null : count - 1);
+      imageIds.remove(image.getId());
+      imagesChanged = true;
+    }
+  }
+
+  /**
+   * Finds the {@code Image} with a name and extension.
+   *
+   * @param imageName name of the {@code Image}, without {@code Tag(s)}.
+   * @param extension extension of the {@code Image}, without the dot.
+   * @return the {@code Image}, or null if none is stored.
+   */
+  public Image getImage(String imageName, String extension) {
+    return table.image(index().get(imageName, extension));
+  }
+
+  /**
+   * Finds an {@code Image} by name only. If several {@code Image(s)} share the name, one of them is
+   * returned.
+   *
+   * @param imageName name of the {@code Image}, without {@code Tag(s)}.
+   * @return the {@code Image}, or null if none is stored.
+   */
+  public Image getImage(String imageName) {
+    ImageIndex stored = index();
+    for (String extension : extensions.keySet()) {
+      int id = stored.get(imageName, extension);
+      if (id != 0) {
+        return table.image(id);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Finds the {@code Image} stored in a file of this directory. The {@code Tag(s)} in the file name
+   * are ignored, so the file may be named after an older or newer set of {@code Tag(s)}.
+   *
+   * @param fileName name of the file, with {@code Tag(s)} and extension.
+   * @return the {@code Image}, or null if none is stored.
+   */
+  public Image getImageByFileName(String fileName) {
+    String[] parts = fileName.split("\\.");
+    String imageName = parts[0].split("\\s@")[0];
+    return parts.length < 2 ? getImage(imageName) : getImage(imageName, parts[1]);
+  }
+
+  /**
+   * Removes an {@code Image} whose file no longer exists, also removing it from the {@code Image(s)}
+   * of each of its {@code Tag(s)} and giving back its id.
+   *
+   * @param image {@code Image} to be removed.
+   */
+  public void dropImage(Image image) {
+    for (Tag tag : image.getCurrentTags()) {
+      tag.untagImage(image);
+    }
+    removeImage(image);
+    image.releaseId();
+  }
+
+  /**
+   * Moves the {@code Image(s)} of a duplicate {@code ImageManager} for the same directory into this
+   * one. An {@code Image} already stored here is dropped instead.
+   *
+   * @param duplicate {@code ImageManager} for the same directory.
+   */
+  void merge(ImageManager duplicate) {
+    for (Image image : new ArrayList<>(duplicate.getImages())) {
+      if (getImage(image.getName(), image.getExtension()) != null) {
+        duplicate.dropImage(image);
+      } else {
+        image.setManager(this);
+        addImage(image);
+      }
+    }
+  }
+
+  /**
+   * Moves the {@code Image(s)} to another table, e.g. that of the {@code Container} this {@code
+   * ImageManager} is added to. The {@code Image(s)} of an {@code ImageManager} read from a save.ser
+   * file are given their first rows.
+   *
+   * @param target the table.
+   */
+  void moveTo(ImageTable target) {
+    if (table == target) {
+      return;
+    }
+    ArrayList<Image> stored = table == null ? images : getImages();
+    for (Image image : stored) {
+      image.moveTo(target);
+    }
+    table = target;
+    images = new ArrayList<>(stored);
+    index = null;
+    changes = null;
+    index();
+  }
+
+  /**
+   * Gives the ids of the {@code Image(s)} in the order they were added, e.g. to store them in a
+   * mapped catalog, without making the {@code Image} of a row restored from one.
+   *
+   * @return the ids.
+   */
+  int[] getStoredIds() {
+    return index().ids();
+  }
+
+  /**
+   * Retrieves the table keeping what is known about the {@code Image(s)}.
+   *
+   * @return the table.
+   */
+  ImageTable getImageTable() {
+    return table;
   }
 
   /**
@@ -82,25 +286,130 @@ public class ImageManager implements Serializable {
    * @return Directory of {@code ImageManager}.
    */
   public Path getDirectory() {
-    return new File(directory).toPath();
+    if (path == null) {
+      path = new File(directory).toPath();
+    }
+    return path;
   }
 
   /**
-   * Returns list of {@code Image(s)} in this {@code ImageManager}.
+   * Returns list of {@code Image(s)} in this {@code ImageManager}, in the order they were added.
+   * The list is not updated by later changes and should not be modified.
    *
    * @return {@code Image(s)} associated to current {@code ImageManager}.
    */
   public ArrayList<Image> getImages() {
+    if (storedIds != null) {
+      index();
+    }
+    if (imagesChanged) {
+      images = index().images();
+      imagesChanged = false;
+    }
     return images;
   }
 
   /**
-   * Returns the directory's top level name.
+   * Returns the ids of the {@code Image(s)} in this {@code ImageManager}, for combining with those
+   * of {@code Tag(s)}. It should not be modified.
+   *
+   * @return ids of the {@code Image(s)}.
+   */
+  public ImageBitmap getImageIds() {
+    index();
+    return imageIds;
+  }
+
+  /**
+   * Finds the {@code Image(s)} whose {@code Tag(s)} changed after a time. Only the {@code Image(s)}
+   * changed since are looked at, through an index of the time of their last change.
+   *
+   * @param time time in epoch milliseconds.
+   * @return {@code Image(s)} changed after the time, the most recently changed last.
+   */
+  public List<Image> getImagesChangedAfter(long time) {
+    if (changes == null) {
+      changes = new ChangeIndex();
+      for (Image image : getImages()) {
+        changes.add(image.getLastChanged(), image);
+      }
+    }
+    LinkedHashSet<Image> found = new LinkedHashSet<>();
+    for (Image image : changes.changedAfter(time)) {
+      // A dropped Image is in a table of its own, and its id may be another's
+      if (image.getTable() == table && index().contains(image.getId())) {
+        found.remove(image);
+        found.add(image);
+      }
+    }
+    return new ArrayList<>(found);
+  }
+
+  /**
+   * Records that the {@code Tag(s)} of one of the {@code Image(s)} stored changed. The index of
+   * change times is dropped once it holds mostly earlier changes, to be built again when needed.
+   *
+   * @param image {@code Image} changed.
+   */
+  void imageChanged(Image image) {
+    if (changes != null) {
+      changes.add(image.getLastChanged(), image);
+      if (changes.size() > 2 * index().size() + 64) {
+        changes = null;
+      }
+    }
+  }
+
+  /**
+   * Returns {@code index}, building it first for an {@code ImageManager} read from a save.ser file
+   * once it is moved to a table, or after it is moved to another. It is not built while reading,
+   * since the {@code Image(s)} may not be fully read yet. For one restored from a mapped catalog,
+   * it is built from the rows of the ids mapped, without making their {@code Image(s)}.
    *
-   * @return name of directory.
+   * @return the index.
+   * @throws UncheckedIOException if the ids of one restored cannot be mapped.
    */
-  @Override
-  public String toString() {
-    return name;
+  private ImageIndex index() {
+    if (index == null) {
+      index = new ImageIndex(table);
+      extensions = new HashMap<>();
+      imageIds = new ImageBitmap();
+      if (storedIds != null) {
+        restoreIds();
+      } else {
+        for (Image image : images) {
+          addImage(image);
+        }
+        imagesChanged = false;
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Adds the ids mapped for an {@code ImageManager} restored from a mapped catalog to {@code
+   * index}, leaving out those whose rows are no longer in use.
+   *
+   * @throws UncheckedIOException if the ids cannot be mapped.
+   */
+  private void restoreIds() {
+    IntBuffer ids;
+    try {
+      ids = TableStore.mapIds(storedIds);
+    } catch (IOException ex) {
+      LOGGER.log(
+          Level.WARNING, "Could not read the images of " + directory + ": " + ex.getMessage());
+      index = null;
+      throw new UncheckedIOException(ex);
+    }
+    storedIds = null;
+    for (int i = 0; i < ids.limit(); i++) {
+      int id = ids.get(i);
+      if (table.inUse(id) && index.add(id)) {
+        extensions.merge(table.extension(id), 1, Integer::sum);
+        imageIds.add(id);
+      }
+    }
+    imagesChanged = true;
   }
 }
@@ -0,0 +1,1396 @@
+package Model;
+
+import javafx.util.Pair;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+
+/**
+ * {@code ImageTable} keeps what is known about the {@code Image(s)} of a {@code Container} in
+ * columns, one row per id, so an {@code Image} itself holds only its table and its id. Each row has
+ * a fixed width: directories, extensions, {@code TagSet(s)}, {@code ImageManager(s)} and {@code
+ * HistoryStore(s)} are kept once each and referred to by number, and names are kept as UTF-8 bytes
+ * one after another. Values that few {@code Image(s)} have, such as a File that differs from the
+ * one given by the name, are kept in maps by id.
+ *
+ * <p>The rows are split into pages that never move once made, so {@code Image(s)} can be created
+ * on several threads while others are read. A row is written by the thread that owns its {@code
+ * Image}; each value is written with release and read with acquire semantics, so a reader on
+ * another thread sees the name and row of an {@code Image} once it sees its id. Only adding pages,
+ * names and numbered values is synchronized. The row, id and name of a dropped {@code Image} are
+ * never given to another one.
+ *
+ * <p>Pages and segments of names are plain buffers, so those of a {@code Container} can be written
+ * to files by a {@code TableStore} and mapped back into memory, together with the numbered values,
+ * without reading each row. A page is only swapped for its file at a checkpoint, while no row is
+ * written.
+ */
+final class ImageTable {
+
+  /** Number of bits of an id giving its row in a page. */
+  private static final int PAGE_BITS = 12;
+
+  /** Number of bits of a position in {@code names} giving the position in its segment. */
+  private static final int SEGMENT_BITS = 20;
+
+  /** Number of bits of an id giving its row in a page of a table for a single {@code Image}. */
+  private static final int SINGLE_PAGE_BITS = 0;
+
+  /** Number of bits of a position in a segment of a table for a single {@code Image}. */
+  private static final int SINGLE_SEGMENT_BITS = 6;
+
+  /** Position in a row of the position and length of the name. */
+  private static final int NAME = 0;
+
+  /** Position in a row of the time of the last entry in the history. */
+  private static final int LAST_CHANGED = 8;
+
+  /** Position in a row of the number of the extension. */
+  private static final int EXTENSION = 16;
+
+  /** Position in a row of the number of the directory. */
+  private static final int DIRECTORY = 20;
+
+  /** Position in a row of the number of the {@code TagSet}; 0 if it is in {@code legacyTags}. */
+  private static final int TAG_SET = 24;
+
+  /** Position in a row of the number of the {@code ImageManager}; 0 if none was set. */
+  private static final int MANAGER = 28;
+
+  /** Position in a row of the number of the {@code HistoryStore}; 0 if none was set. */
+  private static final int HISTORY_STORE = 32;
+
+  /** Position in a row of the number of the file holding the stored history. */
+  private static final int HISTORY_FILE = 36;
+
+  /** Position in a row of the position of the stored history in its file. */
+  private static final int HISTORY_OFFSET = 40;
+
+  /** Position in a row of whether the history changed since it was last stored. */
+  private static final int HISTORY_CHANGED = 44;
+
+  /** Number of bytes in a row; a multiple of 8, so every value in it is aligned. */
+  private static final int ROW_BYTES = 48;
+
+  /** Number of bits of a name reference giving the length of the name. */
+  private static final int LENGTH_BITS = 16;
+
+  /** Byte order of the rows, the same on every machine so their files can be moved. */
+  static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+  /** Reads and writes an int in a page. */
+  private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ORDER);
+
+  /** Reads and writes a long in a page. */
+  private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ORDER);
+
+  /** Number of bits of an id giving its row in a page. */
+  private final int pageBits;
+
+  /** Number of bits of a position in {@code names} giving the position in its segment. */
+  private final int segmentBits;
+
+  /** Id of each {@code Image}, never given out again once it is dropped. */
+  private final ImageIds ids;
+
+  /** Pages of rows, by id divided by the size of a page; null past the last page made. */
+  private volatile Page[] pages = new Page[0];
+
+  /** Names of every {@code Image}, as UTF-8 bytes one after another, in segments. */
+  private volatile ByteBuffer[] names = new ByteBuffer[0];
+
+  /** Number of bytes used in {@code names}, including those skipped at the end of a segment. */
+  private long namesSize;
+
+  /** Directories in use, by number. */
+  private final Numbered<String> directories = new Numbered<>(new HashMap<>());
+
+  /** {@code directories} as {@code Path(s)}, made once for each directory, by the same number. */
+  private final Numbered<Path> directoryPaths = new Numbered<>(new HashMap<>());
+
+  /** Extensions in use, by number. */
+  private final Numbered<String> extensions = new Numbered<>(new HashMap<>());
+
+  /**
+   * {@code TagSet(s)} in use, by number. A {@code TagSet} given a number is kept, even once no
+   * {@code Image} has it.
+   */
+  private final Numbered<TagSet> tagSets = new Numbered<>(new IdentityHashMap<>());
+
+  /** {@code ImageManager(s)} of the {@code Image(s)}, by number. */
+  private final Numbered<ImageManager> managers = new Numbered<>(new IdentityHashMap<>());
+
+  /** {@code HistoryStore(s)} of the {@code Image(s)}, by number. */
+  private final Numbered<HistoryStore> historyStores = new Numbered<>(new IdentityHashMap<>());
+
+  /** Number of {@code Image(s)} whose stored history is in each file, by number of the file. */
+  private final Map<Integer, Integer> historyFileUses = new HashMap<>();
+
+  /** File of each {@code Image} that is not the one given by its name. */
+  private final SparseColumn<File> ownFiles = new SparseColumn<>();
+
+  /** Changes made while the history was only kept in its {@code HistoryStore}. */
+  private final SparseColumn<TagHistory> newHistories = new SparseColumn<>();
+
+  /** {@code Tag(s)} removed without updating the log, to be logged with the next change. */
+  private final SparseColumn<ArrayList<Tag>> unloggedRemovals = new SparseColumn<>();
+
+  /** {@code Tag(s)} of each {@code Image} read from a save.ser file, until they are moved. */
+  private final SparseColumn<ArrayList<Tag>> legacyTags = new SparseColumn<>();
+
+  /** History of each {@code Image} read from a save.ser file, until it is moved. */
+  private final SparseColumn<ArrayList<Pair<String, ArrayList<Tag>>>> legacyHistories =
+      new SparseColumn<>();
+
+  /** Creates an empty table. Pages and names are only made once an {@code Image} is added. */
+  ImageTable() {
+    this(PAGE_BITS, SEGMENT_BITS);
+  }
+
+  /**
+   * Creates an empty table.
+   *
+   * @param pageBits number of bits of an id giving its row in a page.
+   * @param segmentBits number of bits of a position in {@code names} giving the position in its
+   *     segment.
+   */
+  private ImageTable(int pageBits, int segmentBits) {
+    this.pageBits = pageBits;
+    this.segmentBits = segmentBits;
+    ids = new ImageIds(this, pageBits);
+  }
+
+  /**
+   * Creates an empty table for a single {@code Image}, e.g. one not in any {@code ImageManager} or
+   * dropped from one, with pages of a single row.
+   *
+   * @return the table.
+   */
+  static ImageTable single() {
+    return new ImageTable(SINGLE_PAGE_BITS, SINGLE_SEGMENT_BITS);
+  }
+
+  /**
+   * Gives a new {@code Image} its id and a row. The row has no {@code Tag(s)}, and a history that
+   * has not been stored.
+   *
+   * @param image the {@code Image}.
+   * @param name name of the {@code Image}, without {@code Tag(s)}.
+   * @param extension extension of the {@code Image}, without the dot.
+   * @param directory directory in which the {@code Image} is stored.
+   * @return id of the {@code Image}.
+   */
+  int add(Image image, String name, String extension, String directory) {
+    int id = ids.register(image);
+    Page page = page(id);
+    int row = row(id);
+    LONG.setRelease(page.rows, row + NAME, putName(name));
+    INT.setRelease(page.rows, row + EXTENSION, extensions.number(extension));
+    INT.setRelease(page.rows, row + DIRECTORY, internDirectory(directory));
+    INT.setRelease(page.rows, row + TAG_SET, tagSets.number(TagSet.EMPTY));
+    INT.setRelease(page.rows, row + HISTORY_CHANGED, 1);
+    page.changed = true;
+    return id;
+  }
+
+  /**
+   * Gives an {@code Image} of another table an id and a row here, with everything known about it
+   * there. The {@code Tag(s)} are not told.
+   *
+   * @param image the {@code Image}.
+   * @param source table the {@code Image} is in.
+   * @param sourceId id of the {@code Image} in {@code source}.
+   * @return id of the {@code Image} in this table.
+   */
+  int copy(Image image, ImageTable source, int sourceId) {
+    int id =
+        add(image, source.name(sourceId), source.extension(sourceId), source.directory(sourceId));
+    setTags(id, source.tags(sourceId));
+    setManager(id, source.manager(sourceId));
+    setStoredHistory(
+        id,
+        source.historyStore(sourceId),
+        source.historyFile(sourceId),
+        source.historyOffset(sourceId));
+    setHistoryChanged(id, source.historyChanged(sourceId));
+    setLastChanged(id, source.lastChanged(sourceId));
+    setHistory(id, source.history(sourceId));
+    ownFiles.put(id, source.ownFiles.get(sourceId));
+    newHistories.put(id, source.newHistories.get(sourceId));
+    unloggedRemovals.put(id, source.unloggedRemovals.get(sourceId));
+    legacyTags.put(id, source.legacyTags.get(sourceId));
+    legacyHistories.put(id, source.legacyHistories.get(sourceId));
+    return id;
+  }
+
+  /**
+   * Takes back the id of an {@code Image} no longer in this table and clears its row, so what was
+   * known about it can be collected.
+   *
+   * @param id id of the {@code Image}.
+   */
+  void release(int id) {
+    if (historyStore(id) != null) {
+      countHistoryFile(historyFile(id), -1);
+    }
+    Page page = pages[id >>> pageBits];
+    int row = row(id);
+    for (int offset = 0; offset < ROW_BYTES; offset += Long.BYTES) {
+      LONG.setRelease(page.rows, row + offset, 0L);
+    }
+    page.changed = true;
+    setHistory(id, null);
+    ownFiles.remove(id);
+    newHistories.remove(id);
+    unloggedRemovals.remove(id);
+    legacyTags.remove(id);
+    legacyHistories.remove(id);
+    ids.release(id);
+  }
+
+  /**
+   * Finds the {@code Image} with an id.
+   *
+   * @param id the id.
+   * @return the {@code Image}, or null if the id is not in use.
+   */
+  Image image(int id) {
+    return ids.get(id);
+  }
+
+  /**
+   * Checks whether an id has a row in use, e.g. one mapped from a file whose {@code Image} is not
+   * made yet. The row of a dropped {@code Image} is cleared, so it is not in use.
+   *
+   * @param id the id.
+   * @return true if the row is in use.
+   */
+  boolean inUse(int id) {
+    Page[] current = pages;
+    int number = id >>> pageBits;
+    return id > 0 && number < current.length && current[number] != null
+        && getInt(id, DIRECTORY) != 0;
+  }
+
+  /**
+   * Retrieves the name of an {@code Image}.
+   *
+   * @param id id of the {@code Image}.
+   * @return name, without {@code Tag(s)}.
+   */
+  String name(int id) {
+    long reference = nameReference(id);
+    byte[] bytes = new byte[(int) reference & 0xFFFF];
+    segment(reference).get(position(reference), bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Checks whether two {@code Image(s)} have the same name, without decoding either.
+   *
+   * @param id id of one {@code Image}.
+   * @param other id of the other {@code Image}.
+   * @return true if the names are the same.
+   */
+  boolean sameName(int id, int other) {
+    long reference = nameReference(id);
+    long otherReference = nameReference(other);
+    int length = (int) reference & 0xFFFF;
+    if (length != ((int) otherReference & 0xFFFF)) {
+      return false;
+    }
+    ByteBuffer segment = segment(reference);
+    ByteBuffer otherSegment = segment(otherReference);
+    int start = position(reference);
+    int otherStart = position(otherReference);
+    for (int i = 0; i < length; i++) {
+      if (segment.get(start + i) != otherSegment.get(otherStart + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Checks whether an {@code Image} has a name, without decoding it.
+   *
+   * @param id id of the {@code Image}.
+   * @param name the name, as UTF-8 bytes.
+   * @return true if the {@code Image} has the name.
+   */
+  boolean hasName(int id, byte[] name) {
+    long reference = nameReference(id);
+    if (((int) reference & 0xFFFF) != name.length) {
+      return false;
+    }
+    ByteBuffer segment = segment(reference);
+    int start = position(reference);
+    for (int i = 0; i < name.length; i++) {
+      if (segment.get(start + i) != name[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Gives a hash code of the name of an {@code Image}, without decoding it.
+   *
+   * @param id id of the {@code Image}.
+   * @return hash code of the UTF-8 bytes of the name, as given by {@code nameHash(byte[])}.
+   */
+  int nameHash(int id) {
+    long reference = nameReference(id);
+    ByteBuffer segment = segment(reference);
+    int start = position(reference);
+    int end = start + ((int) reference & 0xFFFF);
+    int hash = 1;
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + segment.get(i);
+    }
+    return hash;
+  }
+
+  /**
+   * Gives a hash code of a name.
+   *
+   * @param name the name, as UTF-8 bytes.
+   * @return hash code of the bytes.
+   */
+  static int nameHash(byte[] name) {
+    int hash = 1;
+    for (byte b : name) {
+      hash = 31 * hash + b;
+    }
+    return hash;
+  }
+
+  /**
+   * Finds the number of an extension without adding it.
+   *
+   * @param extension the extension, without the dot.
+   * @return its number, or -1 if no {@code Image} was given it.
+   */
+  int findExtension(String extension) {
+    return extensions.find(extension);
+  }
+
+  /**
+   * Retrieves the number of the extension of an {@code Image}, the same for every {@code Image}
+   * with that extension.
+   *
+   * @param id id of the {@code Image}.
+   * @return number of the extension.
+   */
+  int extensionNumber(int id) {
+    return getInt(id, EXTENSION);
+  }
+
+  /**
+   * Retrieves the extension of an {@code Image}.
+   *
+   * @param id id of the {@code Image}.
+   * @return extension, without the dot.
+   */
+  String extension(int id) {
+    return extensions.get(extensionNumber(id));
+  }
+
+  /**
+   * Retrieves the number of the directory of an {@code Image}, the same for every {@code Image} in
+   * that directory.
+   *
+   * @param id id of the {@code Image}.
+   * @return number of the directory.
+   */
+  int directoryNumber(int id) {
+    return getInt(id, DIRECTORY);
+  }
+
+  /**
+   * Retrieves the directory of an {@code Image}.
+   *
+   * @param id id of the {@code Image}.
+   * @return path of the directory, as given when it was set.
+   */
+  String directory(int id) {
+    return directories.get(directoryNumber(id));
+  }
+
+  /**
+   * Retrieves the directory of an {@code Image} as a {@code Path}, shared by every {@code Image} in
+   * that directory.
+   *
+   * @param id id of the {@code Image}.
+   * @return {@code Path} of the directory.
+   */
+  Path directoryPath(int id) {
+    return directoryPaths.get(directoryNumber(id));
+  }
+
+  /**
+   * Sets the directory of an {@code Image}.
+   *
+   * @param id id of the {@code Image}.
+   * @param directory path of the directory.
+   */
+  void setDirectory(int id, String directory) {
+    setInt(id, DIRECTORY, internDirectory(directory));
+  }
+
+  /**
+   * Retrieves the {@code TagSet} of an {@code Image}.
+   *
+   * @param id id of the {@code Image}.
+   * @return the {@code TagSet}, or null while the {@code Tag(s)} are only in {@code legacyTags}.
+   */
+  TagSet tags(int id) {
+    return tagSets.get(getInt(id, TAG_SET));
+  }
+
+  /**
+   * Sets the {@code TagSet} of an {@code Image}.
+   *
+   * @param id id of the {@code Image}.
+   * @param tags the shared {@code TagSet}, or null if the {@code Tag(s)} are in {@code
+   *     legacyTags}.
+   */
+  void setTags(int id, TagSet tags) {
+    setInt(id, TAG_SET, tagSets.number(tags));
+  }
+
+  /**
+   * Retrieves the {@code ImageManager} of an {@code Image}.
+   *
+   * @param id id of the {@code Image}.
+   * @return the {@code ImageManager}, or null if none was set.
+   */
+  ImageManager manager(int id) {
+    return managers.get(getInt(id, MANAGER));
+  }
+
+  /**
+   * Sets the {@code ImageManager} of an {@code Image}.
+   *
+   * @param id id of the {@code Image}.
+   * @param manager the {@code ImageManager}.
+   */
+  void setManager(int id, ImageManager manager) {
+    setInt(id, MANAGER, managers.number(manager));
+  }
+
+  /**
+   * Retrieves the history of an {@code Image} kept in memory.
+   *
+   * @param id id of the {@code Image}.
+   * @return the history, or null if it is only kept in its {@code HistoryStore} or not made yet.
+   */
+  TagHistory history(int id) {
+    AtomicReferenceArray<TagHistory> histories = pages[id >>> pageBits].histories;
+    return histories == null ? null : histories.get(id & pageMask());
+  }
+
+  /**
+   * Sets the history of an {@code Image} kept in memory.
+   *
+   * @param id id of the {@code Image}.
+   * @param history the history, or null to drop it.
+   */
+  void setHistory(int id, TagHistory history) {
+    Page page = pages[id >>> pageBits];
+    if (page.histories == null) {
+      if (history == null) {
+        return;
+      }
+      synchronized (page) {
+        if (page.histories == null) {
+          page.histories = new AtomicReferenceArray<>(pageMask() + 1);
+        }
+      }
+    }
+    page.histories.set(id & pageMask(), history);
+  }
+
+  /**
+   * Retrieves where the history of an {@code Image} is kept on disk.
+   *
+   * @param id id of the {@code Image}.
+   * @return the {@code HistoryStore}, or null if the history has not been stored.
+   */
+  HistoryStore historyStore(int id) {
+    return historyStores.get(getInt(id, HISTORY_STORE));
+  }
+
+  /**
+   * Retrieves the number of the file holding the stored history of an {@code Image}.
+   *
+   * @param id id of the {@code Image}.
+   * @return number of the file.
+   */
+  int historyFile(int id) {
+    return getInt(id, HISTORY_FILE);
+  }
+
+  /**
+   * Retrieves the position of the stored history of an {@code Image} in its file.
+   *
+   * @param id id of the {@code Image}.
+   * @return position in the file.
+   */
+  int historyOffset(int id) {
+    return getInt(id, HISTORY_OFFSET);
+  }
+
+  /**
+   * Records where the history of an {@code Image} has been stored.
+   *
+   * @param id id of the {@code Image}.
+   * @param store {@code HistoryStore} keeping the history.
+   * @param file number of the file holding the history.
+   * @param offset position of the history in the file.
+   */
+  void setStoredHistory(int id, HistoryStore store, int file, int offset) {
+    if (historyStore(id) != null) {
+      countHistoryFile(historyFile(id), -1);
+    }
+    if (store != null) {
+      countHistoryFile(file, 1);
+    }
+    setInt(id, HISTORY_FILE, file);
+    setInt(id, HISTORY_OFFSET, offset);
+    // Written last, so a reader that sees the store also sees where in it the history is
+    setInt(id, HISTORY_STORE, historyStores.number(store));
+  }
+
+  /**
+   * Checks whether the history of an {@code Image} changed since it was last stored.
+   *
+   * @param id id of the {@code Image}.
+   * @return true if it changed or was never stored.
+   */
+  boolean historyChanged(int id) {
+    return getInt(id, HISTORY_CHANGED) != 0;
+  }
+
+  /**
+   * Sets whether the history of an {@code Image} changed since it was last stored.
+   *
+   * @param id id of the {@code Image}.
+   * @param changed whether it changed.
+   */
+  void setHistoryChanged(int id, boolean changed) {
+    setInt(id, HISTORY_CHANGED, changed ? 1 : 0);
+  }
+
+  /**
+   * Retrieves the time of the last entry in the history of an {@code Image}.
+   *
+   * @param id id of the {@code Image}.
+   * @return time in epoch milliseconds, or 0 if not known yet.
+   */
+  long lastChanged(int id) {
+    return (long) LONG.getAcquire(rows(id), row(id) + LAST_CHANGED);
+  }
+
+  /**
+   * Sets the time of the last entry in the history of an {@code Image}.
+   *
+   * @param id id of the {@code Image}.
+   * @param time time in epoch milliseconds.
+   */
+  void setLastChanged(int id, long time) {
+    Page page = pages[id >>> pageBits];
+    LONG.setRelease(page.rows, row(id) + LAST_CHANGED, time);
+    page.changed = true;
+  }
+
+  /**
+   * Retrieves the File of an {@code Image} that differs from the one given by its name.
+   *
+   * @param id id of the {@code Image}.
+   * @return the File, or null if it is the one given by the name.
+   */
+  File ownFile(int id) {
+    return ownFiles.get(id);
+  }
+
+  /**
+   * Sets the File of an {@code Image} that differs from the one given by its name.
+   *
+   * @param id id of the {@code Image}.
+   * @param file the File, or null if it is the one given by the name.
+   */
+  void setOwnFile(int id, File file) {
+    ownFiles.put(id, file);
+  }
+
+  /**
+   * Retrieves the changes made while the history of an {@code Image} was only kept in its {@code
+   * HistoryStore}, making an empty history for them first if there is none.
+   *
+   * @param id id of the {@code Image}.
+   * @return the changes.
+   */
+  TagHistory newHistory(int id) {
+    synchronized (newHistories) {
+      TagHistory history = newHistories.get(id);
+      if (history == null) {
+        history = new TagHistory();
+        newHistories.put(id, history);
+      }
+      return history;
+    }
+  }
+
+  /**
+   * Takes the changes made while the history of an {@code Image} was only kept in its {@code
+   * HistoryStore}, once it is read back.
+   *
+   * @param id id of the {@code Image}.
+   * @return the changes, or null if there were none.
+   */
+  TagHistory takeNewHistory(int id) {
+    return newHistories.remove(id);
+  }
+
+  /**
+   * Checks whether {@code Tag(s)} were removed from an {@code Image} without updating the log.
+   *
+   * @param id id of the {@code Image}.
+   * @return true if there are such {@code Tag(s)}.
+   */
+  boolean hasUnloggedRemovals(int id) {
+    return unloggedRemovals.get(id) != null;
+  }
+
+  /**
+   * Records a {@code Tag} removed from an {@code Image} without updating the log.
+   *
+   * @param id id of the {@code Image}.
+   * @param tag the {@code Tag}.
+   */
+  void addUnloggedRemoval(int id, Tag tag) {
+    synchronized (unloggedRemovals) {
+      ArrayList<Tag> removals = unloggedRemovals.get(id);
+      if (removals == null) {
+        removals = new ArrayList<>();
+        unloggedRemovals.put(id, removals);
+      }
+      removals.add(tag);
+    }
+  }
+
+  /**
+   * Takes the {@code Tag(s)} removed from an {@code Image} without updating the log, once they are
+   * logged.
+   *
+   * @param id id of the {@code Image}.
+   * @return the {@code Tag(s)}, or null if there are none.
+   */
+  ArrayList<Tag> takeUnloggedRemovals(int id) {
+    return unloggedRemovals.remove(id);
+  }
+
+  /**
+   * Keeps the {@code Tag(s)} and history of an {@code Image} read from a save.ser file, until they
+   * are asked for. The {@code TagSet} is left unset meanwhile.
+   *
+   * @param id id of the {@code Image}.
+   * @param tags {@code Tag(s)} as read.
+   * @param history history as read.
+   */
+  void setLegacy(
+      int id, ArrayList<Tag> tags, ArrayList<Pair<String, ArrayList<Tag>>> history) {
+    setTags(id, null);
+    legacyTags.put(id, tags);
+    legacyHistories.put(id, history);
+  }
+
+  /**
+   * Takes the {@code Tag(s)} of an {@code Image} read from a save.ser file, once its {@code TagSet}
+   * is built.
+   *
+   * @param id id of the {@code Image}.
+   * @return the {@code Tag(s)}, or null if there are none.
+   */
+  ArrayList<Tag> takeLegacyTags(int id) {
+    return legacyTags.remove(id);
+  }
+
+  /**
+   * Takes the history of an {@code Image} read from a save.ser file, once its history is built.
+   *
+   * @param id id of the {@code Image}.
+   * @return the history, or null if there is none.
+   */
+  ArrayList<Pair<String, ArrayList<Tag>>> takeLegacyHistory(int id) {
+    return legacyHistories.remove(id);
+  }
+
+  /**
+   * Gives the number of pages made, each holding the rows of {@code 1 << pageBits} ids.
+   *
+   * @return number of pages.
+   */
+  int pageCount() {
+    Page[] current = pages;
+    int count = current.length;
+    while (count > 0 && current[count - 1] == null) {
+      count--;
+    }
+    return count;
+  }
+
+  /**
+   * Checks whether a row of a page changed since the page was last taken to be written.
+   *
+   * @param number number of the page.
+   * @return true if a row changed.
+   */
+  boolean pageChanged(int number) {
+    return pages[number].changed;
+  }
+
+  /**
+   * Checks whether a page is mapped from a file rather than kept on the heap.
+   *
+   * @param number number of the page.
+   * @return true if it is mapped.
+   */
+  boolean pageMapped(int number) {
+    return pages[number].rows.isDirect();
+  }
+
+  /**
+   * Copies the rows of a page to be written to its file. The page counts as unchanged from then on.
+   *
+   * @param number number of the page.
+   * @return the rows.
+   */
+  byte[] takePage(int number) {
+    Page page = pages[number];
+    // Cleared first, so a row written while copying marks the page changed again
+    page.changed = false;
+    byte[] rows = new byte[ROW_BYTES << pageBits];
+    page.rows.get(0, rows);
+    return rows;
+  }
+
+  /**
+   * Swaps the rows of a page for the same rows mapped from its file, unless a row changed since
+   * the page was taken.
+   *
+   * @param number number of the page.
+   * @param rows rows mapped from the file.
+   */
+  synchronized void mapPage(int number, ByteBuffer rows) {
+    Page page = pages[number];
+    if (!page.changed) {
+      page.rows = rows.order(ORDER);
+    }
+  }
+
+  /**
+   * Gives the number of bytes used in the names, including those skipped at the end of a segment.
+   *
+   * @return number of bytes.
+   */
+  synchronized long namesSize() {
+    return namesSize;
+  }
+
+  /**
+   * Gives the number of segments of names made, each of {@code 1 << segmentBits} bytes.
+   *
+   * @return number of segments.
+   */
+  int segmentCount() {
+    return names.length;
+  }
+
+  /**
+   * Checks whether a segment of names is mapped from a file rather than kept on the heap.
+   *
+   * @param number number of the segment.
+   * @return true if it is mapped.
+   */
+  boolean segmentMapped(int number) {
+    return names[number].isDirect();
+  }
+
+  /**
+   * Copies the names of a segment up to the last byte used, to be written to its file.
+   *
+   * @param number number of the segment.
+   * @return the names.
+   */
+  synchronized byte[] takeSegment(int number) {
+    ByteBuffer segment = names[number];
+    // A finished segment is taken whole, as one holding a single long name is larger than others
+    long used =
+        number < namesSize >>> segmentBits
+            ? segment.capacity()
+            : namesSize - ((long) number << segmentBits);
+    byte[] bytes = new byte[(int) used];
+    segment.get(0, bytes);
+    return bytes;
+  }
+
+  /**
+   * Checks whether names were added to a segment since the names had a size.
+   *
+   * @param number number of the segment.
+   * @param since number of bytes used in the names then.
+   * @return true if the segment changed.
+   */
+  synchronized boolean segmentChanged(int number, long since) {
+    return namesSize > since && number >= since >>> segmentBits;
+  }
+
+  /**
+   * Swaps a segment of names no more names are added to for the same names mapped from its file.
+   *
+   * @param number number of the segment.
+   * @param segment names mapped from the file.
+   */
+  synchronized void mapSegment(int number, ByteBuffer segment) {
+    if (number < namesSize >>> segmentBits) {
+      ByteBuffer[] swapped = names.clone();
+      swapped[number] = segment;
+      names = swapped;
+    }
+  }
+
+  /**
+   * Fills an empty table with pages and names mapped from their files. The segment names are still
+   * added to is copied to the heap, as its file ends at the last name.
+   *
+   * @param rows rows of each page.
+   * @param segments names of each segment.
+   * @param size number of bytes used in the names.
+   * @throws IOException if a page is not the size of a page.
+   */
+  synchronized void restore(ByteBuffer[] rows, ByteBuffer[] segments, long size)
+      throws IOException {
+    Page[] restored = new Page[rows.length];
+    for (int i = 0; i < rows.length; i++) {
+      if (rows[i].capacity() != ROW_BYTES << pageBits) {
+        throw new IOException("Page " + i + " has " + rows[i].capacity() + " bytes");
+      }
+      restored[i] = new Page(rows[i].order(ORDER));
+    }
+    pages = restored;
+    ByteBuffer[] restoredNames = segments.clone();
+    int open = (int) (size >>> segmentBits);
+    if (open < restoredNames.length) {
+      ByteBuffer segment = ByteBuffer.allocate(1 << segmentBits);
+      segment.put(0, restoredNames[open], 0, restoredNames[open].limit());
+      restoredNames[open] = segment;
+    }
+    names = restoredNames;
+    namesSize = size;
+  }
+
+  /**
+   * Writes the values kept once each, the number of ids given out, the Files of their own and how
+   * many stored histories are in each file, so a table whose pages and names are mapped back can
+   * be restored by {@code readValues}. {@code ImageManager(s)} are written as their directories.
+   *
+   * @param output stream to write to.
+   * @throws IOException if the stream cannot be written.
+   */
+  void writeValues(DataOutput output) throws IOException {
+    CatalogCodec.writeVarInt(output, ids.size());
+    CatalogCodec.writeVarInt(output, directories.size() - 1);
+    for (int i = 1; i < directories.size(); i++) {
+      output.writeUTF(directories.get(i));
+    }
+    CatalogCodec.writeVarInt(output, extensions.size() - 1);
+    for (int i = 1; i < extensions.size(); i++) {
+      output.writeUTF(extensions.get(i));
+    }
+    CatalogCodec.writeVarInt(output, tagSets.size() - 1);
+    for (int i = 1; i < tagSets.size(); i++) {
+      List<Tag> tags = new ArrayList<>();
+      for (Tag tag : tagSets.get(i)) {
+        // A TagSet no Image has any more may still hold a Tag never added to the TagManager
+        if (tag.getId() != 0) {
+          tags.add(tag);
+        }
+      }
+      CatalogCodec.writeTagIds(output, tags);
+    }
+    CatalogCodec.writeVarInt(output, managers.size() - 1);
+    for (int i = 1; i < managers.size(); i++) {
+      ImageManager manager = managers.get(i);
+      output.writeUTF(manager == null ? "" : manager.getDirectory().toString());
+    }
+    CatalogCodec.writeVarInt(output, historyStores.size() - 1);
+    Map<Integer, Integer> uses = historyFileUses();
+    CatalogCodec.writeVarInt(output, uses.size());
+    for (Map.Entry<Integer, Integer> use : uses.entrySet()) {
+      CatalogCodec.writeVarInt(output, use.getKey());
+      CatalogCodec.writeVarInt(output, use.getValue());
+    }
+    Map<Integer, File> files = ownFiles.copy();
+    CatalogCodec.writeVarInt(output, files.size());
+    for (Map.Entry<Integer, File> file : files.entrySet()) {
+      CatalogCodec.writeVarInt(output, file.getKey());
+      output.writeUTF(file.getValue().getPath());
+    }
+  }
+
+  /**
+   * Reads the values written by {@code writeValues} into a table restored from mapped pages and
+   * names. Every {@code HistoryStore} is taken to be the one given. The numbers of the {@code
+   * ImageManager(s)} are only kept, to be given to them by {@code restoreManagers} once they are
+   * made.
+   *
+   * @param input stream to read from.
+   * @param tags finds a {@code Tag} by id, or gives null if there is none.
+   * @param histories {@code HistoryStore} the histories were stored in.
+   * @return directory of the {@code ImageManager} with each number, from 1.
+   * @throws IOException if the stream cannot be read.
+   */
+  List<String> readValues(DataInput input, IntFunction<Tag> tags, HistoryStore histories)
+      throws IOException {
+    ids.restore(CatalogCodec.readVarInt(input));
+    int count = CatalogCodec.readVarInt(input);
+    for (int i = 0; i < count; i++) {
+      internDirectory(input.readUTF());
+    }
+    count = CatalogCodec.readVarInt(input);
+    for (int i = 0; i < count; i++) {
+      extensions.add(input.readUTF());
+    }
+    count = CatalogCodec.readVarInt(input);
+    for (int i = 0; i < count; i++) {
+      tagSets.add(TagSet.of(CatalogCodec.readTagIds(input, tags)));
+    }
+    count = CatalogCodec.readVarInt(input);
+    List<String> managerDirectories = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      managerDirectories.add(input.readUTF());
+    }
+    managers.reserve(count);
+    count = CatalogCodec.readVarInt(input);
+    for (int i = 0; i < count; i++) {
+      historyStores.add(histories);
+    }
+    count = CatalogCodec.readVarInt(input);
+    for (int i = 0; i < count; i++) {
+      countHistoryFile(CatalogCodec.readVarInt(input), CatalogCodec.readVarInt(input));
+    }
+    count = CatalogCodec.readVarInt(input);
+    for (int i = 0; i < count; i++) {
+      ownFiles.put(CatalogCodec.readVarInt(input), new File(input.readUTF()));
+    }
+    return managerDirectories;
+  }
+
+  /**
+   * Gives an {@code ImageManager} a number if it has none, so {@code writeValues} writes it even
+   * while none of its rows are in use.
+   *
+   * @param manager the {@code ImageManager}.
+   */
+  void numberManager(ImageManager manager) {
+    managers.number(manager);
+  }
+
+  /**
+   * Gives the {@code ImageManager(s)} read back their numbers, in the order of the directories
+   * returned by {@code readValues}.
+   *
+   * @param restored the {@code ImageManager} with each number from 1, or null if it is gone.
+   */
+  void restoreManagers(List<ImageManager> restored) {
+    for (int i = 0; i < restored.size(); i++) {
+      managers.restore(i + 1, restored.get(i));
+    }
+  }
+
+  /**
+   * Gives how many {@code Image(s)} have their stored history in each file.
+   *
+   * @return number of {@code Image(s)}, by number of the file.
+   */
+  Map<Integer, Integer> historyFileUses() {
+    synchronized (historyFileUses) {
+      return new HashMap<>(historyFileUses);
+    }
+  }
+
+  /**
+   * Changes how many {@code Image(s)} have their stored history in a file.
+   *
+   * @param file number of the file.
+   * @param change number of {@code Image(s)} added, or removed if negative.
+   */
+  private void countHistoryFile(int file, int change) {
+    synchronized (historyFileUses) {
+      historyFileUses.merge(
+          file, change, (count, added) -> count + added == 0 ? null : count + added);
+    }
+  }
+
+  /**
+   * Reads an int of the row of an id.
+   *
+   * @param id the id.
+   * @param offset position of the int in the row.
+   * @return the int.
+   */
+  private int getInt(int id, int offset) {
+    return (int) INT.getAcquire(rows(id), row(id) + offset);
+  }
+
+  /**
+   * Writes an int of the row of an id.
+   *
+   * @param id the id.
+   * @param offset position of the int in the row.
+   * @param value the int.
+   */
+  private void setInt(int id, int offset, int value) {
+    Page page = pages[id >>> pageBits];
+    INT.setRelease(page.rows, row(id) + offset, value);
+    page.changed = true;
+  }
+
+  /**
+   * Reads the position and length of the name of an id.
+   *
+   * @param id the id.
+   * @return position of the name in {@code names}, followed by its length.
+   */
+  private long nameReference(int id) {
+    return (long) LONG.getAcquire(rows(id), row(id) + NAME);
+  }
+
+  /**
+   * Finds the rows of the page holding an id.
+   *
+   * @param id the id.
+   * @return the rows of the page.
+   */
+  private ByteBuffer rows(int id) {
+    return pages[id >>> pageBits].rows;
+  }
+
+  /**
+   * Gives the position of the row of an id in its page.
+   *
+   * @param id the id.
+   * @return position in bytes.
+   */
+  private int row(int id) {
+    return (id & pageMask()) * ROW_BYTES;
+  }
+
+  /**
+   * Gives the mask giving the row in a page of an id.
+   *
+   * @return the mask.
+   */
+  private int pageMask() {
+    return (1 << pageBits) - 1;
+  }
+
+  /**
+   * Finds the segment of {@code names} holding a name.
+   *
+   * @param reference position and length of the name.
+   * @return the segment.
+   */
+  private ByteBuffer segment(long reference) {
+    return names[(int) (reference >>> (LENGTH_BITS + segmentBits))];
+  }
+
+  /**
+   * Gives the position of a name in its segment of {@code names}.
+   *
+   * @param reference position and length of the name.
+   * @return position in bytes.
+   */
+  private int position(long reference) {
+    return (int) (reference >>> LENGTH_BITS) & ((1 << segmentBits) - 1);
+  }
+
+  /**
+   * Finds the page holding an id, making it first if needed.
+   *
+   * @param id the id.
+   * @return the page.
+   */
+  private synchronized Page page(int id) {
+    int number = id >>> pageBits;
+    Page[] grown = pages;
+    if (number >= grown.length) {
+      grown = Arrays.copyOf(grown, Math.max(number + 1, grown.length * 2));
+    }
+    for (int i = 0; i <= number; i++) {
+      if (grown[i] == null) {
+        grown[i] = new Page(ByteBuffer.allocate(ROW_BYTES << pageBits).order(ORDER));
+      }
+    }
+    pages = grown;
+    return grown[number];
+  }
+
+  /**
+   * Adds a name to {@code names}. A name is never split between segments; one longer than a
+   * segment is given a segment of its own.
+   *
+   * @param name the name.
+   * @return position of the name in {@code names}, followed by its length in {@code LENGTH_BITS}
+   *     bits.
+   * @throws IllegalArgumentException if the name is too long.
+   */
+  private synchronized long putName(String name) {
+    byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+    if (bytes.length >= 1 << LENGTH_BITS) {
+      throw new IllegalArgumentException("Name too long: " + name);
+    }
+    int segmentSize = 1 << segmentBits;
+    int segment = (int) (namesSize >>> segmentBits);
+    int position = (int) namesSize & (segmentSize - 1);
+    if (position > 0 && position + bytes.length > segmentSize) {
+      segment++;
+      position = 0;
+    }
+    if (segment >= names.length) {
+      ByteBuffer[] grown = Arrays.copyOf(names, segment + 1);
+      grown[segment] = ByteBuffer.allocate(Math.max(segmentSize, bytes.length));
+      names = grown;
+    }
+    names[segment].put(position, bytes);
+    long start = (long) segment << segmentBits | position;
+    // The next name after one with a segment of its own starts the next segment
+    namesSize =
+        bytes.length > segmentSize ? (long) (segment + 1) << segmentBits : start + bytes.length;
+    return start << LENGTH_BITS | bytes.length;
+  }
+
+  /**
+   * Gives the number of a directory, adding it and its {@code Path} if it is new.
+   *
+   * @param directory path of the directory.
+   * @return number of the directory.
+   */
+  private synchronized int internDirectory(String directory) {
+    int number = directories.find(directory);
+    if (number < 0) {
+      number = directories.add(directory);
+      directoryPaths.add(Paths.get(directory));
+    }
+    return number;
+  }
+
+  /** Rows of the ids of a page, and the histories of those read into memory. */
+  private static final class Page {
+
+    /** The rows, {@code ROW_BYTES} each; on the heap, or mapped from the file of the page. */
+    volatile ByteBuffer rows;
+
+    /** Whether a row changed since the page was last taken to be written. */
+    volatile boolean changed;
+
+    /** History of each {@code Image} kept in memory; null until one is. */
+    volatile AtomicReferenceArray<TagHistory> histories;
+
+    /**
+     * Creates a page.
+     *
+     * @param rows space for the rows, filled with zeros or mapped from a file.
+     */
+    Page(ByteBuffer rows) {
+      this.rows = rows;
+    }
+  }
+
+  /**
+   * Values kept once each, by number in the order they were added. Number 0 stands for null.
+   *
+   * @param <V> type of the values.
+   */
+  private static final class Numbered<V> {
+
+    /** Number of each value. */
+    private final Map<V, Integer> numbers;
+
+    /** Value with each number; read without locking. */
+    private volatile Object[] values = new Object[16];
+
+    /** Number of numbers given, including 0. */
+    private int size = 1;
+
+    /**
+     * Creates an empty set of numbered values.
+     *
+     * @param numbers empty map deciding which values are the same.
+     */
+    Numbered(Map<V, Integer> numbers) {
+      this.numbers = numbers;
+    }
+
+    /**
+     * Gives the number of a value, adding it if it is new.
+     *
+     * @param value the value, or null.
+     * @return its number, or 0 for null.
+     */
+    synchronized int number(V value) {
+      if (value == null) {
+        return 0;
+      }
+      Integer number = numbers.get(value);
+      return number != null ? number : add(value);
+    }
+
+    /**
+     * Adds a value, giving it the next number.
+     *
+     * @param value the value.
+     * @return its number.
+     */
+    synchronized int add(V value) {
+      Object[] grown = size < values.length ? values : Arrays.copyOf(values, size * 2);
+      grown[size] = value;
+      // Written again so other threads see the new value
+      values = grown;
+      numbers.put(value, size);
+      return size++;
+    }
+
+    /**
+     * Finds the number of a value without adding it.
+     *
+     * @param value the value.
+     * @return its number, or -1 if it was never added.
+     */
+    synchronized int find(V value) {
+      Integer number = numbers.get(value);
+      return number == null ? -1 : number;
+    }
+
+    /**
+     * Gives numbers to values not known yet, to be set by {@code restore}. Until then they stand
+     * for null.
+     *
+     * @param count number of numbers given.
+     */
+    synchronized void reserve(int count) {
+      Object[] grown = size + count <= values.length ? values : Arrays.copyOf(values, size + count);
+      size += count;
+      values = grown;
+    }
+
+    /**
+     * Sets the value of a number given by {@code reserve}.
+     *
+     * @param number the number.
+     * @param value the value, or null.
+     */
+    synchronized void restore(int number, V value) {
+      Object[] current = values;
+      current[number] = value;
+      // Written again so other threads see the new value
+      values = current;
+      if (value != null) {
+        numbers.putIfAbsent(value, number);
+      }
+    }
+
+    /**
+     * Gives the number of numbers given, including 0.
+     *
+     * @return number of numbers.
+     */
+    synchronized int size() {
+      return size;
+    }
+
+    /**
+     * Retrieves the value with a number.
+     *
+     * @param number the number.
+     * @return the value, or null for 0.
+     */
+    @SuppressWarnings("unchecked")
+    V get(int number) {
+      return (V) values[number];
+    }
+  }
+
+  /**
+   * Column of values that few {@code Image(s)} have, kept by id.
+   *
+   * @param <V> type of the values.
+   */
+  private static final class SparseColumn<V> {
+
+    /** Value of each id that has one. */
+    private final Map<Integer, V> values = new HashMap<>();
+
+    /**
+     * Retrieves the value of an id.
+     *
+     * @param id the id.
+     * @return the value, or null if it has none.
+     */
+    synchronized V get(int id) {
+      return values.get(id);
+    }
+
+    /**
+     * Sets the value of an id.
+     *
+     * @param id the id.
+     * @param value the value, or null to remove it.
+     */
+    synchronized void put(int id, V value) {
+      if (value == null) {
+        values.remove(id);
+      } else {
+        values.put(id, value);
+      }
+    }
+
+    /**
+     * Copies the values of every id that has one.
+     *
+     * @return the values, by id.
+     */
+    synchronized Map<Integer, V> copy() {
+      return new HashMap<>(values);
+    }
+
+    /**
+     * Removes the value of an id.
+     *
+     * @param id the id.
+     * @return the value removed, or null if it had none.
+     */
+    synchronized V remove(int id) {
+      return values.remove(id);
+    }
+  }
+}
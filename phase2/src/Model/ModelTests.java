@@ -2,9 +2,21 @@ package Model;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -23,6 +35,32 @@ public class ModelTests {
         assertTrue(container.getTagManager() != null);
     }
 
+    @Test
+    void testContainerRegistry() {
+        Container container = new Container();
+        File test = new File("/");
+        ImageManager im = new ImageManager(test);
+        assertTrue(container.addImageManager(im) == im);
+        assertTrue(container.addImageManager(new ImageManager(test)) == im);
+        assertEquals(container.getImageManagers().size(), 1);
+        assertTrue(container.getImageManager(test.toPath()) == im);
+        assertTrue(container.getImageManager(Paths.get("/nowhere")) == null);
+    }
+
+    @Test
+    void testContainerGetImage() {
+        Container container = new Container();
+        ImageManager im = container.addImageManager(new ImageManager(new File("/dir")));
+        im.addImage(new File("/dir/test.jpg"), new ArrayList<>());
+        im.addImage(new File("/dir/test.png"), new ArrayList<>());
+        Image png = container.getImage(Paths.get("/dir/test @tag1.png"));
+        assertEquals("test.png", png.toString());
+        assertTrue(container.getImage(Paths.get("/dir/other.png")) == null);
+        assertTrue(container.getImage(Paths.get("/other/test.png")) == null);
+        im.removeImage(png);
+        assertTrue(container.getImage(Paths.get("/dir/test.png")) == null);
+    }
+
     @Test
     void testContainerDirectory() {
         Container cont = new Container();
@@ -136,6 +174,34 @@ public class ModelTests {
         }
     }
 
+    @Test
+    void testImageHistory() {
+        try {
+            Tag tag1 = new Tag("tag1");
+            Tag tag2 = new Tag("tag2");
+            Image image = new Image(new File("/todo.txt"));
+            image.addTag(tag1);
+            image.addTag(tag2);
+            image.removeTag(tag1);
+            image.resetTags(2);
+            tag2.untagAllImages();
+            image.addTag(new Tag("tag3"));
+            assertEquals(7, image.getHistorySize());
+            ArrayList<String> names = new ArrayList<>();
+            for (String entry : image.getNameHistory()) {
+                names.add(entry.substring(entry.indexOf(":   ") + 4));
+            }
+            assertEquals("[todo.txt, todo @tag1.txt, todo @tag1 @tag2.txt, todo @tag2.txt, "
+                    + "todo @tag1 @tag2.txt, todo @tag1.txt, todo @tag1 @tag3.txt]",
+                    names.toString());
+            assertTrue(image.getLog().get(4).endsWith("@tag1 @tag2.txt -> todo @tag1.txt"));
+            assertTrue(image.getLog().get(5).endsWith("@tag1.txt -> todo @tag1 @tag3.txt"));
+            assertEquals(2, image.getLifeTimeTags().get(2).getValue().size());
+        } catch (TagNamingException ex) {
+            assertFalse(true, ex.getMessage());
+        }
+    }
+
     @Test
     void testImageGetNameOnly() {
         try {
@@ -223,6 +289,29 @@ public class ModelTests {
         assertTrue(im.getImages().isEmpty());
     }
 
+    @Test
+    void testIMGetImage() {
+        ImageManager im = new ImageManager(new File("/"));
+        im.addImage(new File("/test.jpg"), new ArrayList<>());
+        im.addImage(new File("/test.png"), new ArrayList<>());
+        im.addImage(new File("/other.jpg"), new ArrayList<>());
+        assertEquals(3, im.getImages().size());
+        Image png = im.getImage("test", "png");
+        assertEquals("test.png", png.toString());
+        im.removeImage(png);
+        assertTrue(im.getImage("test", "png") == null);
+        assertEquals("test.jpg", im.getImage("test").toString());
+        assertEquals("other.jpg", im.getImages().get(1).toString());
+    }
+
+    @Test
+    void testImageHashCode() {
+        Image image1 = new Image(new File("/todo.txt"));
+        Image image2 = new Image(new File("/todo.txt"));
+        assertEquals(image1.hashCode(), image2.hashCode());
+        assertFalse(image1.equals(new Image(new File("/todo.png"))), "Different extensions");
+    }
+
     @Test
     void testTMAddRemoveTag() {
         try {
@@ -239,4 +328,446 @@ public class ModelTests {
             ex.getMessage();
         }
     }
+
+    @Test
+    void testImageBitmap() {
+        ImageBitmap odd = new ImageBitmap();
+        ImageBitmap low = new ImageBitmap();
+        for (int i = 0; i < 200000; i++) {
+            if (i % 2 == 1) {
+                odd.add(i);
+            }
+            if (i < 10) {
+                low.add(i);
+            }
+        }
+        assertEquals(100000, odd.cardinality());
+        assertEquals(5, odd.and(low).cardinality());
+        assertEquals(100005, odd.or(low).cardinality());
+        assertEquals(5, low.andNot(odd).cardinality());
+        assertTrue(odd.remove(199999));
+        assertFalse(odd.contains(199999));
+        assertEquals(0, low.andNot(odd).stream().findFirst().getAsInt());
+    }
+
+    @Test
+    void testTagImageIds() {
+        try {
+            Container container = new Container();
+            ImageManager im = container.addImageManager(new ImageManager(new File("/")));
+            Tag beach = new Tag("beach");
+            Tag blurry = new Tag("blurry");
+            ArrayList<Tag> listOfTag = new ArrayList<>();
+            listOfTag.add(beach);
+            im.addImage(new File("/a.jpg"), listOfTag);
+            im.addImage(new File("/b.jpg"), listOfTag);
+            im.addImage(new File("/c.jpg"), new ArrayList<>());
+            im.getImage("b").addTag(blurry);
+            ImageBitmap sharp = beach.getImageIds().andNot(blurry.getImageIds());
+            assertEquals("a.jpg", container.getImages(sharp).get(0).getName() + ".jpg");
+            assertEquals(1, container.getImages(sharp).size());
+            assertEquals(1, container.getImageIds().andNot(beach.getImageIds()).cardinality());
+            im.getImage("b").resetTags(0);
+            assertEquals(0, blurry.getImageIds().cardinality());
+            im.dropImage(im.getImage("a"));
+            assertTrue(beach.getImageIds().contains(im.getImage("b").getId()));
+            assertEquals(1, beach.getImageIds().cardinality());
+        } catch (TagNamingException ex) {
+            assertFalse(true, ex.getMessage());
+        }
+    }
+
+    @Test
+    void testTagMembership() {
+        try {
+            Tag tag1 = new Tag("tag1");
+            Tag tag2 = new Tag("tag2");
+            ImageManager im = new ImageManager(new File("/"));
+            ArrayList<Tag> listOfTag = new ArrayList<>();
+            listOfTag.add(tag2);
+            listOfTag.add(tag1);
+            im.addImage(new File("/test.jpg"), listOfTag);
+            Image image = im.getImage("test");
+            assertEquals("test @tag2 @tag1.jpg", image.toString());
+            image.addTag(tag2);
+            assertEquals(1, tag2.getTaggedImages().size());
+            image.setDirectory("/moved");
+            image.removeTag(tag2);
+            assertEquals(0, tag2.getTaggedImages().size());
+            tag1.untagAllImages();
+            assertEquals(0, image.getCurrentTags().size());
+            assertEquals(0, tag1.getTaggedImages().size());
+        } catch (TagNamingException ex) {
+            assertFalse(true, ex.getMessage());
+        }
+    }
+
+    @Test
+    void testTMGetTag() {
+        try {
+            TagManager tm = new TagManager();
+            Tag tag1 = tm.resolveTag("tag1");
+            assertTrue(tm.resolveTag("tag1") == tag1);
+            assertTrue(tm.resolveTag(new Tag("tag1")) == tag1);
+            Tag tag2 = tm.resolveTag("tag2");
+            assertTrue(tm.getTag("tag2") == tag2);
+            assertTrue(tm.getTag(tag2.getId()) == tag2);
+            assertEquals(tag1.getId() + 1, tag2.getId());
+            tm.deleteTag(tag1);
+            assertTrue(tm.getTag("tag1") == null);
+            assertTrue(tm.getTag(tag1.getId()) == null);
+            assertEquals(1, tm.getTags().size());
+            tm.resolveTag("bad@name");
+            assertFalse(true, "If exception is not caught.");
+        } catch (TagNamingException ex) {
+            assertTrue(true);
+        }
+    }
+
+    @Test
+    void testCatalogCodecRoundTrip() {
+        try {
+            TagManager tm = new TagManager();
+            Tag tag1 = new Tag("tag1");
+            Tag tag2 = new Tag("tag2");
+            tm.addTag(tag1);
+            tm.addTag(tag2);
+            ImageManager im = new ImageManager(new File("/"));
+            ArrayList<Tag> listOfTag = new ArrayList<>();
+            listOfTag.add(tag1);
+            im.addImage(new File("/test.jpg"), listOfTag);
+            im.getImages().get(0).addTag(tag2);
+            ByteArrayOutputStream tagBytes = new ByteArrayOutputStream();
+            ByteArrayOutputStream imageBytes = new ByteArrayOutputStream();
+            CatalogCodec.writeTags(new DataOutputStream(tagBytes), tm);
+            CatalogCodec.writeImageManager(new DataOutputStream(imageBytes), im);
+
+            TagManager readTm = new TagManager();
+            Map<Integer, Tag> tags = CatalogCodec.readTags(
+                    new DataInputStream(new ByteArrayInputStream(tagBytes.toByteArray())), readTm);
+            ImageManager readIm = CatalogCodec.readImageManager(
+                    new DataInputStream(new ByteArrayInputStream(imageBytes.toByteArray())), tags);
+            Image image = readIm.getImages().get(0);
+            assertEquals(2, readTm.getTags().size());
+            assertEquals("test @tag1 @tag2.jpg", image.toString());
+            assertEquals(2, image.getLifeTimeTags().size());
+            assertEquals(1, readTm.getTags().get(1).getTaggedImages().size());
+            assertEquals(readIm, image.getManager());
+        } catch (TagNamingException | IOException ex) {
+            assertFalse(true, ex.getMessage());
+        }
+    }
+
+    @Test
+    void testHistoryStore() {
+        try {
+            TagManager tm = new TagManager();
+            Tag tag1 = tm.resolveTag("tag1");
+            Tag tag2 = tm.resolveTag("tag2");
+            ImageManager im = new ImageManager(new File("/"));
+            ArrayList<Tag> listOfTag = new ArrayList<>();
+            listOfTag.add(tag1);
+            im.addImage(new File("/test.jpg"), listOfTag);
+            Image image = im.getImages().get(0);
+            image.addTag(tag2);
+            HistoryStore store = new HistoryStore(new File("/nonexistent"), tm);
+            Map<String, byte[]> shards = new HashMap<>();
+            ByteArrayOutputStream imageBytes = new ByteArrayOutputStream();
+            store.start();
+            CatalogCodec.writeImageManager(new DataOutputStream(imageBytes), im, store);
+            store.finish(shards);
+            assertTrue(shards.containsKey("1.history"));
+            assertFalse(image.isHistoryChanged());
+            assertEquals(2, image.getNameHistory().size());
+            image.removeTag(tag1);
+            assertEquals(3, image.getHistorySize());
+            assertTrue(image.isHistoryChanged());
+
+            Map<Integer, Tag> tags = new HashMap<>();
+            for (Tag tag : tm.getTags()) {
+                tags.put(tag.getId(), tag);
+            }
+            ImageManager readIm = CatalogCodec.readImageManager(
+                    new DataInputStream(new ByteArrayInputStream(imageBytes.toByteArray())),
+                    tags, store);
+            Image readImage = readIm.getImages().get(0);
+            assertTrue(readImage.getHistoryStore() == store);
+            assertEquals(2, readImage.getHistorySize());
+            assertEquals(image.getNameHistory().subList(0, 2), readImage.getNameHistory());
+        } catch (TagNamingException | IOException ex) {
+            assertFalse(true, ex.getMessage());
+        }
+    }
+
+    @Test
+    void testTagsAtTime() {
+        try {
+            TagManager tm = new TagManager();
+            Tag tag1 = tm.resolveTag("tag1");
+            Tag tag2 = tm.resolveTag("tag2");
+            ImageManager im = new ImageManager(new File("/"));
+            ArrayList<Tag> listOfTag = new ArrayList<>();
+            listOfTag.add(tag1);
+            im.addImage(new File("/a.jpg"), listOfTag);
+            im.addImage(new File("/b.jpg"), new ArrayList<>());
+            Image a = im.getImage("a", "jpg");
+            Image b = im.getImage("b", "jpg");
+            long created = a.getLastChanged();
+            assertEquals(0, im.getImagesChangedAfter(System.currentTimeMillis()).size());
+            Thread.sleep(5);
+            long before = System.currentTimeMillis();
+            Thread.sleep(5);
+            a.addTag(tag2);
+            a.removeTag(tag1);
+            assertEquals(1, im.getImagesChangedAfter(before).size());
+            assertTrue(im.getImagesChangedAfter(before).get(0) == a);
+            assertEquals(listOfTag, a.getTagsAt(before));
+            assertEquals(null, a.getTagsAt(created - 1));
+            assertEquals(0, b.getTagsAt(before).size());
+
+            assertTrue(a.setTags(a.getTagsAt(before)));
+            assertFalse(a.setTags(listOfTag));
+            assertEquals("a @tag1.jpg", a.toString());
+            assertEquals(4, a.getHistorySize());
+            im.removeImage(a);
+            assertEquals(0, im.getImagesChangedAfter(before).size());
+        } catch (TagNamingException | InterruptedException ex) {
+            assertFalse(true, ex.getMessage());
+        }
+    }
+
+    @Test
+    void testTagSetSharing() {
+        try {
+            Tag tag1 = new Tag("tag1");
+            Tag tag2 = new Tag("tag2");
+            ArrayList<Tag> listOfTag = new ArrayList<>();
+            listOfTag.add(tag1);
+            listOfTag.add(tag2);
+            Image a = new Image(new File("/a.jpg"), listOfTag);
+            Image b = new Image(new File("/b.jpg"));
+            b.addTag(tag1);
+            b.addTag(tag2);
+            assertTrue(a.getTagSet() == b.getTagSet());
+            b.removeTag(tag2);
+            assertFalse(a.getTagSet() == b.getTagSet());
+            b.addTag(tag2);
+            assertTrue(a.getTagSet() == b.getTagSet());
+            b.removeTag(tag1);
+            b.addTag(tag1);
+            assertFalse(a.getTagSet() == b.getTagSet());
+            assertEquals("b @tag2 @tag1.jpg", b.toString());
+            Image c = new Image(new File("/c.jpg"));
+            c.addTag(new Tag("tag1"));
+            c.addTag(tag2);
+            assertFalse(a.getTagSet() == c.getTagSet());
+            assertEquals(a.getCurrentTags(), c.getCurrentTags());
+        } catch (TagNamingException ex) {
+            assertFalse(true, ex.getMessage());
+        }
+    }
+
+    @Test
+    void testImageTable() {
+        try {
+            Tag tag = new Tag("tag");
+            ArrayList<Tag> listOfTag = new ArrayList<>();
+            listOfTag.add(tag);
+            ImageManager im = new ImageManager(new File("/table"));
+            im.addImage(new File("/table/x @tag.png"), listOfTag);
+            im.addImage(new File("/table/y.png"), new ArrayList<>());
+            im.addImage(new File("/table/x.jpg"), new ArrayList<>());
+            Image x = im.getImage("x", "png");
+            assertEquals("x", x.getName());
+            assertEquals("png", x.getExtension());
+            assertTrue(x.getDirectory() == im.getImage("y", "png").getDirectory());
+            assertEquals(new File("/table/x @tag.png"), x.getImageFile());
+            assertTrue(x.equals(new Image(new File("/table/x.png"))));
+            assertFalse(x.equals(im.getImage("x", "jpg")));
+            assertEquals(x.hashCode(), new Image(new File("/table/x.png")).hashCode());
+
+            // The file keeps its name until it is renamed
+            x.removeTag(tag);
+            assertEquals(new File("/table/x @tag.png"), x.getImageFile());
+            x.setImageFile(new File("/table/x.png"));
+            assertEquals(new File("/table/x.png"), x.getImageFile());
+
+            im.removeImage(im.getImage("y", "png"));
+            assertEquals(null, im.getImage("y", "png"));
+            im.addImage(new File("/table/y.png"), new ArrayList<>());
+            assertEquals("[x.png, x.jpg, y.png]", im.getImages().toString());
+            Image dropped = im.getImage("x", "jpg");
+            im.dropImage(dropped);
+            assertEquals(null, im.getImage("x", "jpg"));
+            assertEquals("x.jpg", dropped.toString());
+        } catch (TagNamingException ex) {
+            assertFalse(true, ex.getMessage());
+        }
+    }
+
+    @Test
+    void testTagPostings() {
+        try {
+            Tag tag = new Tag("posted");
+            ImageManager im = new ImageManager(new File("/posted"));
+            ArrayList<Image> images = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                im.addImage(new File("/posted/p" + i + ".png"), new ArrayList<>());
+                images.add(im.getImage("p" + i, "png"));
+                images.get(i).addTag(tag);
+            }
+            images.get(0).removeTag(tag);
+            images.get(1).removeTag(tag);
+            images.get(0).addTag(tag);
+            ArrayList<Image> tagged = tag.getTaggedImages();
+            assertEquals(39, tagged.size());
+            assertEquals(images.get(2), tagged.get(0));
+            assertEquals(images.get(0), tagged.get(38));
+
+            // Untagging and tagging again many times keeps one place for each image
+            for (int i = 0; i < 100; i++) {
+                images.get(5).removeTag(tag);
+                images.get(5).addTag(tag);
+            }
+            tagged = tag.getTaggedImages();
+            assertEquals(39, tagged.size());
+            assertEquals(images.get(5), tagged.get(38));
+            assertEquals(39, tag.getImageIds().cardinality());
+
+            tag.untagAllImages();
+            assertTrue(tag.getTaggedImages().isEmpty());
+            assertTrue(images.get(2).getCurrentTags().isEmpty());
+        } catch (TagNamingException ex) {
+            assertFalse(true, ex.getMessage());
+        }
+    }
+
+    @Test
+    void testImageTablePages() {
+        ImageManager im = new ImageManager(new File("/paged"));
+        for (int i = 0; i < 5000; i++) {
+            im.addImage(new File("/paged/m" + i + ".png"), new ArrayList<>());
+        }
+        assertEquals("m4999", im.getImage("m4999", "png").getName());
+        assertEquals(5000, im.getImages().size());
+        assertEquals(Paths.get("/paged"), im.getImage("m0", "png").getDirectory());
+    }
+
+    @Test
+    void testContainersKeepTheirOwnImages() throws TagNamingException {
+        Container first = new Container();
+        Container second = new Container();
+        ImageManager a = first.addImageManager(new ImageManager(new File("/first")));
+        ImageManager b = second.addImageManager(new ImageManager(new File("/second")));
+        a.addImage(new File("/first/a.jpg"), new ArrayList<>());
+        b.addImage(new File("/second/b.jpg"), new ArrayList<>());
+        b.addImage(new File("/second/c.jpg"), new ArrayList<>());
+        Tag tag = second.getTagManager().resolveTag("shared");
+        b.getImage("c", "jpg").addTag(tag);
+
+        // Each Container gives out its own ids
+        assertEquals(1, a.getImage("a", "jpg").getId());
+        assertEquals(1, b.getImage("b", "jpg").getId());
+        assertEquals("[a.jpg]", first.getImages(first.getImageIds()).toString());
+        assertEquals("[b.jpg, c @shared.jpg]", second.getImages(second.getImageIds()).toString());
+        assertEquals("[c @shared.jpg]", second.getImages(tag.getImageIds()).toString());
+
+        // A dropped id is not given out again, and the dropped Image can still be shown
+        Image dropped = b.getImage("b", "jpg");
+        assertEquals(1, b.getImagesChangedAfter(0).stream().filter(i -> i == dropped).count());
+        b.dropImage(dropped);
+        b.addImage(new File("/second/d.jpg"), new ArrayList<>());
+        assertEquals(3, b.getImage("d", "jpg").getId());
+        assertTrue(second.getImageTable().image(1) == null);
+        assertEquals("b.jpg", dropped.toString());
+        assertEquals(Paths.get("/second"), dropped.getDirectory());
+        assertFalse(dropped.equals(b.getImage("d", "jpg")));
+        assertEquals(0, b.getImagesChangedAfter(0).stream().filter(i -> i == dropped).count());
+        assertEquals("[c @shared.jpg, d.jpg]", second.getImages(second.getImageIds()).toString());
+        assertEquals("a.jpg", a.getImage("a", "jpg").toString());
+        assertEquals("[a.jpg]", first.getImages(first.getImageIds()).toString());
+
+        // The Images of an ImageManager added later are moved, keeping their Tags
+        ImageManager moved = new ImageManager(new File("/moved"));
+        Tag other = first.getTagManager().resolveTag("other");
+        ArrayList<Tag> tags = new ArrayList<>();
+        tags.add(other);
+        moved.addImage(new File("/moved/m @other.jpg"), tags);
+        Image m = moved.getImage("m", "jpg");
+        first.addImageManager(moved);
+        assertTrue(moved.getImage("m", "jpg") == m);
+        assertEquals(2, m.getId());
+        assertEquals("[a.jpg, m @other.jpg]", first.getImages(first.getImageIds()).toString());
+        assertEquals("[m @other.jpg]", first.getImages(other.getImageIds()).toString());
+        assertTrue(other.getTaggedImages().get(0) == m);
+        assertEquals(1, m.getHistorySize());
+
+        // Tagging an Image of another table keeps the Images tagged before
+        ArrayList<Tag> shared = new ArrayList<>();
+        shared.add(tag);
+        Image loose = new Image(new File("/loose/l.jpg"), shared);
+        Image c = b.getImage("c", "jpg");
+        assertEquals("[c @shared.jpg]", second.getImages(tag.getImageIds()).toString());
+        assertEquals(Arrays.asList(c, loose), tag.getTaggedImages());
+        c.removeTag(tag);
+        assertEquals(Collections.singletonList(loose), tag.getTaggedImages());
+        loose.removeTag(tag);
+        assertTrue(tag.getTaggedImages().isEmpty());
+    }
+
+    @Test
+    void testReadSaveSer() throws IOException, ClassNotFoundException, TagNamingException {
+        Container container = new Container();
+        ImageManager im = container.addImageManager(new ImageManager(new File("/saved")));
+        Tag tag = container.getTagManager().resolveTag("kept");
+        ArrayList<Tag> tags = new ArrayList<>();
+        tags.add(tag);
+        im.addImage(new File("/saved/s @kept.png"), tags);
+        im.addImage(new File("/saved/t.png"), new ArrayList<>());
+        // The save.ser form keeps these lists, which are only brought up to date when asked for
+        im.getImages();
+        tag.getTaggedImages();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(container);
+        }
+
+        Container read;
+        try (ObjectInputStream input =
+                new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            read = (Container) input.readObject();
+        }
+        ImageManager readIm = read.getImageManager(Paths.get("/saved"));
+        Image s = readIm.getImage("s", "png");
+        assertEquals("[s @kept.png, t.png]", readIm.getImages().toString());
+        assertEquals("[s @kept.png, t.png]", read.getImages(read.getImageIds()).toString());
+        Tag readTag = read.getTagManager().getTag("kept");
+        assertTrue(readTag.getTaggedImages().get(0) == s);
+        assertEquals(1, s.getHistorySize());
+        assertTrue(s.getManager() == readIm);
+    }
+
+    @Test
+    void testRenameFile() throws IOException, TagNamingException {
+        File directory = Files.createTempDirectory("rename").toFile();
+        File file = new File(directory, "r.png");
+        assertTrue(file.createNewFile());
+        ImageManager im = new ImageManager(directory);
+        im.addImage(file, new ArrayList<>());
+        Image image = im.getImage("r", "png");
+        image.addTag(new Tag("renamed"));
+        image.renameFile();
+        assertEquals(new File(directory, "r @renamed.png"), image.getImageFile());
+        assertTrue(image.getImageFile().exists());
+
+        // A file that cannot be renamed keeps its File
+        assertTrue(image.getImageFile().delete());
+        image.addTag(new Tag("again"));
+        try {
+            image.renameFile();
+            assertFalse(true);
+        } catch (IOException ex) {
+            assertEquals(new File(directory, "r @renamed.png"), image.getImageFile());
+        }
+    }
 }
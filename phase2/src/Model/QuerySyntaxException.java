@@ -0,0 +1,17 @@
+package Model;
+
+/** QuerySyntaxException is an exception to be thrown when a query for images cannot be read. */
+public class QuerySyntaxException extends Exception {
+
+  /** Version of the serialized form. */
+  private static final long serialVersionUID = 6120468837725510842L;
+
+  /**
+   * Exception called when a query is not written properly (e.g. a bracket is not closed).
+   *
+   * @param message Message to be returned when exception is caught.
+   */
+  public QuerySyntaxException(String message) {
+    super(message);
+  }
+}
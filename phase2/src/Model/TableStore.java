@@ -0,0 +1,541 @@
+package Model;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@code TableStore} keeps the {@code ImageTable} of a {@code Container} in files next to the
+ * shards of a mapped catalog, so reading the catalog maps them into memory rather than decoding
+ * each {@code Image}. Each page of rows and each segment of names is a file of its own, written
+ * again only when it changed and never changed once written. The ids of the {@code Image(s)} of
+ * each {@code ImageManager} and of each {@code Tag} are kept in files too, mapped when they are
+ * first asked for. The table file names the current file of each page and segment and holds the
+ * values kept once each; it is written after them, so a checkpoint cut short leaves the table as
+ * it was. A page or segment file replaced is deleted once a table no longer naming it is written.
+ */
+public class TableStore {
+
+  /** Provides access to the logger. */
+  private static final Logger LOGGER = Logger.getLogger(Log.class.getName());
+
+  /** Name of the table file. */
+  private static final String TABLE = "table";
+
+  /** Ending of the name of every page file. */
+  private static final String ROWS = ".rows";
+
+  /** Ending of the name of every segment file. */
+  private static final String NAMES = ".names";
+
+  /** Ending of the name of every file of the ids of a {@code Tag}. */
+  private static final String POSTINGS = ".postings";
+
+  /** Marks the start of every file of ids. */
+  private static final int IDS_MAGIC = 0x494d4749;
+
+  /** Number of bytes before the ids in a file of ids: the mark and the number of ids. */
+  private static final int IDS_HEADER = 2 * Integer.BYTES;
+
+  /** Directory holding the files. */
+  private File directory;
+
+  /** Table of the {@code Container} stored; null until it is read or first encoded. */
+  private ImageTable table;
+
+  /** Number of the last checkpoint encoded, which the files it writes are named after. */
+  private int generation;
+
+  /** Checkpoint whose file holds each page. */
+  private int[] pageGenerations = new int[0];
+
+  /** Checkpoint whose file holds each segment of names. */
+  private int[] segmentGenerations = new int[0];
+
+  /** Number of bytes used in the names when the segments were last taken. */
+  private long namesTaken;
+
+  /** Directory of the {@code ImageManager} with each number in the table read, from 1. */
+  private List<String> managerDirectories = new ArrayList<>();
+
+  /** Directories whose {@code ImageManager} is kept in the table read. */
+  private Set<String> restoredDirectories = new HashSet<>();
+
+  /** Page and segment files known to be on disk. */
+  private Set<String> onDisk = new HashSet<>();
+
+  /** Files replaced by the table of each checkpoint, to delete once it is written. */
+  private Map<Integer, List<String>> replaced = new HashMap<>();
+
+  /** Whether a write failed, so the ids of every {@code Tag} are written again. */
+  private boolean failed;
+
+  /**
+   * Creates a {@code TableStore} for the files in a directory.
+   *
+   * @param directory directory holding the files.
+   */
+  public TableStore(File directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Checks whether a table has been written.
+   *
+   * @return true if the table file exists, false otherwise.
+   */
+  public boolean exists() {
+    return new File(directory, TABLE).exists();
+  }
+
+  /**
+   * Checks whether a shard of the catalog is the table file, which is written once every page and
+   * segment file it names is written.
+   *
+   * @param name file name of the shard.
+   * @return true if it is the table file.
+   */
+  public static boolean isTable(String name) {
+    return name.equals(TABLE);
+  }
+
+  /**
+   * Checks whether a file in the catalog directory belongs to a {@code TableStore}, e.g. to delete
+   * it once the catalog is no longer mapped.
+   *
+   * @param name file name.
+   * @return true if it is the table, a page, a segment or the ids of a {@code Tag}.
+   */
+  public static boolean isStoreFile(String name) {
+    return isTable(name) || name.endsWith(ROWS) || name.endsWith(NAMES) || name.endsWith(POSTINGS);
+  }
+
+  /**
+   * Reads the table into the empty {@code Container} of a catalog being read, mapping its pages
+   * and segments. Each {@code Tag} of the {@code TagManager}, which must be read already, is
+   * pointed at the file of its ids. Files no longer named by the table are deleted.
+   *
+   * @param container {@code Container} being read.
+   * @param histories {@code HistoryStore} the histories were stored in.
+   * @throws IOException if the table or a file it names cannot be read.
+   */
+  public void open(Container container, HistoryStore histories) throws IOException {
+    table = container.getImageTable();
+    TagManager tagManager = container.getTagManager();
+    try (DataInputStream input =
+        new DataInputStream(
+            new BufferedInputStream(new FileInputStream(new File(directory, TABLE))))) {
+      CatalogCodec.readHeader(input);
+      generation = CatalogCodec.readVarInt(input);
+      pageGenerations = readGenerations(input);
+      namesTaken = input.readLong();
+      segmentGenerations = readGenerations(input);
+      ByteBuffer[] rows = new ByteBuffer[pageGenerations.length];
+      for (int i = 0; i < rows.length; i++) {
+        String name = rowsName(i, pageGenerations[i]);
+        rows[i] = map(name, FileChannel.MapMode.PRIVATE);
+        onDisk.add(name);
+      }
+      ByteBuffer[] segments = new ByteBuffer[segmentGenerations.length];
+      for (int i = 0; i < segments.length; i++) {
+        String name = namesName(i, segmentGenerations[i]);
+        segments[i] = map(name, FileChannel.MapMode.READ_ONLY);
+        onDisk.add(name);
+      }
+      table.restore(rows, segments, namesTaken);
+      managerDirectories = table.readValues(input, tagManager::getHistoryTag, histories);
+      restoredDirectories.addAll(managerDirectories);
+    }
+    histories.attachFiles(table.historyFileUses());
+    String[] names = directory.list();
+    for (String name : names == null ? new String[0] : names) {
+      if (name.endsWith(POSTINGS)) {
+        Tag tag = tagManager.getTag(parseNumber(name, POSTINGS));
+        if (tag != null) {
+          tag.restorePostings(table, new File(directory, name));
+        } else {
+          delete(name);
+        }
+      } else if ((name.endsWith(ROWS) || name.endsWith(NAMES)) && !onDisk.contains(name)) {
+        delete(name);
+      }
+    }
+  }
+
+  /**
+   * Checks whether the ids of the {@code Image(s)} of a directory are kept in the table read.
+   *
+   * @param directory path of the directory.
+   * @return true if the {@code ImageManager} is restored by {@code openImageManager}.
+   */
+  public boolean hasImageManager(String directory) {
+    return restoredDirectories.contains(directory);
+  }
+
+  /**
+   * Creates the {@code ImageManager} of a directory kept in the table read, whose ids are mapped
+   * from a file when they are first asked for.
+   *
+   * @param directory path of the directory.
+   * @param fileName name of the file of the ids, written by {@code encodeImageManager}.
+   * @return the {@code ImageManager}.
+   */
+  public ImageManager openImageManager(String directory, String fileName) {
+    return new ImageManager(new File(directory), table, new File(this.directory, fileName));
+  }
+
+  /**
+   * Gives the {@code ImageManager(s)} added to the {@code Container} read back their numbers in
+   * the table, once every one is added.
+   *
+   * @param container {@code Container} read.
+   */
+  public void finishOpen(Container container) {
+    List<ImageManager> restored = new ArrayList<>(managerDirectories.size());
+    for (String managerDirectory : managerDirectories) {
+      restored.add(
+          managerDirectory.isEmpty()
+              ? null
+              : container.getImageManager(Paths.get(managerDirectory)));
+    }
+    table.restoreManagers(restored);
+  }
+
+  /**
+   * Maps the ids not asked for yet of each {@code ImageManager} and {@code Tag} restored, so the
+   * files of the table read can be deleted once the catalog is no longer mapped.
+   *
+   * @param container {@code Container} read.
+   * @throws UncheckedIOException if ids cannot be mapped.
+   */
+  public void detach(Container container) {
+    for (ImageManager manager : container.getImageManagers()) {
+      manager.getStoredIds();
+    }
+    for (Tag tag : container.getTagManager().getTags()) {
+      tag.getStoredIds(table);
+    }
+  }
+
+  /**
+   * Encodes the ids of the {@code Image(s)} of an {@code ImageManager}, storing their histories in
+   * {@code histories}. The {@code Image} of a row restored from a mapped catalog is only made if
+   * its history needs to be stored.
+   *
+   * @param manager {@code ImageManager} to encode.
+   * @param histories {@code HistoryStore} the histories are stored in, started already.
+   * @return contents of the file of the ids.
+   * @throws IOException if a history cannot be read back or encoded.
+   */
+  public byte[] encodeImageManager(ImageManager manager, HistoryStore histories)
+      throws IOException {
+    ImageTable managerTable = manager.getImageTable();
+    int[] ids = manager.getStoredIds();
+    for (int id : ids) {
+      if (!histories.isStored(managerTable, id)) {
+        histories.store(managerTable.image(id));
+      }
+    }
+    return encodeIds(ids);
+  }
+
+  /**
+   * Encodes the pages and segments that changed or are not known to be on disk, the ids of each
+   * {@code Tag} whose {@code Image(s)} changed, and the table naming them. Should be called once
+   * the {@code ImageManager(s)} are encoded, as storing their histories changes their rows. Pages
+   * and segments on disk that did not change since are mapped first, so they leave the heap.
+   *
+   * @param container {@code Container} whose table is encoded.
+   * @param shards contents of the shards to write, by file name, to which the files are added.
+   * @throws IOException if the table cannot be encoded.
+   */
+  public void encode(Container container, Map<String, byte[]> shards) throws IOException {
+    table = container.getImageTable();
+    for (ImageManager manager : container.getImageManagers()) {
+      table.numberManager(manager);
+    }
+    mapWritten();
+    generation++;
+    List<String> replacedFiles = new ArrayList<>();
+    int pageCount = table.pageCount();
+    int[] pages = Arrays.copyOf(pageGenerations, pageCount);
+    for (int i = 0; i < pageCount; i++) {
+      boolean known = i < pageGenerations.length;
+      if (!known || table.pageChanged(i) || !isOnDisk(rowsName(i, pageGenerations[i]))) {
+        if (known) {
+          replacedFiles.add(rowsName(i, pageGenerations[i]));
+        }
+        shards.put(rowsName(i, generation), table.takePage(i));
+        pages[i] = generation;
+      }
+    }
+    pageGenerations = pages;
+    long namesSize = table.namesSize();
+    int segmentCount = table.segmentCount();
+    int[] segments = Arrays.copyOf(segmentGenerations, segmentCount);
+    for (int i = 0; i < segmentCount; i++) {
+      boolean known = i < segmentGenerations.length;
+      if (!known
+          || table.segmentChanged(i, namesTaken)
+          || !isOnDisk(namesName(i, segmentGenerations[i]))) {
+        if (known) {
+          replacedFiles.add(namesName(i, segmentGenerations[i]));
+        }
+        shards.put(namesName(i, generation), table.takeSegment(i));
+        segments[i] = generation;
+      }
+    }
+    segmentGenerations = segments;
+    namesTaken = namesSize;
+    boolean allTags;
+    synchronized (this) {
+      replaced.put(generation, replacedFiles);
+      allTags = failed;
+      failed = false;
+    }
+    for (Tag tag : container.getTagManager().getTags()) {
+      if (tag.takePostingsChanged() || allTags) {
+        shards.put(tag.getId() + POSTINGS, encodeIds(tag.getStoredIds(table)));
+      }
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(bytes);
+    CatalogCodec.writeHeader(output);
+    CatalogCodec.writeVarInt(output, generation);
+    writeGenerations(output, pageGenerations);
+    output.writeLong(namesSize);
+    writeGenerations(output, segmentGenerations);
+    table.writeValues(output);
+    shards.put(TABLE, bytes.toByteArray());
+  }
+
+  /**
+   * Records that a shard was written to disk. Once the table is written, the page and segment
+   * files it replaced are deleted.
+   *
+   * @param name file name of the shard.
+   * @param contents contents written.
+   * @throws IOException if the table written cannot be read back.
+   */
+  public synchronized void written(String name, byte[] contents) throws IOException {
+    if (name.endsWith(ROWS) || name.endsWith(NAMES)) {
+      onDisk.add(name);
+    } else if (isTable(name)) {
+      DataInputStream input = new DataInputStream(new ByteArrayInputStream(contents));
+      CatalogCodec.readHeader(input);
+      int writtenGeneration = CatalogCodec.readVarInt(input);
+      Iterator<Map.Entry<Integer, List<String>>> entries = replaced.entrySet().iterator();
+      while (entries.hasNext()) {
+        Map.Entry<Integer, List<String>> entry = entries.next();
+        if (entry.getKey() <= writtenGeneration) {
+          for (String file : entry.getValue()) {
+            onDisk.remove(file);
+            delete(file);
+          }
+          entries.remove();
+        }
+      }
+    }
+  }
+
+  /** Records that a write failed, so the ids of every {@code Tag} are encoded again. */
+  public synchronized void failed() {
+    failed = true;
+  }
+
+  /**
+   * Maps a file of ids written by {@code TableStore}.
+   *
+   * @param file the file.
+   * @return the ids, in the order they were written.
+   * @throws IOException if the file cannot be mapped or holds no ids.
+   */
+  static IntBuffer mapIds(File file) throws IOException {
+    ByteBuffer bytes;
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    bytes.order(ImageTable.ORDER);
+    if (bytes.limit() < IDS_HEADER
+        || bytes.getInt(0) != IDS_MAGIC
+        || bytes.getInt(Integer.BYTES) != (bytes.limit() - IDS_HEADER) / Integer.BYTES) {
+      throw new IOException("Not a file of ids: " + file);
+    }
+    return bytes.position(IDS_HEADER).slice().order(ImageTable.ORDER).asIntBuffer();
+  }
+
+  /**
+   * Encodes ids as a file for {@code mapIds}.
+   *
+   * @param ids the ids.
+   * @return contents of the file.
+   */
+  private static byte[] encodeIds(int[] ids) {
+    ByteBuffer bytes =
+        ByteBuffer.allocate(IDS_HEADER + ids.length * Integer.BYTES).order(ImageTable.ORDER);
+    bytes.putInt(IDS_MAGIC);
+    bytes.putInt(ids.length);
+    bytes.asIntBuffer().put(ids);
+    return bytes.array();
+  }
+
+  /**
+   * Maps the pages and finished segments on the heap whose files are on disk and that did not
+   * change since they were taken. One that cannot be mapped stays on the heap.
+   */
+  private void mapWritten() {
+    Set<String> written;
+    synchronized (this) {
+      written = new HashSet<>(onDisk);
+    }
+    try {
+      for (int i = 0; i < pageGenerations.length; i++) {
+        String name = rowsName(i, pageGenerations[i]);
+        if (!table.pageMapped(i) && !table.pageChanged(i) && written.contains(name)) {
+          table.mapPage(i, map(name, FileChannel.MapMode.PRIVATE));
+        }
+      }
+      for (int i = 0; i < segmentGenerations.length; i++) {
+        String name = namesName(i, segmentGenerations[i]);
+        if (!table.segmentMapped(i)
+            && !table.segmentChanged(i, namesTaken)
+            && written.contains(name)) {
+          table.mapSegment(i, map(name, FileChannel.MapMode.READ_ONLY));
+        }
+      }
+    } catch (IOException ex) {
+      LOGGER.log(Level.WARNING, "Could not map the image table: " + ex.getMessage());
+    }
+  }
+
+  /**
+   * Checks whether a page or segment file is known to be on disk.
+   *
+   * @param name file name.
+   * @return true if it was read or written.
+   */
+  private synchronized boolean isOnDisk(String name) {
+    return onDisk.contains(name);
+  }
+
+  /**
+   * Maps a whole file of the directory.
+   *
+   * @param name file name.
+   * @param mode {@code READ_ONLY}, or {@code PRIVATE} for rows that may be written in memory.
+   * @return the bytes of the file.
+   * @throws IOException if the file cannot be mapped.
+   */
+  private ByteBuffer map(String name, FileChannel.MapMode mode) throws IOException {
+    StandardOpenOption[] options =
+        mode == FileChannel.MapMode.PRIVATE
+            ? new StandardOpenOption[] {StandardOpenOption.READ, StandardOpenOption.WRITE}
+            : new StandardOpenOption[] {StandardOpenOption.READ};
+    try (FileChannel channel = FileChannel.open(new File(directory, name).toPath(), options)) {
+      return channel.map(mode, 0, channel.size());
+    }
+  }
+
+  /**
+   * Deletes a file of the directory no longer used. One that cannot be deleted is left for the
+   * next time the table is read.
+   *
+   * @param name file name.
+   */
+  private void delete(String name) {
+    try {
+      Files.deleteIfExists(new File(directory, name).toPath());
+    } catch (IOException ex) {
+      LOGGER.log(Level.WARNING, "Could not delete " + name + ": " + ex.getMessage());
+    }
+  }
+
+  /**
+   * Writes the checkpoint of each page or segment.
+   *
+   * @param output stream to write to.
+   * @param generations checkpoint of each page or segment.
+   * @throws IOException if the stream cannot be written.
+   */
+  private static void writeGenerations(DataOutputStream output, int[] generations)
+      throws IOException {
+    CatalogCodec.writeVarInt(output, generations.length);
+    for (int written : generations) {
+      CatalogCodec.writeVarInt(output, written);
+    }
+  }
+
+  /**
+   * Reads the checkpoints written by {@code writeGenerations}.
+   *
+   * @param input stream to read from.
+   * @return checkpoint of each page or segment.
+   * @throws IOException if the stream cannot be read.
+   */
+  private static int[] readGenerations(DataInputStream input) throws IOException {
+    int[] generations = new int[CatalogCodec.readVarInt(input)];
+    for (int i = 0; i < generations.length; i++) {
+      generations[i] = CatalogCodec.readVarInt(input);
+    }
+    return generations;
+  }
+
+  /**
+   * Gives the name of the file of a page written by a checkpoint.
+   *
+   * @param page number of the page.
+   * @param written number of the checkpoint.
+   * @return file name.
+   */
+  private static String rowsName(int page, int written) {
+    return page + "-" + written + ROWS;
+  }
+
+  /**
+   * Gives the name of the file of a segment of names written by a checkpoint.
+   *
+   * @param segment number of the segment.
+   * @param written number of the checkpoint.
+   * @return file name.
+   */
+  private static String namesName(int segment, int written) {
+    return segment + "-" + written + NAMES;
+  }
+
+  /**
+   * Reads the number a file is named after.
+   *
+   * @param name file name.
+   * @param suffix ending of the name.
+   * @return the number, or 0 if the name does not start with one.
+   */
+  private static int parseNumber(String name, String suffix) {
+    try {
+      return Integer.parseInt(name.substring(0, name.length() - suffix.length()));
+    } catch (NumberFormatException ex) {
+      return 0;
+    }
+  }
+}
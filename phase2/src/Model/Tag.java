@@ -1,22 +1,75 @@
 package Model;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /** A {@code Tag} is stored in {@code TagManager} and can be attached to an {@code Image}. */
 public class Tag implements Serializable {
 
+  /** Version of the serialized form, kept so older save.ser files can still be read. */
+  private static final long serialVersionUID = 1044517040281326110L;
+
   /** Provides access to the logger. */
   private static final Logger LOGGER = Logger.getLogger(Log.class.getName());
 
   /** Each {@code Tag} has a name. */
   private String name;
 
-  /** {@code Image(s)} tagged with this {@code Tag}. */
+  /** Number identifying this {@code Tag} in its {@code TagManager}; 0 until it is added to one. */
+  private int id;
+
+  /**
+   * {@code Image(s)} tagged with this {@code Tag}, in the order they were tagged. Rebuilt from
+   * {@code members} when it is next asked for after a change.
+   */
   private ArrayList<Image> taggedImages;
 
+  /**
+   * Table of the {@code Image(s)} tagged, in which their ids are given; that of the {@code
+   * Container} of the {@code TagManager}. Null until an {@code Image} is tagged.
+   */
+  private transient ImageTable table;
+
+  /**
+   * Ids of the {@code Image(s)} tagged with this {@code Tag}, in the order they were tagged. Kept by
+   * id rather than by {@code Image}, since the hash code of an {@code Image} changes when it is
+   * moved. An untagged id is left in place and only its last place counts, so an {@code Image}
+   * tagged again goes to the end. Built from taggedImages when first needed after reading.
+   */
+  private transient int[] order = new int[4];
+
+  /** Number of places used in {@code order}, including those of untagged ids. */
+  private transient int orderSize;
+
+  /** Ids of the {@code Image(s)} tagged with this {@code Tag}. Built with order after reading. */
+  private transient ImageBitmap imageIds = new ImageBitmap();
+
+  /**
+   * {@code Image(s)} tagged that are kept in another table than {@code table}, e.g. ones not yet
+   * added to the {@code Container}, in the order they were tagged. Null while there are none.
+   */
+  private transient ArrayList<Image> others;
+
+  /** Whether {@code taggedImages} needs to be rebuilt from {@code order}. */
+  private transient boolean membersChanged;
+
+  /**
+   * File holding the ids of the {@code Image(s)} tagged, for a {@code Tag} restored from a mapped
+   * catalog, until {@code order} is built from them; null otherwise.
+   */
+  private transient File postings;
+
+  /** Whether the ids of the {@code Image(s)} tagged changed since they were last stored. */
+  private transient boolean postingsChanged;
+
   /**
    * Creates new {@code Tag}.
    *
@@ -35,31 +88,142 @@ public class Tag implements Serializable {
 
   /**
    * Adds {@code Image} to taggedImages in order to keep track of {@code Image(s)} tagged with this
-   * {@code Tag}.
+   * {@code Tag}. Ids are only kept for the {@code Image(s)} of one table; one of another table, e.g.
+   * one not yet added to the {@code Container}, is kept aside until the {@code Image(s)} tagged in
+   * that table are all untagged or moved.
    *
    * @param image {@code Image} to {@code Tag}.
    */
   protected void tagImage(Image image) {
-    if (!taggedImages.contains(image)) {
-      taggedImages.add(image);
+    members();
+    if (image.getTable() != table) {
+      if (!imageIds.isEmpty()) {
+        if (others == null) {
+          others = new ArrayList<>();
+        }
+        if (indexOf(others, image) < 0) {
+          others.add(image);
+          membersChanged = true;
+        }
+        return;
+      }
+      switchTable(image.getTable());
+    }
+    addId(image.getId());
+  }
+
+  /**
+   * Adds the id of an {@code Image} of {@code table} at the end of {@code order}.
+   *
+   * @param imageId id of the {@code Image}.
+   */
+  private void addId(int imageId) {
+    if (imageIds.add(imageId)) {
+      if (orderSize == order.length) {
+        order = Arrays.copyOf(order, orderSize * 2);
+      }
+      order[orderSize++] = imageId;
+      membersChanged = true;
+      postingsChanged = true;
+      if (orderSize > 2 * imageIds.cardinality() + 16) {
+        compact();
+      }
     }
   }
 
+  /**
+   * Adds an {@code Image} read back from a saved catalog to taggedImages.
+   *
+   * @param image {@code Image} tagged with this {@code Tag}.
+   */
+  void restoreImage(Image image) {
+    tagImage(image);
+  }
+
   /**
    * Removes the {@code Image} from the list of taggedImages.
    *
    * @param image {@code Image} to remove.
    */
   protected void untagImage(Image image) {
-    taggedImages.remove(image);
+    members();
+    if (image.getTable() == table) {
+      if (imageIds.remove(image.getId())) {
+        membersChanged = true;
+        postingsChanged = true;
+        if (imageIds.isEmpty() && others != null) {
+          switchTable(others.get(0).getTable());
+        }
+      }
+    } else if (others != null) {
+      int index = indexOf(others, image);
+      if (index >= 0) {
+        others.remove(index);
+        membersChanged = true;
+        if (others.isEmpty()) {
+          others = null;
+        }
+      }
+    }
+  }
+
+  /**
+   * Keeps ids for the {@code Image(s)} of another table, once none of {@code table} are tagged. Those
+   * kept aside that are in the new table get their ids, in the order they were tagged.
+   *
+   * @param newTable the table.
+   */
+  private void switchTable(ImageTable newTable) {
+    table = newTable;
+    order = new int[4];
+    orderSize = 0;
+    imageIds = new ImageBitmap();
+    membersChanged = true;
+    postingsChanged = true;
+    if (others != null) {
+      ArrayList<Image> kept = new ArrayList<>();
+      for (Image other : others) {
+        if (other.getTable() == newTable) {
+          addId(other.getId());
+        } else {
+          kept.add(other);
+        }
+      }
+      others = kept.isEmpty() ? null : kept;
+    }
+  }
+
+  /**
+   * Finds an {@code Image} in a list by identity, since the hash code of an {@code Image} changes
+   * when it is moved.
+   *
+   * @param images the list.
+   * @param image {@code Image} to find.
+   * @return its index, or -1 if it is not in the list.
+   */
+  private static int indexOf(List<Image> images, Image image) {
+    for (int i = 0; i < images.size(); i++) {
+      if (images.get(i) == image) {
+        return i;
+      }
+    }
+    return -1;
   }
 
-  /** Removes {@code Tag} from all {@code Image(s)} with instance of this {@code Tag}. */
+  /**
+   * Removes {@code Tag} from all {@code Image(s)} with instance of this {@code Tag}. The log of each
+   * {@code Image} is updated, as its name changes.
+   */
   public void untagAllImages() {
-    for (Image image : taggedImages) {
-      image.removeTag(this, false, false);
+    for (Image image : new ArrayList<>(getTaggedImages())) {
+      image.removeTag(this, true, false);
     }
-    taggedImages.clear();
+    order = new int[4];
+    orderSize = 0;
+    imageIds = new ImageBitmap();
+    others = null;
+    membersChanged = true;
+    postingsChanged = true;
   }
 
   /**
@@ -72,14 +236,175 @@ public class Tag implements Serializable {
   }
 
   /**
-   * Retrieves a list of all {@code Image(s)} that are tagged with this {@code Tag}.
+   * Retrieves the number identifying this {@code Tag} in its {@code TagManager}.
+   *
+   * @return id of {@code Tag}, or 0 if it has not been added to a {@code TagManager}.
+   */
+  public int getId() {
+    return id;
+  }
+
+  /**
+   * Sets the number identifying this {@code Tag}. Only {@code TagManager} assigns ids.
+   *
+   * @param id new id of {@code Tag}.
+   */
+  void setId(int id) {
+    this.id = id;
+  }
+
+  /**
+   * Retrieves a list of all {@code Image(s)} that are tagged with this {@code Tag}, in the order
+   * they were tagged, followed by those kept in another table. The list is not updated by later
+   * changes and should not be modified.
    *
    * @return list of {@code Image} with {@code Tag}.
    */
   public ArrayList<Image> getTaggedImages() {
+    if (membersChanged) {
+      int[] ids = taggedIds();
+      taggedImages = new ArrayList<>(ids.length);
+      for (int imageId : ids) {
+        taggedImages.add(table.image(imageId));
+      }
+      if (others != null) {
+        taggedImages.addAll(others);
+      }
+      membersChanged = false;
+    }
     return taggedImages;
   }
 
+  /**
+   * Retrieves the ids of all {@code Image(s)} tagged with this {@code Tag}, for combining with those
+   * of other {@code Tag(s)}. Those kept in another table than the others are left out. It should not
+   * be modified.
+   *
+   * @return ids of {@code Image(s)} with {@code Tag}.
+   */
+  public ImageBitmap getImageIds() {
+    members();
+    return imageIds;
+  }
+
+  /**
+   * Points a {@code Tag} restored from a mapped catalog at the ids of the {@code Image(s)} tagged,
+   * to be mapped once they are asked for.
+   *
+   * @param imageTable table of the {@code Container} restored, in which the ids are given.
+   * @param stored file holding the ids, written by {@code TableStore}.
+   */
+  void restorePostings(ImageTable imageTable, File stored) {
+    table = imageTable;
+    postings = stored;
+    order = null;
+    membersChanged = true;
+  }
+
+  /**
+   * Checks whether the ids of the {@code Image(s)} tagged changed since this was last called, so
+   * they need to be stored again.
+   *
+   * @return true if they changed.
+   */
+  boolean takePostingsChanged() {
+    boolean changed = postingsChanged;
+    postingsChanged = false;
+    return changed;
+  }
+
+  /**
+   * Gives the ids of the {@code Image(s)} tagged in a table, in the order they were tagged, to be
+   * stored in a mapped catalog.
+   *
+   * @param imageTable the table.
+   * @return the ids, or none if the ids are kept for another table.
+   */
+  int[] getStoredIds(ImageTable imageTable) {
+    int[] ids = taggedIds();
+    return table == imageTable ? ids : new int[0];
+  }
+
+  /**
+   * Builds {@code order} and {@code imageIds} first for a {@code Tag} read from a save.ser file, or
+   * restored from a mapped catalog.
+   *
+   * @throws UncheckedIOException if the ids of one restored cannot be mapped.
+   */
+  private void members() {
+    if (order == null && postings != null) {
+      IntBuffer ids;
+      try {
+        ids = TableStore.mapIds(postings);
+      } catch (IOException ex) {
+        LOGGER.log(Level.WARNING, "Could not read the images of " + this + ": " + ex.getMessage());
+        throw new UncheckedIOException(ex);
+      }
+      postings = null;
+      order = new int[Math.max(4, ids.limit())];
+      orderSize = 0;
+      imageIds = new ImageBitmap();
+      for (int i = 0; i < ids.limit(); i++) {
+        int imageId = ids.get(i);
+        if (table.inUse(imageId) && imageIds.add(imageId)) {
+          order[orderSize++] = imageId;
+        }
+      }
+    } else if (order == null) {
+      order = new int[Math.max(4, taggedImages.size())];
+      orderSize = 0;
+      imageIds = new ImageBitmap();
+      for (Image image : taggedImages) {
+        table = image.getTable();
+        if (imageIds.add(image.getId())) {
+          order[orderSize++] = image.getId();
+        }
+      }
+    }
+  }
+
+  /**
+   * Moves the {@code Image(s)} of a {@code Tag} read from a save.ser file to a table, for those not
+   * moved with their {@code ImageManager}.
+   *
+   * @param target table of the {@code Container} read.
+   */
+  void moveImages(ImageTable target) {
+    if (order == null) {
+      for (Image image : taggedImages) {
+        if (image.getTable() == null) {
+          image.moveTo(target);
+        }
+      }
+    }
+  }
+
+  /**
+   * Gives the ids of the tagged {@code Image(s)} in {@code order}, each at its last place.
+   *
+   * @return the ids, in the order they were tagged.
+   */
+  private int[] taggedIds() {
+    members();
+    int[] ids = new int[imageIds.cardinality()];
+    int count = ids.length;
+    ImageBitmap seen = new ImageBitmap();
+    for (int i = orderSize - 1; i >= 0 && count > 0; i--) {
+      int imageId = order[i];
+      if (imageIds.contains(imageId) && seen.add(imageId)) {
+        ids[--count] = imageId;
+      }
+    }
+    return ids;
+  }
+
+  /** Drops the places of untagged ids from {@code order}. */
+  private void compact() {
+    int[] ids = taggedIds();
+    order = Arrays.copyOf(ids, Math.max(4, ids.length * 2));
+    orderSize = ids.length;
+  }
+
   /**
    * Determine whether two {@code Tag(s)} are equivalent. Returns true if and only if their names
    * are the same.
@@ -91,6 +416,16 @@ public class Tag implements Serializable {
     return object instanceof Tag && ((Tag) object).getName().equals(this.name);
   }
 
+  /**
+   * Returns a hash code consistent with {@code equals}.
+   *
+   * @return hash code of the name.
+   */
+  @Override
+  public int hashCode() {
+    return name.hashCode();
+  }
+
   /**
    * Prepends {@code Tag} name with @.
    *
@@ -0,0 +1,259 @@
+package Model;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * {@code TagHistory} keeps the {@code Tag(s)} an {@code Image} has had over its lifetime as the
+ * changes made at each time, instead of a copy of all its {@code Tag(s)} after every change. The
+ * {@code Tag(s)} at an entry are rebuilt from the changes when asked for: removed {@code Tag(s)}
+ * are taken out first, then added {@code Tag(s)} are put at the end, so their order is kept.
+ */
+final class TagHistory {
+
+  /** Time of each entry, in epoch milliseconds. */
+  private long[] times = new long[2];
+
+  /** End of the changes of each entry in {@code changes}. */
+  private int[] ends = new int[2];
+
+  /** {@code Tag(s)} removed or added by each entry, one entry after another. */
+  private Tag[] changes = new Tag[2];
+
+  /** Set for each of {@code changes} that is a removal. */
+  private final BitSet removals = new BitSet();
+
+  /** Number of entries. */
+  private int size;
+
+  /** Number of {@code changes} in use. */
+  private int changeCount;
+
+  /**
+   * Retrieves the number of entries.
+   *
+   * @return number of entries.
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Retrieves the time of an entry.
+   *
+   * @param entry index of the entry.
+   * @return time of the entry, in epoch milliseconds.
+   */
+  long getTime(int entry) {
+    checkEntry(entry);
+    return times[entry];
+  }
+
+  /**
+   * Finds the last entry made at or before a time.
+   *
+   * @param time time in epoch milliseconds.
+   * @return index of the entry, or -1 if every entry is later.
+   */
+  int lastEntryAt(long time) {
+    for (int i = size - 1; i >= 0; i--) {
+      if (times[i] <= time) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Retrieves the time of an entry as shown in the log, in the local time zone.
+   *
+   * @param entry index of the entry.
+   * @return time as written by {@code LocalDateTime.toString}.
+   */
+  String getTimeString(int entry) {
+    return LocalDateTime.ofInstant(Instant.ofEpochMilli(getTime(entry)), ZoneId.systemDefault())
+        .toString();
+  }
+
+  /**
+   * Retrieves the {@code Tag(s)} removed by an entry.
+   *
+   * @param entry index of the entry.
+   * @return {@code Tag(s)} removed.
+   */
+  List<Tag> getRemoved(int entry) {
+    return getChanges(entry, true);
+  }
+
+  /**
+   * Retrieves the {@code Tag(s)} added by an entry, in order.
+   *
+   * @param entry index of the entry.
+   * @return {@code Tag(s)} added.
+   */
+  List<Tag> getAdded(int entry) {
+    return getChanges(entry, false);
+  }
+
+  /**
+   * Rebuilds the {@code Tag(s)} as they were after an entry.
+   *
+   * @param entry index of the entry.
+   * @return {@code Tag(s)} after the entry, in order.
+   */
+  ArrayList<Tag> getTags(int entry) {
+    checkEntry(entry);
+    LinkedHashSet<Tag> tags = new LinkedHashSet<>();
+    for (int i = 0; i <= entry; i++) {
+      apply(i, tags);
+    }
+    return new ArrayList<>(tags);
+  }
+
+  /**
+   * Applies the changes of an entry to the {@code Tag(s)} as they were after the entry before it.
+   *
+   * @param entry index of the entry.
+   * @param tags {@code Tag(s)} after the entry before, changed to those after this entry.
+   */
+  void apply(int entry, LinkedHashSet<Tag> tags) {
+    checkEntry(entry);
+    int start = entry == 0 ? 0 : ends[entry - 1];
+    for (int i = start; i < ends[entry]; i++) {
+      if (removals.get(i)) {
+        tags.remove(changes[i]);
+      }
+    }
+    for (int i = start; i < ends[entry]; i++) {
+      if (!removals.get(i)) {
+        tags.add(changes[i]);
+      }
+    }
+  }
+
+  /**
+   * Adds an entry.
+   *
+   * @param time time of the entry, in epoch milliseconds.
+   * @param removed {@code Tag(s)} removed.
+   * @param added {@code Tag(s)} added, in order.
+   */
+  void record(long time, Collection<Tag> removed, Collection<Tag> added) {
+    if (size == times.length) {
+      times = Arrays.copyOf(times, size * 2);
+      ends = Arrays.copyOf(ends, size * 2);
+    }
+    int needed = changeCount + removed.size() + added.size();
+    if (needed > changes.length) {
+      changes = Arrays.copyOf(changes, Math.max(needed, changes.length * 2));
+    }
+    for (Tag tag : removed) {
+      removals.set(changeCount);
+      changes[changeCount++] = tag;
+    }
+    for (Tag tag : added) {
+      changes[changeCount++] = tag;
+    }
+    times[size] = time;
+    ends[size++] = changeCount;
+  }
+
+  /**
+   * Adds the entries of a later history after those of this one.
+   *
+   * @param later history whose entries are added.
+   */
+  void append(TagHistory later) {
+    for (int i = 0; i < later.size; i++) {
+      record(later.times[i], later.getRemoved(i), later.getAdded(i));
+    }
+  }
+
+  /**
+   * Adds an entry that turns one list of {@code Tag(s)} into another.
+   *
+   * @param time time of the entry, in epoch milliseconds.
+   * @param before {@code Tag(s)} after the last entry, in order.
+   * @param after {@code Tag(s)} after this entry, in order.
+   */
+  void recordTags(long time, Collection<Tag> before, List<Tag> after) {
+    List<Tag> removed = new ArrayList<>();
+    List<Tag> added = new ArrayList<>();
+    diff(before, after, removed, added);
+    record(time, removed, added);
+  }
+
+  /**
+   * Finds the changes that turn one list of {@code Tag(s)} into another. The {@code Tag(s)} that
+   * start both lists in the same order are kept; the rest of before is removed and the rest of
+   * after is added. {@code Tag(s)} are compared by identity, since a deleted {@code Tag} equals a
+   * new one with its name.
+   *
+   * @param before {@code Tag(s)} before, in order.
+   * @param after {@code Tag(s)} after, in order.
+   * @param removed list the removed {@code Tag(s)} are added to.
+   * @param added list the added {@code Tag(s)} are added to, in order.
+   */
+  static void diff(Collection<Tag> before, List<Tag> after, List<Tag> removed, List<Tag> added) {
+    Set<Tag> afterSet = Collections.newSetFromMap(new IdentityHashMap<>());
+    afterSet.addAll(after);
+    int kept = 0;
+    for (Tag tag : before) {
+      if (afterSet.contains(tag)) {
+        if (kept < after.size() && after.get(kept) == tag) {
+          kept++;
+        } else {
+          break;
+        }
+      }
+    }
+    Set<Tag> keptSet = Collections.newSetFromMap(new IdentityHashMap<>());
+    keptSet.addAll(after.subList(0, kept));
+    for (Tag tag : before) {
+      if (!keptSet.contains(tag)) {
+        removed.add(tag);
+      }
+    }
+    added.addAll(after.subList(kept, after.size()));
+  }
+
+  /**
+   * Retrieves the removals or the additions of an entry.
+   *
+   * @param entry index of the entry.
+   * @param removed whether to retrieve the removals.
+   * @return {@code Tag(s)} removed or added, in order.
+   */
+  private List<Tag> getChanges(int entry, boolean removed) {
+    checkEntry(entry);
+    List<Tag> tags = new ArrayList<>();
+    for (int i = entry == 0 ? 0 : ends[entry - 1]; i < ends[entry]; i++) {
+      if (removals.get(i) == removed) {
+        tags.add(changes[i]);
+      }
+    }
+    return tags;
+  }
+
+  /**
+   * Checks that an entry exists.
+   *
+   * @param entry index of the entry.
+   * @throws IndexOutOfBoundsException if there is no such entry.
+   */
+  private void checkEntry(int entry) {
+    if (entry < 0 || entry >= size) {
+      throw new IndexOutOfBoundsException("Index: " + entry + ", Size: " + size);
+    }
+  }
+}
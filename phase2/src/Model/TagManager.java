@@ -1,8 +1,10 @@
 package Model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.HashMap;
 
 /**
  * {@code TagManager} stores all {@code Tag(s)} used in Model, a {@code Tag} can be added, removed,
@@ -11,35 +13,147 @@ import java.util.Iterator;
  */
 public class TagManager implements Serializable {
 
+  /** Version of the serialized form, kept so older save.ser files can still be read. */
+  private static final long serialVersionUID = -3384135780657682464L;
+
   /** All {@code Tag(s)} that have been created in the application. */
   private ArrayList<Tag> tags = new ArrayList<>();
 
+  /** Last id given to a {@code Tag}; ids are never reused. */
+  private int lastId;
+
+  /** All {@code Tag(s)} by name. Built from tags when first needed after reading. */
+  private transient HashMap<String, Tag> byName;
+
+  /** All {@code Tag(s)} by id; null where a {@code Tag} was deleted. Built with byName. */
+  private transient ArrayList<Tag> byId;
+
+  /** Deleted {@code Tag(s)} by id, kept since the history of an {@code Image} may name them. */
+  private transient HashMap<Integer, Tag> deleted;
+
   /** Privately creates new {@code TagManager}. */
   public TagManager() {}
 
   /**
-   * Creates new {@code Tag} and adds it to list of {@code Tag(s)}.
+   * Creates new {@code Tag} and adds it to list of {@code Tag(s)}, giving it an id.
    *
    * @param newTag {@code Tag} to be added to tags.
    */
-  public void addTag(Tag newTag) {
-    if (!tags.contains(newTag)) {
-      tags.add(newTag);
+  public synchronized void addTag(Tag newTag) {
+    if (!byName().containsKey(newTag.getName())) {
+      newTag.setId(++lastId);
+      store(newTag);
     }
   }
 
+  /**
+   * Finds the stored {@code Tag} with the same name as {@code tag}, adding {@code tag} if there is
+   * none. Safe to call from several threads.
+   *
+   * @param tag {@code Tag} to look up.
+   * @return the stored {@code Tag}.
+   */
+  public synchronized Tag resolveTag(Tag tag) {
+    Tag stored = byName().get(tag.getName());
+    if (stored != null) {
+      return stored;
+    }
+    tag.setId(++lastId);
+    store(tag);
+    return tag;
+  }
+
+  /**
+   * Finds the stored {@code Tag} with a name, creating and adding one if there is none. No {@code
+   * Tag} is created when one is already stored. Safe to call from several threads.
+   *
+   * @param name name of the {@code Tag}.
+   * @return the stored {@code Tag}.
+   * @throws TagNamingException if there is no such {@code Tag} and the name isn't valid.
+   */
+  public synchronized Tag resolveTag(String name) throws TagNamingException {
+    Tag stored = byName().get(name);
+    return stored != null ? stored : resolveTag(new Tag(name));
+  }
+
+  /**
+   * Finds the stored {@code Tag} with a name.
+   *
+   * @param name name of the {@code Tag}, without the @.
+   * @return the {@code Tag}, or null if there is none.
+   */
+  public synchronized Tag getTag(String name) {
+    return byName().get(name);
+  }
+
+  /**
+   * Finds the stored {@code Tag} with an id.
+   *
+   * @param id id of the {@code Tag}.
+   * @return the {@code Tag}, or null if there is none.
+   */
+  public synchronized Tag getTag(int id) {
+    byName();
+    return id > 0 && id < byId.size() ? byId.get(id) : null;
+  }
+
+  /**
+   * Adds a {@code Tag} read back from a saved catalog, keeping the id it was saved with.
+   *
+   * @param tag {@code Tag} to be added to tags.
+   * @param id id the {@code Tag} was saved with.
+   */
+  synchronized void restoreTag(Tag tag, int id) {
+    tag.setId(id);
+    lastId = Math.max(lastId, id);
+    store(tag);
+  }
+
   /**
    * Deletes a {@code Tag} permanently, first removing it from all tagged images.
    *
    * @param tagToDelete {@code Tag} to be deleted.
    */
-  public void deleteTag(Tag tagToDelete) {
-    Iterator<Image> imageIterator = tagToDelete.getTaggedImages().iterator();
-    while (imageIterator.hasNext()) {
-      Image image = imageIterator.next();
-      image.removeTag(tagToDelete, false, false);
+  public synchronized void deleteTag(Tag tagToDelete) {
+    tagToDelete.untagAllImages();
+    if (byName().remove(tagToDelete.getName()) != null) {
+      tags.remove(tagToDelete);
+      byId.set(tagToDelete.getId(), null);
+      deleted().put(tagToDelete.getId(), tagToDelete);
     }
-    tags.remove(tagToDelete);
+  }
+
+  /**
+   * Finds the {@code Tag} with an id, even one deleted since, as named in the history of an {@code
+   * Image}.
+   *
+   * @param id id of the {@code Tag}.
+   * @return the {@code Tag}, or null if there is none.
+   */
+  synchronized Tag getHistoryTag(int id) {
+    Tag tag = getTag(id);
+    return tag != null ? tag : deleted().get(id);
+  }
+
+  /**
+   * Adds a deleted {@code Tag} read back from a saved catalog, keeping the id it was saved with.
+   *
+   * @param tag deleted {@code Tag}.
+   * @param id id the {@code Tag} was saved with.
+   */
+  synchronized void restoreDeletedTag(Tag tag, int id) {
+    tag.setId(id);
+    lastId = Math.max(lastId, id);
+    deleted().put(id, tag);
+  }
+
+  /**
+   * Retrieves the deleted {@code Tag(s)}, to be saved with the others.
+   *
+   * @return deleted {@code Tag(s)}.
+   */
+  synchronized ArrayList<Tag> getDeletedTags() {
+    return new ArrayList<>(deleted().values());
   }
 
   /**
@@ -50,4 +164,72 @@ public class TagManager implements Serializable {
   public ArrayList<Tag> getTags() {
     return tags;
   }
+
+  /**
+   * Adds a {@code Tag} that already has its id to tags and to the lookups.
+   *
+   * @param tag {@code Tag} to be added.
+   */
+  private void store(Tag tag) {
+    tags.add(tag);
+    index(tag);
+  }
+
+  /**
+   * Adds a {@code Tag} to the lookups by name and id.
+   *
+   * @param tag {@code Tag} to be added.
+   */
+  private void index(Tag tag) {
+    byName().put(tag.getName(), tag);
+    while (byId.size() <= tag.getId()) {
+      byId.add(null);
+    }
+    byId.set(tag.getId(), tag);
+  }
+
+  /**
+   * Returns {@code deleted}, making it first for a {@code TagManager} read from a save.ser file.
+   *
+   * @return the deleted {@code Tag(s)} by id.
+   */
+  private HashMap<Integer, Tag> deleted() {
+    if (deleted == null) {
+      deleted = new HashMap<>();
+    }
+    return deleted;
+  }
+
+  /**
+   * Returns byName, building both lookups first for a {@code TagManager} read from a save.ser file.
+   *
+   * @return the {@code Tag(s)} by name.
+   */
+  private HashMap<String, Tag> byName() {
+    if (byName == null) {
+      byName = new HashMap<>();
+      byId = new ArrayList<>();
+      for (Tag tag : tags) {
+        index(tag);
+      }
+    }
+    return byName;
+  }
+
+  /**
+   * Reads a {@code TagManager} from a save.ser file. Files written before {@code Tag(s)} had ids
+   * are given ids here.
+   *
+   * @param input stream to read from.
+   * @throws IOException if the stream cannot be read.
+   * @throws ClassNotFoundException if a class in the stream is missing.
+   */
+  private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+    input.defaultReadObject();
+    for (Tag tag : tags) {
+      if (tag.getId() == 0) {
+        tag.setId(++lastId);
+      }
+    }
+  }
 }
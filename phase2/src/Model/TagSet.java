@@ -0,0 +1,213 @@
+package Model;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * {@code TagSet} is an ordered set of {@code Tag(s)} that cannot be changed. Only one {@code
+ * TagSet} is kept for each combination of {@code Tag(s)} in each order, shared by every {@code
+ * Image} with that combination, so two {@code TagSet(s)} are the same exactly when they are the
+ * same object. Adding or removing a {@code Tag} gives the shared {@code TagSet} with the result.
+ */
+public final class TagSet implements Iterable<Tag> {
+
+  /** The {@code TagSet} of each combination in use; dropped once no {@code Image} uses it. */
+  private static final Map<TagSet, WeakReference<TagSet>> interned = new WeakHashMap<>();
+
+  /** The {@code TagSet} without any {@code Tag(s)}. */
+  static final TagSet EMPTY = intern(new TagSet(new Tag[0]));
+
+  /** The {@code Tag(s)}, in order. */
+  private final Tag[] tags;
+
+  /** Hash code of the {@code Tag} objects, in order. */
+  private final int hash;
+
+  /** {@code tags} as an unmodifiable list; made when first asked for. */
+  private List<Tag> list;
+
+  /**
+   * Creates a {@code TagSet}, to be interned before it is used.
+   *
+   * @param tags the {@code Tag(s)}, in order, without repeats.
+   */
+  private TagSet(Tag[] tags) {
+    this.tags = tags;
+    int code = 1;
+    for (Tag tag : tags) {
+      code = 31 * code + System.identityHashCode(tag);
+    }
+    hash = code;
+  }
+
+  /**
+   * Gives the {@code TagSet} with some {@code Tag(s)}. A {@code Tag} equal to an earlier one is
+   * left out.
+   *
+   * @param tags the {@code Tag(s)}, in order.
+   * @return the shared {@code TagSet}.
+   */
+  static TagSet of(Collection<Tag> tags) {
+    List<Tag> distinct = new ArrayList<>(tags.size());
+    for (Tag tag : tags) {
+      if (!distinct.contains(tag)) {
+        distinct.add(tag);
+      }
+    }
+    return intern(new TagSet(distinct.toArray(new Tag[0])));
+  }
+
+  /**
+   * Gives the {@code TagSet} with a {@code Tag} added at the end.
+   *
+   * @param tag {@code Tag} to add.
+   * @return the shared {@code TagSet}, or this one if an equal {@code Tag} is already in it.
+   */
+  TagSet with(Tag tag) {
+    if (contains(tag)) {
+      return this;
+    }
+    Tag[] added = Arrays.copyOf(tags, tags.length + 1);
+    added[tags.length] = tag;
+    return intern(new TagSet(added));
+  }
+
+  /**
+   * Gives the {@code TagSet} with a {@code Tag} removed.
+   *
+   * @param tag {@code Tag} to remove.
+   * @return the shared {@code TagSet}, or this one if no equal {@code Tag} is in it.
+   */
+  TagSet without(Tag tag) {
+    int position = indexOf(tag);
+    if (position < 0) {
+      return this;
+    }
+    Tag[] removed = new Tag[tags.length - 1];
+    System.arraycopy(tags, 0, removed, 0, position);
+    System.arraycopy(tags, position + 1, removed, position, removed.length - position);
+    return intern(new TagSet(removed));
+  }
+
+  /**
+   * Checks whether a {@code Tag} equal to the given one is in this {@code TagSet}.
+   *
+   * @param tag {@code Tag} to look for.
+   * @return true if it is in this {@code TagSet}, false otherwise.
+   */
+  public boolean contains(Tag tag) {
+    return indexOf(tag) >= 0;
+  }
+
+  /**
+   * Retrieves the number of {@code Tag(s)}.
+   *
+   * @return number of {@code Tag(s)}.
+   */
+  public int size() {
+    return tags.length;
+  }
+
+  /**
+   * Retrieves the {@code Tag(s)} as a list, which cannot be modified.
+   *
+   * @return the {@code Tag(s)}, in order.
+   */
+  public List<Tag> asList() {
+    if (list == null) {
+      list = Collections.unmodifiableList(Arrays.asList(tags));
+    }
+    return list;
+  }
+
+  /**
+   * Iterates over the {@code Tag(s)}, in order.
+   *
+   * @return an iterator that cannot remove {@code Tag(s)}.
+   */
+  @Override
+  public Iterator<Tag> iterator() {
+    return asList().iterator();
+  }
+
+  /**
+   * Returns true if Object is a {@code TagSet} holding the same {@code Tag} objects in the same
+   * order. Once interned, only the same object is equal.
+   *
+   * @param that Object to be compared to.
+   */
+  @Override
+  public boolean equals(Object that) {
+    if (!(that instanceof TagSet) || ((TagSet) that).hash != hash) {
+      return false;
+    }
+    Tag[] other = ((TagSet) that).tags;
+    if (other.length != tags.length) {
+      return false;
+    }
+    for (int i = 0; i < tags.length; i++) {
+      if (other[i] != tags[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns a hash code consistent with {@code equals}.
+   *
+   * @return hash code of the {@code Tag} objects, in order.
+   */
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
+  /**
+   * Returns the {@code Tag(s)}, as a list does.
+   *
+   * @return the {@code Tag(s)} written as a list.
+   */
+  @Override
+  public String toString() {
+    return asList().toString();
+  }
+
+  /**
+   * Finds the position of a {@code Tag} equal to the given one.
+   *
+   * @param tag {@code Tag} to look for.
+   * @return its position, or -1 if it is not in this {@code TagSet}.
+   */
+  private int indexOf(Tag tag) {
+    for (int i = 0; i < tags.length; i++) {
+      if (tags[i].equals(tag)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Gives the shared {@code TagSet} equal to a new one, sharing the new one if there is none.
+   *
+   * @param candidate new {@code TagSet}.
+   * @return the shared {@code TagSet}.
+   */
+  private static synchronized TagSet intern(TagSet candidate) {
+    WeakReference<TagSet> reference = interned.get(candidate);
+    TagSet shared = reference == null ? null : reference.get();
+    if (shared == null) {
+      interned.put(candidate, new WeakReference<>(candidate));
+      shared = candidate;
+    }
+    return shared;
+  }
+}
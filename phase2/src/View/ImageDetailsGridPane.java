@@ -37,7 +37,7 @@ public class ImageDetailsGridPane extends GridPane {
   private ControlTag tagControl;
 
   /** List of {@code Image(s)} with the same {@code Tag}. */
-  private ListView<Image> imageList;
+  private MatchList imageList;
 
   /** The Stage for viewing name history. */
   private Stage stageNameHistory = new Stage();
@@ -78,7 +78,7 @@ public class ImageDetailsGridPane extends GridPane {
    * @param control Controller to be used.
    * @param imageList List of {@code Image(s)} to be stored.
    */
-  protected ImageDetailsGridPane(Controller control, ListView<Image> imageList) {
+  protected ImageDetailsGridPane(Controller control, MatchList imageList) {
     this.controller = control;
     this.imageList = imageList;
     imageControl = control.getImageControl();
@@ -376,7 +376,7 @@ public class ImageDetailsGridPane extends GridPane {
 
   private void showImageView(Image image){
     try {
-      file = new FileInputStream(controller.getImageFile(image));
+      file = new FileInputStream(controller.findImageFile(image));
       imageToShow =
               new javafx.scene.image.Image(file, 200, 200, true, true);
       file.close();
@@ -650,14 +650,11 @@ public class ImageDetailsGridPane extends GridPane {
   /**
    * Refreshes the right pane according to the desired {@code Tag}.
    *
-   * @param imageList The ListView that shows {@code Image(s)} that has the desired {@code Tag}.
+   * @param imageList The list that shows {@code Image(s)} that has the desired {@code Tag}.
    * @param tag The desired {@code Tag}.
    */
-  private void constructImageList(ListView<Image> imageList, Tag tag) {
-    imageList.getItems().clear();
-    for (Image image : tagControl.getTaggedImages(tag)) {
-      imageList.getItems().add(image);
-    }
+  private void constructImageList(MatchList imageList, Tag tag) {
+    imageList.show(new ArrayList<>(tagControl.getTaggedImages(tag)).stream());
   }
 
   /**
@@ -2,8 +2,11 @@ package View;
 
 import Model.*;
 import Control.Controller;
-import Control.Read;
+import Control.RenameFailure;
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.beans.binding.Bindings;
+import javafx.beans.binding.BooleanBinding;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
@@ -22,6 +25,8 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -45,7 +50,7 @@ public class Interface extends Application {
   /** Right pane */
   private VBox rightPane;
   /** List of images with the same tag */
-  private static ListView<Image> imageList;
+  private MatchList imageList;
   /** Text displayed next to save button. */
   private static Text lastSavedTime;
 
@@ -68,7 +73,10 @@ public class Interface extends Application {
     Log.init();
     try {
       controller = new Controller();
-      imageList = new ListView<>();
+      controller.setOnWrite(() -> Platform.runLater(Interface::written));
+      controller.setOnMoveProgress(
+          (moved, total) -> Platform.runLater(() -> showMoveProgress(moved, total)));
+      imageList = new MatchList();
       imageDetails = new ImageDetailsGridPane(controller, imageList);
       directoryTree = new DirectoryTree();
       centrePane = new VBox();
@@ -87,8 +95,10 @@ public class Interface extends Application {
 
     Button loadBtn = new Button("Load Folder");
     Button expandBtn = new Button("Expand All");
+    CheckBox watchBox = new CheckBox("Watch Folders");
 
     expandBtn.setOnAction(event -> directoryTree.expandTree(directoryTree.getRoot()));
+    watchBox.setOnAction(event -> watchFolders(watchBox));
 
     // Left: Directory view
     loadBtn.setOnAction(
@@ -105,26 +115,58 @@ public class Interface extends Application {
 
     initiateRightPane();
     initiateCentrePane();
-    GridPane buttonGrid = createGrid(loadBtn, expandBtn);
+    GridPane buttonGrid = createGrid(loadBtn, expandBtn, watchBox);
     BorderPane border = alignGrid(buttonGrid);
     setupStage(primaryStage, border);
   }
 
+  /** Waits for any changes still being written before the application exits. */
+  @Override
+  public void stop() {
+    try {
+      controller.close();
+    } catch (IOException exception) {
+      LOGGER.log(Level.WARNING, exception.getMessage());
+    }
+  }
+
+  /**
+   * Starts or stops watching the loaded folders, so changes made outside the application show up
+   * without loading them again.
+   *
+   * @param watchBox CheckBox that was clicked.
+   */
+  private void watchFolders(CheckBox watchBox) {
+    if (!watchBox.isSelected()) {
+      controller.stopWatching();
+      return;
+    }
+    try {
+      controller.watch(Platform::runLater);
+    } catch (IOException exception) {
+      watchBox.setSelected(false);
+      displayAlert("Watch Error", exception.getMessage());
+      LOGGER.log(Level.WARNING, exception.getMessage());
+    }
+  }
+
   /**
    * Creates GridPane for application.
    *
    * @param loadBtn Button to load a directory.
    * @param saveBtn Button to save changes made in application.
+   * @param watchBox CheckBox to watch the folders for changes.
    * @return GridPane that was created.
    */
-  private GridPane createGrid(Button loadBtn, Button saveBtn) {
+  private GridPane createGrid(Button loadBtn, Button saveBtn, CheckBox watchBox) {
     GridPane buttonGrid = new GridPane();
     buttonGrid.setAlignment(Pos.CENTER_LEFT);
     buttonGrid.setPadding(new Insets(20, 10, 20, 10));
     buttonGrid.setHgap(10);
     buttonGrid.add(loadBtn, 0, 0);
     buttonGrid.add(saveBtn, 1, 0);
-    buttonGrid.add(lastSavedTime, 2, 0);
+    buttonGrid.add(watchBox, 2, 0);
+    buttonGrid.add(lastSavedTime, 3, 0);
 
     return buttonGrid;
   }
@@ -167,12 +209,110 @@ public class Interface extends Application {
 
   /** Initiates right pane. */
   private void initiateRightPane() {
+    TextField queryInput = new TextField();
+    queryInput.setPromptText("@cat & (@2019 | @2020) & !@blurry");
+    Button findBtn = new Button("Find");
+    findBtn.setOnAction(event -> findImages(queryInput.getText()));
+    queryInput.setOnAction(event -> findImages(queryInput.getText()));
+    BooleanBinding noneSelected =
+        Bindings.isEmpty(imageList.getSelectionModel().getSelectedItems());
+    Button moveBtn = new Button("Move images");
+    moveBtn.setOnAction(event -> moveImages());
+    moveBtn.disableProperty().bind(noneSelected);
+    HBox queryBox = new HBox(5, queryInput, findBtn, moveBtn);
+    TextField tagsInput = new TextField();
+    tagsInput.setPromptText("cat,2019");
+    Button tagBtn = new Button("Tag");
+    tagBtn.setOnAction(event -> changeTags(tagsInput.getText(), true));
+    tagBtn.disableProperty().bind(noneSelected);
+    Button untagBtn = new Button("Untag");
+    untagBtn.setOnAction(event -> changeTags(tagsInput.getText(), false));
+    untagBtn.disableProperty().bind(noneSelected);
+    HBox tagsBox = new HBox(5, tagsInput, tagBtn, untagBtn);
+    imageList.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
     rightPane.setSpacing(5);
     rightPane.getChildren().add(new Text("Click on a tag to see images with this tag!"));
+    rightPane.getChildren().add(new Text("Or find images with a query:"));
+    rightPane.getChildren().add(queryBox);
     rightPane.getChildren().add(imageList);
+    rightPane.getChildren().add(new Text("Tag or untag them together:"));
+    rightPane.getChildren().add(tagsBox);
+  }
+
+  /**
+   * Lists the {@code Image(s)} that match a query in the right pane.
+   *
+   * @param query the query, e.g. {@code @cat & !@blurry & dir:/photos/trips}.
+   */
+  private void findImages(String query) {
+    try {
+      imageList.show(controller.getTagControl().findImages(query));
+    } catch (QuerySyntaxException exception) {
+      displayAlert("Query Error", exception.getMessage());
+    }
   }
 
-  /** Saves changes, refreshes left pane. */
+  /** Opens a window to move the {@code Image(s)} selected in the right pane together. */
+  private void moveImages() {
+    List<Image> images = chosenImages();
+    if (images.isEmpty()) {
+      return;
+    }
+    Stage stageMoveImages = new Stage();
+    stageMoveImages.setTitle("Move to");
+    stageMoveImages.setScene(
+        new Scene(
+            new MoveImageDisplay(images, controller.getImageControl(), stageMoveImages),
+            300,
+            350));
+    stageMoveImages.show();
+  }
+
+  /**
+   * Adds or removes {@code Tag(s)} on the {@code Image(s)} selected in the right pane together, then
+   * saves.
+   *
+   * @param tags names of the {@code Tag(s)}, separated by commas.
+   * @param add true to add the {@code Tag(s)}, false to remove them.
+   */
+  private void changeTags(String tags, boolean add) {
+    List<Image> images = chosenImages();
+    List<String> names = new ArrayList<>();
+    for (String name : tags.split(",")) {
+      if (!name.trim().isEmpty()) {
+        names.add(name.trim());
+      }
+    }
+    if (images.isEmpty()) {
+      return;
+    }
+    if (names.isEmpty()) {
+      displayAlert("Tag Error", "Please name some tags first.");
+      return;
+    }
+    List<String> none = new ArrayList<>();
+    try {
+      controller.getTagControl().changeTags(images, add ? names : none, add ? none : names);
+    } catch (TagNamingException exception) {
+      displayAlert("Tag Naming Error.", exception.getMessage());
+      return;
+    }
+    imageDetails.refresh();
+    imageList.refresh();
+    save();
+  }
+
+  /**
+   * Gives the {@code Image(s)} selected in the right pane. Nothing is done to the others listed, as
+   * a list of matches can be far longer than what is shown.
+   *
+   * @return the {@code Image(s)}, empty if none are selected.
+   */
+  private List<Image> chosenImages() {
+    return new ArrayList<>(imageList.getSelectionModel().getSelectedItems());
+  }
+
+  /** Saves changes. The left pane is refreshed once they are written to disk. */
   protected static void save() {
     try {
       controller.save();
@@ -181,9 +321,37 @@ public class Interface extends Application {
           "Save Error",
           "We encountered an error while saving, please try again. If this error persists, please contact customer support.");
     }
+  }
+
+  /**
+   * Shows how much of the files being moved to another device has been copied.
+   *
+   * @param moved number of bytes copied so far.
+   * @param total number of bytes to copy.
+   */
+  private static void showMoveProgress(long moved, long total) {
+    long percent = total > 0 ? Math.min(100, moved * 100 / total) : 100;
+    lastSavedTime.setText(
+        "Moving files: " + percent + "% of " + Math.max(1, total >> 20) + " MB");
+    lastSavedTime.setFill(Color.GRAY);
+  }
+
+  /**
+   * Shows when changes were last written to disk, refreshes left pane. Files that could not be
+   * renamed are listed in an alert.
+   */
+  private static void written() {
     lastSavedTime.setText("Last saved at " + new Timestamp(System.currentTimeMillis()));
     lastSavedTime.setFill(Color.GRAY);
     directoryTree.refreshTree();
+    List<RenameFailure> failures = controller.takeRenameFailures();
+    if (!failures.isEmpty()) {
+      StringBuilder content = new StringBuilder();
+      for (RenameFailure failure : failures) {
+        content.append(failure).append(System.lineSeparator());
+      }
+      displayAlert("Rename Error", content.toString());
+    }
   }
 
   /**
@@ -218,7 +386,7 @@ public class Interface extends Application {
       directoryTree.setRootDirectory(rootFile);
       refreshTree();
       if (rootFilePath != null) {
-        Read.traverse(rootFilePath, controller.getContainer());
+        controller.importDirectory(rootFilePath);
       }
       save();
       imageDetails.refresh();
@@ -234,11 +402,9 @@ public class Interface extends Application {
         // Clicked on file, check if it's an image. If so, pass it to centre pane.
         String fileName = clickedFile.getValue().getName();
         if (fileName.matches(acceptedExtensions)) {
-          String imageName = fileName.split("\\.")[0].split("\\s@")[0];
-          Path imageDirectoryPath = clickedFile.getValue().toPath().getParent();
           // Update centre pane
           imageDetails.getChildren().clear();
-          imageDetails.refresh(controller.getImage(imageDirectoryPath, imageName));
+          imageDetails.refresh(controller.getImage(clickedFile.getValue().toPath()));
         }
       }
     }
@@ -0,0 +1,61 @@
+package View;
+
+import Model.Image;
+import javafx.application.Platform;
+import javafx.scene.control.ListView;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * {@code MatchList} lists the {@code Image(s)} found by a query or with a {@code Tag}. They are
+ * added a few at a time, so the first are shown while the rest are still being found.
+ */
+class MatchList extends ListView<Image> {
+
+  /** Number of {@code Image(s)} added at a time while listing matches. */
+  private static final int MATCHES_PER_PULSE = 200;
+
+  /** Matches being added, or null once all are listed. */
+  private Iterator<Image> pendingMatches;
+
+  /** Number of matches added so far. */
+  private int listedMatches;
+
+  /**
+   * Lists {@code Image(s)}, replacing those listed.
+   *
+   * @param images {@code Image(s)} to list.
+   */
+  void show(Stream<Image> images) {
+    getItems().clear();
+    pendingMatches = images.iterator();
+    listedMatches = 0;
+    showMore(pendingMatches);
+  }
+
+  /**
+   * Adds the next few matches, then leaves the rest for the next pulse. Stops once other {@code
+   * Image(s)} are listed instead.
+   *
+   * @param matches matches being listed.
+   */
+  private void showMore(Iterator<Image> matches) {
+    if (matches != pendingMatches || getItems().size() != listedMatches) {
+      return;
+    }
+    List<Image> batch = new ArrayList<>();
+    while (batch.size() < MATCHES_PER_PULSE && matches.hasNext()) {
+      batch.add(matches.next());
+    }
+    getItems().addAll(batch);
+    listedMatches += batch.size();
+    if (matches.hasNext()) {
+      Platform.runLater(() -> showMore(matches));
+    } else {
+      pendingMatches = null;
+    }
+  }
+}
@@ -2,6 +2,7 @@ package View;
 
 import Control.ControlImage;
 import Model.Image;
+import Model.InvalidDirectoryException;
 import javafx.scene.control.*;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
@@ -10,10 +11,11 @@ import javafx.stage.Stage;
 
 import java.io.File;
 import java.nio.file.Path;
+import java.util.List;
 
 /**
  * {@code MoveImageDisplay} is a pane that displays a directory tree and a button for moving the
- * {@code Image}.
+ * {@code Image}, or several {@code Image(s)} at once.
  */
 public class MoveImageDisplay extends VBox {
 
@@ -39,15 +41,28 @@ public class MoveImageDisplay extends VBox {
   public MoveImageDisplay(Image image, ControlImage imageControl, Stage stageMoveImage) {
     this.stageMoveImage = stageMoveImage;
     this.imageControl = imageControl;
-    construct(image);
+    construct(() -> moveImage(image));
   }
 
   /**
-   * Constructs a display from {@code Image} selected.
+   * Creates {@code MoveImageDisplay} to move several {@code Image(s)} together.
    *
-   * @param image {@code Image} to be displayed.
+   * @param images {@code Image(s)} to be moved.
+   * @param imageControl Interface's {@code ControlImage}.
+   * @param stageMoveImage Stage to be displayed on.
    */
-  private void construct(Image image) {
+  public MoveImageDisplay(List<Image> images, ControlImage imageControl, Stage stageMoveImage) {
+    this.stageMoveImage = stageMoveImage;
+    this.imageControl = imageControl;
+    construct(() -> moveImages(images));
+  }
+
+  /**
+   * Constructs a display for the {@code Image(s)} selected.
+   *
+   * @param move moves the {@code Image(s)} to {@code desiredPath}.
+   */
+  private void construct(Runnable move) {
     TreeView<File> tree = new TreeView<>();
     tree.setRoot(Interface.getDirectoryTree().getRoot());
     tree.setCellFactory(
@@ -72,7 +87,7 @@ public class MoveImageDisplay extends VBox {
     tree.setOnMouseClicked(event -> createDirectory(tree));
 
     Button select = new Button("Select");
-    select.setOnAction(event -> moveImage(image));
+    select.setOnAction(event -> move.run());
     select.setMinHeight(30);
 
     this.getChildren().add(tree);
@@ -115,4 +130,35 @@ public class MoveImageDisplay extends VBox {
       alert.showAndWait();
     }
   }
+
+  /**
+   * Moves several {@code Image(s)} together. Their files are moved in the background; any that
+   * cannot be are reported once the save is written.
+   *
+   * @param images {@code Image(s)} to be moved.
+   */
+  private void moveImages(List<Image> images) {
+    if (desiredPath == null) {
+      Alert alert = new Alert(Alert.AlertType.INFORMATION);
+      alert.setHeaderText("Please select a directory!");
+      alert.showAndWait();
+      return;
+    }
+    try {
+      int moved = imageControl.moveAll(images, desiredPath);
+      Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+      alert.setHeaderText("Success!");
+      alert.setContentText("Moved " + moved + " of " + images.size() + " images to " + desiredPath);
+      alert.showAndWait();
+      Interface.refreshTree();
+      desiredPath = null;
+      stageMoveImage.close();
+      Interface.save();
+    } catch (InvalidDirectoryException e) {
+      Alert alert = new Alert(Alert.AlertType.ERROR);
+      alert.setHeaderText("Failed!");
+      alert.setContentText(e.getMessage());
+      alert.showAndWait();
+    }
+  }
 }
@@ -1,16 +1,24 @@
 package View;
 
 import Control.Controller;
-import Control.Read;
 import Control.ControlImage;
 import Control.ControlTag;
+import Control.RenameFailure;
 import Model.*;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -38,6 +46,9 @@ public class Terminal {
   /** Currently selected {@code Image}. */
   private static Image selectedImg;
 
+  /** Updates from watching the file system, run before the next command. */
+  private static Queue<Runnable> watched = new ConcurrentLinkedQueue<>();
+
   /** Determines whether the user wants to keep running the program; if {@code false} terminates. */
   private static boolean run = true;
 
@@ -59,8 +70,11 @@ public class Terminal {
     }
     while (run) {
       System.out.print(">>> ");
-      monitorInput(input.readLine());
+      String line = input.readLine();
+      runWatched();
+      monitorInput(line);
     }
+    close();
   }
 
   /**
@@ -92,7 +106,25 @@ public class Terminal {
     helpMenu += "    -cd                > list the currently selected directory.\n";
     helpMenu += "    -ci                > list the currently selected image.\n";
     helpMenu += "    -n [path to dir]   > add a new directory to the Tagger.\n";
+    helpMenu += "    -q [query]         > find images, e.g. -q @cat & (@2019 | @2020) & !@blurry\n";
+    helpMenu += "                         & dir:/photos/trips\n";
+    helpMenu += "    -mvq [dest] [q]    > move every image found by the query q to destination,\n";
+    helpMenu += "                         e.g. -mvq /photos/cats @cat & !@blurry\n";
+    helpMenu += "    -atq [tags] [q]    > add tags to every image found by the query q,\n";
+    helpMenu += "                         e.g. -atq cat,2019 dir:/photos/trips\n";
+    helpMenu += "    -rtq [tags] [q]    > remove tags from every image found by the query q.\n";
+    helpMenu += "    -w                 > turn watching the directories for changes on or off.\n";
+    helpMenu += "    -ra [time]         > revert every image to its tags at a time,\n";
+    helpMenu += "                         e.g. -ra 2026-09-01T10:00\n";
     helpMenu += "    -exit              > exit the program.\n";
+    helpMenu += "    ===== Directory Functions =====\n";
+    helpMenu += "    -ta [time]         > list the tags the images in the directory had at a time.\n";
+    helpMenu += "    -rd [time]         > revert the images in the directory and its subdirectories\n";
+    helpMenu += "                         to their tags at a time.\n";
+    helpMenu += "    -mvd [dest]        > move every image in the directory to destination.\n";
+    helpMenu += "    -atd [tags]        > add tags to every image in the directory,\n";
+    helpMenu += "                         e.g. -atd cat,2019\n";
+    helpMenu += "    -rtd [tags]        > remove tags from every image in the directory.\n";
     helpMenu += "    ===== Image Functions =====\n";
     helpMenu += "    -ilt               > list all Tags for this image.\n";
     helpMenu += "    -at [name of tag]  > Add a tag to the image.\n";
@@ -141,12 +173,37 @@ public class Terminal {
       currentImage();
     } else if (input.matches("^-n .*$")) {
       readIn(input.split(" ")[1]);
+    } else if (input.matches("^-q .*$")) {
+      findImages(input.substring(3));
+    } else if (input.matches("^-w$")) {
+      toggleWatching();
+    } else if (input.matches("^-ra .*$")) {
+      revertAll(input.split(" ")[1]);
+    } else if (input.matches("^-ta .*$")) {
+      showDirectoryAt(input.split(" ")[1]);
+    } else if (input.matches("^-rd .*$")) {
+      revertDirectory(input.split(" ")[1]);
     } else if (input.matches("^-ilt$")) {
       showImageTags();
+    } else if (input.matches("^-atd \\S+$")) {
+      changeDirectoryTags(input.split(" ")[1], true);
+    } else if (input.matches("^-rtd \\S+$")) {
+      changeDirectoryTags(input.split(" ")[1], false);
+    } else if (input.matches("^-atq \\S+ .*$")) {
+      String[] parts = input.split(" ", 3);
+      changeFoundTags(parts[1], parts[2], true);
+    } else if (input.matches("^-rtq \\S+ .*$")) {
+      String[] parts = input.split(" ", 3);
+      changeFoundTags(parts[1], parts[2], false);
     } else if (input.matches("^-at .*$")) {
       addImageTag(input.split(" ")[1]);
     } else if (input.matches("^-rt .*$")) {
       removeImageTag(input.split(" ")[1]);
+    } else if (input.matches("^-mvd .*$")) {
+      moveDirectory(input.split(" ")[1]);
+    } else if (input.matches("^-mvq \\S+ .*$")) {
+      String[] parts = input.split(" ", 3);
+      moveFound(parts[1], parts[2]);
     } else if (input.matches("^-mv .*$")) {
       moveImage(input.split(" ")[1]);
     } else if (input.matches("^-sh$")) {
@@ -233,10 +290,111 @@ public class Terminal {
    * @param path the directory to traverse.
    */
   private static void readIn(String path) {
-    Read.traverse(new File(path).toPath(), control.getContainer());
+    control.importDirectory(new File(path).toPath());
     save();
   }
 
+  /**
+   * Displays a numbered list of the images that match a query, printing each as soon as it is
+   * found.
+   *
+   * @param query the query, e.g. {@code @cat & !@blurry}.
+   */
+  private static void findImages(String query) {
+    try {
+      int[] count = {0};
+      tagControl
+          .findImages(query)
+          .forEachOrdered(image -> System.out.println(++count[0] + " - " + image.getImageFile()));
+      System.out.println(count[0] + " images found.");
+    } catch (QuerySyntaxException ex) {
+      System.out.println("Ooops! Looks like we ran into an error:\n" + ex.getMessage());
+    }
+  }
+
+  /** Turns watching the directories read in for changes on or off. */
+  private static void toggleWatching() {
+    if (control.isWatching()) {
+      control.stopWatching();
+      System.out.println("Stopped watching directories.");
+    } else {
+      try {
+        control.watch(watched::add);
+        System.out.println("Watching directories; changes are applied before each command.");
+      } catch (IOException ex) {
+        System.out.println("Ooops! Looks like we ran into an error:\n" + ex.getMessage());
+      }
+    }
+  }
+
+  /** Applies the changes found by watching the directories since the last command. */
+  private static void runWatched() {
+    Runnable update;
+    while ((update = watched.poll()) != null) {
+      update.run();
+    }
+  }
+
+  /**
+   * Displays the name each image in {@code selectedDir} and its subdirectories had at a time.
+   *
+   * @param time the time, e.g. {@code 2026-09-01T10:00}, in the local time zone.
+   */
+  private static void showDirectoryAt(String time) {
+    long millis = parseTime(time);
+    if (selectedDir == null) {
+      System.out.println("Please select a directory first.");
+    } else if (millis >= 0) {
+      imageControl
+          .getTagsAt(selectedDir.getDirectory(), millis)
+          .forEach((image, tags) -> System.out.println(image.getName() + ": " + tags));
+    }
+  }
+
+  /**
+   * Reverts the images in {@code selectedDir} and its subdirectories to their tags at a time.
+   *
+   * @param time the time, e.g. {@code 2026-09-01T10:00}, in the local time zone.
+   */
+  private static void revertDirectory(String time) {
+    long millis = parseTime(time);
+    if (selectedDir == null) {
+      System.out.println("Please select a directory first.");
+    } else if (millis >= 0) {
+      int reverted = imageControl.revertTo(selectedDir.getDirectory(), millis);
+      System.out.println(reverted + " images reverted.");
+      save();
+    }
+  }
+
+  /**
+   * Reverts every image to its tags at a time.
+   *
+   * @param time the time, e.g. {@code 2026-09-01T10:00}, in the local time zone.
+   */
+  private static void revertAll(String time) {
+    long millis = parseTime(time);
+    if (millis >= 0) {
+      System.out.println(imageControl.revertTo(null, millis) + " images reverted.");
+      save();
+    }
+  }
+
+  /**
+   * Reads a time typed in the local time zone.
+   *
+   * @param time the time, e.g. {@code 2026-09-01T10:00}.
+   * @return the time in epoch milliseconds, or -1 if it could not be read.
+   */
+  private static long parseTime(String time) {
+    try {
+      return LocalDateTime.parse(time).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    } catch (DateTimeParseException ex) {
+      System.out.println("Please enter a time such as 2026-09-01T10:00.");
+      return -1;
+    }
+  }
+
   /** Displays all of the tags associated with {@code selectedImg}. */
   private static void showImageTags() {
     if (imageSelected()) {
@@ -273,6 +431,54 @@ public class Terminal {
     save();
   }
 
+  /**
+   * Adds or removes {@code Tag(s)} on every {@code Image} in {@code selectedDir} together.
+   *
+   * @param tags names of the {@code Tag(s)}, separated by commas, not including the @.
+   * @param add true to add the {@code Tag(s)}, false to remove them.
+   */
+  private static void changeDirectoryTags(String tags, boolean add) {
+    if (selectedDir == null) {
+      System.out.println("Please select a directory first.");
+      return;
+    }
+    changeTags(selectedDir.getImages(), tags, add);
+  }
+
+  /**
+   * Adds or removes {@code Tag(s)} on every {@code Image} found by a query together.
+   *
+   * @param tags names of the {@code Tag(s)}, separated by commas, not including the @.
+   * @param query the query, e.g. {@code @cat & !@blurry}.
+   * @param add true to add the {@code Tag(s)}, false to remove them.
+   */
+  private static void changeFoundTags(String tags, String query, boolean add) {
+    try {
+      changeTags(tagControl.findImages(query).collect(Collectors.toList()), tags, add);
+    } catch (QuerySyntaxException ex) {
+      System.out.println("Ooops! Looks like we ran into an error:\n" + ex.getMessage());
+    }
+  }
+
+  /**
+   * Adds or removes {@code Tag(s)} on {@code Image(s)} together, then saves.
+   *
+   * @param images {@code Image(s)} to change.
+   * @param tags names of the {@code Tag(s)}, separated by commas, not including the @.
+   * @param add true to add the {@code Tag(s)}, false to remove them.
+   */
+  private static void changeTags(List<Image> images, String tags, boolean add) {
+    List<String> names = Arrays.asList(tags.split(","));
+    List<String> none = Collections.emptyList();
+    try {
+      int changed = tagControl.changeTags(images, add ? names : none, add ? none : names);
+      System.out.println("Changed the tags of " + changed + " of " + images.size() + " images.");
+    } catch (TagNamingException ex) {
+      System.out.println("Ooops! Looks like we ran into an error:\n" + ex.getMessage());
+    }
+    save();
+  }
+
   /**
    * Moves {@code selectedImg} to the desired new location.
    *
@@ -282,13 +488,56 @@ public class Terminal {
     if (imageSelected()) {
       try {
         imageControl.move(selectedImg, new File(newDir).toPath());
-      } catch (InvalidDirectoryException | IOException e) {
+      } catch (InvalidDirectoryException e) {
         System.out.println("There's been an error, please try again.\n" + e.getMessage());
       }
     }
     save();
   }
 
+  /**
+   * Moves every {@code Image} in {@code selectedDir} to the desired new location together.
+   *
+   * @param newDir directory to move the {@code Image(s)} to.
+   */
+  private static void moveDirectory(String newDir) {
+    if (selectedDir == null) {
+      System.out.println("Please select a directory first.");
+      return;
+    }
+    moveImages(selectedDir.getImages(), newDir);
+  }
+
+  /**
+   * Moves every {@code Image} found by a query to the desired new location together.
+   *
+   * @param newDir directory to move the {@code Image(s)} to.
+   * @param query the query, e.g. {@code @cat & !@blurry}.
+   */
+  private static void moveFound(String newDir, String query) {
+    try {
+      moveImages(tagControl.findImages(query).collect(Collectors.toList()), newDir);
+    } catch (QuerySyntaxException ex) {
+      System.out.println("Ooops! Looks like we ran into an error:\n" + ex.getMessage());
+    }
+  }
+
+  /**
+   * Moves {@code Image(s)} to the desired new location together, then saves.
+   *
+   * @param images {@code Image(s)} to move.
+   * @param newDir directory to move the {@code Image(s)} to.
+   */
+  private static void moveImages(List<Image> images, String newDir) {
+    try {
+      int moved = imageControl.moveAll(images, new File(newDir).toPath());
+      System.out.println("Moved " + moved + " of " + images.size() + " images.");
+    } catch (InvalidDirectoryException e) {
+      System.out.println("There's been an error, please try again.\n" + e.getMessage());
+    }
+    save();
+  }
+
   /** Displays the log of changes done to {@code selectedImg}. */
   private static void showImageHistory() {
     if (imageSelected()) {
@@ -406,7 +655,17 @@ public class Terminal {
     return true;
   }
 
-  /** Saves any changes made and catches any exceptions. */
+  /** Waits for any changes still being written and catches any exceptions. */
+  private static void close() {
+    try {
+      control.close();
+    } catch (IOException ex) {
+      System.out.println(
+          "Ooops! Looks like we ran into an error while saving:\n" + ex.getMessage());
+    }
+  }
+
+  /** Saves any changes made and catches any exceptions. Lists files that could not be renamed. */
   private static void save() {
     try {
       control.save();
@@ -414,5 +673,8 @@ public class Terminal {
       System.out.println(
           "Ooops! Looks like we ran into an error while saving:\n" + ex.getMessage());
     }
+    for (RenameFailure failure : control.takeRenameFailures()) {
+      System.out.println(failure);
+    }
   }
 }